@@ -0,0 +1,111 @@
+package wolox.training.repositories;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Throughput of 16 threads adding and removing the same 64 books of one user over an embedded Postgres, one
+ * operation adds a random book or removes it when the user owns it. {@code atomic} changes the row with the
+ * statements of {@link OwnershipRepository}, {@code locked} locks the row of the user first and then checks and
+ * changes the book, which serializes the requests of the user. The schema is the one of the primary database, with
+ * the triggers of users_books that record the ownership history. The invariant is checked after every iteration:
+ * the user never owns a book twice. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(16)
+public class OwnershipContentionBenchmark {
+
+    private static final long HOT_USER = 1;
+    private static final int BOOKS = 64;
+
+    @Param({"locked", "atomic"})
+    private String mutation;
+
+    private EmbeddedPostgres postgres;
+    private HikariDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transactions;
+    private OwnershipRepository ownershipRepository;
+
+    @Setup
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        dataSource.setMaximumPoolSize(16);
+        // The tables Hibernate creates in the primary database, then its triggers and indexes
+        new ResourceDatabasePopulator(new ClassPathResource("db/shard-schema.sql"),
+                new ClassPathResource("db/schema-extensions.sql")).execute(dataSource);
+
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.update("INSERT INTO users (id, username, name) VALUES (?, 'hot-user', 'hot user')", HOT_USER);
+        jdbcTemplate.update("INSERT INTO book (id, title) SELECT g, 'book ' || g FROM generate_series(1, ?) g", BOOKS);
+        transactions = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        ownershipRepository = new OwnershipRepository(jdbcTemplate);
+    }
+
+    @TearDown(Level.Iteration)
+    public void checkNoDuplicates() {
+        Integer duplicates = jdbcTemplate.queryForObject("SELECT count(*) - count(DISTINCT books_id) FROM users_books "
+                + "WHERE users_id = ?", Integer.class, HOT_USER);
+        if (duplicates != 0) {
+            throw new IllegalStateException(duplicates + " books owned twice");
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        dataSource.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public boolean toggleBook() {
+        long bookId = ThreadLocalRandom.current().nextLong(1, BOOKS + 1);
+        return "atomic".equals(mutation)
+                ? transactions.execute(status -> toggleAtomically(bookId))
+                : transactions.execute(status -> toggleLocked(bookId));
+    }
+
+    private boolean toggleAtomically(long bookId) {
+        if (!ownershipRepository.addBooks(HOT_USER, List.of(bookId)).isEmpty()) {
+            return true;
+        }
+        ownershipRepository.removeBooks(HOT_USER, List.of(bookId));
+        return false;
+    }
+
+    private boolean toggleLocked(long bookId) {
+        jdbcTemplate.queryForObject("SELECT id FROM users WHERE id = ? FOR UPDATE", Long.class, HOT_USER);
+        Integer owned = jdbcTemplate.queryForObject("SELECT count(*) FROM users_books WHERE users_id = ? "
+                + "AND books_id = ?", Integer.class, HOT_USER, bookId);
+        if (owned == 0) {
+            jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) VALUES (?, ?)", HOT_USER, bookId);
+            return true;
+        }
+        jdbcTemplate.update("DELETE FROM users_books WHERE users_id = ? AND books_id = ?", HOT_USER, bookId);
+        return false;
+    }
+}
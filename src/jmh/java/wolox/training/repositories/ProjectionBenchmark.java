@@ -0,0 +1,76 @@
+package wolox.training.repositories;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.DsJavaApplication;
+import wolox.training.models.Book;
+
+/**
+ * Latency of the list view of 20000 books read as whole entities and as the projection of its three fields, through
+ * the repositories of the application started over an embedded Postgres. The projection doesn't hydrate the entities,
+ * so it should be the faster of the two. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ProjectionBenchmark {
+
+    private static final int ROWS = 20_000;
+    private static final String USER = "postgres";
+    private static final List<String> LIST_VIEW_FIELDS = Arrays.asList("id", "title", "author");
+
+    private EmbeddedPostgres postgres;
+    private ConfigurableApplicationContext context;
+    private BookRepository bookRepository;
+    private ProjectionRepository projectionRepository;
+
+    @Setup
+    public void setUp() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        context = new SpringApplicationBuilder(DsJavaApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .run("--spring.datasource.url=" + postgres.getJdbcUrl(USER, USER),
+                        "--spring.datasource.username=" + USER, "--spring.datasource.password=",
+                        "--server.port=0", "--training.grpc.enabled=false");
+        context.getBean(JdbcTemplate.class).update("INSERT INTO book (id, genre, author, image, title, sub_title, "
+                + "publisher, year, pages, isbn) SELECT g, 'Fantasy', 'author-' || g, "
+                + "'https://images-na.ssl-images-amazon.com/images/I/' || md5(g::text) || '.jpg', 'title-' || g, "
+                + "'A rather long subtitle of the book number ' || g, 'publisher-' || (g % 10), '1954', 352, "
+                + "'PR6039.O32 L6 ' || g FROM generate_series(1, ?) g", ROWS);
+        bookRepository = context.getBean(BookRepository.class);
+        projectionRepository = context.getBean(ProjectionRepository.class);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        postgres.close();
+    }
+
+    @Benchmark
+    public List<Book> entities() {
+        return bookRepository.getAllBook(null, "Fantasy", null);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> projection() {
+        return projectionRepository.findAll(Book.class, LIST_VIEW_FIELDS,
+                BookSpecifications.withFilters(null, "Fantasy", null));
+    }
+}
@@ -0,0 +1,90 @@
+package wolox.training.serialization;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.io.OutputStream;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * Throughput of the serialization of 10k entities, one operation writes the whole list, with the reflection based
+ * serializers and with {@link EntitySerializers}. Run with {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class EntitySerializationBenchmark {
+
+    private static final int ENTITIES = 10_000;
+    private static final int BOOKS_PER_USER = 3;
+
+    @Param({"reflection", "serializers"})
+    private String serialization;
+
+    private ObjectMapper mapper;
+    private List<Book> books;
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        mapper = new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        if ("serializers".equals(serialization)) {
+            mapper.registerModule(EntitySerializers.module());
+        }
+
+        books = new ArrayList<>(ENTITIES);
+        for (long id = 1; id <= ENTITIES; id++) {
+            books.add(book(id));
+        }
+        users = new ArrayList<>(ENTITIES);
+        for (long id = 1; id <= ENTITIES; id++) {
+            User user = new User(id);
+            user.setUsername("user-" + id);
+            user.setName("name " + id);
+            user.setBirthDate(LocalDate.of(1940, 1, 1).plusDays(id % 25_000));
+            int first = (int) (id % (ENTITIES - BOOKS_PER_USER));
+            user.setBooks(new ArrayList<>(books.subList(first, first + BOOKS_PER_USER)));
+            users.add(user);
+        }
+    }
+
+    @Benchmark
+    public void books() throws Exception {
+        mapper.writeValue(OutputStream.nullOutputStream(), books);
+    }
+
+    @Benchmark
+    public void usersWithBooks() throws Exception {
+        mapper.writeValue(OutputStream.nullOutputStream(), users);
+    }
+
+    private Book book(long id) {
+        Book book = new Book(id);
+        book.setGenre(Arrays.asList("Fantasy", "Drama", "Horror").get((int) (id % 3)));
+        book.setAuthor("author-" + id);
+        book.setImage("https://covers/" + id + ".jpg");
+        book.setTitle("title-" + id);
+        book.setSubTitle("subtitle-" + id);
+        book.setPublisher("publisher-" + (id % 500));
+        book.setYear(String.valueOf(1900 + id % 121));
+        book.setPages(100 + (int) (id % 900));
+        book.setIsbn("isbn-" + id);
+        return book;
+    }
+}
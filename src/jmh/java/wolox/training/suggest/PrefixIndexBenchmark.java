@@ -0,0 +1,70 @@
+package wolox.training.suggest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Latency distribution of a lookup of a random prefix of one to four letters in a {@link PrefixIndex} of random
+ * titles and authors, the p99 of the sample should stay in the microseconds whatever the number of values. Run with
+ * {@code ./gradlew jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PrefixIndexBenchmark {
+
+    private static final int PREFIXES = 4096;
+
+    @Param({"5000", "50000"})
+    private int values;
+
+    private PrefixIndex<String> index;
+    private String[] prefixes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(7);
+        Map<Long, String> titles = new HashMap<>();
+        Map<Long, Long> weights = new HashMap<>();
+        Map<Long, List<String>> terms = new HashMap<>();
+        for (long id = 0; id < values; id++) {
+            String title = word(random) + " " + word(random) + " " + word(random);
+            titles.put(id, title);
+            weights.put(id, (long) random.nextInt(1000));
+            terms.put(id, SuggestTerms.of(title, word(random) + " " + word(random)));
+        }
+        index = new PrefixIndex<>(10);
+        index.putAll(titles, weights, terms);
+
+        prefixes = new String[PREFIXES];
+        for (int i = 0; i < PREFIXES; i++) {
+            prefixes[i] = word(random).substring(0, 1 + random.nextInt(4));
+        }
+    }
+
+    @Benchmark
+    public List<String> top() {
+        next = (next + 1) & (PREFIXES - 1);
+        return index.top(prefixes[next], 10);
+    }
+
+    private static String word(Random random) {
+        char[] letters = new char[5 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}
@@ -2,12 +2,22 @@ package wolox.training;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ConfigurableApplicationContext;
 
 @SpringBootApplication
 public class DsJavaApplication {
 
+	/**
+	 * When true the application stops right after the context is refreshed, used by the CDS training run
+	 */
+	public static final String EXIT_AFTER_STARTUP = "training.exit-after-startup";
+
 	public static void main(String[] args) {
-		SpringApplication.run(DsJavaApplication.class, args);
+		ConfigurableApplicationContext context = SpringApplication.run(DsJavaApplication.class, args);
+
+		if (Boolean.getBoolean(EXIT_AFTER_STARTUP)) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 
 }
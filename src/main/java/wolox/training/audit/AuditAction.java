@@ -0,0 +1,15 @@
+package wolox.training.audit;
+
+/**
+ * Mutations recorded in the audit log, the ordinal is stored in the log so new actions are only appended
+ */
+public enum AuditAction {
+    BOOK_CREATED,
+    BOOK_UPDATED,
+    BOOK_DELETED,
+    USER_CREATED,
+    USER_UPDATED,
+    USER_DELETED,
+    BOOK_ADDED_TO_USER,
+    BOOK_REMOVED_FROM_USER
+}
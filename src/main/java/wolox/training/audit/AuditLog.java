@@ -0,0 +1,203 @@
+package wolox.training.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import wolox.training.concurrency.AfterCommit;
+
+/**
+ * Append-only audit log of the mutations. The request threads only enqueue the records in a bounded lock-free
+ * queue, once their transaction is committed, and a background writer drains the queue in batches to the
+ * memory-mapped segments of {@link AuditSegmentWriter}, forcing them to the disk as {@link FsyncPolicy} says. When
+ * the queue is full a request waits for the writer up to {@code training.audit.offer-timeout-ms}, then the record is
+ * dropped and counted in {@code audit.dropped}. Read it with {@link AuditLogReader}.
+ */
+@Component
+@Lazy(false)
+public class AuditLog implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AuditLog.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final int PHASE = Integer.MAX_VALUE - 2;
+
+    private final ConcurrentLinkedQueue<AuditRecord> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Path directory;
+    private final long segmentSize;
+    private final int capacity;
+    private final int batchSize;
+    private final FsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long offerTimeoutNanos;
+    private final Counter written;
+    private final Counter dropped;
+
+    private volatile boolean running;
+    private volatile AuditSegmentWriter segmentWriter;
+    private Thread writer;
+
+    public AuditLog(MeterRegistry meterRegistry,
+            @Value("${training.audit.directory:audit}") String directory,
+            @Value("${training.audit.segment-size-bytes:67108864}") long segmentSize,
+            @Value("${training.audit.queue-capacity:65536}") int capacity,
+            @Value("${training.audit.batch-size:512}") int batchSize,
+            @Value("${training.audit.fsync:BATCH}") FsyncPolicy fsyncPolicy,
+            @Value("${training.audit.fsync-interval-ms:1000}") long fsyncIntervalMs,
+            @Value("${training.audit.offer-timeout-ms:100}") long offerTimeoutMs) {
+        this.directory = Paths.get(directory);
+        this.segmentSize = segmentSize;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.offerTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMs);
+        this.written = meterRegistry.counter("audit.written");
+        this.dropped = meterRegistry.counter("audit.dropped");
+        Gauge.builder("audit.queue.size", queued, AtomicInteger::get)
+                .description("Audit records waiting for the writer")
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method records a mutation once the current transaction is committed, immediately when there is no
+     * transaction
+     *
+     * @param action:   the mutation
+     * @param entityId: the book or user changed
+     */
+    public void record(AuditAction action, Long entityId) {
+        record(action, entityId, null);
+    }
+
+    /**
+     * This method records a mutation once the current transaction is committed, immediately when there is no
+     * transaction
+     *
+     * @param action:    the mutation
+     * @param entityId:  the book or user changed
+     * @param relatedId: the book added or removed from the user
+     */
+    public void record(AuditAction action, Long entityId, Long relatedId) {
+        AuditRecord record = AuditRecord.of(action, entityId, relatedId);
+        AfterCommit.run(() -> enqueue(record));
+    }
+
+    /**
+     * This method returns the sequence the next written record will get
+     *
+     * @return the sequence, 0 while the log isn't open
+     */
+    public long getNextSequence() {
+        AuditSegmentWriter current = segmentWriter;
+        return Objects.isNull(current) ? 0 : current.getNextSequence();
+    }
+
+    @Override
+    public void start() {
+        try {
+            segmentWriter = new AuditSegmentWriter(directory, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Audit log can't be opened in " + directory.toAbsolutePath(), e);
+        }
+        running = true;
+        writer = new Thread(this::drain, "audit-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * The writer drains the records enqueued before the stop and forces the segment
+     */
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before and stopped after the web server, so the mutations of the requests in flight are written
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void enqueue(AuditRecord record) {
+        long deadline = System.nanoTime() + offerTimeoutNanos;
+        while (queued.incrementAndGet() > capacity) {
+            queued.decrementAndGet();
+            if (System.nanoTime() - deadline > 0) {
+                dropped.increment();
+                LOGGER.error("Audit queue full, dropped {}", record);
+                return;
+            }
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        queue.offer(record);
+    }
+
+    private void drain() {
+        long lastFsync = System.nanoTime();
+        boolean unforced = false;
+        while (running || !queue.isEmpty()) {
+            int batch = 0;
+            AuditRecord record;
+            while (batch < batchSize && Objects.nonNull(record = queue.poll())) {
+                write(record);
+                batch++;
+            }
+            if (batch > 0) {
+                queued.addAndGet(-batch);
+                written.increment(batch);
+            }
+
+            unforced |= batch > 0;
+            long now = System.nanoTime();
+            if (unforced && (fsyncPolicy == FsyncPolicy.BATCH
+                    || fsyncPolicy == FsyncPolicy.INTERVAL && now - lastFsync >= fsyncIntervalNanos)) {
+                segmentWriter.force();
+                lastFsync = now;
+                unforced = false;
+            }
+            if (batch < batchSize && running) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+        segmentWriter.close();
+    }
+
+    private void write(AuditRecord record) {
+        try {
+            segmentWriter.append(record);
+        } catch (IOException e) {
+            dropped.increment();
+            LOGGER.error("Audit record {} couldn't be written", record, e);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package wolox.training.audit;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Reads the audit log written by {@link AuditLog}. Can be run on a copy of the directory or while the application
+ * is writing it, the records being written are not returned:
+ * <pre>
+ * java -cp app.jar wolox.training.audit.AuditLogReader audit [from sequence]
+ * </pre>
+ */
+public final class AuditLogReader {
+
+    private AuditLogReader() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: AuditLogReader <directory> [from sequence]");
+            System.exit(1);
+        }
+
+        long from = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        forEach(Paths.get(args[0]), from, System.out::println);
+    }
+
+    /**
+     * This method returns every record of the log
+     *
+     * @param directory: directory of the segments
+     * @return {@link List<AuditRecord>} in the order they were written
+     */
+    public static List<AuditRecord> read(Path directory) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        forEach(directory, 1, records::add);
+        return records;
+    }
+
+    /**
+     * This method walks the records of the log from a sequence without keeping them in memory, the segments before
+     * the one of the sequence are not opened
+     *
+     * @param directory: directory of the segments
+     * @param from:      sequence of the first record to return
+     * @param consumer:  called with each record in the order they were written
+     */
+    public static void forEach(Path directory, long from, Consumer<AuditRecord> consumer) throws IOException {
+        List<Path> segments = AuditSegments.segments(directory);
+        for (int i = 0; i < segments.size(); i++) {
+            if (i + 1 < segments.size() && AuditSegments.firstSequence(segments.get(i + 1)) <= from) {
+                continue;
+            }
+
+            MappedByteBuffer segment = AuditSegments.map(segments.get(i), 0, false);
+            int slots = AuditSegments.slots(segment);
+            for (int slot = 0; slot < slots; slot++) {
+                AuditRecord record = AuditSegments.read(segment, slot);
+                if (Objects.isNull(record)) {
+                    break;
+                }
+                if (record.getSequence() >= from) {
+                    consumer.accept(record);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package wolox.training.audit;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Represents a mutation recorded in the audit log.
+ */
+public class AuditRecord {
+
+    private final long sequence;
+    private final Instant timestamp;
+    private final AuditAction action;
+    private final Long entityId;
+    private final Long relatedId;
+
+    public AuditRecord(long sequence, Instant timestamp, AuditAction action, Long entityId, Long relatedId) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.action = action;
+        this.entityId = entityId;
+        this.relatedId = relatedId;
+    }
+
+    /**
+     * This method creates a record of a mutation made now, the sequence is assigned when it is written
+     *
+     * @param action:    the mutation
+     * @param entityId:  the book or user changed
+     * @param relatedId: the book added or removed from the user, null for the rest of actions
+     * @return {@link AuditRecord}
+     */
+    public static AuditRecord of(AuditAction action, Long entityId, Long relatedId) {
+        return new AuditRecord(0, Instant.now(), action, entityId, relatedId);
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public AuditAction getAction() {
+        return action;
+    }
+
+    public Long getEntityId() {
+        return entityId;
+    }
+
+    public Long getRelatedId() {
+        return relatedId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        AuditRecord that = (AuditRecord) o;
+        return sequence == that.sequence && timestamp.equals(that.timestamp) && action == that.action
+                && Objects.equals(entityId, that.entityId) && Objects.equals(relatedId, that.relatedId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sequence, timestamp, action, entityId, relatedId);
+    }
+
+    @Override
+    public String toString() {
+        return sequence + " " + timestamp + " " + action + " " + entityId
+                + (Objects.isNull(relatedId) ? "" : " " + relatedId);
+    }
+}
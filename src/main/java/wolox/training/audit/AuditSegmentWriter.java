@@ -0,0 +1,84 @@
+package wolox.training.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Appends records to the memory-mapped segments of a directory, opening a new segment when the current one is
+ * full. When the directory already has segments the last one is scanned to continue after its last valid record.
+ * Used by a single thread.
+ */
+class AuditSegmentWriter implements Closeable {
+
+    private final Path directory;
+    private final int capacity;
+
+    private MappedByteBuffer segment;
+    private int slot;
+    private long nextSequence;
+
+    AuditSegmentWriter(Path directory, long segmentSize) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.capacity = AuditSegments.capacity(segmentSize);
+
+        List<Path> segments = AuditSegments.segments(directory);
+        if (segments.isEmpty()) {
+            open(1);
+            return;
+        }
+
+        Path last = segments.get(segments.size() - 1);
+        segment = AuditSegments.map(last, capacity, true);
+        nextSequence = AuditSegments.firstSequence(last);
+        int slots = AuditSegments.slots(segment);
+        AuditRecord record;
+        while (slot < slots && Objects.nonNull(record = AuditSegments.read(segment, slot))
+                && record.getSequence() == nextSequence) {
+            slot++;
+            nextSequence++;
+        }
+    }
+
+    /**
+     * This method writes the record in the next slot
+     *
+     * @param record: the mutation, its sequence is ignored
+     * @return the sequence assigned to the record
+     */
+    long append(AuditRecord record) throws IOException {
+        if (slot == AuditSegments.slots(segment)) {
+            segment.force();
+            open(nextSequence);
+        }
+
+        AuditSegments.write(segment, slot++, nextSequence, record);
+        return nextSequence++;
+    }
+
+    /**
+     * This method flushes the written records of the current segment to the disk
+     */
+    void force() {
+        segment.force();
+    }
+
+    long getNextSequence() {
+        return nextSequence;
+    }
+
+    @Override
+    public void close() {
+        segment.force();
+    }
+
+    private void open(long firstSequence) throws IOException {
+        segment = AuditSegments.map(AuditSegments.segment(directory, firstSequence), capacity, true);
+        slot = 0;
+        nextSequence = firstSequence;
+    }
+}
@@ -0,0 +1,140 @@
+package wolox.training.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Layout of the audit segments. A segment is a preallocated file named after the sequence of its first record,
+ * with a header and fixed size records:
+ * <pre>
+ * header: int magic, int record size
+ * record: long sequence, long epoch second, int nano, byte action, long entity id, long related id, int crc32
+ * </pre>
+ * The unwritten tail of a segment is zeroed, so the first record with a wrong checksum marks its end, also after a
+ * record torn by a crash.
+ */
+final class AuditSegments {
+
+    static final int MAGIC = 0x41554431;
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 41;
+    private static final int CHECKED_SIZE = RECORD_SIZE - Integer.BYTES;
+    private static final long NO_ID = Long.MIN_VALUE;
+    private static final String PREFIX = "audit-";
+    private static final String SUFFIX = ".log";
+    private static final AuditAction[] ACTIONS = AuditAction.values();
+
+    private AuditSegments() {
+    }
+
+    static Path segment(Path directory, long firstSequence) {
+        return directory.resolve(String.format("%s%020d%s", PREFIX, firstSequence, SUFFIX));
+    }
+
+    static long firstSequence(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * The segments of the directory in the order they were written
+     */
+    static List<Path> segments(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(PREFIX)
+                    && file.getFileName().toString().endsWith(SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * The records that fit in a segment of about the given size
+     */
+    static int capacity(long segmentSize) {
+        return (int) Math.max(1, (segmentSize - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    static MappedByteBuffer map(Path segment, int capacity, boolean writable) throws IOException {
+        if (!writable) {
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+                if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC
+                        || buffer.getInt(Integer.BYTES) != RECORD_SIZE) {
+                    throw new IOException("Not an audit segment " + segment);
+                }
+                return buffer;
+            }
+        }
+
+        boolean created = Files.notExists(segment);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            long size = created ? HEADER_SIZE + (long) capacity * RECORD_SIZE : channel.size();
+            MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, size);
+            if (created) {
+                buffer.putInt(0, MAGIC).putInt(Integer.BYTES, RECORD_SIZE);
+            } else if (buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != RECORD_SIZE) {
+                throw new IOException("Not an audit segment " + segment);
+            }
+            return buffer;
+        }
+    }
+
+    static int slots(ByteBuffer buffer) {
+        return (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    static void write(ByteBuffer buffer, int slot, long sequence, AuditRecord record) {
+        int position = HEADER_SIZE + slot * RECORD_SIZE;
+        buffer.putLong(position, sequence)
+                .putLong(position + 8, record.getTimestamp().getEpochSecond())
+                .putInt(position + 16, record.getTimestamp().getNano())
+                .put(position + 20, (byte) record.getAction().ordinal())
+                .putLong(position + 21, Objects.isNull(record.getEntityId()) ? NO_ID : record.getEntityId())
+                .putLong(position + 29, Objects.isNull(record.getRelatedId()) ? NO_ID : record.getRelatedId())
+                .putInt(position + CHECKED_SIZE, checksum(buffer, position));
+    }
+
+    /**
+     * The record of the slot, null when the slot was never written or the write was torn
+     */
+    static AuditRecord read(ByteBuffer buffer, int slot) {
+        int position = HEADER_SIZE + slot * RECORD_SIZE;
+        long sequence = buffer.getLong(position);
+        int action = buffer.get(position + 20);
+        if (sequence <= 0 || action < 0 || action >= ACTIONS.length
+                || buffer.getInt(position + CHECKED_SIZE) != checksum(buffer, position)) {
+            return null;
+        }
+
+        long entityId = buffer.getLong(position + 21);
+        long relatedId = buffer.getLong(position + 29);
+        return new AuditRecord(sequence,
+                Instant.ofEpochSecond(buffer.getLong(position + 8), buffer.getInt(position + 16)),
+                ACTIONS[action],
+                entityId == NO_ID ? null : entityId,
+                relatedId == NO_ID ? null : relatedId);
+    }
+
+    private static int checksum(ByteBuffer buffer, int position) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(position).limit(position + CHECKED_SIZE));
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,19 @@
+package wolox.training.audit;
+
+/**
+ * When the audit log forces the mapped segment to the disk
+ */
+public enum FsyncPolicy {
+    /**
+     * After every batch drained from the queue, nothing acknowledged is lost if the host crashes
+     */
+    BATCH,
+    /**
+     * At most once per {@code training.audit.fsync-interval-ms}, the records of the last interval can be lost
+     */
+    INTERVAL,
+    /**
+     * Left to the operating system, the records survive a crash of the process but not of the host
+     */
+    NONE
+}
@@ -0,0 +1,318 @@
+package wolox.training.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import wolox.training.concurrency.AfterCommit;
+import wolox.training.sharding.ShardContext;
+import wolox.training.sharding.ShardRoutingDataSource;
+
+/**
+ * Keeps the {@link EntityCache} of every node in sync. A change is published with {@code pg_notify} on the
+ * connection of the current transaction, so Postgres only delivers it once the write is committed, and every node
+ * applies it from a dedicated {@code LISTEN} connection, opened with the driver outside the pool so it never holds
+ * one of its connections. The ids of one change are sent in as few messages as fit in a payload. Messages sent while a
+ * node wasn't listening are lost, so
+ * after a reconnection the caches of the node are emptied. When the users are sharded a change is published in the
+ * shard of its transaction, so a node listens to every shard.
+ * <p>
+ * Read models that can't just drop entries subscribe an {@link InvalidationListener}, it is called in the node
+ * that made the change once the transaction is committed and in every node when the message arrives.
+ */
+@Component
+@Lazy(false)
+public class CacheInvalidationBus implements SmartLifecycle {
+
+    public static final String CHANNEL = "cache_invalidation";
+    private static final String SEPARATOR = ":";
+    private static final String ALL = "*";
+    private static final String ID_SEPARATOR = ",";
+    private static final int MAX_PAYLOAD_LENGTH = 7900;
+    private static final Logger LOGGER = LoggerFactory.getLogger(CacheInvalidationBus.class);
+    private static final int PHASE = Integer.MAX_VALUE - 4;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+    private final Map<String, EntityCache<?>> caches;
+    private final Map<String, List<InvalidationListener>> listeners = new ConcurrentHashMap<>();
+    private final int pollTimeoutMs;
+    private final long reconnectDelayMs;
+    private final Counter published;
+    private final Counter received;
+    private final Counter resynchronizations;
+
+    private final AtomicInteger listeningShards = new AtomicInteger();
+    private final List<Thread> listenerThreads = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    public CacheInvalidationBus(DataSource dataSource, JdbcTemplate jdbcTemplate, List<EntityCache<?>> caches,
+            MeterRegistry meterRegistry,
+            @Value("${training.cache.invalidation.poll-timeout-ms:500}") int pollTimeoutMs,
+            @Value("${training.cache.invalidation.reconnect-delay-ms:1000}") long reconnectDelayMs) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = jdbcTemplate;
+        this.caches = caches.stream().collect(Collectors.toMap(EntityCache::getName, Function.identity()));
+        this.pollTimeoutMs = pollTimeoutMs;
+        this.reconnectDelayMs = reconnectDelayMs;
+        this.published = meterRegistry.counter("cache.invalidation.published");
+        this.received = meterRegistry.counter("cache.invalidation.received");
+        this.resynchronizations = meterRegistry.counter("cache.invalidation.resynchronizations");
+    }
+
+    /**
+     * This method drops the entity from the local cache and notifies the other nodes once the current transaction
+     * is committed, immediately when there is no transaction
+     *
+     * @param cacheName: one of {@link CacheNames}
+     * @param id:        this is the unique identifier of the entity
+     */
+    public void publish(String cacheName, Long id) {
+        publish(cacheName, Collections.singletonList(id));
+    }
+
+    /**
+     * This method drops the entities from the local cache and notifies the other nodes once the current transaction
+     * is committed, the ids are batched in the payloads, which Postgres limits to 8000 bytes
+     *
+     * @param cacheName: one of {@link CacheNames}
+     * @param ids:       the unique identifiers of the entities
+     */
+    public void publish(String cacheName, Collection<Long> ids) {
+        EntityCache<?> cache = cache(cacheName);
+        ids.forEach(cache::invalidate);
+
+        StringBuilder payload = new StringBuilder();
+        for (Long id : ids) {
+            String key = String.valueOf(id);
+            if (payload.length() > 0 && payload.length() + ID_SEPARATOR.length() + key.length() > MAX_PAYLOAD_LENGTH) {
+                notifyNodes(payload.toString());
+                payload.setLength(0);
+            }
+            payload.append(payload.length() == 0 ? cacheName.concat(SEPARATOR) : ID_SEPARATOR).append(key);
+        }
+        if (payload.length() > 0) {
+            notifyNodes(payload.toString());
+        }
+        AfterCommit.run(() -> listeners(cacheName).forEach(listener -> ids.forEach(listener::invalidated)));
+    }
+
+    /**
+     * This method empties the cache in every node
+     *
+     * @param cacheName: one of {@link CacheNames}
+     */
+    public void publishAll(String cacheName) {
+        cache(cacheName).invalidateAll();
+        notifyNodes(cacheName.concat(SEPARATOR).concat(ALL));
+        AfterCommit.run(() -> listeners(cacheName).forEach(InvalidationListener::invalidatedAll));
+    }
+
+    /**
+     * This method registers a listener of the invalidations of a cache
+     *
+     * @param cacheName: one of {@link CacheNames}
+     * @param listener:  called with every invalidation of the cache
+     */
+    public void subscribe(String cacheName, InvalidationListener listener) {
+        cache(cacheName);
+        listeners.computeIfAbsent(cacheName, name -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    public boolean isListening() {
+        return !listenerThreads.isEmpty() && listeningShards.get() == listenerThreads.size();
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        int shards = shards();
+        for (int shard = 0; shard < shards; shard++) {
+            int listenedShard = shard;
+            Thread listener = new Thread(() -> listen(listenedShard),
+                    shards == 1 ? "cache-invalidation-listener" : "cache-invalidation-listener-" + shard);
+            listener.setDaemon(true);
+            listenerThreads.add(listener);
+        }
+        listenerThreads.forEach(Thread::start);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        listenerThreads.forEach(Thread::interrupt);
+        try {
+            for (Thread listener : listenerThreads) {
+                listener.join(pollTimeoutMs * 2L);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        listenerThreads.clear();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before the caches are warmed and the web server accepts requests
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private List<InvalidationListener> listeners(String cacheName) {
+        return listeners.getOrDefault(cacheName, Collections.emptyList());
+    }
+
+    private void notifyNodes(String payload) {
+        jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload);
+        published.increment();
+    }
+
+    private int shards() {
+        try {
+            return dataSource.isWrapperFor(ShardRoutingDataSource.class)
+                    ? dataSource.unwrap(ShardRoutingDataSource.class).shards() : 1;
+        } catch (SQLException e) {
+            return 1;
+        }
+    }
+
+    private void listen(int shard) {
+        ShardContext.set(shard);
+        boolean reconnection = false;
+        boolean listening = false;
+        while (running) {
+            try (Connection connection = listenerConnection(shard)) {
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + CHANNEL);
+                }
+                if (reconnection) {
+                    resynchronize();
+                }
+                listening = true;
+                listeningShards.incrementAndGet();
+                reconnection = true;
+
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(pollTimeoutMs);
+                    if (Objects.nonNull(notifications)) {
+                        for (PGNotification notification : notifications) {
+                            apply(notification.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException e) {
+                if (listening) {
+                    listening = false;
+                    listeningShards.decrementAndGet();
+                }
+                LOGGER.warn("Cache invalidation listener disconnected, retrying in {} ms", reconnectDelayMs, e);
+                pause();
+            }
+        }
+        if (listening) {
+            listeningShards.decrementAndGet();
+        }
+    }
+
+    private void apply(String payload) {
+        int separator = payload.indexOf(SEPARATOR);
+        String cacheName = payload.substring(0, separator);
+        EntityCache<?> cache = caches.get(cacheName);
+        if (Objects.isNull(cache)) {
+            LOGGER.warn("Invalidation of unknown cache {}", payload);
+            return;
+        }
+
+        received.increment();
+        String key = payload.substring(separator + 1);
+        if (ALL.equals(key)) {
+            cache.invalidateAll();
+            listeners(cacheName).forEach(InvalidationListener::invalidatedAll);
+        } else {
+            for (String id : key.split(ID_SEPARATOR)) {
+                cache.invalidate(Long.valueOf(id));
+                listeners(cacheName).forEach(listener -> listener.invalidated(Long.valueOf(id)));
+            }
+        }
+    }
+
+    /**
+     * A pooled data source is bypassed, its URL and credentials open a connection with the driver; any other data
+     * source, as the unpooled ones of the tests, gives the connection itself
+     */
+    private Connection listenerConnection(int shard) throws SQLException {
+        DataSource target = dataSource.isWrapperFor(ShardRoutingDataSource.class)
+                ? dataSource.unwrap(ShardRoutingDataSource.class).shard(shard) : dataSource;
+        if (target.isWrapperFor(HikariDataSource.class)) {
+            HikariDataSource pool = target.unwrap(HikariDataSource.class);
+            if (Objects.nonNull(pool.getJdbcUrl())) {
+                Properties info = new Properties();
+                info.putAll(pool.getDataSourceProperties());
+                if (Objects.nonNull(pool.getUsername())) {
+                    info.setProperty("user", pool.getUsername());
+                }
+                if (Objects.nonNull(pool.getPassword())) {
+                    info.setProperty("password", pool.getPassword());
+                }
+                return DriverManager.getConnection(pool.getJdbcUrl(), info);
+            }
+        }
+        return target.getConnection();
+    }
+
+    private void resynchronize() {
+        resynchronizations.increment();
+        caches.values().forEach(EntityCache::expireAll);
+        listeners.values().forEach(cacheListeners -> cacheListeners.forEach(InvalidationListener::invalidatedAll));
+    }
+
+    private EntityCache<?> cache(String cacheName) {
+        EntityCache<?> cache = caches.get(cacheName);
+        if (Objects.isNull(cache)) {
+            throw new IllegalArgumentException("Unknown cache " + cacheName);
+        }
+        return cache;
+    }
+
+    private void pause() {
+        try {
+            Thread.sleep(reconnectDelayMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package wolox.training.cache;
+
+/**
+ * Names of the in-process entity caches, also used as the prefix of the invalidation messages
+ */
+public final class CacheNames {
+
+    private CacheNames() {
+        throw new IllegalStateException("Constants class");
+    }
+
+    public static final String BOOKS = "books";
+    public static final String USERS = "users";
+
+}
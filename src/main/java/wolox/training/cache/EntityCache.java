@@ -0,0 +1,237 @@
+package wolox.training.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import wolox.training.exceptions.DatabaseUnavailableException;
+import wolox.training.resilience.StaleResponses;
+
+/**
+ * In-process cache of entities by id. Entries are dropped through {@link CacheInvalidationBus} when any node
+ * changes the entity, so a value is never served after the write that made it stale is committed.
+ * <p>
+ * The last value read of every entity is also kept after it expires, until it is invalidated. A read that misses
+ * the cache while the database is unavailable gets that value instead of the error, the response is marked as
+ * stale through {@link StaleResponses} and the id is remembered so it is read again once the database is back.
+ *
+ * @param <V> cached entity, must not be modified once cached
+ */
+public class EntityCache<V> {
+
+    private final String name;
+    private final Cache<Long, V> cache;
+    private final Cache<Long, LastKnown<V>> lastKnown;
+    private final Set<Long> servedStale = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Incremented on every invalidation, a load that saw an invalidation while it was running isn't cached
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public EntityCache(String name, String spec) {
+        this(name, spec, "maximumSize=0");
+    }
+
+    /**
+     * @param spec:          Guava cache spec of the cached entities
+     * @param lastKnownSpec: Guava cache spec of the last known values, served while the database is unavailable
+     */
+    public EntityCache(String name, String spec, String lastKnownSpec) {
+        this.name = name;
+        this.cache = CacheBuilder.from(spec).recordStats().build();
+        this.lastKnown = CacheBuilder.from(lastKnownSpec).build();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Cache<Long, V> getNativeCache() {
+        return cache;
+    }
+
+    /**
+     * This method returns the cached entity or loads it, only found entities are cached. The last known value is
+     * returned when the loader fails with {@link DatabaseUnavailableException}.
+     *
+     * @param id:     this is the unique identifier of the entity
+     * @param loader: reads the entity from the database
+     * @return {@link Optional} with the entity
+     */
+    public Optional<V> get(Long id, Supplier<Optional<V>> loader) {
+        V cached = cache.getIfPresent(id);
+        if (Objects.nonNull(cached)) {
+            return Optional.of(cached);
+        }
+
+        long version = invalidations.get();
+        Optional<V> loaded;
+        try {
+            loaded = loader.get();
+        } catch (DatabaseUnavailableException e) {
+            return Optional.of(stale(id).orElseThrow(() -> e));
+        }
+        loaded.ifPresent(value -> putIfNotInvalidated(id, value, version));
+        return loaded;
+    }
+
+    /**
+     * This method returns the cached entities of the ids and loads the rest with one call to the loader. The last
+     * known values of the rest are returned when the loader fails with {@link DatabaseUnavailableException}, as
+     * long as there is one for each of them.
+     *
+     * @param ids:    unique identifiers of the entities
+     * @param loader: reads the missing entities from the database, those that don't exist are left out
+     * @param idOf:   returns the id of a loaded entity
+     * @return {@link Map} with the entities found by id
+     */
+    public Map<Long, V> getAll(List<Long> ids, Function<Collection<Long>, List<V>> loader, Function<V, Long> idOf) {
+        Map<Long, V> found = new HashMap<>(cache.getAllPresent(ids));
+        Collection<Long> misses = ids.stream()
+                .filter(id -> !found.containsKey(id))
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        if (misses.isEmpty()) {
+            return found;
+        }
+
+        long version = invalidations.get();
+        List<V> loaded;
+        try {
+            loaded = loader.apply(misses);
+        } catch (DatabaseUnavailableException e) {
+            for (Long id : misses) {
+                found.put(id, stale(id).orElseThrow(() -> e));
+            }
+            return found;
+        }
+        for (V value : loaded) {
+            Long id = idOf.apply(value);
+            found.put(id, value);
+            putIfNotInvalidated(id, value, version);
+        }
+        return found;
+    }
+
+    /**
+     * This method loads the entities of the ids again and caches them, without falling back to the last known
+     * values
+     *
+     * @param ids:    unique identifiers of the entities
+     * @param loader: reads the entities from the database, those that don't exist are left out
+     * @param idOf:   returns the id of a loaded entity
+     */
+    public void reload(Collection<Long> ids, Function<Collection<Long>, List<V>> loader, Function<V, Long> idOf) {
+        long version = invalidations.get();
+        for (V value : loader.apply(ids)) {
+            putIfNotInvalidated(idOf.apply(value), value, version);
+        }
+    }
+
+    /**
+     * This method returns the ids served from their last known value since the previous call
+     *
+     * @return {@link List} with the unique identifiers of the entities
+     */
+    public List<Long> drainServedStale() {
+        List<Long> ids = new ArrayList<>(servedStale);
+        servedStale.removeAll(ids);
+        return ids;
+    }
+
+    /**
+     * This method remembers again ids returned by {@link #drainServedStale()} that couldn't be reloaded, those
+     * invalidated since then are left out
+     *
+     * @param ids: unique identifiers of the entities
+     */
+    public void markServedStale(Collection<Long> ids) {
+        ids.stream().filter(id -> Objects.nonNull(lastKnown.getIfPresent(id))).forEach(servedStale::add);
+    }
+
+    public Optional<V> getIfPresent(Long id) {
+        return Optional.ofNullable(cache.getIfPresent(id));
+    }
+
+    public Map<Long, V> getAllPresent(Iterable<Long> ids) {
+        return cache.getAllPresent(ids);
+    }
+
+    public long version() {
+        return invalidations.get();
+    }
+
+    /**
+     * This method caches a value read when {@link #version()} returned the given version, it is discarded if the
+     * cache was invalidated since then
+     */
+    public void putIfNotInvalidated(Long id, V value, long version) {
+        cache.put(id, value);
+        lastKnown.put(id, new LastKnown<>(value, System.currentTimeMillis()));
+        if (invalidations.get() != version) {
+            cache.invalidate(id);
+            lastKnown.invalidate(id);
+        }
+    }
+
+    public void invalidate(Long id) {
+        invalidations.incrementAndGet();
+        cache.invalidate(id);
+        lastKnown.invalidate(id);
+        servedStale.remove(id);
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+        lastKnown.invalidateAll();
+        servedStale.clear();
+    }
+
+    /**
+     * This method empties the cache when it may have missed invalidations, the last known values are kept since
+     * they are only served as stale
+     */
+    public void expireAll() {
+        invalidations.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    private Optional<V> stale(Long id) {
+        LastKnown<V> known = lastKnown.getIfPresent(id);
+        if (Objects.isNull(known)) {
+            return Optional.empty();
+        }
+
+        servedStale.add(id);
+        StaleResponses.served(System.currentTimeMillis() - known.readAt);
+        return Optional.of(known.value);
+    }
+
+    private static final class LastKnown<V> {
+
+        private final V value;
+        private final long readAt;
+
+        private LastKnown(V value, long readAt) {
+            this.value = value;
+            this.readAt = readAt;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package wolox.training.cache;
+
+/**
+ * Receives the invalidations of a cache applied by {@link CacheInvalidationBus}, used by the read models that
+ * have to follow the changes of the entities
+ */
+public interface InvalidationListener {
+
+    /**
+     * Called after the entity changed in any node
+     *
+     * @param id: this is the unique identifier of the entity
+     */
+    void invalidated(Long id);
+
+    /**
+     * Called when every entity may have changed, after a reconnection of the bus or a full invalidation
+     */
+    void invalidatedAll();
+}
@@ -0,0 +1,200 @@
+package wolox.training.catalog;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Columnar projection of the filterable fields of the books. Each book takes a row of primitive arrays, publisher
+ * and genre are dictionary encoded and every value of publisher, genre and year has a bitmap of its rows, so a
+ * filter is the intersection of at most three bitmaps. The rows of deleted books are recycled.
+ */
+public class BookColumns {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int ABSENT = -1;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> rowsById = new HashMap<>();
+    private final Dictionary publishers = new Dictionary();
+    private final Dictionary genres = new Dictionary();
+    private final Map<Integer, BitSet> rowsByPublisher = new HashMap<>();
+    private final Map<Integer, BitSet> rowsByGenre = new HashMap<>();
+    private final Map<Integer, BitSet> rowsByYear = new HashMap<>();
+    private final BitSet liveRows = new BitSet();
+
+    private long[] ids = new long[INITIAL_CAPACITY];
+    private int[] publisherCodes = new int[INITIAL_CAPACITY];
+    private int[] genreCodes = new int[INITIAL_CAPACITY];
+    private int[] years = new int[INITIAL_CAPACITY];
+    private int[] pages = new int[INITIAL_CAPACITY];
+
+    /**
+     * This method adds the book or replaces its values
+     *
+     * @param id:        this is the unique identifier of the book
+     * @param publisher: this is the publisher the book
+     * @param genre:     this is the genre the book
+     * @param year:      this is the year the book, numeric
+     * @param pageCount: this is the number of pages the book
+     */
+    public void upsert(long id, String publisher, String genre, String year, int pageCount) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = rowsById.get(id);
+            int row;
+            if (Objects.isNull(existing)) {
+                row = freeRow();
+                rowsById.put(id, row);
+                liveRows.set(row);
+            } else {
+                row = existing;
+                unindex(row);
+            }
+
+            ids[row] = id;
+            publisherCodes[row] = publishers.encode(publisher);
+            genreCodes[row] = genres.encode(genre);
+            years[row] = Integer.parseInt(year);
+            pages[row] = pageCount;
+            index(row);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes the book, nothing happens if it isn't in the projection
+     *
+     * @param id: this is the unique identifier of the book
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsById.remove(id);
+            if (Objects.nonNull(row)) {
+                unindex(row);
+                liveRows.clear(row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            rowsById.clear();
+            rowsByPublisher.clear();
+            rowsByGenre.clear();
+            rowsByYear.clear();
+            liveRows.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the ids of the books that match every supplied filter
+     *
+     * @param publisher: this is the publisher the book, ignored when null
+     * @param genre:     this is the genre the book, ignored when null
+     * @param year:      this is the year the book, ignored when null
+     * @return ids of the books in ascending order of row
+     */
+    public long[] filter(String publisher, String genre, String year) {
+        lock.readLock().lock();
+        try {
+            BitSet rows = (BitSet) liveRows.clone();
+            if (Objects.nonNull(publisher)) {
+                rows.and(rowsOf(rowsByPublisher, publishers.codeOf(publisher)));
+            }
+            if (Objects.nonNull(genre)) {
+                rows.and(rowsOf(rowsByGenre, genres.codeOf(genre)));
+            }
+            if (Objects.nonNull(year)) {
+                rows.and(rowsOf(rowsByYear, parseYear(year)));
+            }
+            return rows.stream().mapToLong(row -> ids[row]).toArray();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rowsById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int freeRow() {
+        int row = liveRows.nextClearBit(0);
+        if (row == ids.length) {
+            int capacity = ids.length * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            publisherCodes = Arrays.copyOf(publisherCodes, capacity);
+            genreCodes = Arrays.copyOf(genreCodes, capacity);
+            years = Arrays.copyOf(years, capacity);
+            pages = Arrays.copyOf(pages, capacity);
+        }
+        return row;
+    }
+
+    private void index(int row) {
+        rowsByPublisher.computeIfAbsent(publisherCodes[row], code -> new BitSet()).set(row);
+        rowsByGenre.computeIfAbsent(genreCodes[row], code -> new BitSet()).set(row);
+        rowsByYear.computeIfAbsent(years[row], code -> new BitSet()).set(row);
+    }
+
+    private void unindex(int row) {
+        clearRow(rowsByPublisher, publisherCodes[row], row);
+        clearRow(rowsByGenre, genreCodes[row], row);
+        clearRow(rowsByYear, years[row], row);
+    }
+
+    private static void clearRow(Map<Integer, BitSet> bitmaps, int value, int row) {
+        BitSet rows = bitmaps.get(value);
+        if (Objects.nonNull(rows)) {
+            rows.clear(row);
+            if (rows.isEmpty()) {
+                bitmaps.remove(value);
+            }
+        }
+    }
+
+    private static BitSet rowsOf(Map<Integer, BitSet> bitmaps, int value) {
+        return value == ABSENT ? new BitSet() : bitmaps.getOrDefault(value, new BitSet());
+    }
+
+    private static int parseYear(String year) {
+        try {
+            return Integer.parseInt(year);
+        } catch (NumberFormatException e) {
+            return ABSENT;
+        }
+    }
+
+    /**
+     * Codes of the distinct values of a column, codes are never reused so a column keeps its codes until it is
+     * rebuilt
+     */
+    private static class Dictionary {
+
+        private final Map<String, Integer> codes = new HashMap<>();
+
+        int encode(String value) {
+            return codes.computeIfAbsent(value, key -> codes.size());
+        }
+
+        int codeOf(String value) {
+            return codes.getOrDefault(value, ABSENT);
+        }
+    }
+}
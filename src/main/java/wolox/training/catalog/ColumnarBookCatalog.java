@@ -0,0 +1,109 @@
+package wolox.training.catalog;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+
+/**
+ * Keeps a {@link BookColumns} projection of the book table to resolve the filters of {@code GET /api/books} in
+ * memory. It is loaded from the database at startup and follows the book invalidations of
+ * {@link CacheInvalidationBus}, reloading the row of each changed book. Enabled with
+ * {@code training.catalog.columnar.enabled=true}.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "training.catalog.columnar.enabled", havingValue = "true")
+public class ColumnarBookCatalog implements SmartLifecycle, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ColumnarBookCatalog.class);
+    private static final String SELECT_BOOKS = "SELECT id, publisher, genre, year, pages FROM book";
+    private static final String SELECT_BOOK = SELECT_BOOKS + " WHERE id = ?";
+
+    private final BookColumns columns = new BookColumns();
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus invalidationBus;
+
+    private volatile boolean ready;
+
+    public ColumnarBookCatalog(JdbcTemplate jdbcTemplate, CacheInvalidationBus invalidationBus,
+            MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.invalidationBus = invalidationBus;
+        Gauge.builder("catalog.columnar.books", columns, BookColumns::size)
+                .description("Books in the columnar projection")
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method returns the ids of the books that match the filters
+     *
+     * @param publisher: this is the publisher the book, ignored when null
+     * @param genre:     this is the genre the book, ignored when null
+     * @param year:      this is the year the book, ignored when null
+     * @return the ids of the books, empty while the projection is being loaded
+     */
+    public Optional<long[]> filter(String publisher, String genre, String year) {
+        return ready ? Optional.of(columns.filter(publisher, genre, year)) : Optional.empty();
+    }
+
+    /**
+     * Waits for a running load, so a change made while the table was being read is applied after it
+     */
+    @Override
+    public synchronized void invalidated(Long id) {
+        if (jdbcTemplate.query(SELECT_BOOK, (resultSet, rowNum) -> upsert(resultSet), id).isEmpty()) {
+            columns.remove(id);
+        }
+    }
+
+    @Override
+    public void invalidatedAll() {
+        load();
+    }
+
+    @Override
+    public void start() {
+        invalidationBus.subscribe(CacheNames.BOOKS, this);
+        load();
+    }
+
+    @Override
+    public void stop() {
+        ready = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return ready;
+    }
+
+    private synchronized void load() {
+        ready = false;
+        long start = System.nanoTime();
+        columns.clear();
+        jdbcTemplate.query(SELECT_BOOKS, (RowCallbackHandler) this::upsert);
+        ready = true;
+        LOGGER.info("Columnar catalog loaded with {} books in {} ms", columns.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private long upsert(ResultSet resultSet) throws SQLException {
+        long id = resultSet.getLong("id");
+        columns.upsert(id, resultSet.getString("publisher"), resultSet.getString("genre"),
+                resultSet.getString("year"), resultSet.getInt("pages"));
+        return id;
+    }
+}
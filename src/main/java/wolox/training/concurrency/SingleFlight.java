@@ -0,0 +1,143 @@
+package wolox.training.concurrency;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import wolox.training.deadline.QueryDeadline;
+import wolox.training.exceptions.QueryDeadlineExceededException;
+
+/**
+ * Coalesces concurrent identical reads: the first caller of a key runs the loader and every caller that arrives
+ * while it is running waits for the same result instead of issuing its own query.
+ *
+ * @param <K> key that identifies the read, must implement equals and hashCode
+ * @param <V> value returned by the loader, shared between all the callers of the flight
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final Counter calls;
+    private final Counter coalesced;
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        this.calls = Counter.builder("singleflight.calls")
+                .description("Reads requested through the single-flight group")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("singleflight.coalesced")
+                .description("Reads served by a flight started by another caller")
+                .tag("name", name)
+                .register(meterRegistry);
+        Gauge.builder("singleflight.coalescing.ratio", this, SingleFlight::coalescingRatio)
+                .description("Share of the reads that didn't reach the database")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method returns the value of the key, running the loader only if there is no flight for the key. A caller
+     * with a {@link QueryDeadline} waits for the flight of another one only until its own deadline is over, and when
+     * that flight is given up because the deadline of its leader is over, or its leader was cancelled, the callers
+     * that wait for it start a new one instead of failing with it.
+     *
+     * @param key:    identifies the read
+     * @param loader: runs the read, called by one caller at a time per key
+     * @return the value loaded by the leader of the flight
+     */
+    public V execute(K key, Supplier<V> loader) {
+        calls.increment();
+
+        boolean waited = false;
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> running = inFlight.putIfAbsent(key, flight);
+            if (Objects.isNull(running)) {
+                return lead(key, flight, loader);
+            }
+
+            if (!waited) {
+                coalesced.increment();
+                waited = true;
+            }
+            try {
+                return await(running);
+            } catch (AbandonedFlightException e) {
+                // its leader may not have removed it yet, the next caller leads a new flight
+                inFlight.remove(key, running);
+            }
+        }
+    }
+
+    public double coalescingRatio() {
+        double total = calls.count();
+        return total == 0 ? 0 : coalesced.count() / total;
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Supplier<V> loader) {
+        try {
+            V value = loader.get();
+            flight.complete(value);
+            return value;
+        } catch (Throwable e) {
+            // errors as well, a flight left incomplete would block its waiters forever
+            flight.completeExceptionally(QueryDeadline.isCurrentOver() ? AbandonedFlightException.INSTANCE : e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private V await(CompletableFuture<V> running) {
+        QueryDeadline deadline = QueryDeadline.current();
+        if (Objects.isNull(deadline)) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+
+        try {
+            return running.get(Math.max(0, deadline.remainingMs()), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        } catch (TimeoutException e) {
+            throw new QueryDeadlineExceededException(deadline.getTimeoutMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new QueryDeadlineExceededException(deadline.getTimeoutMs());
+        }
+    }
+
+    private static RuntimeException unwrap(Exception e) {
+        if (e.getCause() instanceof RuntimeException) {
+            return (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+            throw (Error) e.getCause();
+        }
+        return new CompletionException(e.getCause());
+    }
+
+    /**
+     * Completes a flight whose leader gave up on its own deadline, the error of the leader is not the one of the
+     * callers that wait for it
+     */
+    private static final class AbandonedFlightException extends RuntimeException {
+
+        private static final AbandonedFlightException INSTANCE = new AbandonedFlightException();
+
+        private AbandonedFlightException() {
+            super("The leader of the flight gave up on its deadline", null, false, false);
+        }
+    }
+}
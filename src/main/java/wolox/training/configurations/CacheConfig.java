@@ -0,0 +1,38 @@
+package wolox.training.configurations;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.EntityCache;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * In-process entity caches, the size and expiration of each one and of its last known values are Guava cache specs
+ */
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public EntityCache<Book> bookCache(MeterRegistry meterRegistry,
+            @Value("${training.cache.books.spec:maximumSize=50000,expireAfterWrite=10m}") String spec,
+            @Value("${training.cache.books.last-known-spec:maximumSize=50000}") String lastKnownSpec) {
+        return monitored(new EntityCache<>(CacheNames.BOOKS, spec, lastKnownSpec), meterRegistry);
+    }
+
+    @Bean
+    public EntityCache<User> userCache(MeterRegistry meterRegistry,
+            @Value("${training.cache.users.spec:maximumSize=20000,expireAfterWrite=10m}") String spec,
+            @Value("${training.cache.users.last-known-spec:maximumSize=20000}") String lastKnownSpec) {
+        return monitored(new EntityCache<>(CacheNames.USERS, spec, lastKnownSpec), meterRegistry);
+    }
+
+    private <V> EntityCache<V> monitored(EntityCache<V> cache, MeterRegistry meterRegistry) {
+        GuavaCacheMetrics.monitor(meterRegistry, cache.getNativeCache(), cache.getName());
+        return cache;
+    }
+
+}
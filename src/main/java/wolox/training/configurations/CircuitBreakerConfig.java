@@ -0,0 +1,49 @@
+package wolox.training.configurations;
+
+import com.google.common.base.Suppliers;
+import java.util.Objects;
+import org.springframework.aop.framework.Advised;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotationUtils;
+import org.springframework.stereotype.Repository;
+import wolox.training.resilience.CircuitBreakerInterceptor;
+import wolox.training.resilience.DatabaseCircuitBreaker;
+
+/**
+ * Runs every call to a repository through the {@link DatabaseCircuitBreaker}, see {@link CircuitBreakerInterceptor}
+ */
+@Configuration
+@ConditionalOnProperty(name = "training.circuit-breaker.enabled", havingValue = "true", matchIfMissing = true)
+public class CircuitBreakerConfig {
+
+    @Bean
+    public static BeanPostProcessor circuitBreakerRepositoryPostProcessor(
+            ObjectProvider<DatabaseCircuitBreaker> breaker) {
+        CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(Suppliers.memoize(breaker::getObject));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (Objects.isNull(AnnotationUtils.findAnnotation(AopUtils.getTargetClass(bean), Repository.class))) {
+                    return bean;
+                }
+
+                // Outermost, so the exceptions are already translated by the proxy of the repository
+                if (bean instanceof Advised && !((Advised) bean).isFrozen()) {
+                    ((Advised) bean).addAdvice(0, interceptor);
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                proxyFactory.setProxyTargetClass(!AopUtils.isJdkDynamicProxy(bean));
+                proxyFactory.addAdvice(interceptor);
+                return proxyFactory.getProxy();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,70 @@
+package wolox.training.configurations;
+
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import wolox.training.deadline.DeadlineDataSource;
+import wolox.training.deadline.QueryDeadlines;
+
+/**
+ * Wraps the data source so the statements of a request follow its deadline, see {@link DeadlineDataSource}, and
+ * runs the async requests of {@link QueryDeadlines} on their own pool
+ */
+@Configuration
+public class DeadlineConfig {
+
+    @Bean
+    public static BeanPostProcessor deadlineDataSourcePostProcessor() {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource && !(bean instanceof DeadlineDataSource)) {
+                    return new DeadlineDataSource((DataSource) bean);
+                }
+                return bean;
+            }
+        };
+    }
+
+    /**
+     * Threads of the requests with a deadline. There is one per connection of the pool, more would only wait for a
+     * connection, and the queue holds as many requests as the web server runs at once. When it is full the request
+     * runs in its own thread of the web server, so it is slowed down instead of waiting out its deadline.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor queryDeadlinesExecutor(@Value("${training.deadlines.threads:10}") int threads,
+            @Value("${training.deadlines.queue-capacity:200}") int queueCapacity,
+            @Value("${training.deadlines.shutdown-timeout-seconds:10}") int shutdownTimeoutSeconds) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("query-deadlines-");
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownTimeoutSeconds);
+        return executor;
+    }
+
+    /**
+     * The async requests without an executor of their own use the same pool instead of a thread per request
+     */
+    @Bean
+    public WebMvcConfigurer asyncSupportConfigurer(
+            @Qualifier("queryDeadlinesExecutor") ThreadPoolTaskExecutor queryDeadlinesExecutor) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+                configurer.setTaskExecutor(queryDeadlinesExecutor);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,60 @@
+package wolox.training.configurations;
+
+import graphql.GraphQL;
+import graphql.analysis.MaxQueryComplexityInstrumentation;
+import graphql.analysis.MaxQueryDepthInstrumentation;
+import graphql.execution.instrumentation.ChainedInstrumentation;
+import graphql.execution.instrumentation.dataloader.DataLoaderDispatcherInstrumentation;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.idl.RuntimeWiring;
+import graphql.schema.idl.SchemaGenerator;
+import graphql.schema.idl.SchemaParser;
+import graphql.schema.idl.TypeDefinitionRegistry;
+import graphql.schema.idl.TypeRuntimeWiring;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+import wolox.training.graphql.GraphQLDataFetchers;
+import wolox.training.graphql.ListComplexity;
+
+/**
+ * GraphQL schema of the users and books. The queries deeper than {@code training.graphql.max-depth} or more complex
+ * than {@code training.graphql.max-complexity}, see {@link ListComplexity}, are rejected before they are run.
+ */
+@Configuration
+public class GraphQLConfig {
+
+    @Bean
+    public GraphQL graphQL(GraphQLDataFetchers dataFetchers,
+            @Value("classpath:graphql/schema.graphqls") Resource schema,
+            @Value("${training.graphql.max-depth:5}") int maxDepth,
+            @Value("${training.graphql.max-complexity:1000}") int maxComplexity) throws IOException {
+        TypeDefinitionRegistry types;
+        try (Reader reader = new InputStreamReader(schema.getInputStream(), StandardCharsets.UTF_8)) {
+            types = new SchemaParser().parse(reader);
+        }
+
+        RuntimeWiring wiring = RuntimeWiring.newRuntimeWiring()
+                .type(TypeRuntimeWiring.newTypeWiring("Query")
+                        .dataFetcher("user", dataFetchers.user())
+                        .dataFetcher("users", dataFetchers.users())
+                        .dataFetcher("searchUsers", dataFetchers.searchUsers())
+                        .dataFetcher("book", dataFetchers.book())
+                        .dataFetcher("books", dataFetchers.books()))
+                .build();
+        GraphQLSchema graphQLSchema = new SchemaGenerator().makeExecutableSchema(types, wiring);
+        return GraphQL.newGraphQL(graphQLSchema)
+                .instrumentation(new ChainedInstrumentation(Arrays.asList(
+                        new MaxQueryDepthInstrumentation(maxDepth),
+                        new MaxQueryComplexityInstrumentation(maxComplexity, new ListComplexity()),
+                        new DataLoaderDispatcherInstrumentation())))
+                .build();
+    }
+
+}
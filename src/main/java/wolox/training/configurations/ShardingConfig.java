@@ -0,0 +1,88 @@
+package wolox.training.configurations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import wolox.training.sharding.AssignedOrSequenceGenerator;
+import wolox.training.sharding.ShardRouter;
+import wolox.training.sharding.ShardRoutingDataSource;
+import wolox.training.sharding.ShardRoutingInterceptor;
+
+/**
+ * Spreads the users and their ownerships across the primary database and the shards of
+ * {@code training.sharding.urls}, see {@link ShardRouter}. The primary database keeps the books and every other
+ * table, the shards get the user tables and a copy of the books from {@code db/shard-schema.sql}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "training.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    private static final String SHARD_SCHEMA = "db/shard-schema.sql";
+    private static final String USER_PATHS = "/api/users/**";
+
+    @Bean
+    public DataSource dataSource(DataSourceProperties properties,
+            @Value("${training.sharding.urls}") String[] urls,
+            @Value("${training.sharding.username:${spring.datasource.username}}") String username,
+            @Value("${training.sharding.password:${spring.datasource.password}}") String password) {
+        List<DataSource> shards = new ArrayList<>();
+        shards.add(properties.initializeDataSourceBuilder().build());
+        ResourceDatabasePopulator schema = new ResourceDatabasePopulator(new ClassPathResource(SHARD_SCHEMA));
+        for (String url : urls) {
+            DataSource shard = DataSourceBuilder.create().url(url.trim()).username(username).password(password).build();
+            schema.execute(shard);
+            shards.add(shard);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+
+    /**
+     * Threads of the reads that run in every shard at once, shared by the requests of the node. The pool is sized
+     * to the connections the shards hand out, a full queue rejects the read instead of letting it wait for
+     * the ones ahead; the context waits for the running reads when it closes.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor userShardsExecutor(@Value("${training.sharding.threads:32}") int threads,
+            @Value("${training.sharding.queue-capacity:64}") int queueCapacity,
+            @Value("${training.sharding.shutdown-timeout-seconds:10}") int shutdownTimeoutSeconds) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("user-shards-");
+        executor.setDaemon(true);
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(shutdownTimeoutSeconds);
+        return executor;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer assignedUserIds() {
+        return properties -> properties.put(AssignedOrSequenceGenerator.ASSIGNED_IDS, "true");
+    }
+
+    @Bean
+    public WebMvcConfigurer shardRoutingConfigurer(ShardRouter router) {
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(new ShardRoutingInterceptor(router)).addPathPatterns(USER_PATHS);
+            }
+        };
+    }
+
+}
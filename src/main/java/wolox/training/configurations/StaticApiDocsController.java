@@ -0,0 +1,71 @@
+package wolox.training.configurations;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Serves the pre-generated Swagger document and the resources needed by swagger-ui when the runtime scan of
+ * {@link SwaggerConfig} is disabled.
+ */
+@RestController
+@Profile("prod")
+public class StaticApiDocsController {
+
+    public static final String API_DOCS_LOCATION = "api-docs/swagger.json";
+    private static final String API_DOCS_PATH = "/v2/api-docs";
+
+    private final Resource apiDocs = new ClassPathResource(API_DOCS_LOCATION);
+
+    /**
+     * This method returns the pre-generated Swagger document
+     *
+     * @return {@link Resource}
+     */
+    @GetMapping(value = API_DOCS_PATH, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<Resource> apiDocs() {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(apiDocs);
+    }
+
+    /**
+     * This method returns the documentation groups read by swagger-ui
+     *
+     * @return {@link List<Map>}
+     */
+    @GetMapping("/swagger-resources")
+    public List<Map<String, String>> swaggerResources() {
+        return Collections.singletonList(Map.of(
+                "name", "default",
+                "url", API_DOCS_PATH,
+                "location", API_DOCS_PATH,
+                "swaggerVersion", "2.0"));
+    }
+
+    /**
+     * This method returns the default swagger-ui configuration
+     *
+     * @return {@link Map}
+     */
+    @GetMapping("/swagger-resources/configuration/ui")
+    public Map<String, Object> uiConfiguration() {
+        return Map.of("deepLinking", true, "displayRequestDuration", false, "validatorUrl", "");
+    }
+
+    /**
+     * This method returns the default swagger-ui security configuration
+     *
+     * @return {@link Map}
+     */
+    @GetMapping("/swagger-resources/configuration/security")
+    public Map<String, Object> securityConfiguration() {
+        return Collections.emptyMap();
+    }
+
+}
@@ -2,6 +2,8 @@ package wolox.training.configurations;
 
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import springfox.documentation.builders.ApiInfoBuilder;
 import springfox.documentation.builders.PathSelectors;
 import springfox.documentation.builders.RequestHandlerSelectors;
@@ -11,8 +13,13 @@ import springfox.documentation.spi.DocumentationType;
 import springfox.documentation.spring.web.plugins.Docket;
 import springfox.documentation.swagger2.annotations.EnableSwagger2;
 
+/**
+ * Runtime documentation scan, disabled in the prod profile where {@link StaticApiDocsController} serves the
+ * pre-generated document instead.
+ */
 @Configuration
 @EnableSwagger2
+@Profile("!prod")
 public class SwaggerConfig {
 
     @Bean
@@ -22,6 +29,7 @@ public class SwaggerConfig {
                 .apis(RequestHandlerSelectors.basePackage("wolox.training"))
                 .paths(PathSelectors.any())
                 .build()
+                .genericModelSubstitutes(WebAsyncTask.class)
                 .apiInfo(apiEndPointsInfo());
     }
 
@@ -1,13 +1,29 @@
 package wolox.training.controllers;
 
+import com.google.common.collect.Iterables;
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -18,27 +34,108 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import wolox.training.audit.AuditAction;
+import wolox.training.audit.AuditLog;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.EntityCache;
+import wolox.training.catalog.ColumnarBookCatalog;
+import wolox.training.concurrency.SingleFlight;
+import wolox.training.deadline.QueryDeadlines;
 import wolox.training.exceptions.BookIdMismatchException;
 import wolox.training.exceptions.BookNotFoundException;
+import wolox.training.exceptions.IndexNotReadyException;
 import wolox.training.models.Book;
+import wolox.training.models.dto.BookSearchPage;
+import wolox.training.models.dto.BookSuggestion;
+import wolox.training.models.dto.MonthlyCirculation;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.models.dto.PopularBook;
+import wolox.training.models.dto.RelatedBook;
+import wolox.training.popularity.BookRanking.Ranked;
+import wolox.training.popularity.PopularityCounters;
+import wolox.training.related.CoOccurrenceGraph.RelatedCount;
+import wolox.training.related.RelatedBooksIndex;
 import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.BookSearchRepository;
+import wolox.training.repositories.BookSearchRepository.Cursor;
+import wolox.training.repositories.BookSearchRepository.Hit;
+import wolox.training.repositories.BookSpecifications;
+import wolox.training.repositories.OwnershipHistoryRepository;
+import wolox.training.repositories.ProjectionRepository;
+import wolox.training.sharding.UserShards;
+import wolox.training.suggest.SuggestIndex;
 
 @RestController
 @RequestMapping("/api/books")
 @Api(tags = "Books")
 public class BookController {
 
+    private static final int IDS_PER_QUERY = 1000;
+    private static final String LIST_DEADLINE = "books-list";
+
     private final BookRepository bookRepository;
+    private final ProjectionRepository projectionRepository;
+    private final BookSearchRepository bookSearchRepository;
+    private final OwnershipHistoryRepository ownershipHistoryRepository;
+    private final EntityCache<Book> bookCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final AuditLog auditLog;
+    private final ColumnarBookCatalog columnarCatalog;
+    private final RelatedBooksIndex relatedBooksIndex;
+    private final PopularityCounters popularityCounters;
+    private final SuggestIndex suggestIndex;
+    private final UserShards userShards;
+    private final QueryDeadlines queryDeadlines;
+    private final SingleFlight<Long, Optional<Book>> bookReads;
+    private final SingleFlight<List<String>, List<Book>> filterReads;
+    private final int maxIds;
+    private final int maxRelated;
+    private final int maxTop;
+    private final int maxSearchSize;
+    private final int maxCirculationMonths;
 
     @Autowired
-    public BookController(BookRepository bookRepository) {
+    public BookController(BookRepository bookRepository, ProjectionRepository projectionRepository,
+            BookSearchRepository bookSearchRepository, OwnershipHistoryRepository ownershipHistoryRepository,
+            EntityCache<Book> bookCache,
+            CacheInvalidationBus invalidationBus, AuditLog auditLog, ObjectProvider<ColumnarBookCatalog> columnarCatalog,
+            RelatedBooksIndex relatedBooksIndex, PopularityCounters popularityCounters, SuggestIndex suggestIndex,
+            UserShards userShards, QueryDeadlines queryDeadlines, MeterRegistry meterRegistry,
+            @Value("${training.multi-get.max-ids:500}") int maxIds,
+            @Value("${training.related.max-limit:100}") int maxRelated,
+            @Value("${training.popularity.max-limit:100}") int maxTop,
+            @Value("${training.search.max-size:100}") int maxSearchSize,
+            @Value("${training.history.max-range-months:24}") int maxCirculationMonths) {
         this.bookRepository = bookRepository;
+        this.projectionRepository = projectionRepository;
+        this.bookSearchRepository = bookSearchRepository;
+        this.ownershipHistoryRepository = ownershipHistoryRepository;
+        this.bookCache = bookCache;
+        this.invalidationBus = invalidationBus;
+        this.auditLog = auditLog;
+        this.columnarCatalog = columnarCatalog.getIfAvailable();
+        this.relatedBooksIndex = relatedBooksIndex;
+        this.popularityCounters = popularityCounters;
+        this.suggestIndex = suggestIndex;
+        this.userShards = userShards;
+        this.queryDeadlines = queryDeadlines;
+        this.bookReads = new SingleFlight<>("books.by-id", meterRegistry);
+        this.filterReads = new SingleFlight<>("books.by-filter", meterRegistry);
+        this.maxIds = maxIds;
+        this.maxRelated = maxRelated;
+        this.maxTop = maxTop;
+        this.maxSearchSize = maxSearchSize;
+        this.maxCirculationMonths = maxCirculationMonths;
     }
 
     /**
-     * This method returns all the books stored in the database through a filter
+     * This method returns all the books stored in the database through a filter, resolved by the columnar catalog
+     * when it is enabled. It runs in the background within the deadline of the book list. The concurrent requests of
+     * the same filter share one query, the request that runs it being cancelled doesn't fail the others.
      *
-     * @return {@link List<Book>}
+     * @return {@link WebAsyncTask} with the {@link List<Book>}
      */
     @GetMapping
     @ApiOperation(value = "Given a filter type and a param for filter, return all books", response = Book[].class)
@@ -48,10 +145,66 @@ public class BookController {
             @ApiResponse(code = 403, message = "Access forbidden"),
             @ApiResponse(code = 404, message = "Book not found")
     })
-    public List<Book> findAll(@RequestParam(name = "publisher", required = false) String publisher,
+    public WebAsyncTask<List<Book>> findAll(@RequestParam(name = "publisher", required = false) String publisher,
             @RequestParam(name = "genre", required = false) String genre,
             @RequestParam(name = "year", required = false) String year) {
-        return bookRepository.getAllBook(publisher, genre, year);
+        return queryDeadlines.run(LIST_DEADLINE, () -> {
+            Optional<long[]> catalogIds = Optional.ofNullable(columnarCatalog)
+                    .flatMap(catalog -> catalog.filter(publisher, genre, year));
+            if (catalogIds.isPresent()) {
+                List<Long> ids = LongStream.of(catalogIds.get()).boxed().collect(Collectors.toList());
+                return bookCache.getAll(ids, this::findAllByIdInChunks, Book::getId).values().stream()
+                        .sorted(Comparator.comparing(Book::getId))
+                        .collect(Collectors.toList());
+            }
+
+            return filterReads.execute(Arrays.asList(publisher, genre, year),
+                    () -> bookRepository.getAllBook(publisher, genre, year));
+        });
+    }
+
+    /**
+     * This method returns only the requested fields of the filtered books, the rest of the columns are not read. It
+     * runs in the background within the deadline of the book list.
+     *
+     * @param fields: names of the fields of the book to return
+     * @return {@link WebAsyncTask} with the {@link List<Map>} of the fields of each book
+     */
+    @GetMapping(params = {"fields", "!ids"})
+    @ApiOperation(value = "Given a filter type, a param for filter and a list of fields, return those fields of the books")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Unknown fields"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public WebAsyncTask<List<Map<String, Object>>> findAllFields(
+            @RequestParam(name = "publisher", required = false) String publisher,
+            @RequestParam(name = "genre", required = false) String genre,
+            @RequestParam(name = "year", required = false) String year,
+            @ApiParam(value = "fields of the book to return") @RequestParam(name = "fields") List<String> fields) {
+        List<String> selected = projectionRepository.selectableFields(Book.class, fields);
+        return queryDeadlines.run(LIST_DEADLINE, () -> projectionRepository.findAll(Book.class, selected,
+                BookSpecifications.withFilters(publisher, genre, year)));
+    }
+
+    /**
+     * This method returns the books of a list of ids, the cached ones are not queried
+     *
+     * @param ids: unique identifiers of the books
+     * @return {@link MultiGetResponse<Book>} with the books in the order of the ids and the ids not found
+     */
+    @GetMapping(params = "ids")
+    @ApiOperation(value = "Given a list of ids, return the books found and the missing ids", response = MultiGetResponse.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Too many ids"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public MultiGetResponse<Book> findAllById(@ApiParam(value = "ids of the books") @RequestParam(name = "ids") List<Long> ids) {
+        List<Long> requested = RequestedIds.distinct(ids, maxIds);
+        return MultiGetResponse.of(requested, bookCache.getAll(requested, bookRepository::findAllById, Book::getId));
     }
 
     /**
@@ -87,7 +240,160 @@ public class BookController {
             @ApiResponse(code = 404, message = "Resource not found")
     })
     public Book findOne(@ApiParam(value = "id to find the book") @PathVariable Long id) {
-        return bookRepository.findById(id).orElseThrow(BookNotFoundException::new);
+        return bookCache.get(id, () -> bookReads.execute(id, () -> bookRepository.findById(id)))
+                .orElseThrow(BookNotFoundException::new);
+    }
+
+    /**
+     * This method searches the words in the title, subtitle, author and publisher of the books, with stemming, and
+     * returns a page of the matches ranked by relevance
+     *
+     * @param q:         words to search, quoted phrases and -excluded words are supported
+     * @param publisher: this is the publisher the book
+     * @param genre:     this is the genre the book
+     * @param year:      this is the year the book
+     * @param after:     cursor of the page, the next of the previous page, absent for the first page
+     * @param size:      maximum number of books of the page
+     * @return {@link BookSearchPage}
+     */
+    @GetMapping("/search")
+    @ApiOperation(value = "Given words and optional filters, return a page of the books that match the words", response = BookSearchPage.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Invalid cursor"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public BookSearchPage search(@ApiParam(value = "words to search") @RequestParam(name = "q") String q,
+            @ApiParam(value = "publisher of the books") @RequestParam(name = "publisher", required = false) String publisher,
+            @ApiParam(value = "genre of the books") @RequestParam(name = "genre", required = false) String genre,
+            @ApiParam(value = "year of the books") @RequestParam(name = "year", required = false) String year,
+            @ApiParam(value = "cursor of the page") @RequestParam(name = "after", required = false) String after,
+            @ApiParam(value = "maximum number of books of the page") @RequestParam(name = "size", defaultValue = "20") int size) {
+        int pageSize = Math.max(1, Math.min(size, maxSearchSize));
+        List<Hit> hits = bookSearchRepository.search(q, publisher, genre, year,
+                Objects.isNull(after) ? null : Cursor.decode(after), pageSize);
+        List<Long> ids = hits.stream().map(Hit::getId).collect(Collectors.toList());
+        Map<Long, Book> books = bookCache.getAll(ids, bookRepository::findAllById, Book::getId);
+
+        String next = hits.size() < pageSize ? null : hits.get(hits.size() - 1).cursor().encode();
+        return new BookSearchPage(ids.stream().filter(books::containsKey).map(books::get).collect(Collectors.toList()),
+                next);
+    }
+
+    /**
+     * This method returns the books with a word of the title or the author that starts with the typed text, read
+     * from the in-memory prefix index
+     *
+     * @param q:     the typed text
+     * @param limit: maximum number of books to return
+     * @return {@link List<BookSuggestion>} ordered by the number of owners
+     */
+    @GetMapping("/suggest")
+    @ApiOperation(value = "Given the start of a title or an author, return the books with most owners that match")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public List<BookSuggestion> suggest(@ApiParam(value = "start of the title or the author") @RequestParam(name = "q") String q,
+            @ApiParam(value = "maximum number of books to return") @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        return suggestIndex.suggest(q, limit);
+    }
+
+    /**
+     * This method returns the books with most owners, read from the in-memory popularity ranking
+     *
+     * @param genre: this is the genre the book, every genre when it is not sent
+     * @param limit: maximum number of books to return
+     * @return {@link List<PopularBook>} ordered by the number of owners
+     */
+    @GetMapping("/top")
+    @ApiOperation(value = "Given a genre, return the books with most owners")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public List<PopularBook> findTop(
+            @ApiParam(value = "genre of the books") @RequestParam(name = "genre", required = false) String genre,
+            @ApiParam(value = "maximum number of books to return") @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        List<Ranked> top = popularityCounters.top(genre, Math.min(limit, maxTop));
+        List<Long> ids = top.stream().map(Ranked::getBookId).collect(Collectors.toList());
+        Map<Long, Book> books = bookCache.getAll(ids, bookRepository::findAllById, Book::getId);
+        return top.stream()
+                .filter(ranked -> books.containsKey(ranked.getBookId()))
+                .map(ranked -> new PopularBook(books.get(ranked.getBookId()), ranked.getOwners()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This method returns the books most often owned by the users that own a book, read from the in-memory
+     * co-occurrence index, unavailable while the index is loaded
+     *
+     * @param id:    this is the unique identifier generated by the database
+     * @param limit: maximum number of books to return
+     * @return {@link List<RelatedBook>} ordered by the number of common owners
+     */
+    @GetMapping("/{id}/related")
+    @ApiOperation(value = "Giving an id, return the books most often owned together with the book")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden"),
+            @ApiResponse(code = 404, message = "Resource not found"),
+            @ApiResponse(code = 503, message = "The index is loading")
+    })
+    public List<RelatedBook> findRelated(@ApiParam(value = "id to find the book") @PathVariable Long id,
+            @ApiParam(value = "maximum number of books to return") @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        if (!relatedBooksIndex.isReady()) {
+            throw new IndexNotReadyException();
+        }
+        findOne(id);
+        List<RelatedCount> related = relatedBooksIndex.related(id, Math.min(limit, maxRelated));
+        List<Long> ids = related.stream().map(RelatedCount::getBookId).collect(Collectors.toList());
+        Map<Long, Book> books = bookCache.getAll(ids, bookRepository::findAllById, Book::getId);
+        return related.stream()
+                .filter(count -> books.containsKey(count.getBookId()))
+                .map(count -> new RelatedBook(books.get(count.getBookId()), count.getOwners()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This method returns the times a book was added to and removed from the users per month. Every shard counts
+     * the changes of its users reading only the monthly partitions of the range, and the counts are added up.
+     *
+     * @param id:   this is the unique identifier generated by the database
+     * @param from: first month of the range
+     * @param to:   last month of the range, the range is at most {@code training.history.max-range-months} long
+     * @return {@link List<MonthlyCirculation>} with every month of the range, in order
+     */
+    @GetMapping("/{id}/circulation")
+    @ApiOperation(value = "Giving an id and a range of months, return the times the book was added to and removed from the users per month")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Invalid date range")
+    })
+    public List<MonthlyCirculation> findCirculation(@ApiParam(value = "id to find the book") @PathVariable Long id,
+            @ApiParam(value = "first month of the range, yyyy-MM") @RequestParam(name = "from") String from,
+            @ApiParam(value = "last month of the range, yyyy-MM") @RequestParam(name = "to") String to) {
+        YearMonth fromMonth = HistoryRanges.month(from);
+        YearMonth toMonth = HistoryRanges.month(to);
+        HistoryRanges.checkMonths(fromMonth, toMonth, maxCirculationMonths);
+
+        Map<YearMonth, long[]> counts = new TreeMap<>();
+        for (YearMonth month = fromMonth; !month.isAfter(toMonth); month = month.plusMonths(1)) {
+            counts.put(month, new long[2]);
+        }
+        userShards.gatherAll(() -> ownershipHistoryRepository.countBookCirculation(id, fromMonth, toMonth))
+                .forEach(circulation -> {
+                    long[] count = counts.get(circulation.getMonth());
+                    count[0] += circulation.getAdded();
+                    count[1] += circulation.getRemoved();
+                });
+        return counts.entrySet().stream()
+                .map(entry -> new MonthlyCirculation(entry.getKey(), entry.getValue()[0], entry.getValue()[1]))
+                .collect(Collectors.toList());
     }
 
     /**
@@ -104,8 +410,12 @@ public class BookController {
             @ApiResponse(code = 400, message = "Bad request"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public Book create(@ApiParam(value = "body of the book") @RequestBody Book book) {
-        return bookRepository.save(book);
+        Book created = bookRepository.save(book);
+        invalidationBus.publish(CacheNames.BOOKS, created.getId());
+        auditLog.record(AuditAction.BOOK_CREATED, created.getId());
+        return created;
     }
 
     /**
@@ -121,9 +431,12 @@ public class BookController {
             @ApiResponse(code = 404, message = "Resource not found"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public void delete(@ApiParam(value = "id to delete the book") @PathVariable Long id) {
         bookRepository.findById(id).orElseThrow(BookNotFoundException::new);
         bookRepository.deleteById(id);
+        invalidationBus.publish(CacheNames.BOOKS, id);
+        auditLog.record(AuditAction.BOOK_DELETED, id);
     }
 
     /**
@@ -141,6 +454,7 @@ public class BookController {
             @ApiResponse(code = 404, message = "Resource not found"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public Book updateBook(@ApiParam(value = "body of the book") @RequestBody Book book,
             @ApiParam(value = "id to find the book") @PathVariable Long id) {
         if (!book.getId().equals(id)) {
@@ -148,7 +462,18 @@ public class BookController {
         }
 
         bookRepository.findById(id).orElseThrow(BookNotFoundException::new);
-        return bookRepository.save(book);
+        Book updated = bookRepository.save(book);
+
+        invalidationBus.publish(CacheNames.BOOKS, id);
+        invalidationBus.publish(CacheNames.USERS, userShards.gatherAll(() -> bookRepository.findOwnerIds(id)));
+        auditLog.record(AuditAction.BOOK_UPDATED, id);
+        return updated;
+    }
+
+    private List<Book> findAllByIdInChunks(Collection<Long> ids) {
+        List<Book> books = new ArrayList<>(ids.size());
+        Iterables.partition(ids, IDS_PER_QUERY).forEach(chunk -> books.addAll(bookRepository.findAllById(chunk)));
+        return books;
     }
 
 }
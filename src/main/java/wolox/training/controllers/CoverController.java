@@ -0,0 +1,178 @@
+package wolox.training.controllers;
+
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import wolox.training.cache.EntityCache;
+import wolox.training.covers.CoverCache;
+import wolox.training.covers.CoverOrigin;
+import wolox.training.covers.Thumbnails;
+import wolox.training.exceptions.BookNotFoundException;
+import wolox.training.exceptions.CoverUnavailableException;
+import wolox.training.exceptions.InvalidCoverWidthException;
+import wolox.training.models.Book;
+import wolox.training.repositories.BookRepository;
+
+@RestController
+@RequestMapping("/api/books")
+@Api(tags = "Books")
+public class CoverController {
+
+    public static final String COVER_PATH = "/cover";
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final BookRepository bookRepository;
+    private final EntityCache<Book> bookCache;
+    private final CoverOrigin coverOrigin;
+    private final CoverCache coverCache;
+    private final List<Integer> widths;
+    private final float quality;
+    private final String cacheControl;
+
+    public CoverController(BookRepository bookRepository, EntityCache<Book> bookCache, CoverOrigin coverOrigin,
+            CoverCache coverCache,
+            @Value("${training.covers.widths:96,192,384}") int[] widths,
+            @Value("${training.covers.jpeg-quality:0.85}") float quality,
+            @Value("${training.covers.max-age-seconds:86400}") long maxAgeSeconds) {
+        this.bookRepository = bookRepository;
+        this.bookCache = bookCache;
+        this.coverOrigin = coverOrigin;
+        this.coverCache = coverCache;
+        this.widths = IntStream.of(widths).boxed().collect(Collectors.toList());
+        this.quality = quality;
+        this.cacheControl = CacheControl.maxAge(maxAgeSeconds, TimeUnit.SECONDS).cachePublic().getHeaderValue();
+    }
+
+    /**
+     * This method returns the thumbnail of the cover of a book. It is derived once per width and served from the
+     * disk cache, with the file sent by the server without copying it through the application when the server
+     * supports it. The ETag changes with the image of the book, a client that has the thumbnail gets a 304.
+     *
+     * @param id:    this is the unique identifier generated by the database
+     * @param width: the width of the thumbnail, one of {@code training.covers.widths}, the first one by default
+     */
+    @GetMapping(value = "/{id}" + COVER_PATH, produces = Thumbnails.CONTENT_TYPE)
+    @ApiOperation(value = "Giving an id and a width, return the thumbnail of the cover of the book")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 304, message = "Not modified"),
+            @ApiResponse(code = 400, message = "Invalid width"),
+            @ApiResponse(code = 404, message = "Resource not found"),
+            @ApiResponse(code = 502, message = "Cover unavailable")
+    })
+    public void findCover(@ApiParam(value = "id to find the book") @PathVariable Long id,
+            @ApiParam(value = "width of the thumbnail in pixels") @RequestParam(name = "width", required = false) Integer width,
+            HttpServletRequest request, HttpServletResponse response) throws IOException {
+        int thumbnailWidth = Objects.isNull(width) ? widths.get(0) : width;
+        if (!widths.contains(thumbnailWidth)) {
+            throw new InvalidCoverWidthException(widths);
+        }
+
+        String image = bookCache.get(id, () -> bookRepository.findById(id))
+                .orElseThrow(BookNotFoundException::new)
+                .getImage();
+        String name = CoverCache.fileName(id, thumbnailWidth, image);
+        response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+        if (new ServletWebRequest(request, response).checkNotModified("\"" + name + "\"")) {
+            return;
+        }
+
+        response.setContentType(Thumbnails.CONTENT_TYPE);
+        Path file = thumbnail(name, image, thumbnailWidth);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+            Path link;
+            try {
+                link = coverCache.link(file);
+            } catch (NoSuchFileException e) {
+                // evicted between its lookup and its linking
+                coverCache.remove(name);
+                link = coverCache.link(thumbnail(name, image, thumbnailWidth));
+            }
+            sendFile(link, request, response);
+            return;
+        }
+
+        try (FileChannel channel = openThumbnail(name, image, thumbnailWidth, file)) {
+            transfer(channel, response);
+        }
+    }
+
+    /**
+     * The image that can't be read from its origin or written to the cache is answered as unavailable
+     */
+    private Path thumbnail(String name, String image, int width) {
+        try {
+            return coverCache.get(name, target -> Thumbnails.write(coverOrigin.read(image), width, quality, target));
+        } catch (UncheckedIOException e) {
+            throw new CoverUnavailableException(e.getCause());
+        }
+    }
+
+    /**
+     * The thumbnail evicted between its lookup and its opening is derived again
+     */
+    private FileChannel openThumbnail(String name, String image, int width, Path file) throws IOException {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+            coverCache.remove(name);
+            return FileChannel.open(thumbnail(name, image, width), StandardOpenOption.READ);
+        }
+    }
+
+    /**
+     * Tomcat sends the file with sendfile once the request ends, it gets a link of its own so the file can be
+     * evicted meanwhile
+     */
+    private static void sendFile(Path link, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        long size = Files.size(link);
+        response.setContentLengthLong(size);
+        request.setAttribute(SENDFILE_FILENAME, link.toString());
+        request.setAttribute(SENDFILE_START, 0L);
+        request.setAttribute(SENDFILE_END, size);
+    }
+
+    /**
+     * The other servers get the file copied through the output stream of the response, the channel is open so an
+     * eviction meanwhile doesn't cut the body short
+     */
+    private static void transfer(FileChannel channel, HttpServletResponse response) throws IOException {
+        long size = channel.size();
+        response.setContentLengthLong(size);
+        WritableByteChannel body = Channels.newChannel(response.getOutputStream());
+        for (long sent = 0; sent < size; ) {
+            sent += channel.transferTo(sent, size - sent, body);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package wolox.training.controllers;
+
+import graphql.ExecutionInput;
+import graphql.GraphQL;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import io.swagger.annotations.ApiResponse;
+import io.swagger.annotations.ApiResponses;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import wolox.training.graphql.GraphQLDataLoaders;
+import wolox.training.models.dto.GraphQLRequest;
+
+@RestController
+@RequestMapping("/api/graphql")
+@Api(tags = "GraphQL")
+public class GraphQLController {
+
+    private final GraphQL graphQL;
+    private final GraphQLDataLoaders dataLoaders;
+
+    public GraphQLController(GraphQL graphQL, GraphQLDataLoaders dataLoaders) {
+        this.graphQL = graphQL;
+        this.dataLoaders = dataLoaders;
+    }
+
+    /**
+     * This method runs a GraphQL query over the users and books, the users and books it asks for are read in
+     * batches per level of the query
+     *
+     * @param request: the query, its operation and its variables
+     * @return {@link Map} with the data and the errors of the query
+     */
+    @PostMapping
+    @ApiOperation(value = "Given a GraphQL query over the users and books, returns its data and errors")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public Map<String, Object> execute(@ApiParam(value = "GraphQL query") @RequestBody GraphQLRequest request) {
+        ExecutionInput input = ExecutionInput.newExecutionInput()
+                .query(request.getQuery())
+                .operationName(request.getOperationName())
+                .variables(Optional.ofNullable(request.getVariables()).orElse(Collections.emptyMap()))
+                .dataLoaderRegistry(dataLoaders.newRegistry())
+                .build();
+        return graphQL.execute(input).toSpecification();
+    }
+}
@@ -0,0 +1,75 @@
+package wolox.training.controllers;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.function.Function;
+import wolox.training.exceptions.InvalidDateRangeException;
+
+/**
+ * Validation of the ranges of the ownership history endpoints, which are bounded so a query reads a few monthly
+ * partitions of the history
+ */
+final class HistoryRanges {
+
+    private HistoryRanges() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method parses an ISO day
+     *
+     * @param value: day received in the request
+     * @return {@link LocalDate}
+     */
+    static LocalDate day(String value) {
+        return parse(value, LocalDate::parse);
+    }
+
+    /**
+     * This method parses an ISO month
+     *
+     * @param value: month received in the request
+     * @return {@link YearMonth}
+     */
+    static YearMonth month(String value) {
+        return parse(value, YearMonth::parse);
+    }
+
+    /**
+     * This method checks a range of days that ends before the day {@code to}
+     *
+     * @param from:    first day of the range
+     * @param to:      day after the range
+     * @param maxDays: maximum number of days of the range
+     */
+    static void checkDays(LocalDate from, LocalDate to, int maxDays) {
+        if (!from.isBefore(to) || ChronoUnit.DAYS.between(from, to) > maxDays) {
+            throw new InvalidDateRangeException(String.format(
+                    "The range must end after it starts and span at most %d days", maxDays));
+        }
+    }
+
+    /**
+     * This method checks a range of months that includes the month {@code to}
+     *
+     * @param from:      first month of the range
+     * @param to:        last month of the range
+     * @param maxMonths: maximum number of months of the range
+     */
+    static void checkMonths(YearMonth from, YearMonth to, int maxMonths) {
+        if (to.isBefore(from) || ChronoUnit.MONTHS.between(from, to) >= maxMonths) {
+            throw new InvalidDateRangeException(String.format(
+                    "The range must not end before it starts and span at most %d months", maxMonths));
+        }
+    }
+
+    private static <T> T parse(String value, Function<String, T> parser) {
+        try {
+            return parser.apply(value);
+        } catch (DateTimeParseException e) {
+            throw new InvalidDateRangeException("Invalid date " + value);
+        }
+    }
+}
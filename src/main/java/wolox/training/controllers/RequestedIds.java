@@ -0,0 +1,30 @@
+package wolox.training.controllers;
+
+import java.util.List;
+import java.util.stream.Collectors;
+import wolox.training.exceptions.TooManyIdsException;
+
+/**
+ * Validation of the id lists received by the multi-get endpoints
+ */
+final class RequestedIds {
+
+    private RequestedIds() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method removes the repeated ids keeping the order of their first occurrence
+     *
+     * @param ids:    ids received in the request
+     * @param maxIds: maximum number of different ids allowed
+     * @return {@link List<Long>}
+     */
+    static List<Long> distinct(List<Long> ids, int maxIds) {
+        List<Long> distinct = ids.stream().distinct().collect(Collectors.toList());
+        if (distinct.size() > maxIds) {
+            throw new TooManyIdsException(maxIds);
+        }
+        return distinct;
+    }
+}
@@ -1,17 +1,29 @@
 package wolox.training.controllers;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.springframework.beans.BeanWrapperImpl;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -22,25 +34,89 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import wolox.training.audit.AuditAction;
+import wolox.training.audit.AuditLog;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.EntityCache;
+import wolox.training.concurrency.SingleFlight;
+import wolox.training.deadline.QueryDeadlines;
+import wolox.training.demographics.BirthDateHistograms;
+import wolox.training.exceptions.BookAlreadyOwnedException;
 import wolox.training.exceptions.BookNotFoundException;
 import wolox.training.exceptions.UserIdMismatchException;
 import wolox.training.exceptions.UserNotFoundException;
 import wolox.training.models.Book;
 import wolox.training.models.User;
+import wolox.training.models.dto.BirthDateHistogram;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.models.dto.OwnershipChange;
+import wolox.training.models.dto.OwnershipChange.Outcome;
+import wolox.training.models.dto.OwnershipEvent;
+import wolox.training.popularity.PopularityCounters;
 import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.OwnershipHistoryRepository;
+import wolox.training.repositories.OwnershipRepository;
+import wolox.training.repositories.ProjectionRepository;
 import wolox.training.repositories.UserRepository;
+import wolox.training.repositories.UserSpecifications;
+import wolox.training.sharding.UserShards;
 
 @RestController
 @RequestMapping("/api/users")
 @Api(tags = "Users")
 public class UserController {
 
+    private static final String SEARCH_DEADLINE = "users-search";
+
     private final UserRepository userRepository;
     private final BookRepository bookRepository;
+    private final OwnershipRepository ownershipRepository;
+    private final OwnershipHistoryRepository ownershipHistoryRepository;
+    private final ProjectionRepository projectionRepository;
+    private final EntityCache<User> userCache;
+    private final CacheInvalidationBus invalidationBus;
+    private final AuditLog auditLog;
+    private final PopularityCounters popularityCounters;
+    private final BirthDateHistograms birthDateHistograms;
+    private final UserShards userShards;
+    private final QueryDeadlines queryDeadlines;
+    private final SingleFlight<Long, Optional<User>> userReads;
+    private final SingleFlight<String, Optional<User>> usernameReads;
+    private final int maxIds;
+    private final int maxBulkIds;
+    private final int maxHistoryDays;
+    private final int maxHistoryEvents;
 
-    public UserController(UserRepository userRepository, BookRepository bookRepository) {
+    public UserController(UserRepository userRepository, BookRepository bookRepository,
+            OwnershipRepository ownershipRepository, OwnershipHistoryRepository ownershipHistoryRepository,
+            ProjectionRepository projectionRepository, EntityCache<User> userCache,
+            CacheInvalidationBus invalidationBus, AuditLog auditLog, PopularityCounters popularityCounters,
+            BirthDateHistograms birthDateHistograms, UserShards userShards, QueryDeadlines queryDeadlines,
+            MeterRegistry meterRegistry,
+            @Value("${training.multi-get.max-ids:500}") int maxIds,
+            @Value("${training.bulk-ownership.max-ids:5000}") int maxBulkIds,
+            @Value("${training.history.max-range-days:366}") int maxHistoryDays,
+            @Value("${training.history.max-events:1000}") int maxHistoryEvents) {
         this.userRepository = userRepository;
         this.bookRepository = bookRepository;
+        this.ownershipRepository = ownershipRepository;
+        this.ownershipHistoryRepository = ownershipHistoryRepository;
+        this.projectionRepository = projectionRepository;
+        this.userCache = userCache;
+        this.invalidationBus = invalidationBus;
+        this.auditLog = auditLog;
+        this.popularityCounters = popularityCounters;
+        this.birthDateHistograms = birthDateHistograms;
+        this.userShards = userShards;
+        this.queryDeadlines = queryDeadlines;
+        this.userReads = new SingleFlight<>("users.by-id", meterRegistry);
+        this.usernameReads = new SingleFlight<>("users.by-username", meterRegistry);
+        this.maxIds = maxIds;
+        this.maxBulkIds = maxBulkIds;
+        this.maxHistoryDays = maxHistoryDays;
+        this.maxHistoryEvents = maxHistoryEvents;
     }
 
     /**
@@ -57,7 +133,49 @@ public class UserController {
             @ApiResponse(code = 404, message = "User Not Found")
     })
     public List<User> findAll() {
-        return userRepository.findAll();
+        return userShards.gatherAll(() -> userRepository.findAll().stream()
+                .map(this::withBooksLoaded)
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * This method returns only the requested fields of all the users, their books are not read
+     *
+     * @param fields: names of the fields of the user to return
+     * @return {@link List<Map>} with the fields of each user
+     */
+    @GetMapping(params = {"fields", "!ids"})
+    @ApiOperation(value = "Given a list of fields, return those fields of all users")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Unknown fields"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public List<Map<String, Object>> findAllFields(
+            @ApiParam(value = "fields of the user to return") @RequestParam(name = "fields") List<String> fields) {
+        List<String> selected = projectionRepository.selectableFields(User.class, fields);
+        return userShards.gatherAll(
+                () -> projectionRepository.findAll(User.class, selected, Specification.where(null)));
+    }
+
+    /**
+     * This method returns the users of a list of ids, the cached ones are not queried
+     *
+     * @param ids: unique identifiers of the users
+     * @return {@link MultiGetResponse<User>} with the users in the order of the ids and the ids not found
+     */
+    @GetMapping(params = "ids")
+    @ApiOperation(value = "Given a list of ids, return the users found and the missing ids", response = MultiGetResponse.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Too many ids"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public MultiGetResponse<User> findAllById(@ApiParam(value = "ids of the users") @RequestParam(name = "ids") List<Long> ids) {
+        List<Long> requested = RequestedIds.distinct(ids, maxIds);
+        return MultiGetResponse.of(requested, userCache.getAll(requested, this::findAllWithBooksByIdIn, User::getId));
     }
 
     /**
@@ -74,7 +192,12 @@ public class UserController {
             @ApiResponse(code = 403, message = "Access forbidden")
     })
     public User findByUsername(@ApiParam(value = "username to find the user") @PathVariable String username) {
-        return userRepository.findByUsername(username).orElseThrow(UserNotFoundException::new);
+        return usernameReads.execute(username, () -> userShards.gather(
+                () -> userRepository.findByUsername(username).map(this::withBooksLoaded)).stream()
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .findFirst())
+                .orElseThrow(UserNotFoundException::new);
     }
 
     /**
@@ -92,7 +215,8 @@ public class UserController {
             @ApiResponse(code = 404, message = "User Not Found")
     })
     public User findOne(@ApiParam(value = "id to find the user") @PathVariable Long id) {
-        return userRepository.findById(id).orElseThrow(UserNotFoundException::new);
+        return userCache.get(id, () -> userReads.execute(id, () -> userRepository.findById(id).map(this::withBooksLoaded)))
+                .orElseThrow(UserNotFoundException::new);
     }
 
     /**
@@ -110,7 +234,15 @@ public class UserController {
             @ApiResponse(code = 500, message = "Internal server error")
     })
     public User create(@ApiParam(value = "body of the user") @RequestBody User user) {
-        return userRepository.save(user);
+        User created = userShards.create(id -> {
+            if (Objects.nonNull(id)) {
+                user.setId(id);
+            }
+            return userRepository.save(user);
+        });
+        invalidationBus.publish(CacheNames.USERS, created.getId());
+        auditLog.record(AuditAction.USER_CREATED, created.getId());
+        return created;
     }
 
     /**
@@ -126,9 +258,13 @@ public class UserController {
             @ApiResponse(code = 404, message = "Resource not found"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public void delete(@ApiParam(value = "id to delete the user") @PathVariable Long id) {
         userRepository.findById(id).orElseThrow(UserNotFoundException::new);
+        ownershipRepository.removeAllBooks(id).forEach(popularityCounters::ownerRemoved);
         userRepository.deleteById(id);
+        invalidationBus.publish(CacheNames.USERS, id);
+        auditLog.record(AuditAction.USER_DELETED, id);
     }
 
     /**
@@ -146,6 +282,7 @@ public class UserController {
             @ApiResponse(code = 404, message = "Resource not found"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public User updateUser(@ApiParam(value = "body of the user") @RequestBody User user,
             @ApiParam(value = "id to find the user") @PathVariable Long id) {
         if (!user.getId().equals(id)) {
@@ -153,11 +290,16 @@ public class UserController {
         }
 
         userRepository.findById(id).orElseThrow(UserNotFoundException::new);
-        return userRepository.save(user);
+        User updated = userRepository.save(user);
+        invalidationBus.publish(CacheNames.USERS, id);
+        auditLog.record(AuditAction.USER_UPDATED, id);
+        return updated;
     }
 
     /**
-     * This method adds a book to a specific user
+     * This method adds a book to a specific user with one conditional insert, so concurrent requests of the same
+     * user neither lose a book nor add it twice: only one of them adds it and the others answer the conflict. The
+     * row of the user isn't locked, only the requests for the same book wait on each other.
      *
      * @param userId: this is the unique identifier of the user
      * @param bookId: this is the unique identifier of the book
@@ -170,19 +312,26 @@ public class UserController {
             @ApiResponse(code = 200, message = "Successfully updated user"),
             @ApiResponse(code = 400, message = "Bad request"),
             @ApiResponse(code = 404, message = "Resource not found"),
+            @ApiResponse(code = 409, message = "Book already owned"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public User addBookToUser(@ApiParam(value = "id to find the user") @PathVariable Long userId,
             @ApiParam(value = "id to find the book") @PathVariable Long bookId) {
-        User user = userRepository.findById(userId).orElseThrow(UserNotFoundException::new);
-        Book book = bookRepository.findById(bookId).orElseThrow(BookNotFoundException::new);
+        requireUserAndBook(userId, bookId);
+        if (ownershipRepository.addBooks(userId, List.of(bookId)).isEmpty()) {
+            throw new BookAlreadyOwnedException();
+        }
 
-        user.addBook(book);
-        return userRepository.save(user);
+        invalidationBus.publish(CacheNames.USERS, userId);
+        auditLog.record(AuditAction.BOOK_ADDED_TO_USER, userId, bookId);
+        popularityCounters.ownerAdded(bookId);
+        return findWithBooks(userId);
     }
 
     /**
-     * This method removes a workbook associated with a specific user
+     * This method removes a workbook associated with a specific user with one delete, the removal is counted only by
+     * the request that deleted the row
      *
      * @param userId: this is the unique identifier of the user
      * @param bookId: this is the unique identifier of the book
@@ -196,18 +345,124 @@ public class UserController {
             @ApiResponse(code = 404, message = "Resource not found"),
             @ApiResponse(code = 500, message = "Internal server error")
     })
+    @Transactional
     public User deleteBookToUser(@ApiParam(value = "id to find the user") @PathVariable Long userId,
             @ApiParam(value = "id to delete the book") @PathVariable Long bookId) {
-        User user = userRepository.findById(userId).orElseThrow(UserNotFoundException::new);
-        Book book = bookRepository.findById(bookId).orElseThrow(BookNotFoundException::new);
+        requireUserAndBook(userId, bookId);
+        if (!ownershipRepository.removeBooks(userId, List.of(bookId)).isEmpty()) {
+            invalidationBus.publish(CacheNames.USERS, userId);
+            auditLog.record(AuditAction.BOOK_REMOVED_FROM_USER, userId, bookId);
+            popularityCounters.ownerRemoved(bookId);
+        }
+        return findWithBooks(userId);
+    }
+
 
-        user.deleteBook(book);
-        return userRepository.save(user);
+    /**
+     * This method adds many books to a specific user with one statement, the books already owned are skipped
+     *
+     * @param userId:  this is the unique identifier of the user
+     * @param bookIds: unique identifiers of the books
+     * @return {@link List<OwnershipChange>} with the outcome of each book in the order of the ids
+     */
+    @PostMapping("/{userId}/books")
+    @Transactional
+    @ApiOperation(value = "Given the id of a user and a list of ids of books, the books are added to the user, returns the outcome of each book")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully updated user"),
+            @ApiResponse(code = 400, message = "Bad request"),
+            @ApiResponse(code = 404, message = "Resource not found"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    public List<OwnershipChange> addBooksToUser(@ApiParam(value = "id to find the user") @PathVariable Long userId,
+            @ApiParam(value = "ids of the books to add") @RequestBody List<Long> bookIds) {
+        List<Long> requested = RequestedIds.distinct(bookIds, maxBulkIds);
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException();
+        }
+
+        Set<Long> existing = new HashSet<>(bookRepository.findExistingIds(requested));
+        Set<Long> added = new HashSet<>(ownershipRepository.addBooks(userId, existing));
+        if (!added.isEmpty()) {
+            invalidationBus.publish(CacheNames.USERS, userId);
+        }
+        added.forEach(bookId -> {
+            auditLog.record(AuditAction.BOOK_ADDED_TO_USER, userId, bookId);
+            popularityCounters.ownerAdded(bookId);
+        });
+
+        return requested.stream()
+                .map(bookId -> new OwnershipChange(bookId, !existing.contains(bookId) ? Outcome.BOOK_NOT_FOUND
+                        : added.contains(bookId) ? Outcome.ADDED : Outcome.ALREADY_OWNED))
+                .collect(Collectors.toList());
     }
 
+    /**
+     * This method removes many books from a specific user with one statement
+     *
+     * @param userId:  this is the unique identifier of the user
+     * @param bookIds: unique identifiers of the books
+     * @return {@link List<OwnershipChange>} with the outcome of each book in the order of the ids
+     */
+    @DeleteMapping("/{userId}/books")
+    @Transactional
+    @ApiOperation(value = "Given the id of a user and a list of ids of books, the books are deleted to the user, returns the outcome of each book")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Successfully updated user"),
+            @ApiResponse(code = 400, message = "Bad request"),
+            @ApiResponse(code = 404, message = "Resource not found"),
+            @ApiResponse(code = 500, message = "Internal server error")
+    })
+    public List<OwnershipChange> deleteBooksToUser(@ApiParam(value = "id to find the user") @PathVariable Long userId,
+            @ApiParam(value = "ids of the books to delete") @RequestParam(name = "ids") List<Long> bookIds) {
+        List<Long> requested = RequestedIds.distinct(bookIds, maxBulkIds);
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException();
+        }
+
+        Set<Long> existing = new HashSet<>(bookRepository.findExistingIds(requested));
+        Set<Long> removed = new HashSet<>(ownershipRepository.removeBooks(userId, existing));
+        if (!removed.isEmpty()) {
+            invalidationBus.publish(CacheNames.USERS, userId);
+        }
+        removed.forEach(bookId -> {
+            auditLog.record(AuditAction.BOOK_REMOVED_FROM_USER, userId, bookId);
+            popularityCounters.ownerRemoved(bookId);
+        });
+
+        return requested.stream()
+                .map(bookId -> new OwnershipChange(bookId, !existing.contains(bookId) ? Outcome.BOOK_NOT_FOUND
+                        : removed.contains(bookId) ? Outcome.REMOVED : Outcome.NOT_OWNED))
+                .collect(Collectors.toList());
+    }
 
     /**
-     * This method obtains a list of users with some parameters
+     * This method returns the books added to and removed from a user in a range of days, oldest first. The range
+     * only reads the monthly partitions of the history it covers; the history is kept after the user is deleted.
+     *
+     * @param userId: this is the unique identifier of the user
+     * @param from:   first day of the range
+     * @param to:     day after the range, the range is at most {@code training.history.max-range-days} long
+     * @return {@link List<OwnershipEvent>} with at most {@code training.history.max-events} changes
+     */
+    @GetMapping("/{userId}/history")
+    @ApiOperation(value = "Given the id of a user and a range of days, returns the books added to and removed from the user in the range")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Invalid date range")
+    })
+    public List<OwnershipEvent> findHistory(@ApiParam(value = "id to find the user") @PathVariable Long userId,
+            @ApiParam(value = "first day of the range, yyyy-MM-dd") @RequestParam(name = "from") String from,
+            @ApiParam(value = "day after the range, yyyy-MM-dd") @RequestParam(name = "to") String to) {
+        LocalDate fromDay = HistoryRanges.day(from);
+        LocalDate toDay = HistoryRanges.day(to);
+        HistoryRanges.checkDays(fromDay, toDay, maxHistoryDays);
+        return ownershipHistoryRepository.findUserEvents(userId, fromDay, toDay, maxHistoryEvents);
+    }
+
+    /**
+     * This method obtains a list of users with some parameters, when the users are sharded the page is merged from
+     * the first pages of every shard. It runs in the background within the deadline of the user search.
      *
      * @param startDate: Start date as first date in the range search
      * @param endDate:   End date as last date in the range search
@@ -215,7 +470,7 @@ public class UserController {
      * @param from:      Where the results page starts
      * @param size:      List is the size of the expected result
      * @param sort:      It is the field by which you want to order
-     * @return {@link Page<User>}
+     * @return {@link WebAsyncTask} with the {@link Page<User>}
      */
     @GetMapping("/search")
     @ApiOperation(value = "Giving a start date birthday, an end date birthday and a sequence of characters of the user's name, returns the users")
@@ -225,7 +480,7 @@ public class UserController {
             @ApiResponse(code = 403, message = "Access forbidden"),
             @ApiResponse(code = 404, message = "User Not Found")
     })
-    public Page<User> findUsers(
+    public WebAsyncTask<Page<User>> findUsers(
             @ApiParam(value = "start date as first date in the range search") @RequestParam(name = "startDate", required = false) String startDate,
             @ApiParam(value = "end date as last date in the range search") @RequestParam(name = "endDate", required = false) String endDate,
             @ApiParam(value = "The sequence contains the characters must contain the user's name") @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
@@ -234,10 +489,120 @@ public class UserController {
             @ApiParam(value = "it is the field by which you want to order") @RequestParam(name = "sort", defaultValue = "id") String sort
 
     ) {
-        return userRepository.findAllByNameIgnoreCaseContainingAndBirthdateBetween(
+        Sort order = Sort.by(sort);
+        return queryDeadlines.run(SEARCH_DEADLINE, () -> userShards.gatherPage(PageRequest.of(from, size, order),
+                pageable -> userRepository.findAllByNameIgnoreCaseContainingAndBirthdateBetween(
+                        Objects.nonNull(startDate) ? LocalDate.parse(startDate) : null,
+                        Objects.nonNull(endDate) ? LocalDate.parse(endDate) : null,
+                        sequence, pageable).map(this::withBooksLoaded),
+                UserShards.comparator(order,
+                        (user, property) -> new BeanWrapperImpl(user).getPropertyValue(property))));
+    }
+
+    /**
+     * This method counts the users that match the search per birth year and per age range
+     *
+     * @param startDate: Start date as first date in the range search
+     * @param endDate:   End date as last date in the range search
+     * @param sequence:  The sequence contains the characters must contain the user's name
+     * @return {@link BirthDateHistogram}
+     */
+    @GetMapping("/demographics")
+    @ApiOperation(value = "Giving a start date birthday, an end date birthday and a sequence of characters of the user's name, returns the number of users per birth year and age", response = BirthDateHistogram.class)
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public BirthDateHistogram findDemographics(
+            @ApiParam(value = "start date as first date in the range search") @RequestParam(name = "startDate", required = false) String startDate,
+            @ApiParam(value = "end date as last date in the range search") @RequestParam(name = "endDate", required = false) String endDate,
+            @ApiParam(value = "The sequence contains the characters must contain the user's name") @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence
+    ) {
+        return birthDateHistograms.histogram(
                 Objects.nonNull(startDate) ? LocalDate.parse(startDate) : null,
                 Objects.nonNull(endDate) ? LocalDate.parse(endDate) : null,
-                sequence, PageRequest.of(from, size, Sort.by(sort)));
+                sequence);
+    }
+
+    /**
+     * This method obtains a page of the requested fields of the users that match the search. It runs in the
+     * background within the deadline of the user search.
+     *
+     * @param fields: names of the fields of the user to return
+     * @return {@link WebAsyncTask} with the {@link Page<Map>} of the fields of each user
+     */
+    @GetMapping(value = "/search", params = "fields")
+    @ApiOperation(value = "Giving a start date birthday, an end date birthday, a sequence of characters of the user's name and a list of fields, returns those fields of the users")
+    @ApiResponses(value = {
+            @ApiResponse(code = 200, message = "Success"),
+            @ApiResponse(code = 400, message = "Unknown fields"),
+            @ApiResponse(code = 401, message = "Not Authorized"),
+            @ApiResponse(code = 403, message = "Access forbidden")
+    })
+    public WebAsyncTask<Page<Map<String, Object>>> findUsersFields(
+            @ApiParam(value = "start date as first date in the range search") @RequestParam(name = "startDate", required = false) String startDate,
+            @ApiParam(value = "end date as last date in the range search") @RequestParam(name = "endDate", required = false) String endDate,
+            @ApiParam(value = "The sequence contains the characters must contain the user's name") @RequestParam(name = "sequence", required = false, defaultValue = "") String sequence,
+            @ApiParam(value = "where the results page starts") @RequestParam(name = "from", defaultValue = "0") Integer from,
+            @ApiParam(value = "list is the size of the expected result") @RequestParam(name = "size", defaultValue = "5") Integer size,
+            @ApiParam(value = "it is the field by which you want to order") @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @ApiParam(value = "fields of the user to return") @RequestParam(name = "fields") List<String> fields
+    ) {
+        List<String> selected = projectionRepository.selectableFields(User.class, fields);
+        boolean sortSelected = userShards.count() == 1 || selected.contains(sort);
+        List<String> queried = new ArrayList<>(selected);
+        if (!sortSelected) {
+            queried.addAll(projectionRepository.selectableFields(User.class, List.of(sort)));
+        }
+
+        Sort order = Sort.by(sort);
+        return queryDeadlines.run(SEARCH_DEADLINE, () -> {
+            Page<Map<String, Object>> page = userShards.gatherPage(PageRequest.of(from, size, order),
+                    pageable -> projectionRepository.findAll(User.class, queried,
+                            UserSpecifications.search(
+                                    Objects.nonNull(startDate) ? LocalDate.parse(startDate) : null,
+                                    Objects.nonNull(endDate) ? LocalDate.parse(endDate) : null,
+                                    sequence),
+                            pageable),
+                    UserShards.comparator(order, Map::get));
+            if (!sortSelected) {
+                page.forEach(row -> row.remove(sort));
+            }
+            return page;
+        });
+    }
+
+    private void requireUserAndBook(Long userId, Long bookId) {
+        if (!userRepository.existsById(userId)) {
+            throw new UserNotFoundException();
+        }
+        if (!bookRepository.existsById(bookId)) {
+            throw new BookNotFoundException();
+        }
+    }
+
+    /**
+     * The user is read after its books changed, it was not in the persistence context so its books are the ones
+     * of the database
+     */
+    private User findWithBooks(Long userId) {
+        return userRepository.findById(userId).map(this::withBooksLoaded).orElseThrow(UserNotFoundException::new);
+    }
+
+    private List<User> findAllWithBooksByIdIn(Collection<Long> ids) {
+        return userShards.onUsers(ids, userRepository::findAllWithBooksByIdIn).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A coalesced user is serialized by several requests, its books are loaded by the leader so the waiters never
+     * touch the session of another request
+     */
+    private User withBooksLoaded(User user) {
+        user.getBooks().size();
+        return user;
     }
 
 }
@@ -0,0 +1,274 @@
+package wolox.training.covers;
+
+import com.google.common.hash.Hashing;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wolox.training.concurrency.SingleFlight;
+
+/**
+ * Keeps the thumbnails of the covers in {@code training.covers.cache-directory}, up to
+ * {@code training.covers.cache-max-bytes}, evicting the least recently served ones. A thumbnail is written once:
+ * the requests that miss the same file while it is written wait for it, and it is written to a temporary file moved
+ * into place, so a file of the directory is always complete. The files left by a previous run are kept, the oldest
+ * ones are the first evicted.
+ * <p>
+ * The name of a file includes a hash of the image url, a book whose image changed gets new files and the old ones
+ * are evicted once they are no longer served.
+ * <p>
+ * A file handed to the server to be sent after the request is {@link #link(Path) linked} first, the server opens the
+ * link so the eviction of the file meanwhile doesn't take it away. The links are deleted once they are older than
+ * {@code training.covers.link-ttl-ms}, until then the disk space of an evicted file is kept by its links.
+ */
+@Component
+public class CoverCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoverCache.class);
+    private static final String EXTENSION = ".jpg";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+    private static final String LINKS_DIRECTORY = "sending";
+
+    private final Path directory;
+    private final Path links;
+    private final long maxBytes;
+    private final long linkTtlMs;
+    private final AtomicLong linkCount = new AtomicLong();
+    private final AtomicLong lastLinkSweep = new AtomicLong();
+    private final Map<String, Long> sizes = new LinkedHashMap<>(256, 0.75f, true);
+    private final SingleFlight<String, Path> writes;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long bytes;
+
+    public CoverCache(MeterRegistry meterRegistry,
+            @Value("${training.covers.cache-directory:covers}") String directory,
+            @Value("${training.covers.cache-max-bytes:268435456}") long maxBytes,
+            @Value("${training.covers.link-ttl-ms:60000}") long linkTtlMs) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.links = this.directory.resolve(LINKS_DIRECTORY);
+        this.maxBytes = maxBytes;
+        this.linkTtlMs = linkTtlMs;
+        this.writes = new SingleFlight<>("covers.writes", meterRegistry);
+        this.hits = Counter.builder("covers.cache.requests")
+                .description("Thumbnails served from the cache")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("covers.cache.requests")
+                .description("Thumbnails written before being served")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("covers.cache.evictions")
+                .description("Thumbnails deleted to keep the cache under its size")
+                .register(meterRegistry);
+        Gauge.builder("covers.cache.bytes", this, CoverCache::getBytes)
+                .description("Size of the cached thumbnails")
+                .register(meterRegistry);
+        load();
+    }
+
+    /**
+     * This method returns the name of the thumbnail of an image
+     *
+     * @param bookId:   this is the unique identifier of the book
+     * @param width:    the width of the thumbnail
+     * @param imageUrl: the url of the full-size image
+     * @return the name of the file, it is also a strong validator of its content
+     */
+    public static String fileName(Long bookId, int width, String imageUrl) {
+        return bookId + "-" + width + "-"
+                + Hashing.sha256().hashString(imageUrl, StandardCharsets.UTF_8).toString().substring(0, 16)
+                + EXTENSION;
+    }
+
+    /**
+     * This method returns the cached file of the name, writing it first when it is not cached
+     *
+     * @param name:   the name of the file
+     * @param writer: writes the content of the file to the path it receives
+     * @return {@link Path} of the cached file
+     * @throws UncheckedIOException when the file can't be written
+     */
+    public Path get(String name, ThumbnailWriter writer) {
+        Path cached = lookup(name);
+        if (Objects.nonNull(cached)) {
+            hits.increment();
+            return cached;
+        }
+
+        return writes.execute(name, () -> {
+            Path written = lookup(name);
+            if (Objects.isNull(written)) {
+                misses.increment();
+                written = write(name, writer);
+            }
+            return written;
+        });
+    }
+
+    /**
+     * This method returns a new link to a cached file, it keeps the content of the file when the file is evicted and
+     * is deleted after {@code training.covers.link-ttl-ms}
+     *
+     * @param cached: a file returned by {@link #get(String, ThumbnailWriter)}
+     * @return {@link Path} of the link
+     * @throws java.nio.file.NoSuchFileException when the file was evicted
+     * @throws IOException when the link can't be created
+     */
+    public Path link(Path cached) throws IOException {
+        sweepLinks();
+        long created = System.currentTimeMillis();
+        return Files.createLink(links.resolve(created + "-" + linkCount.incrementAndGet() + "-"
+                + cached.getFileName()), cached);
+    }
+
+    /**
+     * This method forgets a file of the cache that is no longer on disk, so the next request writes it again
+     *
+     * @param name: the name of the file
+     */
+    public synchronized void remove(String name) {
+        Long size = sizes.remove(name);
+        if (Objects.nonNull(size)) {
+            bytes -= size;
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * The file is looked up with {@link Map#get} rather than {@link Map#containsKey}, only the former moves it to the
+     * end of the eviction order
+     */
+    private synchronized Path lookup(String name) {
+        return Objects.nonNull(sizes.get(name)) ? directory.resolve(name) : null;
+    }
+
+    private Path write(String name, ThumbnailWriter writer) {
+        Path target = directory.resolve(name);
+        Path temporary = directory.resolve(name + TEMPORARY_EXTENSION);
+        try {
+            writer.write(temporary);
+            Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            add(name, Files.size(target));
+            return target;
+        } catch (IOException e) {
+            deleteQuietly(temporary);
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void add(String name, long size) {
+        Long previous = sizes.put(name, size);
+        bytes += size - (Objects.isNull(previous) ? 0 : previous);
+        evict();
+    }
+
+    /**
+     * The last file added is kept even when it alone is over the size, it is about to be served
+     */
+    private synchronized void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = sizes.entrySet().iterator();
+        while (bytes > maxBytes && sizes.size() > 1) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            bytes -= entry.getValue();
+            evictions.increment();
+            deleteQuietly(directory.resolve(entry.getKey()));
+        }
+    }
+
+    /**
+     * The links are swept at most once per time to live, by the request that finds the sweep due
+     */
+    private void sweepLinks() {
+        long now = System.currentTimeMillis();
+        long last = lastLinkSweep.get();
+        if (now - last < linkTtlMs || !lastLinkSweep.compareAndSet(last, now)) {
+            return;
+        }
+        try (Stream<Path> listed = Files.list(links)) {
+            listed.filter(link -> now - linkCreated(link) > linkTtlMs).forEach(CoverCache::deleteQuietly);
+        } catch (IOException e) {
+            LOGGER.warn("The links of the cover cache in {} couldn't be listed", links, e);
+        }
+    }
+
+    /**
+     * The time a link was created is the start of its name, the modification time is the one of the linked file
+     */
+    private static long linkCreated(Path link) {
+        String name = link.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(0, Math.max(0, name.indexOf('-'))));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private void load() {
+        try {
+            Files.createDirectories(links);
+            try (Stream<Path> listed = Files.list(links)) {
+                listed.forEach(CoverCache::deleteQuietly);
+            }
+            List<Path> files;
+            try (Stream<Path> listed = Files.list(directory)) {
+                files = listed.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+            files.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(TEMPORARY_EXTENSION))
+                    .forEach(CoverCache::deleteQuietly);
+            files.stream()
+                    .filter(file -> file.getFileName().toString().endsWith(EXTENSION))
+                    .sorted(Comparator.comparing(CoverCache::lastModified))
+                    .forEach(file -> add(file.getFileName().toString(), file.toFile().length()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("The cover cache couldn't read " + directory, e);
+        }
+        LOGGER.info("Cover cache at {} with {} thumbnails, {} bytes", directory, sizes.size(), bytes);
+    }
+
+    private static long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOGGER.warn("The cached cover {} couldn't be deleted", file, e);
+        }
+    }
+
+    /**
+     * Writes the content of a thumbnail
+     */
+    @FunctionalInterface
+    public interface ThumbnailWriter {
+
+        void write(Path target) throws IOException;
+    }
+}
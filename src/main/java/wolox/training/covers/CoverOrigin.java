@@ -0,0 +1,194 @@
+package wolox.training.covers;
+
+import java.awt.image.BufferedImage;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reads the full-size covers the {@code image} of the books points to. They are fetched over http or https, or,
+ * when {@code training.covers.origin-directory} is set, read from that directory at the path of the url, which
+ * stands in for the image store.
+ * <p>
+ * The image of a book is set by the clients of the API, so only the origins of {@code training.covers.allowed-origins}
+ * are fetched and redirects are not followed, the node never requests a host of the internal network for them. An
+ * image is read up to {@code training.covers.origin-max-bytes} and its size is checked against
+ * {@code training.covers.origin-max-pixels} from its header, before its pixels are decoded.
+ */
+@Component
+public class CoverOrigin {
+
+    private final Path directory;
+    private final Duration timeout;
+    private final Set<String> allowedOrigins;
+    private final long maxBytes;
+    private final long maxPixels;
+    private final HttpClient httpClient;
+
+    public CoverOrigin(@Value("${training.covers.origin-directory:}") String directory,
+            @Value("${training.covers.origin-timeout-ms:5000}") long timeoutMs,
+            @Value("${training.covers.allowed-origins:}") String[] allowedOrigins,
+            @Value("${training.covers.origin-max-bytes:10485760}") long maxBytes,
+            @Value("${training.covers.origin-max-pixels:25000000}") long maxPixels) {
+        this.directory = directory.isEmpty() ? null : Paths.get(directory).toAbsolutePath().normalize();
+        this.timeout = Duration.ofMillis(timeoutMs);
+        this.allowedOrigins = Arrays.stream(allowedOrigins)
+                .map(String::trim)
+                .filter(origin -> !origin.isEmpty())
+                .map(origin -> origin(URI.create(origin)))
+                .collect(Collectors.toSet());
+        this.maxBytes = maxBytes;
+        this.maxPixels = maxPixels;
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(timeout)
+                .followRedirects(Redirect.NEVER)
+                .build();
+    }
+
+    /**
+     * This method reads and decodes the image of the url
+     *
+     * @param imageUrl: url of the image of a book
+     * @return {@link BufferedImage} with the full-size image
+     * @throws IOException when the image can't be read, its format is not supported or it is too large
+     */
+    public BufferedImage read(String imageUrl) throws IOException {
+        URI uri;
+        try {
+            uri = URI.create(imageUrl);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid image url " + imageUrl, e);
+        }
+
+        try (InputStream input = new LimitedInputStream(open(uri), maxBytes);
+                ImageInputStream imageInput = ImageIO.createImageInputStream(input)) {
+            Iterator<ImageReader> readers = Objects.isNull(imageInput)
+                    ? null : ImageIO.getImageReaders(imageInput);
+            if (Objects.isNull(readers) || !readers.hasNext()) {
+                throw new IOException("Unsupported image format " + imageUrl);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInput, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxPixels) {
+                    throw new IOException("The image " + imageUrl + " has " + pixels + " pixels, more than "
+                            + maxPixels);
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private InputStream open(URI uri) throws IOException {
+        if (Objects.nonNull(directory)) {
+            Path file = directory.resolve(Objects.toString(uri.getPath(), "").replaceFirst("^/+", "")).normalize();
+            if (!file.startsWith(directory)) {
+                throw new IOException("The image " + uri + " is outside of the origin directory");
+            }
+            return Files.newInputStream(file);
+        }
+
+        if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+            throw new IOException("Unsupported image url " + uri);
+        }
+        if (!allowedOrigins.contains(origin(uri))) {
+            throw new IOException("The origin of the image " + uri + " is not allowed");
+        }
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(HttpRequest.newBuilder(uri).timeout(timeout).GET().build(),
+                    BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + uri, e);
+        }
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw new IOException("The origin answered " + response.statusCode() + " for " + uri);
+        }
+        if (response.headers().firstValueAsLong("Content-Length").orElse(0) > maxBytes) {
+            response.body().close();
+            throw new IOException("The image " + uri + " is larger than " + maxBytes + " bytes");
+        }
+        return response.body();
+    }
+
+    /**
+     * The scheme, host and port of the url, with the default port of the scheme when it has none
+     */
+    private static String origin(URI uri) {
+        String scheme = Objects.toString(uri.getScheme(), "").toLowerCase(Locale.ROOT);
+        int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+        return scheme + "://" + Objects.toString(uri.getHost(), "").toLowerCase(Locale.ROOT) + ":" + port;
+    }
+
+    /**
+     * Fails the read once more than the limit was read, whatever the image claims about its size
+     */
+    private static class LimitedInputStream extends FilterInputStream {
+
+        private final long limit;
+        private long read;
+
+        LimitedInputStream(InputStream input, long limit) {
+            super(input);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = super.read();
+            if (value != -1) {
+                count(1);
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                count(count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long length) throws IOException {
+            long skipped = super.skip(length);
+            count(skipped);
+            return skipped;
+        }
+
+        private void count(long bytes) throws IOException {
+            read += bytes;
+            if (read > limit) {
+                throw new IOException("The image is larger than " + limit + " bytes");
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package wolox.training.covers;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * Scales covers down to a width, keeping their aspect ratio, and encodes them as JPEG. The image is halved while it
+ * is more than twice the width, bilinear scaling of one step would skip most of the pixels of a large cover.
+ */
+public final class Thumbnails {
+
+    public static final String CONTENT_TYPE = "image/jpeg";
+
+    private Thumbnails() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method writes the thumbnail of the image, the images narrower than the width keep their size
+     *
+     * @param image:   the full-size image
+     * @param width:   the width of the thumbnail in pixels
+     * @param quality: the JPEG quality, between 0 and 1
+     * @param target:  the file to write
+     * @throws IOException when the file can't be written
+     */
+    public static void write(BufferedImage image, int width, float quality, Path target) throws IOException {
+        BufferedImage thumbnail = scale(image, width);
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ImageWriteParam param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        param.setCompressionQuality(quality);
+        try (OutputStream output = Files.newOutputStream(target);
+                ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            writer.write(null, new IIOImage(thumbnail, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    static BufferedImage scale(BufferedImage image, int width) {
+        int targetWidth = Math.min(width, image.getWidth());
+        int targetHeight = Math.max(1, Math.round((float) image.getHeight() * targetWidth / image.getWidth()));
+
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            currentWidth = Math.max(targetWidth, currentWidth / 2);
+            currentHeight = Math.max(targetHeight, currentHeight / 2);
+            current = draw(current, currentWidth, currentHeight);
+        } while (currentWidth != targetWidth || currentHeight != targetHeight);
+        return current;
+    }
+
+    /**
+     * JPEG has no alpha, the transparent pixels are drawn over white
+     */
+    private static BufferedImage draw(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+}
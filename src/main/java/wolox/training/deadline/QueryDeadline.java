@@ -0,0 +1,148 @@
+package wolox.training.deadline;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Time budget of the queries of one request. It is bound to the threads that work for the request and
+ * {@link DeadlineDataSource} turns what is left of it into the timeout of every statement they run. The statements
+ * that are running are tracked, so the work can be cancelled from another thread, like when the client goes away.
+ */
+public class QueryDeadline {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryDeadline.class);
+    private static final ThreadLocal<QueryDeadline> CURRENT = new ThreadLocal<>();
+
+    private final long timeoutMs;
+    private final long deadlineNanos;
+    private final Set<Statement> running = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+
+    public QueryDeadline(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    }
+
+    /**
+     * This method returns the deadline of the current thread
+     *
+     * @return {@link QueryDeadline} or null when the queries of the thread have no deadline
+     */
+    public static QueryDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * This method runs the work with the deadline bound to the current thread
+     *
+     * @param deadline: the deadline of the work, null to run it without one
+     * @param work:     the work to run
+     * @return the result of the work
+     */
+    public static <T> T callWith(QueryDeadline deadline, Supplier<T> work) {
+        QueryDeadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * This method runs the work with this deadline bound to the current thread
+     *
+     * @param work: the work to run
+     * @return the result of the work
+     */
+    public <T> T call(Callable<T> work) throws Exception {
+        QueryDeadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return work.call();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * This method returns whether the work of the current thread was stopped by its deadline or cancelled, so its
+     * errors don't mean the database is failing
+     *
+     * @return whether the current thread has a deadline that is over
+     */
+    public static boolean isCurrentOver() {
+        QueryDeadline deadline = CURRENT.get();
+        return Objects.nonNull(deadline) && (deadline.isExpired() || deadline.isCancelled());
+    }
+
+    public long getTimeoutMs() {
+        return timeoutMs;
+    }
+
+    public long remainingMs() {
+        return TimeUnit.NANOSECONDS.toMillis(deadlineNanos - System.nanoTime());
+    }
+
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    /**
+     * This method cancels the work, the running statements are cancelled and no new one is started
+     *
+     * @return the statements cancelled while they were running, -1 when the work was already cancelled
+     */
+    public int cancel() {
+        if (!cancelled.compareAndSet(false, true)) {
+            return -1;
+        }
+
+        int statements = 0;
+        for (Statement statement : running) {
+            try {
+                statement.cancel();
+                statements++;
+            } catch (SQLException e) {
+                LOGGER.warn("Statement couldn't be cancelled", e);
+            }
+        }
+        return statements;
+    }
+
+    /**
+     * The timeout of JDBC is in whole seconds, so it is rounded up and the exact deadline is kept by
+     * {@link #cancel()}
+     */
+    void started(Statement statement) throws SQLException {
+        running.add(statement);
+        long remainingMs = remainingMs();
+        if (cancelled.get() || remainingMs <= 0) {
+            running.remove(statement);
+            throw new SQLTimeoutException("The deadline of " + timeoutMs + " ms of the request is over");
+        }
+        statement.setQueryTimeout((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingMs + 999)));
+    }
+
+    void finished(Statement statement) {
+        running.remove(statement);
+    }
+
+    int runningStatements() {
+        return running.size();
+    }
+}
@@ -0,0 +1,124 @@
+package wolox.training.deadline;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.concurrent.Callable;
+import javax.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import wolox.training.exceptions.QueryDeadlineExceededException;
+
+/**
+ * Runs the work of the expensive endpoints as an async request bounded by a {@link QueryDeadline}. The request
+ * thread is released while the work runs, so the container notices when the client goes away and the running
+ * statements are cancelled instead of holding a pooled connection for a response nobody reads. Once the deadline is
+ * over the statements are cancelled too and the request fails with {@link QueryDeadlineExceededException}.
+ * <p>
+ * The deadline of an endpoint is {@code training.deadlines.<endpoint>-ms}, or {@code training.deadlines.default-ms}
+ * when it has none. The cancelled requests are counted in {@code deadlines.cancelled} by endpoint and reason, and
+ * the statements they stopped in {@code deadlines.cancelled.statements}. The work runs on the bounded
+ * {@code queryDeadlinesExecutor} of {@code DeadlineConfig}.
+ */
+@Component
+public class QueryDeadlines {
+
+    public static final String DEADLINE = "deadline";
+    public static final String DISCONNECT = "disconnect";
+
+    private final Environment environment;
+    private final MeterRegistry meterRegistry;
+    private final AsyncTaskExecutor executor;
+    private final long defaultMs;
+
+    public QueryDeadlines(Environment environment, MeterRegistry meterRegistry,
+            @Qualifier("queryDeadlinesExecutor") AsyncTaskExecutor executor,
+            @Value("${training.deadlines.default-ms:30000}") long defaultMs) {
+        this.environment = environment;
+        this.meterRegistry = meterRegistry;
+        this.executor = executor;
+        this.defaultMs = defaultMs;
+    }
+
+    /**
+     * This method returns the deadline of an endpoint
+     *
+     * @param endpoint: name of the endpoint in the properties
+     * @return the deadline in milliseconds
+     */
+    public long timeoutMs(String endpoint) {
+        return environment.getProperty("training.deadlines." + endpoint + "-ms", Long.class, defaultMs);
+    }
+
+    /**
+     * This method runs the work of the current request in the background with the deadline of the endpoint, it
+     * must be returned by the handler. The work sees the attributes of the request, like the stale values it served.
+     *
+     * @param endpoint: name of the endpoint in the properties and the metrics
+     * @param work:     the work of the request
+     * @return {@link WebAsyncTask} of the work
+     */
+    public <T> WebAsyncTask<T> run(String endpoint, Callable<T> work) {
+        long timeoutMs = timeoutMs(endpoint);
+        QueryDeadline deadline = new QueryDeadline(timeoutMs);
+        HttpServletRequest request = ((ServletRequestAttributes) RequestContextHolder.currentRequestAttributes())
+                .getRequest();
+        WebAsyncUtils.getAsyncManager(request)
+                .registerCallableInterceptor(QueryDeadline.class.getName(), new CallableProcessingInterceptor() {
+                    @Override
+                    public <V> Object handleTimeout(NativeWebRequest webRequest, Callable<V> task) {
+                        cancel(endpoint, deadline, DEADLINE);
+                        return new QueryDeadlineExceededException(timeoutMs);
+                    }
+
+                    @Override
+                    public <V> Object handleError(NativeWebRequest webRequest, Callable<V> task, Throwable error) {
+                        cancel(endpoint, deadline, DISCONNECT);
+                        return RESULT_NONE;
+                    }
+                });
+
+        return new WebAsyncTask<>(timeoutMs, executor, () -> {
+            RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+            try {
+                return deadline.call(work);
+            } catch (RuntimeException e) {
+                if (deadline.isExpired() && !deadline.isCancelled()) {
+                    cancel(endpoint, deadline, DEADLINE);
+                    throw new QueryDeadlineExceededException(timeoutMs);
+                }
+                throw e;
+            } finally {
+                RequestContextHolder.resetRequestAttributes();
+            }
+        });
+    }
+
+    private void cancel(String endpoint, QueryDeadline deadline, String reason) {
+        int statements = deadline.cancel();
+        if (statements < 0) {
+            return;
+        }
+
+        Counter.builder("deadlines.cancelled")
+                .description("Requests cancelled by their deadline or because the client went away")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment();
+        Counter.builder("deadlines.cancelled.statements")
+                .description("Statements cancelled while they were running")
+                .tag("endpoint", endpoint)
+                .tag("reason", reason)
+                .register(meterRegistry)
+                .increment(statements);
+    }
+}
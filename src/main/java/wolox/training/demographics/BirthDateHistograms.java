@@ -0,0 +1,134 @@
+package wolox.training.demographics;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+import wolox.training.models.dto.BirthDateHistogram;
+import wolox.training.models.dto.BirthDateHistogram.AgeCount;
+import wolox.training.models.dto.BirthDateHistogram.YearCount;
+import wolox.training.repositories.DemographicsRepository;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Builds the birth date histograms of the users from one aggregate per request. The histogram of every user is
+ * asked the most and changes the least, so it is kept until a user is written in any node or the day changes, which
+ * moves the ages. The histogram remembers the version of the invalidations it was computed at, so one computed
+ * while a user was being written is never served once the write is committed. The users of every shard are
+ * counted and their counts added.
+ */
+@Component
+public class BirthDateHistograms implements InvalidationListener {
+
+    private final DemographicsRepository demographicsRepository;
+    private final UserShards userShards;
+    private final Clock clock;
+    private final int ageRangeYears;
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Cached unfiltered;
+
+    @Autowired
+    public BirthDateHistograms(DemographicsRepository demographicsRepository, UserShards userShards,
+            CacheInvalidationBus invalidationBus,
+            @Value("${training.demographics.age-range-years:10}") int ageRangeYears) {
+        this(demographicsRepository, userShards, invalidationBus, ageRangeYears, Clock.systemDefaultZone());
+    }
+
+    BirthDateHistograms(DemographicsRepository demographicsRepository, UserShards userShards,
+            CacheInvalidationBus invalidationBus, int ageRangeYears, Clock clock) {
+        this.demographicsRepository = demographicsRepository;
+        this.userShards = userShards;
+        this.ageRangeYears = ageRangeYears;
+        this.clock = clock;
+        invalidationBus.subscribe(CacheNames.USERS, this);
+    }
+
+    /**
+     * This method returns the users per birth year and per age range that match the filters
+     *
+     * @param startDate: first birth date of the range, ignored when null
+     * @param endDate:   last birth date of the range, ignored when null
+     * @param sequence:  characters the user's name must contain, ignored when null or empty
+     * @return {@link BirthDateHistogram}
+     */
+    public BirthDateHistogram histogram(LocalDate startDate, LocalDate endDate, String sequence) {
+        LocalDate today = LocalDate.now(clock);
+        boolean filtered = Objects.nonNull(startDate) || Objects.nonNull(endDate)
+                || (Objects.nonNull(sequence) && !sequence.isEmpty());
+        if (filtered) {
+            return build(count(startDate, endDate, sequence), today);
+        }
+
+        long readVersion = version.get();
+        Cached cached = unfiltered;
+        if (Objects.nonNull(cached) && cached.version == readVersion && cached.day.equals(today)) {
+            return cached.histogram;
+        }
+
+        BirthDateHistogram histogram = build(count(null, null, null), today);
+        unfiltered = new Cached(readVersion, today, histogram);
+        return histogram;
+    }
+
+    @Override
+    public void invalidated(Long userId) {
+        invalidatedAll();
+    }
+
+    @Override
+    public void invalidatedAll() {
+        version.incrementAndGet();
+    }
+
+    private SortedMap<LocalDate, Long> count(LocalDate startDate, LocalDate endDate, String sequence) {
+        SortedMap<LocalDate, Long> counts = new TreeMap<>();
+        userShards.gather(() -> demographicsRepository.countByBirthDate(startDate, endDate, sequence))
+                .forEach(shardCounts -> shardCounts.forEach((day, users) -> counts.merge(day, users, Long::sum)));
+        return counts;
+    }
+
+    private BirthDateHistogram build(SortedMap<LocalDate, Long> counts, LocalDate today) {
+        SortedMap<Integer, Long> years = new TreeMap<>();
+        SortedMap<Integer, Long> ranges = new TreeMap<>();
+        long users = 0;
+        for (Map.Entry<LocalDate, Long> count : counts.entrySet()) {
+            years.merge(count.getKey().getYear(), count.getValue(), Long::sum);
+            int age = Math.max(0, Period.between(count.getKey(), today).getYears());
+            ranges.merge(age / ageRangeYears, count.getValue(), Long::sum);
+            users += count.getValue();
+        }
+
+        List<YearCount> birthYears = new ArrayList<>(years.size());
+        years.forEach((year, yearUsers) -> birthYears.add(new YearCount(year, yearUsers)));
+        List<AgeCount> ages = new ArrayList<>(ranges.size());
+        ranges.forEach((range, rangeUsers) -> ages.add(
+                new AgeCount(range * ageRangeYears, (range + 1) * ageRangeYears - 1, rangeUsers)));
+        return new BirthDateHistogram(users, birthYears, ages);
+    }
+
+    private static class Cached {
+
+        private final long version;
+        private final LocalDate day;
+        private final BirthDateHistogram histogram;
+
+        Cached(long version, LocalDate day, BirthDateHistogram histogram) {
+            this.version = version;
+            this.day = day;
+            this.histogram = histogram;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package wolox.training.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_GATEWAY)
+public class CoverUnavailableException extends RuntimeException {
+
+    public CoverUnavailableException(Throwable cause) {
+        super("The cover image couldn't be read from its origin", cause);
+    }
+}
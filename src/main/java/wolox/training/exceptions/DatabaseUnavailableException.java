@@ -0,0 +1,16 @@
+package wolox.training.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class DatabaseUnavailableException extends RuntimeException {
+
+    public DatabaseUnavailableException() {
+        super("The database is unavailable, try again later");
+    }
+
+    public DatabaseUnavailableException(Throwable cause) {
+        super("The database is unavailable, try again later", cause);
+    }
+}
@@ -0,0 +1,12 @@
+package wolox.training.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class IndexNotReadyException extends RuntimeException {
+
+    public IndexNotReadyException() {
+        super("The index is loading, try again later");
+    }
+}
@@ -0,0 +1,13 @@
+package wolox.training.exceptions;
+
+import java.util.Collection;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidCoverWidthException extends RuntimeException {
+
+    public InvalidCoverWidthException(Collection<Integer> widths) {
+        super("The width of the cover must be one of " + widths);
+    }
+}
@@ -0,0 +1,13 @@
+package wolox.training.exceptions;
+
+import java.util.Collection;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.BAD_REQUEST)
+public class InvalidFieldsException extends RuntimeException {
+
+    public InvalidFieldsException(Collection<String> fields) {
+        super("Unknown fields " + fields);
+    }
+}
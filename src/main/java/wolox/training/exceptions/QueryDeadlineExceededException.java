@@ -0,0 +1,12 @@
+package wolox.training.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+public class QueryDeadlineExceededException extends RuntimeException {
+
+    public QueryDeadlineExceededException(long timeoutMs) {
+        super("The request didn't finish within its deadline of " + timeoutMs + " ms");
+    }
+}
@@ -0,0 +1,77 @@
+package wolox.training.graphql;
+
+import graphql.schema.DataFetcher;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Resolvers of the root fields of the GraphQL schema. The users and books are asked to the loaders of
+ * {@link GraphQLDataLoaders} instead of being read one by one, the books of a user come with the user.
+ */
+@Component
+public class GraphQLDataFetchers {
+
+    private static final Sort SEARCH_ORDER = Sort.by("id");
+
+    private final UserRepository userRepository;
+    private final UserShards userShards;
+
+    public GraphQLDataFetchers(UserRepository userRepository, UserShards userShards) {
+        this.userRepository = userRepository;
+        this.userShards = userShards;
+    }
+
+    public DataFetcher<CompletableFuture<User>> user() {
+        return environment -> environment.<Long, User>getDataLoader(GraphQLDataLoaders.USERS)
+                .load(id(environment.getArgument("id")));
+    }
+
+    public DataFetcher<CompletableFuture<List<User>>> users() {
+        return environment -> environment.<Long, User>getDataLoader(GraphQLDataLoaders.USERS)
+                .loadMany(ids(environment.getArgument("ids")));
+    }
+
+    /**
+     * The page only gives the ids of the users, they are read with their books by the loader
+     */
+    public DataFetcher<CompletableFuture<List<User>>> searchUsers() {
+        return environment -> {
+            String sequence = environment.getArgument("sequence");
+            int from = environment.getArgument("from");
+            int size = environment.getArgument("size");
+            List<Long> ids = userShards.gatherPage(PageRequest.of(from, size, SEARCH_ORDER),
+                    pageable -> userRepository.findAllByNameIgnoreCaseContainingAndBirthdateBetween(null, null,
+                            sequence, pageable),
+                    UserShards.comparator(SEARCH_ORDER, (user, property) -> user.getId()))
+                    .map(User::getId)
+                    .getContent();
+            return environment.<Long, User>getDataLoader(GraphQLDataLoaders.USERS).loadMany(ids);
+        };
+    }
+
+    public DataFetcher<CompletableFuture<Book>> book() {
+        return environment -> environment.<Long, Book>getDataLoader(GraphQLDataLoaders.BOOKS)
+                .load(id(environment.getArgument("id")));
+    }
+
+    public DataFetcher<CompletableFuture<List<Book>>> books() {
+        return environment -> environment.<Long, Book>getDataLoader(GraphQLDataLoaders.BOOKS)
+                .loadMany(ids(environment.getArgument("ids")));
+    }
+
+    private static Long id(String id) {
+        return Long.valueOf(id);
+    }
+
+    private static List<Long> ids(List<String> ids) {
+        return ids.stream().map(GraphQLDataFetchers::id).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,73 @@
+package wolox.training.graphql;
+
+import com.google.common.collect.Iterables;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.dataloader.DataLoader;
+import org.dataloader.DataLoaderRegistry;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.EntityCache;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Batch loaders of the users and books of a GraphQL request. The ids asked by the resolvers of one level of the
+ * query are collected and read at once through the entity caches, so resolving a list of users with their books
+ * runs the same statements for ten users or a hundred. Every request gets its own loaders, what they cache lives
+ * only until the response is written.
+ */
+@Component
+public class GraphQLDataLoaders {
+
+    public static final String USERS = "users";
+    public static final String BOOKS = "books";
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final UserRepository userRepository;
+    private final BookRepository bookRepository;
+    private final EntityCache<User> userCache;
+    private final EntityCache<Book> bookCache;
+    private final UserShards userShards;
+
+    public GraphQLDataLoaders(UserRepository userRepository, BookRepository bookRepository,
+            EntityCache<User> userCache, EntityCache<Book> bookCache, UserShards userShards) {
+        this.userRepository = userRepository;
+        this.bookRepository = bookRepository;
+        this.userCache = userCache;
+        this.bookCache = bookCache;
+        this.userShards = userShards;
+    }
+
+    /**
+     * This method creates the loaders of a request
+     *
+     * @return {@link DataLoaderRegistry} with the loaders of the users and the books by id
+     */
+    public DataLoaderRegistry newRegistry() {
+        DataLoader<Long, User> users = DataLoader.newMappedDataLoader(ids -> CompletableFuture.completedFuture(
+                userCache.getAll(new ArrayList<>(ids), this::findAllUsersWithBooks, User::getId)));
+        DataLoader<Long, Book> books = DataLoader.newMappedDataLoader(ids -> CompletableFuture.completedFuture(
+                bookCache.getAll(new ArrayList<>(ids), this::findAllBooks, Book::getId)));
+        return new DataLoaderRegistry()
+                .register(USERS, users)
+                .register(BOOKS, books);
+    }
+
+    private List<User> findAllUsersWithBooks(Collection<Long> ids) {
+        return userShards.onUsers(ids, userRepository::findAllWithBooksByIdIn).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+
+    private List<Book> findAllBooks(Collection<Long> ids) {
+        List<Book> books = new ArrayList<>(ids.size());
+        Iterables.partition(ids, IDS_PER_QUERY).forEach(chunk -> books.addAll(bookRepository.findAllById(chunk)));
+        return books;
+    }
+}
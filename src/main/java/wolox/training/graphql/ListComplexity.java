@@ -0,0 +1,32 @@
+package wolox.training.graphql;
+
+import graphql.analysis.FieldComplexityCalculator;
+import graphql.analysis.FieldComplexityEnvironment;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Complexity of a GraphQL field as one plus the complexity of its selection once per item it can return, the items
+ * of a list are the ids it receives or the size of its page. A query that asks for the books of a hundred users
+ * costs a hundred times its selection of one user.
+ */
+public class ListComplexity implements FieldComplexityCalculator {
+
+    @Override
+    public int calculate(FieldComplexityEnvironment environment, int childComplexity) {
+        return (int) Math.min(Integer.MAX_VALUE, 1L + (long) childComplexity * items(environment.getArguments()));
+    }
+
+    private static int items(Map<String, Object> arguments) {
+        Object ids = arguments.get("ids");
+        if (ids instanceof Collection) {
+            return Math.max(1, ((Collection<?>) ids).size());
+        }
+
+        Object size = arguments.get("size");
+        if (size instanceof Integer) {
+            return Math.max(1, (Integer) size);
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,195 @@
+package wolox.training.grpc;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.stereotype.Component;
+import wolox.training.controllers.BookController;
+import wolox.training.grpc.proto.AuthorRequest;
+import wolox.training.grpc.proto.BookId;
+import wolox.training.grpc.proto.BookIds;
+import wolox.training.grpc.proto.BookList;
+import wolox.training.grpc.proto.BookMessage;
+import wolox.training.grpc.proto.BooksGrpc;
+import wolox.training.grpc.proto.Empty;
+import wolox.training.grpc.proto.ListBooksRequest;
+import wolox.training.models.Book;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.repositories.BookSpecifications;
+import wolox.training.repositories.ProjectionRepository;
+
+/**
+ * gRPC mirror of the operations of {@link BookController}, which does the work so both APIs share the caches,
+ * invalidations and audit. The listing is streamed instead: the books are read in chunks of the id order, only the
+ * fields of the message, and the next chunk is read once the client took the previous one. Every chunk is read
+ * through {@link GrpcCalls#call}, under the deadline of the call, and its statement is cancelled if the client
+ * cancels the call while it runs.
+ */
+@Component
+public class BookGrpcService extends BooksGrpc.BooksImplBase {
+
+    private static final Sort ID_ORDER = Sort.by("id");
+
+    private final BookController bookController;
+    private final ProjectionRepository projectionRepository;
+    private final GrpcCalls calls;
+    private final int chunkSize;
+
+    public BookGrpcService(BookController bookController, ProjectionRepository projectionRepository,
+            GrpcCalls calls, @Value("${training.grpc.list-chunk-size:500}") int chunkSize) {
+        this.bookController = bookController;
+        this.projectionRepository = projectionRepository;
+        this.calls = calls;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void getBook(BookId request, StreamObserver<BookMessage> responseObserver) {
+        calls.unary(responseObserver, () -> GrpcMessages.toMessage(bookController.findOne(request.getId())));
+    }
+
+    @Override
+    public void getBooks(BookIds request, StreamObserver<BookList> responseObserver) {
+        calls.unary(responseObserver, () -> {
+            MultiGetResponse<Book> found = bookController.findAllById(request.getIdsList());
+            return BookList.newBuilder()
+                    .addAllBooks(found.getItems().stream().map(GrpcMessages::toMessage).collect(Collectors.toList()))
+                    .addAllMissingIds(found.getMissing())
+                    .build();
+        });
+    }
+
+    @Override
+    public void getBookByAuthor(AuthorRequest request, StreamObserver<BookMessage> responseObserver) {
+        calls.unary(responseObserver,
+                () -> GrpcMessages.toMessage(bookController.findByAuthor(request.getAuthor())));
+    }
+
+    @Override
+    public void listBooks(ListBooksRequest request, StreamObserver<BookMessage> responseObserver) {
+        ServerCallStreamObserver<BookMessage> call = (ServerCallStreamObserver<BookMessage>) responseObserver;
+        BookStream stream = new BookStream(call, BookSpecifications.withFilters(emptyToNull(request.getPublisher()),
+                emptyToNull(request.getGenre()), emptyToNull(request.getYear())));
+        call.setOnCancelHandler(stream::cancel);
+        call.setOnReadyHandler(stream::send);
+    }
+
+    @Override
+    public void createBook(BookMessage request, StreamObserver<BookMessage> responseObserver) {
+        calls.unary(responseObserver,
+                () -> GrpcMessages.toMessage(bookController.create(GrpcMessages.toEntity(request))));
+    }
+
+    /**
+     * Every book is created when it arrives, like a {@code POST /api/books} each, the first invalid one fails the
+     * call and the books created before it are kept
+     */
+    @Override
+    public StreamObserver<BookMessage> createBooks(StreamObserver<BookIds> responseObserver) {
+        return new StreamObserver<>() {
+
+            private final BookIds.Builder ids = BookIds.newBuilder();
+            private boolean failed;
+
+            @Override
+            public void onNext(BookMessage message) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    ids.addIds(calls.call(() -> bookController.create(GrpcMessages.toEntity(message))).getId());
+                } catch (RuntimeException e) {
+                    failed = true;
+                    responseObserver.onError(GrpcCalls.status(e));
+                }
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                failed = true;
+            }
+
+            @Override
+            public void onCompleted() {
+                if (!failed) {
+                    responseObserver.onNext(ids.build());
+                    responseObserver.onCompleted();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void updateBook(BookMessage request, StreamObserver<BookMessage> responseObserver) {
+        calls.unary(responseObserver, () -> GrpcMessages.toMessage(
+                bookController.updateBook(GrpcMessages.toEntity(request), request.getId())));
+    }
+
+    @Override
+    public void deleteBook(BookId request, StreamObserver<Empty> responseObserver) {
+        calls.unary(responseObserver, () -> {
+            bookController.delete(request.getId());
+            return Empty.getDefaultInstance();
+        });
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Sends the books while the transport of the call is ready, gRPC runs the ready and cancel handlers of a call
+     * one at a time
+     */
+    private final class BookStream {
+
+        private final ServerCallStreamObserver<BookMessage> call;
+        private final Specification<Book> filters;
+        private final Deque<Map<String, Object>> chunk = new ArrayDeque<>();
+        private Long lastId;
+        private boolean done;
+
+        BookStream(ServerCallStreamObserver<BookMessage> call, Specification<Book> filters) {
+            this.call = call;
+            this.filters = filters;
+        }
+
+        void send() {
+            try {
+                while (!done && call.isReady()) {
+                    if (chunk.isEmpty() && !readChunk()) {
+                        done = true;
+                        call.onCompleted();
+                        return;
+                    }
+
+                    Map<String, Object> book = chunk.poll();
+                    lastId = (Long) book.get("id");
+                    call.onNext(GrpcMessages.toMessage(book));
+                }
+            } catch (RuntimeException e) {
+                done = true;
+                if (!call.isCancelled()) {
+                    call.onError(GrpcCalls.status(e));
+                }
+            }
+        }
+
+        void cancel() {
+            done = true;
+            chunk.clear();
+        }
+
+        private boolean readChunk() {
+            chunk.addAll(calls.call(() -> projectionRepository.findFirst(Book.class, GrpcMessages.BOOK_FIELDS,
+                    filters.and(BookSpecifications.idAfter(lastId)), ID_ORDER, chunkSize)));
+            return !chunk.isEmpty();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package wolox.training.grpc;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.grpc.Context;
+import io.grpc.Context.CancellationListener;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import java.time.DateTimeException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import wolox.training.deadline.QueryDeadline;
+
+/**
+ * Runs the work of a gRPC call the way a REST request runs: the entity manager stays open until the reply is
+ * built, so the lazy associations can be read like in the view of a request, and the exceptions answered with an
+ * HTTP status by the controllers are answered with the matching gRPC status. The statements of the call follow a
+ * {@link QueryDeadline}, the deadline set by the client or the default one, and they are cancelled if the client
+ * cancels the call.
+ */
+@Component
+public class GrpcCalls {
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final long defaultDeadlineMs;
+
+    public GrpcCalls(EntityManagerFactory entityManagerFactory,
+            @Value("${training.grpc.default-deadline-ms:30000}") long defaultDeadlineMs) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.defaultDeadlineMs = defaultDeadlineMs;
+    }
+
+    /**
+     * This method answers a unary call with the result of the work, or with the status of its exception
+     *
+     * @param observer: the observer of the reply
+     * @param work:     the work of the call, it builds the reply
+     */
+    public <T> void unary(StreamObserver<T> observer, Supplier<T> work) {
+        T reply;
+        try {
+            reply = call(work);
+        } catch (RuntimeException e) {
+            observer.onError(status(e));
+            return;
+        }
+        observer.onNext(reply);
+        observer.onCompleted();
+    }
+
+    /**
+     * This method runs the work with the entity manager open and the deadline of the call
+     *
+     * @param work: the work of the call
+     * @return the result of the work
+     */
+    public <T> T call(Supplier<T> work) {
+        if (TransactionSynchronizationManager.hasResource(entityManagerFactory)) {
+            return withDeadline(work);
+        }
+
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        TransactionSynchronizationManager.bindResource(entityManagerFactory, new EntityManagerHolder(entityManager));
+        try {
+            return withDeadline(work);
+        } finally {
+            TransactionSynchronizationManager.unbindResource(entityManagerFactory);
+            EntityManagerFactoryUtils.closeEntityManager(entityManager);
+        }
+    }
+
+    /**
+     * This method converts an exception to the gRPC status of its {@link ResponseStatus}, the invalid values of
+     * the messages are {@link Status#INVALID_ARGUMENT} and a {@link NullPointerException} is a bug of the service,
+     * {@link Status#INTERNAL}
+     *
+     * @param error: the exception of the work
+     * @return {@link StatusRuntimeException} to send to the client
+     */
+    public static StatusRuntimeException status(RuntimeException error) {
+        if (error instanceof StatusRuntimeException) {
+            return (StatusRuntimeException) error;
+        }
+
+        ResponseStatus responseStatus = AnnotatedElementUtils.findMergedAnnotation(error.getClass(),
+                ResponseStatus.class);
+        Status status;
+        if (Objects.nonNull(responseStatus)) {
+            status = status(responseStatus);
+        } else if (error instanceof IllegalArgumentException || error instanceof DateTimeException) {
+            status = Status.INVALID_ARGUMENT;
+        } else if (error instanceof NullPointerException) {
+            status = Status.INTERNAL;
+        } else {
+            status = Status.UNKNOWN;
+        }
+        return status.withDescription(error.getMessage()).withCause(error).asRuntimeException();
+    }
+
+    private static Status status(ResponseStatus responseStatus) {
+        switch (responseStatus.code()) {
+            case BAD_REQUEST:
+                return Status.INVALID_ARGUMENT;
+            case NOT_FOUND:
+                return Status.NOT_FOUND;
+            case CONFLICT:
+                return Status.ALREADY_EXISTS;
+            case UNPROCESSABLE_ENTITY:
+                return Status.FAILED_PRECONDITION;
+            case SERVICE_UNAVAILABLE:
+                return Status.UNAVAILABLE;
+            default:
+                return Status.UNKNOWN;
+        }
+    }
+
+    private <T> T withDeadline(Supplier<T> work) {
+        Context context = Context.current();
+        Deadline callDeadline = context.getDeadline();
+        QueryDeadline deadline = new QueryDeadline(Objects.isNull(callDeadline)
+                ? defaultDeadlineMs : callDeadline.timeRemaining(TimeUnit.MILLISECONDS));
+        CancellationListener cancel = cancelled -> deadline.cancel();
+        context.addListener(cancel, MoreExecutors.directExecutor());
+        try {
+            return QueryDeadline.callWith(deadline, work);
+        } finally {
+            context.removeListener(cancel);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package wolox.training.grpc;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import wolox.training.grpc.proto.BookMessage;
+import wolox.training.grpc.proto.UserMessage;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.models.constans.ErrorConstants;
+
+/**
+ * Conversions between the entities and the messages of the gRPC services. The messages have no nulls, an empty
+ * string or a zero is an absent value and is left to the validation of the entity, but for an absent date, which
+ * the entity would only see as a null.
+ */
+public final class GrpcMessages {
+
+    public static final List<String> BOOK_FIELDS = List.of("id", "genre", "author", "image", "title", "subTitle",
+            "publisher", "year", "pages", "isbn");
+
+    private GrpcMessages() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    public static BookMessage toMessage(Book book) {
+        BookMessage.Builder message = BookMessage.newBuilder().setId(book.getId());
+        ifPresent(book.getGenre(), message::setGenre);
+        ifPresent(book.getAuthor(), message::setAuthor);
+        ifPresent(book.getImage(), message::setImage);
+        ifPresent(book.getTitle(), message::setTitle);
+        ifPresent(book.getSubTitle(), message::setSubTitle);
+        ifPresent(book.getPublisher(), message::setPublisher);
+        ifPresent(book.getYear(), message::setYear);
+        ifPresent(book.getPages(), message::setPages);
+        ifPresent(book.getIsbn(), message::setIsbn);
+        return message.build();
+    }
+
+    /**
+     * This method converts a row selected by {@link #BOOK_FIELDS}, the book isn't hydrated into an entity
+     */
+    public static BookMessage toMessage(Map<String, Object> book) {
+        BookMessage.Builder message = BookMessage.newBuilder().setId((Long) book.get("id"));
+        ifPresent((String) book.get("genre"), message::setGenre);
+        ifPresent((String) book.get("author"), message::setAuthor);
+        ifPresent((String) book.get("image"), message::setImage);
+        ifPresent((String) book.get("title"), message::setTitle);
+        ifPresent((String) book.get("subTitle"), message::setSubTitle);
+        ifPresent((String) book.get("publisher"), message::setPublisher);
+        ifPresent((String) book.get("year"), message::setYear);
+        ifPresent((Integer) book.get("pages"), message::setPages);
+        ifPresent((String) book.get("isbn"), message::setIsbn);
+        return message.build();
+    }
+
+    public static Book toEntity(BookMessage message) {
+        Book book = new Book(message.getId() == 0 ? null : message.getId());
+        book.setGenre(message.getGenre());
+        book.setAuthor(message.getAuthor());
+        book.setImage(message.getImage());
+        book.setTitle(message.getTitle());
+        book.setSubTitle(message.getSubTitle());
+        book.setPublisher(message.getPublisher());
+        book.setYear(message.getYear());
+        book.setPages(message.getPages());
+        book.setIsbn(message.getIsbn());
+        return book;
+    }
+
+    public static UserMessage toMessage(User user) {
+        UserMessage.Builder message = UserMessage.newBuilder().setId(user.getId());
+        ifPresent(user.getUsername(), message::setUsername);
+        ifPresent(user.getName(), message::setName);
+        ifPresent(user.getBirthDate(), birthDate -> message.setBirthDate(birthDate.toString()));
+        user.getBooks().forEach(book -> message.addBooks(toMessage(book)));
+        return message.build();
+    }
+
+    public static User toEntity(UserMessage message) {
+        User user = new User(message.getId() == 0 ? null : message.getId());
+        user.setUsername(message.getUsername());
+        user.setName(message.getName());
+        if (message.getBirthDate().isEmpty()) {
+            throw new IllegalArgumentException(String.format(ErrorConstants.NOT_NULL, "birthDate"));
+        }
+        user.setBirthDate(LocalDate.parse(message.getBirthDate()));
+        return user;
+    }
+
+    private static <T> void ifPresent(T value, Consumer<T> setter) {
+        if (Objects.nonNull(value)) {
+            setter.accept(value);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package wolox.training.grpc;
+
+import io.grpc.BindableService;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serves the gRPC services on {@code training.grpc.port}, next to the web server of the REST API. It starts after
+ * the web server and stops before it, the calls in flight get {@code training.grpc.shutdown-timeout-ms} to finish.
+ * Enabled with {@code training.grpc.enabled=true}.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "training.grpc.enabled", havingValue = "true")
+public class GrpcServer implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GrpcServer.class);
+
+    private final List<BindableService> services;
+    private final int port;
+    private final long shutdownTimeoutMs;
+
+    private volatile Server server;
+
+    public GrpcServer(List<BindableService> services, @Value("${training.grpc.port:9090}") int port,
+            @Value("${training.grpc.shutdown-timeout-ms:5000}") long shutdownTimeoutMs) {
+        this.services = services;
+        this.port = port;
+        this.shutdownTimeoutMs = shutdownTimeoutMs;
+    }
+
+    @Override
+    public void start() {
+        ServerBuilder<?> builder = ServerBuilder.forPort(port);
+        services.forEach(builder::addService);
+        try {
+            server = builder.build().start();
+        } catch (IOException e) {
+            throw new UncheckedIOException("The gRPC server couldn't listen on port " + port, e);
+        }
+        LOGGER.info("gRPC server listening on port {} with {} services", server.getPort(), services.size());
+    }
+
+    @Override
+    public void stop() {
+        server.shutdown();
+        try {
+            if (!server.awaitTermination(shutdownTimeoutMs, TimeUnit.MILLISECONDS)) {
+                server.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            server.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return Objects.nonNull(server) && !server.isShutdown();
+    }
+
+    /**
+     * This method returns the port the server listens on, the one chosen by the system when the port is 0
+     *
+     * @return the port of the server
+     */
+    public int getPort() {
+        return server.getPort();
+    }
+}
@@ -0,0 +1,90 @@
+package wolox.training.grpc;
+
+import io.grpc.stub.StreamObserver;
+import java.util.stream.Collectors;
+import org.springframework.stereotype.Component;
+import wolox.training.controllers.UserController;
+import wolox.training.grpc.proto.Empty;
+import wolox.training.grpc.proto.Ownership;
+import wolox.training.grpc.proto.UserId;
+import wolox.training.grpc.proto.UserIds;
+import wolox.training.grpc.proto.UserList;
+import wolox.training.grpc.proto.UserMessage;
+import wolox.training.grpc.proto.UsernameRequest;
+import wolox.training.grpc.proto.UsersGrpc;
+import wolox.training.models.User;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.sharding.UserShards;
+
+/**
+ * gRPC mirror of the operations of {@link UserController}, which does the work so both APIs share the caches,
+ * invalidations and audit. The calls on one user run in the shard of the user, like the requests routed by its path.
+ */
+@Component
+public class UserGrpcService extends UsersGrpc.UsersImplBase {
+
+    private final UserController userController;
+    private final UserShards userShards;
+    private final GrpcCalls calls;
+
+    public UserGrpcService(UserController userController, UserShards userShards, GrpcCalls calls) {
+        this.userController = userController;
+        this.userShards = userShards;
+        this.calls = calls;
+    }
+
+    @Override
+    public void getUser(UserId request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver, () -> userShards.on(request.getId(),
+                () -> GrpcMessages.toMessage(userController.findOne(request.getId()))));
+    }
+
+    @Override
+    public void getUsers(UserIds request, StreamObserver<UserList> responseObserver) {
+        calls.unary(responseObserver, () -> {
+            MultiGetResponse<User> found = userController.findAllById(request.getIdsList());
+            return UserList.newBuilder()
+                    .addAllUsers(found.getItems().stream().map(GrpcMessages::toMessage).collect(Collectors.toList()))
+                    .addAllMissingIds(found.getMissing())
+                    .build();
+        });
+    }
+
+    @Override
+    public void getUserByUsername(UsernameRequest request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver,
+                () -> GrpcMessages.toMessage(userController.findByUsername(request.getUsername())));
+    }
+
+    @Override
+    public void createUser(UserMessage request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver,
+                () -> GrpcMessages.toMessage(userController.create(GrpcMessages.toEntity(request))));
+    }
+
+    @Override
+    public void updateUser(UserMessage request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver, () -> userShards.on(request.getId(), () -> GrpcMessages.toMessage(
+                userController.updateUser(GrpcMessages.toEntity(request), request.getId()))));
+    }
+
+    @Override
+    public void deleteUser(UserId request, StreamObserver<Empty> responseObserver) {
+        calls.unary(responseObserver, () -> userShards.on(request.getId(), () -> {
+            userController.delete(request.getId());
+            return Empty.getDefaultInstance();
+        }));
+    }
+
+    @Override
+    public void addBook(Ownership request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver, () -> userShards.on(request.getUserId(), () -> GrpcMessages.toMessage(
+                userController.addBookToUser(request.getUserId(), request.getBookId()))));
+    }
+
+    @Override
+    public void removeBook(Ownership request, StreamObserver<UserMessage> responseObserver) {
+        calls.unary(responseObserver, () -> userShards.on(request.getUserId(), () -> GrpcMessages.toMessage(
+                userController.deleteBookToUser(request.getUserId(), request.getBookId()))));
+    }
+}
@@ -0,0 +1,112 @@
+package wolox.training.history;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Creates and drops the monthly partitions of ownership_history. A partition covers a month in UTC and is named
+ * after it, {@code ownership_history_y2021m03} for March 2021. Every change runs in one statement holding an
+ * advisory lock, so the nodes maintaining the same database don't step on each other.
+ */
+public final class MonthlyPartitions {
+
+    public static final String TABLE = "ownership_history";
+    public static final String DEFAULT_PARTITION = TABLE + "_default";
+
+    private static final Pattern NAME = Pattern.compile(TABLE + "_y(\\d{4})m(\\d{2})");
+    private static final DateTimeFormatter BOUND = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ssXXX");
+    private static final String SELECT_PARTITIONS = "SELECT child.relname FROM pg_inherits "
+            + "JOIN pg_class child ON child.oid = pg_inherits.inhrelid "
+            + "WHERE pg_inherits.inhparent = '" + TABLE + "'::regclass";
+    private static final String LOCK = "PERFORM pg_advisory_xact_lock(hashtext('" + TABLE + "'));";
+
+    /**
+     * The changes of the month already kept by the default partition are moved into the new one, Postgres refuses
+     * to attach a partition whose rows are in the default one
+     */
+    private static final String CREATE_PARTITION = "DO $$ BEGIN " + LOCK
+            + " IF to_regclass('%1$s') IS NULL THEN"
+            + " CREATE TABLE %1$s (LIKE " + TABLE + " INCLUDING DEFAULTS INCLUDING CONSTRAINTS);"
+            + " WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+            + " WHERE changed_at >= '%2$s' AND changed_at < '%3$s'"
+            + " RETURNING user_id, book_id, action, changed_at, seq)"
+            + " INSERT INTO %1$s (user_id, book_id, action, changed_at, seq) SELECT * FROM moved;"
+            + " ALTER TABLE " + TABLE + " ATTACH PARTITION %1$s FOR VALUES FROM ('%2$s') TO ('%3$s');"
+            + " END IF; END $$";
+    private static final String DROP_PARTITION = "DO $$ BEGIN " + LOCK + " DROP TABLE IF EXISTS %s; END $$";
+    private static final String DELETE_DEFAULT_BEFORE = "DELETE FROM " + DEFAULT_PARTITION
+            + " WHERE changed_at < ?::timestamptz";
+
+    private MonthlyPartitions() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method returns the months with a partition
+     *
+     * @param jdbcTemplate: the {@link JdbcTemplate} of the database
+     * @return {@link List<YearMonth>} ordered by month
+     */
+    public static List<YearMonth> existing(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList(SELECT_PARTITIONS, String.class).stream()
+                .map(MonthlyPartitions::month)
+                .filter(Objects::nonNull)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This method creates the partition of a month, nothing is done when it already exists
+     *
+     * @param jdbcTemplate: the {@link JdbcTemplate} of the database
+     * @param month:        the month of the partition
+     */
+    public static void create(JdbcTemplate jdbcTemplate, YearMonth month) {
+        jdbcTemplate.execute(String.format(CREATE_PARTITION, name(month), bound(month), bound(month.plusMonths(1))));
+    }
+
+    /**
+     * This method drops the partitions of the months before a month and deletes the changes of those months kept
+     * by the default partition
+     *
+     * @param jdbcTemplate: the {@link JdbcTemplate} of the database
+     * @param month:        the first month kept
+     * @return {@link List<YearMonth>} the months whose partitions were dropped
+     */
+    public static List<YearMonth> dropBefore(JdbcTemplate jdbcTemplate, YearMonth month) {
+        List<YearMonth> expired = existing(jdbcTemplate).stream()
+                .filter(existing -> existing.isBefore(month))
+                .collect(Collectors.toList());
+        expired.forEach(existing -> jdbcTemplate.execute(String.format(DROP_PARTITION, name(existing))));
+        jdbcTemplate.update(DELETE_DEFAULT_BEFORE, bound(month));
+        return expired;
+    }
+
+    /**
+     * This method returns the name of the partition of a month
+     *
+     * @param month: the month of the partition
+     * @return the name of the table
+     */
+    public static String name(YearMonth month) {
+        return String.format("%s_y%04dm%02d", TABLE, month.getYear(), month.getMonthValue());
+    }
+
+    private static YearMonth month(String name) {
+        Matcher matcher = NAME.matcher(name);
+        return matcher.matches()
+                ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)))
+                : null;
+    }
+
+    private static String bound(YearMonth month) {
+        return month.atDay(1).atStartOfDay().atOffset(ZoneOffset.UTC).format(BOUND);
+    }
+}
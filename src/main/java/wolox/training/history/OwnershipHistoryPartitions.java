@@ -0,0 +1,95 @@
+package wolox.training.history;
+
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Keeps the monthly partitions of ownership_history in every shard: the partitions of the current month and of the
+ * next {@code training.history.premake-months} exist before their changes are written, and the partitions older
+ * than {@code training.history.retention-months} are dropped, which removes the expired changes without deleting
+ * them row by row. The partitions are checked when the node starts and every
+ * {@code training.history.check-interval-ms}; a shard that can't be maintained keeps its partitions until the next
+ * check, its changes still have the default partition.
+ */
+@Component
+@Lazy(false)
+public class OwnershipHistoryPartitions implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OwnershipHistoryPartitions.class);
+
+    private final UserShards userShards;
+    private final int premakeMonths;
+    private final int retentionMonths;
+    private final long checkIntervalMs;
+
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public OwnershipHistoryPartitions(UserShards userShards,
+            @Value("${training.history.premake-months:3}") int premakeMonths,
+            @Value("${training.history.retention-months:24}") int retentionMonths,
+            @Value("${training.history.check-interval-ms:3600000}") long checkIntervalMs) {
+        this.userShards = userShards;
+        this.premakeMonths = premakeMonths;
+        this.retentionMonths = retentionMonths;
+        this.checkIntervalMs = checkIntervalMs;
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ownership-history-partitions");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintainQuietly();
+        running = true;
+        scheduler.scheduleWithFixedDelay(this::maintainQuietly, checkIntervalMs, checkIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    void maintain(JdbcTemplate jdbcTemplate, YearMonth current) {
+        for (int month = 0; month <= premakeMonths; month++) {
+            MonthlyPartitions.create(jdbcTemplate, current.plusMonths(month));
+        }
+        List<YearMonth> dropped = MonthlyPartitions.dropBefore(jdbcTemplate, current.minusMonths(retentionMonths - 1L));
+        if (!dropped.isEmpty()) {
+            LOGGER.info("Ownership history partitions of {} dropped", dropped);
+        }
+    }
+
+    private void maintainQuietly() {
+        YearMonth current = YearMonth.now(ZoneOffset.UTC);
+        for (int shard = 0; shard < userShards.count(); shard++) {
+            try {
+                maintain(userShards.jdbcTemplate(shard), current);
+            } catch (RuntimeException e) {
+                LOGGER.warn("Ownership history partitions of shard {} couldn't be maintained, retrying in {} ms",
+                        shard, checkIntervalMs, e);
+            }
+        }
+    }
+}
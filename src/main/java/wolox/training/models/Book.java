@@ -8,6 +8,8 @@ import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 import org.apache.commons.lang3.StringUtils;
 import wolox.training.models.constans.ErrorConstants;
 
@@ -17,6 +19,12 @@ import wolox.training.models.constans.ErrorConstants;
  * @author Daniel De La Pava
  */
 @Entity
+@Table(indexes = {
+        @Index(name = "book_publisher_idx", columnList = "publisher"),
+        @Index(name = "book_genre_idx", columnList = "genre"),
+        @Index(name = "book_year_idx", columnList = "year"),
+        @Index(name = "book_author_idx", columnList = "author")
+})
 @ApiModel(description = "Book from data base")
 public class Book {
 
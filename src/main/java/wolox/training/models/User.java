@@ -6,17 +6,25 @@ import io.swagger.annotations.ApiModel;
 import io.swagger.annotations.ApiModelProperty;
 import java.time.LocalDate;
 import java.util.Collections;
-import java.util.LinkedList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.JoinColumn;
+import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.GenericGenerator;
 import wolox.training.exceptions.BookAlreadyOwnedException;
 import wolox.training.models.constans.ErrorConstants;
+import wolox.training.sharding.AssignedOrSequenceGenerator;
 
 /**
  * Represents struct a user.
@@ -24,12 +32,20 @@ import wolox.training.models.constans.ErrorConstants;
  * @author Daniel De La Pava
  */
 @Entity
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "users_username_idx", columnList = "username"),
+        @Index(name = "users_birth_date_idx", columnList = "birthDate")
+})
 @ApiModel(description = "User from data base")
 public class User {
 
+    /**
+     * Taken from the default sequence, or from the sequence of the primary shard when the users are sharded
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = AssignedOrSequenceGenerator.NAME)
+    @GenericGenerator(name = AssignedOrSequenceGenerator.NAME,
+            strategy = "wolox.training.sharding.AssignedOrSequenceGenerator")
     private Long id;
 
     @ApiModelProperty(notes = "The user username: is the username to login", required = true)
@@ -45,12 +61,23 @@ public class User {
     private LocalDate birthDate;
 
     /**
-     * Represents the foreign association between user and book
+     * Represents the foreign association between user and book, the books of the users of a list are loaded together
+     * in batches instead of one query per user. It is mapped as a set so replacing the books only writes the rows
+     * that changed, the triggers of the join table record every row written as a change of ownership.
      */
     @ApiModelProperty(notes = "The user books: are the books associated with a user", required = false)
     @ManyToMany(cascade = {CascadeType.REFRESH, CascadeType.MERGE})
+    @JoinTable(name = "users_books",
+            joinColumns = @JoinColumn(name = "users_id"),
+            inverseJoinColumns = @JoinColumn(name = "books_id"),
+            uniqueConstraints = @UniqueConstraint(name = "users_books_unique", columnNames = {"users_id", "books_id"}),
+            indexes = {
+                    @Index(name = "users_books_users_idx", columnList = "users_id"),
+                    @Index(name = "users_books_books_idx", columnList = "books_id")
+            })
+    @BatchSize(size = 100)
     @NotNull
-    private List<Book> books = new LinkedList<>();
+    private Set<Book> books = new LinkedHashSet<>();
 
     public User() {
         // Constructor for JPA
@@ -64,6 +91,10 @@ public class User {
         return id;
     }
 
+    public void setId(Long id) {
+        this.id = id;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -97,12 +128,12 @@ public class User {
         this.birthDate = birthDate;
     }
 
-    public List<Book> getBooks() {
-        return (List<Book>) Collections.unmodifiableList(books);
+    public Set<Book> getBooks() {
+        return Collections.unmodifiableSet(books);
     }
 
     public void setBooks(List<Book> books) {
-        this.books = books;
+        this.books = new LinkedHashSet<>(books);
     }
 
     public void addBook(Book book) {
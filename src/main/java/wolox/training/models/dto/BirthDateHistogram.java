@@ -0,0 +1,99 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.util.List;
+
+/**
+ * Represents the number of users per birth year and per age range.
+ */
+@ApiModel(description = "Users counted by birth year and by age")
+public class BirthDateHistogram {
+
+    @ApiModelProperty(notes = "Number of users that match the filters")
+    private final long users;
+
+    @ApiModelProperty(notes = "Users per birth year, in ascending order")
+    private final List<YearCount> birthYears;
+
+    @ApiModelProperty(notes = "Users per age range, in ascending order")
+    private final List<AgeCount> ages;
+
+    public BirthDateHistogram(long users, List<YearCount> birthYears, List<AgeCount> ages) {
+        this.users = users;
+        this.birthYears = birthYears;
+        this.ages = ages;
+    }
+
+    public long getUsers() {
+        return users;
+    }
+
+    public List<YearCount> getBirthYears() {
+        return birthYears;
+    }
+
+    public List<AgeCount> getAges() {
+        return ages;
+    }
+
+    /**
+     * Represents the users born in a year.
+     */
+    @ApiModel(description = "Users born in a year")
+    public static class YearCount {
+
+        @ApiModelProperty(notes = "The birth year")
+        private final int year;
+
+        @ApiModelProperty(notes = "Number of users born in the year")
+        private final long users;
+
+        public YearCount(int year, long users) {
+            this.year = year;
+            this.users = users;
+        }
+
+        public int getYear() {
+            return year;
+        }
+
+        public long getUsers() {
+            return users;
+        }
+    }
+
+    /**
+     * Represents the users whose age is in a range.
+     */
+    @ApiModel(description = "Users whose age is in a range")
+    public static class AgeCount {
+
+        @ApiModelProperty(notes = "First age of the range")
+        private final int fromAge;
+
+        @ApiModelProperty(notes = "Last age of the range")
+        private final int toAge;
+
+        @ApiModelProperty(notes = "Number of users whose age is in the range")
+        private final long users;
+
+        public AgeCount(int fromAge, int toAge, long users) {
+            this.fromAge = fromAge;
+            this.toAge = toAge;
+            this.users = users;
+        }
+
+        public int getFromAge() {
+            return fromAge;
+        }
+
+        public int getToAge() {
+            return toAge;
+        }
+
+        public long getUsers() {
+            return users;
+        }
+    }
+}
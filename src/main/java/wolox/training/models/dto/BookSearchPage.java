@@ -0,0 +1,32 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.util.List;
+import wolox.training.models.Book;
+
+/**
+ * Represents a page of a full-text search of the books.
+ */
+@ApiModel(description = "Page of the books that match a search")
+public class BookSearchPage {
+
+    @ApiModelProperty(notes = "The books of the page, the best ranked first")
+    private final List<Book> books;
+
+    @ApiModelProperty(notes = "Cursor of the next page, null on the last page")
+    private final String next;
+
+    public BookSearchPage(List<Book> books, String next) {
+        this.books = books;
+        this.next = next;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public String getNext() {
+        return next;
+    }
+}
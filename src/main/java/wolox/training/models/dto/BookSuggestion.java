@@ -0,0 +1,38 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Represents a book suggested while its title or author is typed.
+ */
+@ApiModel(description = "Book whose title or author starts with the typed text")
+public class BookSuggestion {
+
+    @ApiModelProperty(notes = "The book ID")
+    private final long id;
+
+    @ApiModelProperty(notes = "The book title")
+    private final String title;
+
+    @ApiModelProperty(notes = "The book author")
+    private final String author;
+
+    public BookSuggestion(long id, String title, String author) {
+        this.id = id;
+        this.title = title;
+        this.author = author;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getAuthor() {
+        return author;
+    }
+}
@@ -0,0 +1,45 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.util.Map;
+
+/**
+ * Body of a GraphQL request.
+ */
+@ApiModel(description = "GraphQL query with its operation and variables")
+public class GraphQLRequest {
+
+    @ApiModelProperty(notes = "The query over the users and books", required = true)
+    private String query;
+
+    @ApiModelProperty(notes = "The operation of the query to run, when it has several")
+    private String operationName;
+
+    @ApiModelProperty(notes = "The values of the variables of the query")
+    private Map<String, Object> variables;
+
+    public String getQuery() {
+        return query;
+    }
+
+    public void setQuery(String query) {
+        this.query = query;
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public void setOperationName(String operationName) {
+        this.operationName = operationName;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    public void setVariables(Map<String, Object> variables) {
+        this.variables = variables;
+    }
+}
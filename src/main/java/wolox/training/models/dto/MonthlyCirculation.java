@@ -0,0 +1,39 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.time.YearMonth;
+
+/**
+ * Number of times a book was added to and removed from the users in one month.
+ */
+@ApiModel(description = "Circulation of a book in one month")
+public class MonthlyCirculation {
+
+    @ApiModelProperty(notes = "The month, in UTC")
+    private final YearMonth month;
+
+    @ApiModelProperty(notes = "Times the book was added to a user")
+    private final long added;
+
+    @ApiModelProperty(notes = "Times the book was removed from a user")
+    private final long removed;
+
+    public MonthlyCirculation(YearMonth month, long added, long removed) {
+        this.month = month;
+        this.added = added;
+        this.removed = removed;
+    }
+
+    public YearMonth getMonth() {
+        return month;
+    }
+
+    public long getAdded() {
+        return added;
+    }
+
+    public long getRemoved() {
+        return removed;
+    }
+}
@@ -0,0 +1,57 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Result of a lookup by a list of ids.
+ *
+ * @param <T> type of the entities found
+ */
+@ApiModel(description = "Entities found for a list of ids")
+public class MultiGetResponse<T> {
+
+    @ApiModelProperty(notes = "The entities found, in the order of the requested ids")
+    private final List<T> items;
+
+    @ApiModelProperty(notes = "The requested ids that don't exist")
+    private final List<Long> missing;
+
+    private MultiGetResponse(List<T> items, List<Long> missing) {
+        this.items = items;
+        this.missing = missing;
+    }
+
+    /**
+     * This method arranges the entities found in the order of the requested ids
+     *
+     * @param ids:   requested ids, without duplicates
+     * @param found: entities found by id
+     * @return {@link MultiGetResponse}
+     */
+    public static <T> MultiGetResponse<T> of(List<Long> ids, Map<Long, T> found) {
+        List<T> items = new ArrayList<>(found.size());
+        List<Long> missing = new ArrayList<>();
+        for (Long id : ids) {
+            T item = found.get(id);
+            if (Objects.isNull(item)) {
+                missing.add(id);
+            } else {
+                items.add(item);
+            }
+        }
+        return new MultiGetResponse<>(items, missing);
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public List<Long> getMissing() {
+        return missing;
+    }
+}
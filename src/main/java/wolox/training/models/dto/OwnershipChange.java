@@ -0,0 +1,38 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+
+/**
+ * Outcome of adding or removing one book in a bulk ownership change.
+ */
+@ApiModel(description = "Result of the ownership change of one book")
+public class OwnershipChange {
+
+    public enum Outcome {
+        ADDED,
+        ALREADY_OWNED,
+        REMOVED,
+        NOT_OWNED,
+        BOOK_NOT_FOUND
+    }
+
+    @ApiModelProperty(notes = "The id of the book")
+    private final Long bookId;
+
+    @ApiModelProperty(notes = "What happened with the book")
+    private final Outcome outcome;
+
+    public OwnershipChange(Long bookId, Outcome outcome) {
+        this.bookId = bookId;
+        this.outcome = outcome;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+}
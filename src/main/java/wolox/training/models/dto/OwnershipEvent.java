@@ -0,0 +1,44 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import java.time.OffsetDateTime;
+
+/**
+ * One book added to or removed from a user, as recorded in the ownership history.
+ */
+@ApiModel(description = "Ownership change of one book of a user")
+public class OwnershipEvent {
+
+    public enum Action {
+        ADDED,
+        REMOVED
+    }
+
+    @ApiModelProperty(notes = "The id of the book")
+    private final Long bookId;
+
+    @ApiModelProperty(notes = "Whether the book was added or removed")
+    private final Action action;
+
+    @ApiModelProperty(notes = "When the change was made, in UTC")
+    private final OffsetDateTime changedAt;
+
+    public OwnershipEvent(Long bookId, Action action, OffsetDateTime changedAt) {
+        this.bookId = bookId;
+        this.action = action;
+        this.changedAt = changedAt;
+    }
+
+    public Long getBookId() {
+        return bookId;
+    }
+
+    public Action getAction() {
+        return action;
+    }
+
+    public OffsetDateTime getChangedAt() {
+        return changedAt;
+    }
+}
@@ -0,0 +1,31 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import wolox.training.models.Book;
+
+/**
+ * Represents a book of the popularity ranking.
+ */
+@ApiModel(description = "Book ranked by its number of owners")
+public class PopularBook {
+
+    @ApiModelProperty(notes = "The ranked book")
+    private final Book book;
+
+    @ApiModelProperty(notes = "Number of users that own the book")
+    private final long owners;
+
+    public PopularBook(Book book, long owners) {
+        this.book = book;
+        this.owners = owners;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public long getOwners() {
+        return owners;
+    }
+}
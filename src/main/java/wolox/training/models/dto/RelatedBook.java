@@ -0,0 +1,31 @@
+package wolox.training.models.dto;
+
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import wolox.training.models.Book;
+
+/**
+ * Represents a book often owned together with another book.
+ */
+@ApiModel(description = "Book owned by the owners of another book")
+public class RelatedBook {
+
+    @ApiModelProperty(notes = "The related book")
+    private final Book book;
+
+    @ApiModelProperty(notes = "Number of users that own both books")
+    private final int owners;
+
+    public RelatedBook(Book book, int owners) {
+        this.book = book;
+        this.owners = owners;
+    }
+
+    public Book getBook() {
+        return book;
+    }
+
+    public int getOwners() {
+        return owners;
+    }
+}
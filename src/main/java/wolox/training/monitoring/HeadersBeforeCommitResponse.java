@@ -0,0 +1,147 @@
+package wolox.training.monitoring;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Objects;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Runs an action right before the first byte of the body, a flush, an error or a redirect reaches the response,
+ * while it can still take headers. The body is written through, never buffered.
+ */
+class HeadersBeforeCommitResponse extends HttpServletResponseWrapper {
+
+    private final Runnable setHeaders;
+    private boolean headersSet;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    HeadersBeforeCommitResponse(HttpServletResponse response, Runnable setHeaders) {
+        super(response);
+        this.setHeaders = setHeaders;
+    }
+
+    /**
+     * This method sets the headers unless they are set or the response is committed
+     */
+    void setHeaders() {
+        if (!headersSet && !isCommitted()) {
+            setHeaders.run();
+        }
+        headersSet = true;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (Objects.isNull(outputStream)) {
+            outputStream = new HeadersOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (Objects.isNull(writer)) {
+            writer = new PrintWriter(new HeadersWriter(super.getWriter()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        setHeaders();
+        super.flushBuffer();
+    }
+
+    @Override
+    public void sendError(int status) throws IOException {
+        setHeaders();
+        super.sendError(status);
+    }
+
+    @Override
+    public void sendError(int status, String message) throws IOException {
+        setHeaders();
+        super.sendError(status, message);
+    }
+
+    @Override
+    public void sendRedirect(String location) throws IOException {
+        setHeaders();
+        super.sendRedirect(location);
+    }
+
+    private class HeadersOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream target;
+
+        HeadersOutputStream(ServletOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            setHeaders();
+            target.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            setHeaders();
+            target.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            setHeaders();
+            target.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            setHeaders();
+            target.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+            target.setWriteListener(listener);
+        }
+    }
+
+    private class HeadersWriter extends Writer {
+
+        private final PrintWriter target;
+
+        HeadersWriter(PrintWriter target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) {
+            setHeaders();
+            target.write(chars, offset, length);
+        }
+
+        @Override
+        public void flush() {
+            setHeaders();
+            target.flush();
+        }
+
+        @Override
+        public void close() {
+            setHeaders();
+            target.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package wolox.training.monitoring;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.context.request.async.CallableProcessingInterceptor;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.WebUtils;
+import wolox.training.controllers.BookController;
+import wolox.training.controllers.GraphQLController;
+import wolox.training.controllers.UserController;
+
+/**
+ * Counts the statements of every API request and returns them in the {@code X-Query-Count} and
+ * {@code Server-Timing} headers. The body isn't buffered, the headers are set right before its first byte is written,
+ * so a statement run after the first flush of a large body, like the lazy loading of the books of a user, is only
+ * counted by the log. Requests to the book and user endpoints above the query count or time budget are logged with
+ * their SQL.
+ */
+@Component
+public class QueryCountFilter extends OncePerRequestFilter {
+
+    public static final String QUERY_COUNT_HEADER = "X-Query-Count";
+    public static final String SERVER_TIMING_HEADER = "Server-Timing";
+    private static final String API_PATH = "/api/";
+    private static final String STATS_ATTRIBUTE = QueryCountFilter.class.getName() + ".STATS";
+    private static final List<Class<?>> BUDGETED_CONTROLLERS = Arrays.asList(BookController.class,
+            UserController.class, GraphQLController.class);
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryCountFilter.class);
+
+    private final int maxQueries;
+    private final long maxTimeMs;
+
+    public QueryCountFilter(@Value("${training.query-count.max-queries:20}") int maxQueries,
+            @Value("${training.query-count.max-time-ms:250}") long maxTimeMs) {
+        this.maxQueries = maxQueries;
+        this.maxTimeMs = maxTimeMs;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith(API_PATH);
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    /**
+     * An async request is counted from the thread that starts it, through the thread that runs its work, to the
+     * dispatch that writes its response, where the headers are set
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        HeadersBeforeCommitResponse counted = WebUtils.getNativeResponse(response, HeadersBeforeCommitResponse.class);
+        QueryStats stats = (QueryStats) request.getAttribute(STATS_ATTRIBUTE);
+        boolean resumed = isAsyncDispatch(request) && Objects.nonNull(counted) && Objects.nonNull(stats);
+        if (resumed) {
+            QueryStats.resume(stats);
+        } else {
+            QueryStats started = QueryStats.begin();
+            counted = new HeadersBeforeCommitResponse(response, () -> setHeaders(response, started));
+            stats = started;
+            countAsyncWork(request, stats);
+        }
+
+        try {
+            chain.doFilter(request, resumed ? response : counted);
+        } finally {
+            QueryStats.end();
+            if (!isAsyncStarted(request)) {
+                counted.setHeaders();
+                logIfOverBudget(request, stats);
+            }
+        }
+    }
+
+    private static void setHeaders(HttpServletResponse response, QueryStats stats) {
+        response.setHeader(QUERY_COUNT_HEADER, String.valueOf(stats.getCount()));
+        response.setHeader(SERVER_TIMING_HEADER, String.format(Locale.ROOT,
+                "db;dur=%.3f;desc=\"%d queries, %d rows\"", stats.getMillis(), stats.getCount(), stats.getRows()));
+    }
+
+    private void countAsyncWork(HttpServletRequest request, QueryStats stats) {
+        request.setAttribute(STATS_ATTRIBUTE, stats);
+        WebAsyncUtils.getAsyncManager(request).registerCallableInterceptor(STATS_ATTRIBUTE,
+                new CallableProcessingInterceptor() {
+                    @Override
+                    public <T> void preProcess(NativeWebRequest webRequest, Callable<T> task) {
+                        QueryStats.resume(stats);
+                    }
+
+                    @Override
+                    public <T> void postProcess(NativeWebRequest webRequest, Callable<T> task, Object result) {
+                        QueryStats.end();
+                    }
+                });
+    }
+
+    private void logIfOverBudget(HttpServletRequest request, QueryStats stats) {
+        if (stats.getCount() <= maxQueries && stats.getMillis() <= maxTimeMs) {
+            return;
+        }
+
+        Object handler = request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+        if (!(handler instanceof HandlerMethod)
+                || !BUDGETED_CONTROLLERS.contains(((HandlerMethod) handler).getBeanType())) {
+            return;
+        }
+
+        LOGGER.warn("{} {} ran {} queries in {} ms reading {} rows, the budget is {} queries and {} ms:\n{}",
+                request.getMethod(), request.getRequestURI(), stats.getCount(),
+                String.format(Locale.ROOT, "%.3f", stats.getMillis()), stats.getRows(), maxQueries, maxTimeMs,
+                String.join("\n", stats.getStatements()));
+    }
+}
@@ -0,0 +1,129 @@
+package wolox.training.monitoring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Objects;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Wraps the connections of the pool in JDK proxies that record every executed statement, the time it took and the
+ * rows read from its result sets in the {@link QueryStats} of the thread. When the thread isn't counted the
+ * statements are only forwarded. {@code unwrap} reaches the driver objects as usual.
+ */
+public class QueryCountingDataSource extends DelegatingDataSource {
+
+    public QueryCountingDataSource(DataSource target) {
+        super(target);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection()));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return proxy(Connection.class, new ConnectionHandler(super.getConnection(username, password)));
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(QueryCountingDataSource.class.getClassLoader(), new Class<?>[]{type},
+                handler));
+    }
+
+    /**
+     * Proxies are compared by identity, the pool and Hibernate keep statements and result sets in hash maps
+     */
+    private static Object invoke(Object proxy, Object target, Method method, Object[] args) throws Throwable {
+        if ("equals".equals(method.getName()) && method.getParameterCount() == 1) {
+            return proxy == args[0];
+        }
+        if ("hashCode".equals(method.getName()) && method.getParameterCount() == 0) {
+            return System.identityHashCode(proxy);
+        }
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getTargetException();
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection target;
+
+        ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = QueryCountingDataSource.invoke(proxy, target, method, args);
+            String sql = Objects.nonNull(args) && args.length > 0 && args[0] instanceof String ? (String) args[0] : null;
+            if (result instanceof CallableStatement) {
+                return proxy(CallableStatement.class, new StatementHandler((Statement) result, sql));
+            }
+            if (result instanceof PreparedStatement) {
+                return proxy(PreparedStatement.class, new StatementHandler((Statement) result, sql));
+            }
+            if (result instanceof Statement) {
+                return proxy(Statement.class, new StatementHandler((Statement) result, null));
+            }
+            return result;
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement target;
+        private final String preparedSql;
+
+        StatementHandler(Statement target, String preparedSql) {
+            this.target = target;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            QueryStats stats = QueryStats.current();
+            String name = method.getName();
+            if (Objects.isNull(stats)) {
+                return QueryCountingDataSource.invoke(proxy, target, method, args);
+            }
+
+            if (name.startsWith("execute")) {
+                long start = System.nanoTime();
+                Object result = QueryCountingDataSource.invoke(proxy, target, method, args);
+                String sql = Objects.nonNull(args) && args.length > 0 && args[0] instanceof String
+                        ? (String) args[0] : preparedSql;
+                stats.recordStatement(sql, System.nanoTime() - start);
+                return result instanceof ResultSet ? countRows((ResultSet) result, stats) : result;
+            }
+
+            Object result = QueryCountingDataSource.invoke(proxy, target, method, args);
+            if (result instanceof ResultSet && ("getResultSet".equals(name) || "getGeneratedKeys".equals(name))) {
+                return countRows((ResultSet) result, stats);
+            }
+            return result;
+        }
+
+        private ResultSet countRows(ResultSet resultSet, QueryStats stats) {
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                Object result = QueryCountingDataSource.invoke(proxy, resultSet, method, args);
+                if ("next".equals(method.getName()) && Boolean.TRUE.equals(result)) {
+                    stats.recordRow();
+                }
+                return result;
+            });
+        }
+    }
+}
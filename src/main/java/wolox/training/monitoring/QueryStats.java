@@ -0,0 +1,92 @@
+package wolox.training.monitoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Statements, database time and rows fetched by the current request. The stats are bound to the thread that
+ * serves the request by {@link QueryCountFilter} and filled by {@link QueryCountingDataSource}, statements run by
+ * background threads are not counted.
+ */
+public class QueryStats {
+
+    /**
+     * Statements whose SQL is kept for the slow request log, the rest are only counted
+     */
+    public static final int MAX_RECORDED_STATEMENTS = 50;
+
+    private static final ThreadLocal<QueryStats> CURRENT = new ThreadLocal<>();
+
+    private final List<String> statements = new ArrayList<>();
+    private int count;
+    private long nanos;
+    private long rows;
+
+    /**
+     * This method starts counting the statements of the current thread
+     *
+     * @return {@link QueryStats} of the thread
+     */
+    public static QueryStats begin() {
+        QueryStats stats = new QueryStats();
+        CURRENT.set(stats);
+        return stats;
+    }
+
+    /**
+     * This method goes on counting the statements of a request in the current thread, like the thread that runs
+     * the work of an async request
+     *
+     * @param stats: the stats of the request
+     */
+    public static void resume(QueryStats stats) {
+        CURRENT.set(stats);
+    }
+
+    /**
+     * This method returns the stats of the current thread
+     *
+     * @return {@link QueryStats} or null when the thread isn't counted
+     */
+    public static QueryStats current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * This method stops counting the statements of the current thread
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    void recordStatement(String sql, long elapsedNanos) {
+        count++;
+        nanos += elapsedNanos;
+        if (statements.size() < MAX_RECORDED_STATEMENTS) {
+            statements.add(Objects.isNull(sql) ? "batch" : sql);
+        }
+    }
+
+    void recordRow() {
+        rows++;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public double getMillis() {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public List<String> getStatements() {
+        return Collections.unmodifiableList(statements);
+    }
+}
@@ -0,0 +1,185 @@
+package wolox.training.popularity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Books ordered by owner count, overall and per genre. Owner counts go down as well as up, so a bounded heap of the
+ * top books would need the whole genre to refill it after a decrement: every book is kept in the ordered set of its
+ * genre instead, an update costs a logarithmic remove and insert and the top-N is the head of the set.
+ */
+public class BookRanking {
+
+    private static final Comparator<Ranked> ORDER = Comparator.comparingLong(Ranked::getOwners).reversed()
+            .thenComparingLong(Ranked::getBookId);
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Ranked> books = new HashMap<>();
+    private final NavigableSet<Ranked> all = new TreeSet<>(ORDER);
+    private final Map<String, NavigableSet<Ranked>> byGenre = new HashMap<>();
+
+    /**
+     * This method sets the genre and owner count of a book
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @param genre:  this is the genre the book
+     * @param owners: number of users that own the book
+     */
+    public void set(long bookId, String genre, long owners) {
+        lock.writeLock().lock();
+        try {
+            remove(books.get(bookId));
+            add(new Ranked(bookId, genre, owners));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method changes the owner count of a book, unknown books are ignored until they are set
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @param delta:  owners added, negative when removed
+     * @return {@link Boolean} false when the book is unknown
+     */
+    public boolean add(long bookId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Ranked current = books.get(bookId);
+            if (Objects.nonNull(current)) {
+                remove(current);
+                add(new Ranked(bookId, current.getGenre(), Math.max(0, current.getOwners() + delta)));
+            }
+            return Objects.nonNull(current);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes a book from the ranking
+     *
+     * @param bookId: this is the unique identifier of the book
+     */
+    public void remove(long bookId) {
+        lock.writeLock().lock();
+        try {
+            remove(books.get(bookId));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the books with most owners
+     *
+     * @param genre: this is the genre the book, every genre when null
+     * @param limit: maximum number of books to return
+     * @return {@link List<Ranked>} ordered by owners, then by id
+     */
+    public List<Ranked> top(String genre, int limit) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Ranked> ranking = Objects.isNull(genre) ? all : byGenre.get(genre);
+            if (Objects.isNull(ranking)) {
+                return Collections.emptyList();
+            }
+
+            List<Ranked> top = new ArrayList<>(Math.min(limit, ranking.size()));
+            Iterator<Ranked> iterator = ranking.iterator();
+            while (top.size() < limit && iterator.hasNext()) {
+                top.add(iterator.next());
+            }
+            return top;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long owners(long bookId) {
+        lock.readLock().lock();
+        try {
+            Ranked ranked = books.get(bookId);
+            return Objects.isNull(ranked) ? 0 : ranked.getOwners();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return books.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            books.clear();
+            all.clear();
+            byGenre.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Ranked ranked) {
+        books.put(ranked.getBookId(), ranked);
+        all.add(ranked);
+        byGenre.computeIfAbsent(ranked.getGenre(), genre -> new TreeSet<>(ORDER)).add(ranked);
+    }
+
+    private void remove(Ranked ranked) {
+        if (Objects.isNull(ranked)) {
+            return;
+        }
+        books.remove(ranked.getBookId());
+        all.remove(ranked);
+        NavigableSet<Ranked> genre = byGenre.get(ranked.getGenre());
+        genre.remove(ranked);
+        if (genre.isEmpty()) {
+            byGenre.remove(ranked.getGenre());
+        }
+    }
+
+    /**
+     * Represents the position data of a book in the ranking.
+     */
+    public static class Ranked {
+
+        private final long bookId;
+        private final String genre;
+        private final long owners;
+
+        public Ranked(long bookId, String genre, long owners) {
+            this.bookId = bookId;
+            this.genre = genre;
+            this.owners = owners;
+        }
+
+        public long getBookId() {
+            return bookId;
+        }
+
+        public String getGenre() {
+            return genre;
+        }
+
+        public long getOwners() {
+            return owners;
+        }
+    }
+}
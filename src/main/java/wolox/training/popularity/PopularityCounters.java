@@ -0,0 +1,366 @@
+package wolox.training.popularity;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+import wolox.training.concurrency.AfterCommit;
+import wolox.training.popularity.BookRanking.Ranked;
+
+/**
+ * Counts the owners of every book to answer {@code GET /api/books/top} without aggregating the users_books join
+ * table per request. An ownership change only increments a {@link LongAdder} of the book once its transaction is
+ * committed, so concurrent changes of a popular book don't contend on one counter. One background thread moves the
+ * counted changes into the {@link BookRanking} every second, adds them to the {@code owner_count} column of the
+ * books in one statement every few seconds and reads the column again every minute, which brings in the changes
+ * flushed by the other nodes. The deltas of a crashed node are lost, so every hour the column is counted again from
+ * users_books.
+ */
+@Component
+@Lazy(false)
+public class PopularityCounters implements SmartLifecycle, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PopularityCounters.class);
+    private static final int PHASE = Integer.MAX_VALUE - 3;
+    private static final String SELECT_COUNTS = "SELECT id, genre, owner_count FROM book";
+    private static final String SELECT_BOOK_COUNTS = "SELECT id, genre, owner_count FROM book WHERE id = ANY(?)";
+    private static final String FLUSH_COUNTS = "UPDATE book SET owner_count = GREATEST(book.owner_count + changes.delta, 0) "
+            + "FROM unnest(?, ?) AS changes(id, delta) WHERE book.id = changes.id";
+    private static final String RECONCILE_COUNTS = "UPDATE book SET owner_count = owners.count "
+            + "FROM (SELECT book.id, count(users_books.books_id) AS count FROM book "
+            + "LEFT JOIN users_books ON users_books.books_id = book.id GROUP BY book.id) owners "
+            + "WHERE book.id = owners.id AND book.owner_count <> owners.count";
+
+    private final Map<Long, LongAdder> unranked = new ConcurrentHashMap<>();
+    private final Map<Long, LongAdder> unflushed = new ConcurrentHashMap<>();
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final long rankIntervalMs;
+    private final long flushIntervalMs;
+    private final long refreshIntervalMs;
+    private final long reconcileIntervalMs;
+
+    private volatile BookRanking ranking = new BookRanking();
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public PopularityCounters(JdbcTemplate jdbcTemplate, CacheInvalidationBus invalidationBus,
+            MeterRegistry meterRegistry,
+            @Value("${training.popularity.rank-interval-ms:1000}") long rankIntervalMs,
+            @Value("${training.popularity.flush-interval-ms:10000}") long flushIntervalMs,
+            @Value("${training.popularity.refresh-interval-ms:60000}") long refreshIntervalMs,
+            @Value("${training.popularity.reconcile-interval-ms:3600000}") long reconcileIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.invalidationBus = invalidationBus;
+        this.rankIntervalMs = rankIntervalMs;
+        this.flushIntervalMs = flushIntervalMs;
+        this.refreshIntervalMs = refreshIntervalMs;
+        this.reconcileIntervalMs = reconcileIntervalMs;
+        Gauge.builder("popularity.books", this, counters -> counters.ranking.size())
+                .description("Books in the popularity ranking")
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method counts a new owner of the book once the current transaction is committed
+     *
+     * @param bookId: this is the unique identifier of the book
+     */
+    public void ownerAdded(Long bookId) {
+        AfterCommit.run(() -> count(bookId, 1));
+    }
+
+    /**
+     * This method counts an owner less of the book once the current transaction is committed
+     *
+     * @param bookId: this is the unique identifier of the book
+     */
+    public void ownerRemoved(Long bookId) {
+        AfterCommit.run(() -> count(bookId, -1));
+    }
+
+    /**
+     * This method returns the books with most owners, the changes of the last second may not be counted yet
+     *
+     * @param genre: this is the genre the book, every genre when null
+     * @param limit: maximum number of books to return
+     * @return {@link List<Ranked>} ordered by owners, then by id
+     */
+    public List<Ranked> top(String genre, int limit) {
+        return ranking.top(genre, limit);
+    }
+
+    /**
+     * A created, updated or deleted book is read again, its genre may have changed. The book is read by the thread
+     * of the counters, the only one that changes the ranking, and not by the one that delivers the invalidations
+     */
+    @Override
+    public void invalidated(Long bookId) {
+        if (running) {
+            scheduler.execute(() -> reloadQuietly(Collections.singletonList(bookId)));
+        }
+    }
+
+    @Override
+    public void invalidatedAll() {
+        if (running) {
+            scheduler.execute(this::refreshQuietly);
+        }
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popularity-counters");
+            thread.setDaemon(true);
+            return thread;
+        });
+        invalidationBus.subscribe(CacheNames.BOOKS, this);
+        refresh();
+        running = true;
+        scheduler.scheduleWithFixedDelay(this::rankQuietly, rankIntervalMs, rankIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, refreshIntervalMs, refreshIntervalMs,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::reconcileQuietly, reconcileIntervalMs, reconcileIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The counted changes are written before the node stops, they would be lost otherwise. The changes counted
+     * afterwards are written one by one
+     */
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(flushIntervalMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started after the invalidation bus and stopped after the web server, so the changes of the requests it drains
+     * are still counted and flushed
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * The read lock is shared by the counting threads, it only keeps them out while the ranking takes its snapshot of
+     * the deltas
+     */
+    void count(Long bookId, long delta) {
+        snapshotLock.readLock().lock();
+        try {
+            unranked.computeIfAbsent(bookId, id -> new LongAdder()).add(delta);
+            unflushed.computeIfAbsent(bookId, id -> new LongAdder()).add(delta);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        if (!running) {
+            flushQuietly();
+        }
+    }
+
+    /**
+     * Books created after the last refresh aren't ranked yet, they are read with their genre
+     */
+    synchronized void rank() {
+        BookRanking current = ranking;
+        List<Long> unknown = new ArrayList<>();
+        unranked.forEach((bookId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0 && !current.add(bookId, delta)) {
+                unknown.add(bookId);
+            }
+        });
+        if (!unknown.isEmpty()) {
+            reload(unknown);
+        }
+    }
+
+    synchronized void flush() {
+        List<Long> ids = new ArrayList<>();
+        List<Long> deltas = new ArrayList<>();
+        unflushed.forEach((bookId, adder) -> {
+            long delta = adder.sumThenReset();
+            if (delta != 0) {
+                ids.add(bookId);
+                deltas.add(delta);
+            }
+        });
+        if (ids.isEmpty()) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(FLUSH_COUNTS);
+                statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+                statement.setArray(2, connection.createArrayOf("bigint", deltas.toArray()));
+                return statement;
+            });
+        } catch (DataAccessException e) {
+            for (int i = 0; i < ids.size(); i++) {
+                unflushed.computeIfAbsent(ids.get(i), id -> new LongAdder()).add(deltas.get(i));
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The ranking is built aside and published with one swap, so the endpoint keeps answering while the table is
+     * read. The changes counted but not yet flushed are added to the persisted counts, they are the part the database
+     * doesn't know about yet; they are taken together with a reset of the unranked changes, so a change counted while
+     * the table is read is only ranked afterwards, once
+     */
+    synchronized void refresh() {
+        long start = System.nanoTime();
+        Map<Long, Long> pending = snapshot(null);
+        BookRanking loaded = new BookRanking();
+        jdbcTemplate.query(SELECT_COUNTS, (RowCallbackHandler) resultSet -> {
+            long bookId = resultSet.getLong("id");
+            loaded.set(bookId, resultSet.getString("genre"),
+                    resultSet.getLong("owner_count") + pending.getOrDefault(bookId, 0L));
+        });
+        ranking = loaded;
+        LOGGER.info("Popularity ranking loaded with {} books in {} ms", loaded.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * The owner counts are counted again from users_books. The changes counted by this node are committed, so the
+     * count includes them and they are dropped instead of flushed; the changes the other nodes haven't flushed yet,
+     * and the ones committed while the statement starts, are counted twice until the next reconciliation
+     */
+    synchronized void reconcile() {
+        long start = System.nanoTime();
+        snapshotLock.writeLock().lock();
+        try {
+            unflushed.values().forEach(LongAdder::reset);
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        int corrected = jdbcTemplate.update(RECONCILE_COUNTS);
+        LOGGER.info("Owner counts reconciled, {} books corrected in {} ms", corrected,
+                (System.nanoTime() - start) / 1_000_000);
+        refresh();
+    }
+
+    private synchronized void reload(Collection<Long> bookIds) {
+        BookRanking current = ranking;
+        Map<Long, Long> pending = snapshot(bookIds);
+        List<Long> found = new ArrayList<>();
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_BOOK_COUNTS);
+            statement.setArray(1, connection.createArrayOf("bigint", bookIds.toArray()));
+            return statement;
+        }, (RowCallbackHandler) resultSet -> {
+            long bookId = resultSet.getLong("id");
+            found.add(bookId);
+            current.set(bookId, resultSet.getString("genre"),
+                    resultSet.getLong("owner_count") + pending.getOrDefault(bookId, 0L));
+        });
+        bookIds.stream().filter(bookId -> !found.contains(bookId)).forEach(current::remove);
+    }
+
+    /**
+     * This method returns the unflushed changes of the books and resets their unranked ones, every book when null
+     */
+    private Map<Long, Long> snapshot(Collection<Long> bookIds) {
+        Map<Long, Long> pending = new HashMap<>();
+        snapshotLock.writeLock().lock();
+        try {
+            unflushed.forEach((bookId, adder) -> {
+                if (Objects.isNull(bookIds) || bookIds.contains(bookId)) {
+                    pending.put(bookId, adder.sum());
+                }
+            });
+            unranked.forEach((bookId, adder) -> {
+                if (Objects.isNull(bookIds) || bookIds.contains(bookId)) {
+                    adder.reset();
+                }
+            });
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+        return pending;
+    }
+
+    private void rankQuietly() {
+        try {
+            rank();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Popularity ranking update failed", e);
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Owner counts flush failed, retrying in {} ms", flushIntervalMs, e);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Popularity ranking refresh failed", e);
+        }
+    }
+
+    private void reloadQuietly(Collection<Long> bookIds) {
+        try {
+            reload(bookIds);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Books {} couldn't be ranked again", bookIds, e);
+        }
+    }
+
+    private void reconcileQuietly() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Owner counts reconciliation failed", e);
+        }
+    }
+}
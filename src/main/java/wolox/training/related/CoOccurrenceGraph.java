@@ -0,0 +1,211 @@
+package wolox.training.related;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Sparse co-occurrence counts of the ownership graph: for every pair of books, the number of users that own both.
+ * Only the pairs with at least one common owner are stored. The books of each user are kept to apply a change of
+ * ownership as the difference with the previous books of the user.
+ * <p>
+ * A user with n books adds n² pairs, so only a sample of the books of a user with too many is counted. The sample
+ * is the books with the lowest hash of their id, the same books are kept while the others come and go, so a change
+ * is still applied as a small difference.
+ */
+public class CoOccurrenceGraph {
+
+    private static final long[] NO_BOOKS = new long[0];
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+    private static final Comparator<Map.Entry<Long, Integer>> RANKING =
+            Map.Entry.<Long, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey());
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, long[]> userBooks = new HashMap<>();
+    private final Map<Long, Map<Long, Integer>> counts = new HashMap<>();
+    private final int maxBooksPerUser;
+
+    /**
+     * @param maxBooksPerUser: books of a user counted at most, a sample of them when the user owns more
+     */
+    public CoOccurrenceGraph(int maxBooksPerUser) {
+        this.maxBooksPerUser = maxBooksPerUser;
+    }
+
+    /**
+     * This method replaces the books of a user
+     *
+     * @param userId:  this is the unique identifier of the user
+     * @param bookIds: the books the user owns now, empty when the user was deleted
+     */
+    public void setBooks(long userId, long[] bookIds) {
+        long[] current = sample(Arrays.stream(bookIds).distinct().toArray());
+        lock.writeLock().lock();
+        try {
+            long[] previous = userBooks.getOrDefault(userId, NO_BOOKS);
+            long[] removed = difference(previous, current);
+            long[] added = difference(current, previous);
+            long[] kept = difference(previous, removed);
+
+            for (long book : removed) {
+                for (long other : kept) {
+                    decrement(book, other);
+                    decrement(other, book);
+                }
+                for (long other : removed) {
+                    if (other != book) {
+                        decrement(book, other);
+                    }
+                }
+            }
+            for (long book : added) {
+                for (long other : current) {
+                    if (other != book) {
+                        increment(book, other);
+                        if (Arrays.binarySearch(added, other) < 0) {
+                            increment(other, book);
+                        }
+                    }
+                }
+            }
+
+            if (current.length == 0) {
+                userBooks.remove(userId);
+            } else {
+                userBooks.put(userId, current);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the books most often owned together with a book
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @param limit:  maximum number of books to return
+     * @return {@link List<RelatedCount>} ordered by common owners, then by id
+     */
+    public List<RelatedCount> related(long bookId, int limit) {
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> neighbours = counts.get(bookId);
+            if (Objects.isNull(neighbours) || limit <= 0) {
+                return Collections.emptyList();
+            }
+
+            PriorityQueue<Map.Entry<Long, Integer>> top = new PriorityQueue<>(limit + 1, RANKING.reversed());
+            for (Map.Entry<Long, Integer> neighbour : neighbours.entrySet()) {
+                top.offer(neighbour);
+                if (top.size() > limit) {
+                    top.poll();
+                }
+            }
+
+            List<RelatedCount> related = new ArrayList<>(top.size());
+            while (!top.isEmpty()) {
+                Map.Entry<Long, Integer> entry = top.poll();
+                related.add(new RelatedCount(entry.getKey(), entry.getValue()));
+            }
+            Collections.reverse(related);
+            return related;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes every user and count
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            userBooks.clear();
+            counts.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int users() {
+        lock.readLock().lock();
+        try {
+            return userBooks.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void increment(long book, long other) {
+        counts.computeIfAbsent(book, id -> new HashMap<>()).merge(other, 1, Integer::sum);
+    }
+
+    private void decrement(long book, long other) {
+        Map<Long, Integer> neighbours = counts.get(book);
+        if (Objects.isNull(neighbours)) {
+            return;
+        }
+        neighbours.computeIfPresent(other, (id, count) -> count == 1 ? null : count - 1);
+        if (neighbours.isEmpty()) {
+            counts.remove(book);
+        }
+    }
+
+    /**
+     * The books with the lowest hash when there are too many, sorted by id
+     */
+    private long[] sample(long[] bookIds) {
+        if (bookIds.length <= maxBooksPerUser) {
+            Arrays.sort(bookIds);
+            return bookIds;
+        }
+        return Arrays.stream(bookIds)
+                .boxed()
+                .sorted(Comparator.comparingLong(CoOccurrenceGraph::hash).thenComparingLong(Long::longValue))
+                .limit(maxBooksPerUser)
+                .mapToLong(Long::longValue)
+                .sorted()
+                .toArray();
+    }
+
+    private static long hash(long bookId) {
+        return bookId * MIX;
+    }
+
+    /**
+     * The elements of the sorted array that aren't in the other sorted array
+     */
+    private static long[] difference(long[] sorted, long[] other) {
+        return Arrays.stream(sorted).filter(id -> Arrays.binarySearch(other, id) < 0).toArray();
+    }
+
+    /**
+     * Represents a book and the number of users that own it together with the queried book.
+     */
+    public static class RelatedCount {
+
+        private final long bookId;
+        private final int owners;
+
+        public RelatedCount(long bookId, int owners) {
+            this.bookId = bookId;
+            this.owners = owners;
+        }
+
+        public long getBookId() {
+            return bookId;
+        }
+
+        public int getOwners() {
+            return owners;
+        }
+    }
+}
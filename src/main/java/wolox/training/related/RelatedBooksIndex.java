@@ -0,0 +1,139 @@
+package wolox.training.related;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+import wolox.training.related.CoOccurrenceGraph.RelatedCount;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Keeps a {@link CoOccurrenceGraph} of the users_books join table to answer {@code GET /api/books/{id}/related}
+ * without aggregating the table per request. It is loaded at startup and follows the user invalidations of
+ * {@link CacheInvalidationBus}: every ownership change publishes one for its user, so the books of that user are
+ * read again and only the difference is applied. The ownerships of every shard are loaded, the books of a user are
+ * read again from its shard. Until it is loaded, and while it is loaded again, {@link #isReady()} is false.
+ */
+@Component
+@Lazy(false)
+public class RelatedBooksIndex implements SmartLifecycle, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RelatedBooksIndex.class);
+    private static final String SELECT_OWNERSHIPS = "SELECT users_id, books_id FROM users_books ORDER BY users_id";
+    private static final String SELECT_USER_BOOKS = "SELECT books_id FROM users_books WHERE users_id = ?";
+
+    private final CoOccurrenceGraph graph;
+    private final UserShards userShards;
+    private final CacheInvalidationBus invalidationBus;
+
+    private volatile boolean ready;
+
+    public RelatedBooksIndex(UserShards userShards, CacheInvalidationBus invalidationBus,
+            MeterRegistry meterRegistry,
+            @Value("${training.related.max-books-per-user:500}") int maxBooksPerUser) {
+        this.graph = new CoOccurrenceGraph(maxBooksPerUser);
+        this.userShards = userShards;
+        this.invalidationBus = invalidationBus;
+        Gauge.builder("related.users", graph, CoOccurrenceGraph::users)
+                .description("Users in the co-occurrence graph")
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method returns the books most often owned by the owners of a book
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @param limit:  maximum number of books to return
+     * @return {@link List<RelatedCount>} ordered by common owners
+     */
+    public List<RelatedCount> related(Long bookId, int limit) {
+        return graph.related(bookId, limit);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Waits for a running load, so a change made while the table was being read is applied after it
+     */
+    @Override
+    public synchronized void invalidated(Long userId) {
+        graph.setBooks(userId, userShards.jdbcTemplateOf(userId).queryForList(SELECT_USER_BOOKS, Long.class, userId)
+                .stream()
+                .mapToLong(Long::longValue).toArray());
+    }
+
+    @Override
+    public void invalidatedAll() {
+        load();
+    }
+
+    @Override
+    public void start() {
+        invalidationBus.subscribe(CacheNames.USERS, this);
+        load();
+    }
+
+    @Override
+    public void stop() {
+        ready = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return ready;
+    }
+
+    private synchronized void load() {
+        ready = false;
+        long start = System.nanoTime();
+        graph.clear();
+        for (int shard = 0; shard < userShards.count(); shard++) {
+            OwnershipCollector collector = new OwnershipCollector();
+            userShards.jdbcTemplate(shard).query(SELECT_OWNERSHIPS, collector);
+            collector.flush();
+        }
+        ready = true;
+        LOGGER.info("Related books index loaded with {} users in {} ms", graph.users(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Groups the rows ordered by user into the books of each user
+     */
+    private class OwnershipCollector implements RowCallbackHandler {
+
+        private final List<Long> books = new ArrayList<>();
+        private long userId;
+
+        @Override
+        public void processRow(ResultSet resultSet) throws SQLException {
+            long rowUserId = resultSet.getLong("users_id");
+            if (rowUserId != userId) {
+                flush();
+                userId = rowUserId;
+            }
+            books.add(resultSet.getLong("books_id"));
+        }
+
+        void flush() {
+            if (!books.isEmpty()) {
+                graph.setBooks(userId, books.stream().mapToLong(Long::longValue).toArray());
+                books.clear();
+            }
+        }
+    }
+}
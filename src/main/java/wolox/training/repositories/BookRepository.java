@@ -1,15 +1,17 @@
 package wolox.training.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import wolox.training.models.Book;
 
 @Repository
-public interface BookRepository extends JpaRepository<Book, Long> {
+public interface BookRepository extends JpaRepository<Book, Long>, JpaSpecificationExecutor<Book> {
 
     /**
      * This method consults a book by author
@@ -20,17 +22,32 @@ public interface BookRepository extends JpaRepository<Book, Long> {
     Optional<Book> findByAuthor(String author);
 
     /**
-     * Method that allows to bring all the filtered books
+     * Method that allows to bring all the filtered books, the null filters are left out of the query
      *
      * @param publisher: this is the publisher the book
      * @param genre:     this is the genre the book
      * @param year:      this is the year the book
      * @return {@link List<Book>}
      */
-    @Query("SELECT bk FROM Book AS bk "
-            + "WHERE (:publisher is null OR bk.publisher = :publisher) "
-            + "AND (:genre is null OR bk.genre = :genre) "
-            + "AND (:year is null OR bk.year = :year) ")
-    List<Book> getAllBook(@Param("publisher") String publisher, @Param("genre") String genre,
-            @Param("year") String year);
+    default List<Book> getAllBook(String publisher, String genre, String year) {
+        return findAll(BookSpecifications.withFilters(publisher, genre, year));
+    }
+
+    /**
+     * This method returns the ids of the users that own a book
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @return {@link List<Long>}
+     */
+    @Query("SELECT ur.id FROM User ur JOIN ur.books bk WHERE bk.id = :bookId")
+    List<Long> findOwnerIds(@Param("bookId") Long bookId);
+
+    /**
+     * This method returns which of the ids belong to an existing book
+     *
+     * @param ids: unique identifiers of the books
+     * @return {@link List<Long>}
+     */
+    @Query("SELECT bk.id FROM Book bk WHERE bk.id IN :ids")
+    List<Long> findExistingIds(@Param("ids") Collection<Long> ids);
 }
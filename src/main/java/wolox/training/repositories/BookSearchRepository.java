@@ -0,0 +1,159 @@
+package wolox.training.repositories;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Objects;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import wolox.training.exceptions.InvalidCursorException;
+
+/**
+ * Full-text search over the {@code search_vector} column of the books, kept by Postgres from the title, subtitle,
+ * author and publisher and indexed with GIN (see schema-extensions.sql). The matches are ranked and paged with a
+ * cursor holding the rank and id of the last book of the page, so a page never counts or skips the previous ones.
+ * Like {@link BookSpecifications}, only the supplied filters are added to the query.
+ */
+@Repository
+public class BookSearchRepository {
+
+    private static final String SEARCH = "WITH matches AS ("
+            + "SELECT book.id, ts_rank_cd(book.search_vector, query) AS rank "
+            + "FROM book, websearch_to_tsquery('english', ?) query "
+            + "WHERE book.search_vector @@ query";
+    private static final String AFTER_CURSOR = " WHERE rank < ? OR (rank = ? AND id > ?)";
+    private static final String PAGE = " ORDER BY rank DESC, id LIMIT ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public BookSearchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * This method returns a page of the books that match the text, the best ranked first
+     *
+     * @param text:      words to search, with the web search syntax of Postgres
+     * @param publisher: this is the publisher the book, ignored when null
+     * @param genre:     this is the genre the book, ignored when null
+     * @param year:      this is the year the book, ignored when null
+     * @param after:     cursor of the previous page, null for the first page
+     * @param size:      maximum number of books of the page
+     * @return {@link List<Hit>} in rank order
+     */
+    public List<Hit> search(String text, String publisher, String genre, String year, Cursor after, int size) {
+        StringBuilder sql = new StringBuilder(SEARCH);
+        List<Object> params = new ArrayList<>();
+        params.add(text);
+        addFilter(sql, params, "publisher", publisher);
+        addFilter(sql, params, "genre", genre);
+        addFilter(sql, params, "year", year);
+        sql.append(") SELECT id, rank FROM matches");
+        if (Objects.nonNull(after)) {
+            sql.append(AFTER_CURSOR);
+            params.add(after.rank);
+            params.add(after.rank);
+            params.add(after.id);
+        }
+        sql.append(PAGE);
+        params.add(size);
+
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            for (int i = 0; i < params.size(); i++) {
+                setParameter(statement, i + 1, params.get(i));
+            }
+            return statement;
+        }, (resultSet, rowNum) -> new Hit(resultSet.getLong("id"), resultSet.getFloat("rank")));
+    }
+
+    private static void addFilter(StringBuilder sql, List<Object> params, String column, String value) {
+        if (Objects.nonNull(value)) {
+            sql.append(" AND book.").append(column).append(" = ?");
+            params.add(value);
+        }
+    }
+
+    /**
+     * The rank is bound as a real, the type Postgres computes it with, so the cursor compares equal to it
+     */
+    private static void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+        if (value instanceof Float) {
+            statement.setFloat(index, (Float) value);
+        } else {
+            statement.setObject(index, value);
+        }
+    }
+
+    /**
+     * Represents a book that matches the search.
+     */
+    public static class Hit {
+
+        private final long id;
+        private final float rank;
+
+        public Hit(long id, float rank) {
+            this.id = id;
+            this.rank = rank;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public float getRank() {
+            return rank;
+        }
+
+        public Cursor cursor() {
+            return new Cursor(rank, id);
+        }
+    }
+
+    /**
+     * Position after a book of the search, sent to the clients as an opaque token.
+     */
+    public static class Cursor {
+
+        private static final String SEPARATOR = ":";
+
+        private final float rank;
+        private final long id;
+
+        public Cursor(float rank, long id) {
+            this.rank = rank;
+            this.id = id;
+        }
+
+        /**
+         * This method reads a token written by {@link #encode()}
+         *
+         * @param token: the token sent by the client
+         * @return {@link Cursor}
+         */
+        public static Cursor decode(String token) {
+            try {
+                String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.US_ASCII)
+                        .split(SEPARATOR);
+                if (parts.length != 2) {
+                    throw new InvalidCursorException(token);
+                }
+                return new Cursor(Float.intBitsToFloat(Integer.parseUnsignedInt(parts[0], 16)), Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidCursorException(token);
+            }
+        }
+
+        /**
+         * The rank is written with its bits, a decimal form could round it and repeat or skip books
+         */
+        public String encode() {
+            String cursor = Integer.toHexString(Float.floatToIntBits(rank)).concat(SEPARATOR).concat(Long.toString(id));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package wolox.training.repositories;
+
+import java.util.Objects;
+import org.springframework.data.jpa.domain.Specification;
+import wolox.training.models.Book;
+
+/**
+ * Builds the book filters adding only the predicates of the supplied values, a {@code (:x is null OR col = :x)}
+ * condition keeps the planner from using the index of the column in the generic plan.
+ */
+public final class BookSpecifications {
+
+    private BookSpecifications() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method builds the filter used by {@link BookRepository#getAllBook}
+     *
+     * @param publisher: this is the publisher the book, ignored when null
+     * @param genre:     this is the genre the book, ignored when null
+     * @param year:      this is the year the book, ignored when null
+     * @return {@link Specification<Book>}
+     */
+    public static Specification<Book> withFilters(String publisher, String genre, String year) {
+        return Specification.where(equalTo("publisher", publisher))
+                .and(equalTo("genre", genre))
+                .and(equalTo("year", year));
+    }
+
+    /**
+     * This method builds the condition of the books after an id, to read the books in chunks of the id order
+     *
+     * @param id: the last id read, ignored when null
+     * @return {@link Specification<Book>}
+     */
+    public static Specification<Book> idAfter(Long id) {
+        return Objects.isNull(id) ? null : (root, query, builder) -> builder.greaterThan(root.get("id"), id);
+    }
+
+    private static Specification<Book> equalTo(String attribute, String value) {
+        return Objects.isNull(value) ? null : (root, query, builder) -> builder.equal(root.get(attribute), value);
+    }
+}
@@ -0,0 +1,59 @@
+package wolox.training.repositories;
+
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import org.springframework.stereotype.Repository;
+import wolox.training.models.User;
+
+/**
+ * Aggregates the users in the database, so the analytics don't read the users page by page to count them.
+ */
+@Repository
+public class DemographicsRepository {
+
+    private static final String BIRTH_DATE = "birthDate";
+    private static final String USERS = "users";
+
+    private final EntityManager entityManager;
+
+    public DemographicsRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * This method counts the users born on each date with the filters of
+     * {@link UserRepository#findAllByNameIgnoreCaseContainingAndBirthdateBetween}, in one aggregate that reads
+     * the birth date index when there is no name filter
+     *
+     * @param startDate: first birth date of the range, ignored when null
+     * @param endDate:   last birth date of the range, ignored when null
+     * @param sequence:  characters the user's name must contain, ignored when null or empty
+     * @return {@link SortedMap} of birth date to number of users
+     */
+    public SortedMap<LocalDate, Long> countByBirthDate(LocalDate startDate, LocalDate endDate, String sequence) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<User> root = query.from(User.class);
+        Expression<LocalDate> birthDate = root.get(BIRTH_DATE);
+        query.multiselect(birthDate.alias(BIRTH_DATE), builder.count(root).alias(USERS)).groupBy(birthDate);
+
+        Predicate predicate = UserSpecifications.search(startDate, endDate, sequence).toPredicate(root, query, builder);
+        if (Objects.nonNull(predicate)) {
+            query.where(predicate);
+        }
+
+        SortedMap<LocalDate, Long> counts = new TreeMap<>();
+        entityManager.createQuery(query).getResultList()
+                .forEach(tuple -> counts.put(tuple.get(BIRTH_DATE, LocalDate.class), tuple.get(USERS, Long.class)));
+        return counts;
+    }
+}
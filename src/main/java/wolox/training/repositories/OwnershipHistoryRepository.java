@@ -0,0 +1,77 @@
+package wolox.training.repositories;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import wolox.training.models.dto.MonthlyCirculation;
+import wolox.training.models.dto.OwnershipEvent;
+import wolox.training.models.dto.OwnershipEvent.Action;
+
+/**
+ * Reads the ownership_history table, which the triggers of users_books write. Every query bounds
+ * {@code changed_at}, the partition key, so Postgres only reads the monthly partitions of the range. The months
+ * are in UTC like the bounds of the partitions. The changes of one transaction share {@code changed_at}, they are
+ * ordered by {@code seq}, the order they were written in.
+ */
+@Repository
+public class OwnershipHistoryRepository {
+
+    private static final String SELECT_USER_EVENTS = "SELECT book_id, action, changed_at FROM ownership_history "
+            + "WHERE user_id = ? AND changed_at >= ? AND changed_at < ? "
+            + "ORDER BY changed_at, seq LIMIT ?";
+
+    private static final String SELECT_BOOK_CIRCULATION = "SELECT "
+            + "to_char(changed_at AT TIME ZONE 'UTC', 'YYYY-MM') AS month, "
+            + "count(*) FILTER (WHERE action = 'ADDED') AS added, "
+            + "count(*) FILTER (WHERE action = 'REMOVED') AS removed "
+            + "FROM ownership_history "
+            + "WHERE book_id = ? AND changed_at >= ? AND changed_at < ? "
+            + "GROUP BY 1 ORDER BY 1";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OwnershipHistoryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * This method returns the books added to and removed from a user in a range of days, oldest first
+     *
+     * @param userId: this is the unique identifier of the user
+     * @param from:   first day of the range
+     * @param to:     day after the range
+     * @param limit:  maximum number of changes to return
+     * @return {@link List<OwnershipEvent>}
+     */
+    public List<OwnershipEvent> findUserEvents(Long userId, LocalDate from, LocalDate to, int limit) {
+        return jdbcTemplate.query(SELECT_USER_EVENTS, (resultSet, rowNum) -> new OwnershipEvent(
+                        resultSet.getLong("book_id"),
+                        Action.valueOf(resultSet.getString("action")),
+                        resultSet.getObject("changed_at", OffsetDateTime.class).withOffsetSameInstant(ZoneOffset.UTC)),
+                userId, startOf(from), startOf(to), limit);
+    }
+
+    /**
+     * This method counts the times a book was added and removed per month, the months without changes are left out
+     *
+     * @param bookId: this is the unique identifier of the book
+     * @param from:   first month of the range
+     * @param to:     last month of the range
+     * @return {@link List<MonthlyCirculation>} ordered by month
+     */
+    public List<MonthlyCirculation> countBookCirculation(Long bookId, YearMonth from, YearMonth to) {
+        return jdbcTemplate.query(SELECT_BOOK_CIRCULATION, (resultSet, rowNum) -> new MonthlyCirculation(
+                        YearMonth.parse(resultSet.getString("month")),
+                        resultSet.getLong("added"),
+                        resultSet.getLong("removed")),
+                bookId, startOf(from.atDay(1)), startOf(to.plusMonths(1).atDay(1)));
+    }
+
+    private static OffsetDateTime startOf(LocalDate day) {
+        return day.atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+}
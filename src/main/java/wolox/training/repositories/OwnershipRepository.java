@@ -0,0 +1,76 @@
+package wolox.training.repositories;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.List;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Changes the rows of the users_books join table in bulk, without loading the books collection of the user. The
+ * changes join the current transaction, the users whose books change must be invalidated in the caches. The triggers
+ * of users_books record every row added or removed in the ownership_history table.
+ */
+@Repository
+public class OwnershipRepository {
+
+    private static final String INSERT_BOOKS = "INSERT INTO users_books (users_id, books_id) "
+            + "SELECT ?, book_id FROM unnest(?) AS book_id "
+            + "ON CONFLICT (users_id, books_id) DO NOTHING "
+            + "RETURNING books_id";
+
+    private static final String DELETE_BOOKS = "DELETE FROM users_books "
+            + "WHERE users_id = ? AND books_id = ANY(?) "
+            + "RETURNING books_id";
+
+    private static final String DELETE_ALL_BOOKS = "DELETE FROM users_books "
+            + "WHERE users_id = ? "
+            + "RETURNING books_id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public OwnershipRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * This method adds the books to the user in one statement, the books the user already owns are skipped
+     *
+     * @param userId:  this is the unique identifier of the user
+     * @param bookIds: unique identifiers of existing books
+     * @return {@link List<Long>} with the ids of the books added
+     */
+    public List<Long> addBooks(Long userId, Collection<Long> bookIds) {
+        return changeBooks(INSERT_BOOKS, userId, bookIds);
+    }
+
+    /**
+     * This method removes the books from the user in one statement
+     *
+     * @param userId:  this is the unique identifier of the user
+     * @param bookIds: unique identifiers of the books
+     * @return {@link List<Long>} with the ids of the books the user owned and were removed
+     */
+    public List<Long> removeBooks(Long userId, Collection<Long> bookIds) {
+        return changeBooks(DELETE_BOOKS, userId, bookIds);
+    }
+
+    /**
+     * This method removes every book of the user in one statement
+     *
+     * @param userId: this is the unique identifier of the user
+     * @return {@link List<Long>} with the ids of the books the user owned
+     */
+    public List<Long> removeAllBooks(Long userId) {
+        return jdbcTemplate.queryForList(DELETE_ALL_BOOKS, Long.class, userId);
+    }
+
+    private List<Long> changeBooks(String sql, Long userId, Collection<Long> bookIds) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setLong(1, userId);
+            statement.setArray(2, connection.createArrayOf("bigint", bookIds.toArray()));
+            return statement;
+        }, (resultSet, rowNum) -> resultSet.getLong(1));
+    }
+}
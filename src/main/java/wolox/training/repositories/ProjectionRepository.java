@@ -0,0 +1,151 @@
+package wolox.training.repositories;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.metamodel.Attribute;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.domain.Specification;
+import org.springframework.data.jpa.repository.query.QueryUtils;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Repository;
+import wolox.training.exceptions.InvalidFieldsException;
+
+/**
+ * Runs the filters of the repositories selecting only the requested fields, the columns that aren't requested are
+ * never fetched, hydrated into entities or serialized. Only the single valued attributes can be selected.
+ */
+@Repository
+public class ProjectionRepository {
+
+    private final EntityManager entityManager;
+
+    public ProjectionRepository(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /**
+     * This method returns the requested fields of the entities that match the filter
+     *
+     * @param type:          class of the entity
+     * @param fields:        names of the attributes to select, in the order of the result
+     * @param specification: filter of the entities
+     * @return {@link List<Map>} with a map of field to value per entity
+     */
+    public <T> List<Map<String, Object>> findAll(Class<T> type, List<String> fields, Specification<T> specification) {
+        return query(type, fields, specification, Pageable.unpaged()).getResultList().stream()
+                .map(tuple -> toMap(tuple, fields))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This method returns a page of the requested fields of the entities that match the filter
+     *
+     * @param type:          class of the entity
+     * @param fields:        names of the attributes to select, in the order of the result
+     * @param specification: filter of the entities
+     * @param pageable:      page and order of the result
+     * @return {@link Page<Map>} with a map of field to value per entity
+     */
+    public <T> Page<Map<String, Object>> findAll(Class<T> type, List<String> fields, Specification<T> specification,
+            Pageable pageable) {
+        TypedQuery<Tuple> query = query(type, fields, specification, pageable);
+        if (pageable.isPaged()) {
+            query.setFirstResult((int) pageable.getOffset());
+            query.setMaxResults(pageable.getPageSize());
+        }
+
+        List<Map<String, Object>> content = query.getResultList().stream()
+                .map(tuple -> toMap(tuple, fields))
+                .collect(Collectors.toList());
+        return PageableExecutionUtils.getPage(content, pageable, () -> count(type, specification));
+    }
+
+    /**
+     * This method returns the requested fields of the first entities of the order that match the filter, they are
+     * not counted like the entities of a page
+     *
+     * @param type:          class of the entity
+     * @param fields:        names of the attributes to select, in the order of the result
+     * @param specification: filter of the entities
+     * @param sort:          order of the result
+     * @param limit:         maximum number of entities to return
+     * @return {@link List<Map>} with a map of field to value per entity
+     */
+    public <T> List<Map<String, Object>> findFirst(Class<T> type, List<String> fields, Specification<T> specification,
+            Sort sort, int limit) {
+        return query(type, fields, specification, PageRequest.of(0, limit, sort)).setMaxResults(limit)
+                .getResultList().stream()
+                .map(tuple -> toMap(tuple, fields))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * This method validates the requested fields against the single valued attributes of the entity
+     *
+     * @param type:   class of the entity
+     * @param fields: names of the requested attributes
+     * @return the fields without repetitions
+     */
+    public List<String> selectableFields(Class<?> type, List<String> fields) {
+        Set<String> attributes = entityManager.getMetamodel().entity(type).getSingularAttributes().stream()
+                .map(Attribute::getName)
+                .collect(Collectors.toSet());
+        List<String> unknown = fields.stream().filter(field -> !attributes.contains(field)).collect(Collectors.toList());
+        if (fields.isEmpty() || !unknown.isEmpty()) {
+            throw new InvalidFieldsException(unknown);
+        }
+        return new ArrayList<>(new LinkedHashSet<>(fields));
+    }
+
+    private <T> TypedQuery<Tuple> query(Class<T> type, List<String> fields, Specification<T> specification,
+            Pageable pageable) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = builder.createTupleQuery();
+        Root<T> root = query.from(type);
+        query.multiselect(fields.stream().map(field -> root.get(field).alias(field)).collect(Collectors.toList()));
+
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (Objects.nonNull(predicate)) {
+            query.where(predicate);
+        }
+        if (pageable.getSort().isSorted()) {
+            query.orderBy(QueryUtils.toOrders(pageable.getSort(), root, builder));
+        }
+        return entityManager.createQuery(query);
+    }
+
+    private <T> long count(Class<T> type, Specification<T> specification) {
+        CriteriaBuilder builder = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Long> query = builder.createQuery(Long.class);
+        Root<T> root = query.from(type);
+        query.select(builder.count(root));
+
+        Predicate predicate = specification.toPredicate(root, query, builder);
+        if (Objects.nonNull(predicate)) {
+            query.where(predicate);
+        }
+        return entityManager.createQuery(query).getSingleResult();
+    }
+
+    private static Map<String, Object> toMap(Tuple tuple, List<String> fields) {
+        Map<String, Object> row = new LinkedHashMap<>();
+        fields.forEach(field -> row.put(field, tuple.get(field)));
+        return row;
+    }
+}
@@ -1,17 +1,20 @@
 package wolox.training.repositories;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import wolox.training.models.User;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, JpaSpecificationExecutor<User> {
 
     /**
      * This method consults a user by name
@@ -21,17 +24,27 @@ public interface UserRepository extends JpaRepository<User, Long> {
      */
     Optional<User> findByUsername(String username);
 
-    @Query("SELECT ur FROM User ur " +
-            "WHERE (:sequence = '' OR LOWER(ur.name) LIKE LOWER(CONCAT('%', :sequence,'%'))) " +
-            "AND (cast(:startDate AS date) IS NULL OR ur.birthDate >= :startDate) " +
-            "AND (cast(:endDate AS date) IS NULL OR ur.birthDate <= :endDate)" )
+    /**
+     * Method that searches users by birth date range and a sequence of the name, the null filters are left out of
+     * the query
+     *
+     * @param startDate: start date as first date in the range search
+     * @param endDate:   end date as last date in the range search
+     * @param sequence:  the sequence contains the characters must contain the user's name
+     * @param pageable:  page and order of the result
+     * @return {@link Page<User>}
+     */
+    default Page<User> findAllByNameIgnoreCaseContainingAndBirthdateBetween(LocalDate startDate, LocalDate endDate,
+            String sequence, Pageable pageable) {
+        return findAll(UserSpecifications.search(startDate, endDate, sequence), pageable);
+    }
 
-    /*@Query("SELECT u FROM User u WHERE (:sequence IS NULL OR lower(u.name) like lower(concat('%', :sequence,'%')))"
-            + " and (:startDate IS NULL OR :endDate IS NULL OR u.birthDate BETWEEN :startDate AND :endDate)")*/
-    Page<User> findAllByNameIgnoreCaseContainingAndBirthdateBetween(
-            @Param("startDate") LocalDate startDate,
-            @Param("endDate") LocalDate endDate,
-            @Param("sequence") String sequence,
-            Pageable pageable
-    );
+    /**
+     * This method consults the users of the ids together with their books in one query
+     *
+     * @param ids: unique identifiers of the users
+     * @return {@link List<User>}
+     */
+    @Query("SELECT DISTINCT ur FROM User ur LEFT JOIN FETCH ur.books WHERE ur.id IN :ids")
+    List<User> findAllWithBooksByIdIn(@Param("ids") Collection<Long> ids);
 }
@@ -0,0 +1,50 @@
+package wolox.training.repositories;
+
+import java.time.LocalDate;
+import java.util.Objects;
+import org.springframework.data.jpa.domain.Specification;
+import wolox.training.models.User;
+
+/**
+ * Builds the user search adding only the predicates of the supplied values, so each combination gets a plan that
+ * can use the indexes of users.
+ */
+public final class UserSpecifications {
+
+    private UserSpecifications() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method builds the filter used by {@link UserRepository#findAllByNameIgnoreCaseContainingAndBirthdateBetween}
+     *
+     * @param startDate: first birth date of the range, ignored when null
+     * @param endDate:   last birth date of the range, ignored when null
+     * @param sequence:  characters the user's name must contain, ignored when null or empty
+     * @return {@link Specification<User>}
+     */
+    public static Specification<User> search(LocalDate startDate, LocalDate endDate, String sequence) {
+        return Specification.where(nameContaining(sequence))
+                .and(bornFrom(startDate))
+                .and(bornUntil(endDate));
+    }
+
+    private static Specification<User> nameContaining(String sequence) {
+        if (Objects.isNull(sequence) || sequence.isEmpty()) {
+            return null;
+        }
+
+        String pattern = "%".concat(sequence.toLowerCase()).concat("%");
+        return (root, query, builder) -> builder.like(builder.lower(root.get("name")), pattern);
+    }
+
+    private static Specification<User> bornFrom(LocalDate startDate) {
+        return Objects.isNull(startDate) ? null
+                : (root, query, builder) -> builder.greaterThanOrEqualTo(root.get("birthDate"), startDate);
+    }
+
+    private static Specification<User> bornUntil(LocalDate endDate) {
+        return Objects.isNull(endDate) ? null
+                : (root, query, builder) -> builder.lessThanOrEqualTo(root.get("birthDate"), endDate);
+    }
+}
@@ -0,0 +1,52 @@
+package wolox.training.resilience;
+
+import java.util.function.Supplier;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.util.ReflectionUtils;
+import wolox.training.deadline.QueryDeadline;
+import wolox.training.exceptions.DatabaseUnavailableException;
+
+/**
+ * Runs the methods of a repository through the {@link DatabaseCircuitBreaker}. The failures of the database are
+ * rethrown as {@link DatabaseUnavailableException}, so the cached reads can fall back to their last known values.
+ * The calls stopped by the {@link QueryDeadline} of their request only count for their duration.
+ */
+public class CircuitBreakerInterceptor implements MethodInterceptor {
+
+    private final Supplier<DatabaseCircuitBreaker> breaker;
+
+    /**
+     * @param breaker: returns the breaker, looked up on the first call so the repositories don't depend on it
+     *                 while they are created
+     */
+    public CircuitBreakerInterceptor(Supplier<DatabaseCircuitBreaker> breaker) {
+        this.breaker = breaker;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (ReflectionUtils.isObjectMethod(invocation.getMethod())) {
+            return invocation.proceed();
+        }
+
+        DatabaseCircuitBreaker circuitBreaker = breaker.get();
+        circuitBreaker.acquirePermission();
+        long start = System.nanoTime();
+        try {
+            Object result = invocation.proceed();
+            circuitBreaker.onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (Throwable e) {
+            if (QueryDeadline.isCurrentOver()) {
+                circuitBreaker.onSuccess(System.nanoTime() - start);
+                throw e;
+            }
+            circuitBreaker.onError(System.nanoTime() - start, e);
+            if (DatabaseCircuitBreaker.isDatabaseFailure(e)) {
+                throw new DatabaseUnavailableException(e);
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package wolox.training.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import wolox.training.exceptions.DatabaseUnavailableException;
+
+/**
+ * Stops calling the database while it is failing or slow, so the requests fail at once instead of waiting for a
+ * connection of the pool. The outcomes of the last calls are kept in a sliding window: when the share of calls that
+ * failed to reach the database, or that took longer than the slow call duration, goes over its threshold the
+ * breaker opens and every call is rejected with {@link DatabaseUnavailableException}. After the open duration it
+ * half-opens, lets a few trial calls through and closes again if they are below the thresholds.
+ * <p>
+ * Errors of the queries themselves, like a constraint violation or a lock conflict, mean the database answered and
+ * count as successful calls.
+ */
+@Component
+public class DatabaseCircuitBreaker {
+
+    /**
+     * States of the breaker, the ordinal is the value of the {@code database.circuit.state} gauge
+     */
+    public enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DatabaseCircuitBreaker.class);
+
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long slowCallNanos;
+    private final double slowCallRateThreshold;
+    private final long openDurationMs;
+    private final int halfOpenCalls;
+    private final List<Runnable> halfOpenListeners = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+    private final Counter rejected;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failures;
+    private int slowCalls;
+    private int permits;
+    private volatile State state = State.CLOSED;
+
+    public DatabaseCircuitBreaker(MeterRegistry meterRegistry,
+            @Value("${training.circuit-breaker.window-size:20}") int windowSize,
+            @Value("${training.circuit-breaker.minimum-calls:10}") int minimumCalls,
+            @Value("${training.circuit-breaker.failure-rate-threshold:50}") double failureRateThreshold,
+            @Value("${training.circuit-breaker.slow-call-duration-ms:1000}") long slowCallDurationMs,
+            @Value("${training.circuit-breaker.slow-call-rate-threshold:80}") double slowCallRateThreshold,
+            @Value("${training.circuit-breaker.open-duration-ms:5000}") long openDurationMs,
+            @Value("${training.circuit-breaker.half-open-calls:5}") int halfOpenCalls) {
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+        this.minimumCalls = Math.min(minimumCalls, windowSize);
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMs);
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.openDurationMs = openDurationMs;
+        this.halfOpenCalls = Math.min(halfOpenCalls, windowSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "database-circuit-breaker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.rejected = Counter.builder("database.circuit.rejected")
+                .description("Database calls rejected while the circuit breaker was open")
+                .register(meterRegistry);
+        Gauge.builder("database.circuit.state", this, breaker -> breaker.state.ordinal())
+                .description("State of the database circuit breaker: 0 closed, 1 half-open, 2 open")
+                .register(meterRegistry);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * This method registers an action run in the background every time the breaker half-opens, its database calls
+     * are trial calls of the breaker
+     *
+     * @param listener: the action to run
+     */
+    public void onHalfOpen(Runnable listener) {
+        halfOpenListeners.add(listener);
+    }
+
+    /**
+     * This method must be called before a database call, it fails when the call isn't allowed
+     *
+     * @throws DatabaseUnavailableException when the breaker is open or has no trial calls left
+     */
+    public void acquirePermission() {
+        if (state == State.CLOSED) {
+            return;
+        }
+
+        synchronized (this) {
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.HALF_OPEN && permits > 0) {
+                permits--;
+                return;
+            }
+        }
+        rejected.increment();
+        throw new DatabaseUnavailableException();
+    }
+
+    /**
+     * This method records a database call that returned
+     *
+     * @param nanos: duration of the call
+     */
+    public void onSuccess(long nanos) {
+        record(false, nanos);
+    }
+
+    /**
+     * This method records a database call that threw an error, only the errors of {@link #isDatabaseFailure}
+     * count as failures
+     *
+     * @param nanos: duration of the call
+     * @param error: the error thrown by the call
+     */
+    public void onError(long nanos, Throwable error) {
+        record(isDatabaseFailure(error), nanos);
+    }
+
+    /**
+     * This method tells the errors of a database that can't be reached or doesn't answer in time from the errors
+     * of the queries
+     *
+     * @param error: the error thrown by a database call
+     * @return whether the error is a failure of the database
+     */
+    public static boolean isDatabaseFailure(Throwable error) {
+        return error instanceof DataAccessResourceFailureException
+                || error instanceof RecoverableDataAccessException
+                || error instanceof CannotCreateTransactionException
+                || (error instanceof TransientDataAccessException && !(error instanceof ConcurrencyFailureException));
+    }
+
+    private void record(boolean failure, long nanos) {
+        if (state == State.OPEN) {
+            return;
+        }
+
+        synchronized (this) {
+            if (state == State.OPEN) {
+                return;
+            }
+
+            if (recorded == failed.length) {
+                failures -= failed[next] ? 1 : 0;
+                slowCalls -= slow[next] ? 1 : 0;
+            } else {
+                recorded++;
+            }
+            failed[next] = failure;
+            slow[next] = nanos >= slowCallNanos;
+            failures += failure ? 1 : 0;
+            slowCalls += slow[next] ? 1 : 0;
+            next = (next + 1) % failed.length;
+
+            if (state == State.CLOSED && recorded >= minimumCalls && overThresholds()) {
+                open();
+            } else if (state == State.HALF_OPEN && recorded >= halfOpenCalls) {
+                if (overThresholds()) {
+                    open();
+                } else {
+                    close();
+                }
+            }
+        }
+    }
+
+    private boolean overThresholds() {
+        return failures * 100.0 / recorded >= failureRateThreshold
+                || slowCalls * 100.0 / recorded >= slowCallRateThreshold;
+    }
+
+    private void open() {
+        LOGGER.warn("Database circuit breaker opened after {} failed and {} slow of {} calls, retrying in {} ms",
+                failures, slowCalls, recorded, openDurationMs);
+        state = State.OPEN;
+        reset();
+        scheduler.schedule(this::halfOpen, openDurationMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void halfOpen() {
+        synchronized (this) {
+            if (state != State.OPEN) {
+                return;
+            }
+            state = State.HALF_OPEN;
+            permits = halfOpenCalls;
+            reset();
+        }
+
+        LOGGER.info("Database circuit breaker half-open, trying {} calls", halfOpenCalls);
+        for (Runnable listener : halfOpenListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOGGER.warn("Half-open listener failed", e);
+            }
+        }
+    }
+
+    private void close() {
+        LOGGER.info("Database circuit breaker closed");
+        state = State.CLOSED;
+        reset();
+    }
+
+    private void reset() {
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
@@ -0,0 +1,84 @@
+package wolox.training.resilience;
+
+import com.google.common.collect.Lists;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.EntityCache;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Reads again the books and users served from their last known values while the database was unavailable. It runs
+ * in the background when {@link DatabaseCircuitBreaker} half-opens, so its reads are the trial calls that close the
+ * breaker and the requests that follow find the values they used to get stale already fresh in the cache.
+ */
+@Component
+@Lazy(false)
+public class StaleCacheRefresher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StaleCacheRefresher.class);
+    private static final int IDS_PER_QUERY = 1000;
+
+    private final EntityCache<Book> bookCache;
+    private final EntityCache<User> userCache;
+    private final BookRepository bookRepository;
+    private final UserRepository userRepository;
+    private final UserShards userShards;
+
+    public StaleCacheRefresher(DatabaseCircuitBreaker breaker, EntityCache<Book> bookCache,
+            EntityCache<User> userCache, BookRepository bookRepository, UserRepository userRepository,
+            UserShards userShards) {
+        this.bookCache = bookCache;
+        this.userCache = userCache;
+        this.bookRepository = bookRepository;
+        this.userRepository = userRepository;
+        this.userShards = userShards;
+        breaker.onHalfOpen(this::refresh);
+    }
+
+    /**
+     * This method reloads the stale books and then the stale users, it stops at the first failed read and keeps
+     * the rest for the next time the breaker half-opens
+     */
+    public void refresh() {
+        if (refresh(bookCache, bookRepository::findAllById, Book::getId)) {
+            refresh(userCache, this::findUsers, User::getId);
+        }
+    }
+
+    private <V> boolean refresh(EntityCache<V> cache, Function<Collection<Long>, List<V>> loader,
+            Function<V, Long> idOf) {
+        List<Long> ids = cache.drainServedStale();
+        if (ids.isEmpty()) {
+            return true;
+        }
+
+        try {
+            for (List<Long> chunk : Lists.partition(ids, IDS_PER_QUERY)) {
+                cache.reload(chunk, loader, idOf);
+            }
+        } catch (RuntimeException e) {
+            cache.markServedStale(ids);
+            LOGGER.warn("{} stale {} kept, the database is still unavailable: {}", ids.size(), cache.getName(),
+                    e.getMessage());
+            return false;
+        }
+        LOGGER.info("{} stale {} refreshed", ids.size(), cache.getName());
+        return true;
+    }
+
+    private List<User> findUsers(Collection<Long> ids) {
+        return userShards.onUsers(ids, userRepository::findAllWithBooksByIdIn).stream()
+                .flatMap(List::stream)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,38 @@
+package wolox.training.resilience;
+
+import java.util.Locale;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds {@code Warning: 110 - "Response is Stale"} and the {@code Age} in seconds of the oldest value to the
+ * responses built with last known values, see {@link StaleResponses}
+ */
+@ControllerAdvice
+public class StaleResponseAdvice implements ResponseBodyAdvice<Object> {
+
+    public static final String WARNING_HEADER = "Warning";
+    public static final String AGE_HEADER = "Age";
+    public static final String STALE_WARNING = "110 - \"Response is Stale\"";
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+            Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request,
+            ServerHttpResponse response) {
+        StaleResponses.ageMs().ifPresent(ageMs -> {
+            response.getHeaders().set(WARNING_HEADER, STALE_WARNING);
+            response.getHeaders().set(AGE_HEADER, String.format(Locale.ROOT, "%d", ageMs / 1000));
+        });
+        return body;
+    }
+}
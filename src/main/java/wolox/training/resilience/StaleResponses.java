@@ -0,0 +1,46 @@
+package wolox.training.resilience;
+
+import java.util.Objects;
+import java.util.Optional;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Marks the current request as answered with stale values, {@link StaleResponseAdvice} turns the mark into the
+ * {@code Warning} and {@code Age} headers of the response. Outside a request the mark is ignored.
+ */
+public final class StaleResponses {
+
+    private static final String AGE_ATTRIBUTE = StaleResponses.class.getName() + ".AGE";
+
+    private StaleResponses() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method records that a value read the given time ago was served, the response keeps the oldest one
+     *
+     * @param ageMs: time since the value was read from the database
+     */
+    public static void served(long ageMs) {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (Objects.isNull(attributes)) {
+            return;
+        }
+
+        Object recorded = attributes.getAttribute(AGE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (Objects.isNull(recorded) || (Long) recorded < ageMs) {
+            attributes.setAttribute(AGE_ATTRIBUTE, ageMs, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    /**
+     * This method returns the age of the oldest stale value served in the current request
+     *
+     * @return {@link Optional} with the age in milliseconds, empty when every value was fresh
+     */
+    public static Optional<Long> ageMs() {
+        return Optional.ofNullable(RequestContextHolder.getRequestAttributes())
+                .map(attributes -> (Long) attributes.getAttribute(AGE_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST));
+    }
+}
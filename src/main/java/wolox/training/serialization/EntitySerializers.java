@@ -0,0 +1,146 @@
+package wolox.training.serialization;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Objects;
+import java.util.Set;
+import org.springframework.boot.jackson.JsonComponent;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * Hand-written serializers of the entities. They write the same document as the reflection based bean serializer,
+ * with the properties in the same order, but call the getters directly and stream every value to the generator with
+ * pre-encoded property names, so no property metadata is walked per entity.
+ */
+@JsonComponent
+public class EntitySerializers {
+
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString GENRE = new SerializedString("genre");
+    private static final SerializableString AUTHOR = new SerializedString("author");
+    private static final SerializableString IMAGE = new SerializedString("image");
+    private static final SerializableString TITLE = new SerializedString("title");
+    private static final SerializableString SUB_TITLE = new SerializedString("subTitle");
+    private static final SerializableString PUBLISHER = new SerializedString("publisher");
+    private static final SerializableString YEAR = new SerializedString("year");
+    private static final SerializableString PAGES = new SerializedString("pages");
+    private static final SerializableString ISBN = new SerializedString("isbn");
+    private static final SerializableString USERNAME = new SerializedString("username");
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString BIRTH_DATE = new SerializedString("birthDate");
+    private static final SerializableString BOOKS = new SerializedString("books");
+
+    /**
+     * This method returns a module with the serializers, for the mappers that aren't configured by Spring
+     *
+     * @return {@link SimpleModule}
+     */
+    public static SimpleModule module() {
+        return new SimpleModule("EntitySerializers")
+                .addSerializer(Book.class, new BookSerializer())
+                .addSerializer(User.class, new UserSerializer());
+    }
+
+    public static class BookSerializer extends StdSerializer<Book> {
+
+        public BookSerializer() {
+            super(Book.class);
+        }
+
+        @Override
+        public void serialize(Book book, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(book);
+            writeFields(book, gen);
+            gen.writeEndObject();
+        }
+
+        static void writeFields(Book book, JsonGenerator gen) throws IOException {
+            gen.writeFieldName(ID);
+            writeNumber(book.getId(), gen);
+            writeString(GENRE, book.getGenre(), gen);
+            writeString(AUTHOR, book.getAuthor(), gen);
+            writeString(IMAGE, book.getImage(), gen);
+            writeString(TITLE, book.getTitle(), gen);
+            writeString(SUB_TITLE, book.getSubTitle(), gen);
+            writeString(PUBLISHER, book.getPublisher(), gen);
+            writeString(YEAR, book.getYear(), gen);
+            gen.writeFieldName(PAGES);
+            Integer pages = book.getPages();
+            if (Objects.isNull(pages)) {
+                gen.writeNull();
+            } else {
+                gen.writeNumber(pages);
+            }
+            writeString(ISBN, book.getIsbn(), gen);
+        }
+    }
+
+    public static class UserSerializer extends StdSerializer<User> {
+
+        public UserSerializer() {
+            super(User.class);
+        }
+
+        /**
+         * The books are written inline with the book serializer, the collection of the user is read once and walked
+         * in place, without copying it
+         */
+        @Override
+        public void serialize(User user, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(user);
+            gen.writeFieldName(ID);
+            writeNumber(user.getId(), gen);
+            writeString(USERNAME, user.getUsername(), gen);
+            writeString(NAME, user.getName(), gen);
+            writeBirthDate(user.getBirthDate(), gen, provider);
+
+            gen.writeFieldName(BOOKS);
+            Set<Book> books = user.getBooks();
+            gen.writeStartArray(books, books.size());
+            for (Book book : books) {
+                if (Objects.isNull(book)) {
+                    gen.writeNull();
+                } else {
+                    gen.writeStartObject(book);
+                    BookSerializer.writeFields(book, gen);
+                    gen.writeEndObject();
+                }
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+
+        /**
+         * ISO dates are written directly, any other configured format goes through the serializer of the mapper
+         */
+        private void writeBirthDate(LocalDate birthDate, JsonGenerator gen, SerializerProvider provider)
+                throws IOException {
+            if (Objects.isNull(birthDate) || !provider.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)) {
+                writeString(BIRTH_DATE, Objects.isNull(birthDate) ? null : birthDate.toString(), gen);
+            } else {
+                provider.defaultSerializeField(BIRTH_DATE.getValue(), birthDate, gen);
+            }
+        }
+    }
+
+    private static void writeString(SerializableString name, String value, JsonGenerator gen) throws IOException {
+        gen.writeFieldName(name);
+        gen.writeString(value);
+    }
+
+    private static void writeNumber(Long value, JsonGenerator gen) throws IOException {
+        if (Objects.isNull(value)) {
+            gen.writeNull();
+        } else {
+            gen.writeNumber(value);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package wolox.training.sharding;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.Properties;
+import org.hibernate.MappingException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+import org.hibernate.service.ServiceRegistry;
+import org.hibernate.type.Type;
+
+/**
+ * Sequence generator that keeps the id already set on the entity when {@link #ASSIGNED_IDS} is enabled. The users
+ * of a shard take their ids from the sequence of the primary shard, see {@link UserShards#create}, so the sequence
+ * of the shard is never used. Otherwise it is the default sequence generator.
+ */
+public class AssignedOrSequenceGenerator extends SequenceStyleGenerator {
+
+    public static final String NAME = "assigned_or_sequence";
+    public static final String ASSIGNED_IDS = "training.sharding.assigned-ids";
+
+    private boolean assignedIds;
+
+    @Override
+    public void configure(Type type, Properties params, ServiceRegistry serviceRegistry) throws MappingException {
+        super.configure(type, params, serviceRegistry);
+        assignedIds = ConfigurationHelper.getBoolean(ASSIGNED_IDS,
+                serviceRegistry.getService(ConfigurationService.class).getSettings(), false);
+    }
+
+    @Override
+    public Serializable generate(SharedSessionContractImplementor session, Object object) {
+        if (assignedIds) {
+            Serializable id = session.getEntityPersister(null, object).getIdentifier(object, session);
+            if (Objects.nonNull(id)) {
+                return id;
+            }
+        }
+        return super.generate(session, object);
+    }
+}
@@ -0,0 +1,127 @@
+package wolox.training.sharding;
+
+import com.google.common.collect.Iterables;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+
+/**
+ * Copies the books of the primary shard to the other shards, the books of a user are read with a join on the shard
+ * of the user. Every shard is brought in line with the primary one at startup and then follows the book
+ * invalidations of {@link CacheInvalidationBus}, a created, updated or deleted book is read again and written to
+ * every shard. The copies lag the primary shard by the time of the invalidation, so the join table of a shard has
+ * no foreign key to its books and an ownership of a removed book is simply not joined.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "training.sharding.enabled", havingValue = "true")
+public class CatalogReplicator implements SmartLifecycle, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogReplicator.class);
+    private static final int PHASE = Integer.MAX_VALUE - 3;
+    private static final int BATCH_SIZE = 1000;
+    private static final String COLUMNS = "id, genre, author, image, title, sub_title, publisher, year, pages, isbn";
+    private static final String SELECT_BOOKS = "SELECT " + COLUMNS + " FROM book";
+    private static final String SELECT_BOOK = "SELECT " + COLUMNS + " FROM book WHERE id = ?";
+    private static final String UPSERT_BOOK = "INSERT INTO book (" + COLUMNS + ") "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT (id) DO UPDATE SET "
+            + "genre = EXCLUDED.genre, author = EXCLUDED.author, image = EXCLUDED.image, title = EXCLUDED.title, "
+            + "sub_title = EXCLUDED.sub_title, publisher = EXCLUDED.publisher, year = EXCLUDED.year, "
+            + "pages = EXCLUDED.pages, isbn = EXCLUDED.isbn";
+    private static final String DELETE_BOOK = "DELETE FROM book WHERE id = ?";
+    private static final String DELETE_OTHER_BOOKS = "DELETE FROM book WHERE id <> ALL(?)";
+
+    private final CacheInvalidationBus invalidationBus;
+    private final UserShards userShards;
+
+    private volatile boolean running;
+
+    public CatalogReplicator(CacheInvalidationBus invalidationBus, UserShards userShards) {
+        this.invalidationBus = invalidationBus;
+        this.userShards = userShards;
+    }
+
+    /**
+     * Waits for a running copy, so a change made while the books were being read is applied after it
+     */
+    @Override
+    public synchronized void invalidated(Long bookId) {
+        List<Object[]> rows = userShards.jdbcTemplate(ShardContext.PRIMARY)
+                .query(SELECT_BOOK, (resultSet, rowNum) -> row(resultSet), bookId);
+        for (int shard = ShardContext.PRIMARY + 1; shard < userShards.count(); shard++) {
+            if (rows.isEmpty()) {
+                userShards.jdbcTemplate(shard).update(DELETE_BOOK, bookId);
+            } else {
+                userShards.jdbcTemplate(shard).update(UPSERT_BOOK, rows.get(0));
+            }
+        }
+    }
+
+    @Override
+    public void invalidatedAll() {
+        replicate();
+    }
+
+    @Override
+    public void start() {
+        invalidationBus.subscribe(CacheNames.BOOKS, this);
+        replicate();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started with the snapshot, before the web server accepts requests
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private synchronized void replicate() {
+        long start = System.nanoTime();
+        List<Object[]> rows = userShards.jdbcTemplate(ShardContext.PRIMARY)
+                .query(SELECT_BOOKS, (resultSet, rowNum) -> row(resultSet));
+        Long[] ids = rows.stream().map(row -> (Long) row[0]).toArray(Long[]::new);
+
+        for (int shard = ShardContext.PRIMARY + 1; shard < userShards.count(); shard++) {
+            JdbcTemplate jdbcTemplate = userShards.jdbcTemplate(shard);
+            Iterables.partition(rows, BATCH_SIZE).forEach(batch -> jdbcTemplate.batchUpdate(UPSERT_BOOK, batch));
+            jdbcTemplate.update(connection -> {
+                PreparedStatement statement = connection.prepareStatement(DELETE_OTHER_BOOKS);
+                statement.setArray(1, connection.createArrayOf("bigint", ids));
+                return statement;
+            });
+        }
+        LOGGER.info("{} books copied to {} shards in {} ms", rows.size(), userShards.count() - 1,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private static Object[] row(ResultSet resultSet) throws SQLException {
+        Object[] row = new Object[10];
+        for (int column = 0; column < row.length; column++) {
+            row[column] = resultSet.getObject(column + 1);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,63 @@
+package wolox.training.sharding;
+
+import java.util.Objects;
+import java.util.function.Supplier;
+
+/**
+ * Holds the shard the current thread reads and writes, {@link ShardRoutingDataSource} hands out connections of that
+ * shard. A thread without a shard uses the primary one, which also keeps the books. The shard is picked when a
+ * connection is taken, so it must be set before the transaction of the work starts.
+ */
+public final class ShardContext {
+
+    public static final int PRIMARY = 0;
+
+    private static final ThreadLocal<Integer> SHARD = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * This method returns the shard of the current thread
+     *
+     * @return the index of the shard, {@link #PRIMARY} when none is set
+     */
+    public static int current() {
+        Integer shard = SHARD.get();
+        return Objects.isNull(shard) ? PRIMARY : shard;
+    }
+
+    /**
+     * This method sets the shard of the current thread until {@link #clear()} is called
+     *
+     * @param shard: index of the shard
+     */
+    public static void set(int shard) {
+        SHARD.set(shard);
+    }
+
+    public static void clear() {
+        SHARD.remove();
+    }
+
+    /**
+     * This method runs the action on a shard and restores the previous shard of the thread
+     *
+     * @param shard:  index of the shard
+     * @param action: the work to run
+     * @return the result of the action
+     */
+    public static <T> T callOn(int shard, Supplier<T> action) {
+        Integer previous = SHARD.get();
+        SHARD.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (Objects.isNull(previous)) {
+                SHARD.remove();
+            } else {
+                SHARD.set(previous);
+            }
+        }
+    }
+}
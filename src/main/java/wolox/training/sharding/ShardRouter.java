@@ -0,0 +1,50 @@
+package wolox.training.sharding;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Places every user in a shard by its id with a jump consistent hash, so adding a shard only moves the users that
+ * land in the new one. There is a single shard when sharding is disabled.
+ */
+@Component
+public class ShardRouter {
+
+    private static final long MULTIPLIER = 2862933555777941757L;
+    private static final double BUCKET_SPAN = 1L << 31;
+
+    private final int shards;
+
+    @Autowired
+    public ShardRouter(@Value("${training.sharding.enabled:false}") boolean enabled,
+            @Value("${training.sharding.urls:}") String[] urls) {
+        this(enabled ? urls.length + 1 : 1);
+    }
+
+    ShardRouter(int shards) {
+        this.shards = shards;
+    }
+
+    public int shards() {
+        return shards;
+    }
+
+    /**
+     * This method returns the shard of a user
+     *
+     * @param userId: this is the unique identifier of the user
+     * @return the index of the shard
+     */
+    public int shardOf(long userId) {
+        long key = userId;
+        long shard = -1;
+        long next = 0;
+        while (next < shards) {
+            shard = next;
+            key = key * MULTIPLIER + 1;
+            next = (long) ((shard + 1) * (BUCKET_SPAN / ((key >>> 33) + 1)));
+        }
+        return (int) shard;
+    }
+}
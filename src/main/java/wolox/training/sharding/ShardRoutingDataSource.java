@@ -0,0 +1,47 @@
+package wolox.training.sharding;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Data source of the application when the users are sharded, every connection is taken from the shard of
+ * {@link ShardContext}. The first shard is the primary one.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+    private final List<DataSource> shards;
+
+    public ShardRoutingDataSource(List<DataSource> shards) {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) {
+            targets.put(shard, shards.get(shard));
+        }
+        this.shards = shards;
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(shards.get(ShardContext.PRIMARY));
+        setLenientFallback(false);
+        afterPropertiesSet();
+    }
+
+    public int shards() {
+        return shards.size();
+    }
+
+    /**
+     * This method returns the data source of a shard, its connections are never the ones of the current transaction
+     *
+     * @param shard: index of the shard
+     * @return {@link DataSource}
+     */
+    public DataSource shard(int shard) {
+        return shards.get(shard);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+}
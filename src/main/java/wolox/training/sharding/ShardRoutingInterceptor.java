@@ -0,0 +1,52 @@
+package wolox.training.sharding;
+
+import java.util.Map;
+import java.util.Objects;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Routes the requests of one user to its shard before the transaction of the handler starts, the user is the
+ * {@code userId} or {@code id} variable of the path. Other requests use the primary shard or read every shard.
+ */
+public class ShardRoutingInterceptor implements HandlerInterceptor {
+
+    private static final String[] USER_ID_VARIABLES = {"userId", "id"};
+
+    private final ShardRouter router;
+
+    public ShardRoutingInterceptor(ShardRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        @SuppressWarnings("unchecked")
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(
+                HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        if (Objects.isNull(variables)) {
+            return true;
+        }
+
+        for (String name : USER_ID_VARIABLES) {
+            String userId = variables.get(name);
+            if (Objects.nonNull(userId)) {
+                try {
+                    ShardContext.set(router.shardOf(Long.parseLong(userId)));
+                } catch (NumberFormatException e) {
+                    // not a user id, the handler rejects it
+                }
+                return true;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+            Exception ex) {
+        ShardContext.clear();
+    }
+}
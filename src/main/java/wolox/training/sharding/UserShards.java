@@ -0,0 +1,294 @@
+package wolox.training.sharding;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import wolox.training.deadline.QueryDeadline;
+import wolox.training.exceptions.DatabaseUnavailableException;
+
+/**
+ * Runs the work on the users in their shards. The work of one user runs in the shard of {@link ShardRouter}, the
+ * work that can't name a user, like a search, runs in every shard at once and its results are merged. Each shard
+ * runs it in a read only transaction of its own thread, so the lazy associations of the results must be loaded by
+ * the work itself, and the {@link QueryDeadline} of the caller applies to it. With a single shard the work just
+ * runs in the calling thread.
+ * <p>
+ * The shards are read by the bounded {@code userShardsExecutor} of {@code ShardingConfig}, the requests it can't
+ * take answer 503. The work already running in a shard that reads every shard again reads them one after the other
+ * in its own thread, each in a new transaction, so it never waits for a thread of the pool it holds.
+ * <p>
+ * A transaction keeps the connection it started with, so the work of another shard can't run in it; the work that
+ * isn't a request of one user, like the read models, uses the {@link JdbcTemplate} of the shard instead.
+ */
+@Component
+public class UserShards {
+
+    private static final String NEXT_ID = "SELECT nextval('hibernate_sequence')";
+    private static final ThreadLocal<Boolean> IN_SHARD = ThreadLocal.withInitial(() -> false);
+
+    private final ShardRouter router;
+    private final ObjectProvider<PlatformTransactionManager> transactionManager;
+    private final ObjectProvider<JdbcTemplate> jdbcTemplate;
+    private final ObjectProvider<DataSource> dataSource;
+    private final ObjectProvider<AsyncTaskExecutor> executor;
+
+    private volatile List<JdbcTemplate> shardTemplates;
+
+    public UserShards(ShardRouter router, ObjectProvider<PlatformTransactionManager> transactionManager,
+            ObjectProvider<JdbcTemplate> jdbcTemplate, ObjectProvider<DataSource> dataSource,
+            @Qualifier("userShardsExecutor") ObjectProvider<AsyncTaskExecutor> executor) {
+        this.router = router;
+        this.transactionManager = transactionManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.executor = executor;
+    }
+
+    public int count() {
+        return router.shards();
+    }
+
+    /**
+     * This method runs the work of a user in its shard, it must be called before the transaction of the work starts
+     *
+     * @param userId: this is the unique identifier of the user
+     * @param action: the work on the user
+     * @return the result of the action
+     */
+    public <T> T on(Long userId, Supplier<T> action) {
+        return ShardContext.callOn(router.shardOf(userId), action);
+    }
+
+    /**
+     * This method runs the work of a list of users in the shards of the users at once, every shard gets the ids of
+     * its users
+     *
+     * @param userIds: unique identifiers of the users
+     * @param action:  the work on the users of one shard
+     * @return the results of the shards with users
+     */
+    public <T> List<T> onUsers(Collection<Long> userIds, Function<List<Long>, T> action) {
+        if (count() == 1) {
+            return Collections.singletonList(action.apply(new ArrayList<>(userIds)));
+        }
+
+        Map<Integer, List<Long>> idsByShard = new TreeMap<>();
+        userIds.forEach(userId -> idsByShard.computeIfAbsent(router.shardOf(userId), shard -> new ArrayList<>())
+                .add(userId));
+        return inShards(idsByShard.keySet(), shard -> action.apply(idsByShard.get(shard)));
+    }
+
+    /**
+     * This method returns the {@link JdbcTemplate} of a shard, it never joins the current transaction
+     *
+     * @param shard: index of the shard
+     * @return {@link JdbcTemplate}
+     */
+    public JdbcTemplate jdbcTemplate(int shard) {
+        if (count() == 1) {
+            return jdbcTemplate.getObject();
+        }
+
+        List<JdbcTemplate> templates = shardTemplates;
+        if (Objects.isNull(templates)) {
+            try {
+                ShardRoutingDataSource routing = dataSource.getObject().unwrap(ShardRoutingDataSource.class);
+                templates = IntStream.range(0, count())
+                        .mapToObj(index -> new JdbcTemplate(routing.shard(index)))
+                        .collect(Collectors.toList());
+            } catch (SQLException e) {
+                throw new IllegalStateException("The data source isn't sharded", e);
+            }
+            shardTemplates = templates;
+        }
+        return templates.get(shard);
+    }
+
+    /**
+     * This method returns the {@link JdbcTemplate} of the shard of a user, it never joins the current transaction
+     *
+     * @param userId: this is the unique identifier of the user
+     * @return {@link JdbcTemplate}
+     */
+    public JdbcTemplate jdbcTemplateOf(Long userId) {
+        return jdbcTemplate(router.shardOf(userId));
+    }
+
+    /**
+     * This method runs the work in every shard at once
+     *
+     * @param action: the work on one shard
+     * @return the results of every shard, in the order of the shards
+     */
+    public <T> List<T> gather(Supplier<T> action) {
+        if (count() == 1) {
+            return Collections.singletonList(action.get());
+        }
+
+        return inShards(IntStream.range(0, count()).boxed().collect(Collectors.toList()), shard -> action.get());
+    }
+
+    /**
+     * This method runs the work in every shard at once and concatenates the results
+     *
+     * @param action: the work on one shard
+     * @return {@link List} with the results of every shard, in the order of the shards
+     */
+    public <T> List<T> gatherAll(Supplier<? extends Collection<T>> action) {
+        return gather(action).stream().flatMap(Collection::stream).collect(Collectors.toList());
+    }
+
+    /**
+     * This method reads a page of a sorted query from every shard. Every shard returns its first rows up to the end
+     * of the page, so the page can be cut from their merge, and the totals are added.
+     *
+     * @param pageable: page and order of the result
+     * @param query:    the query of one shard
+     * @param order:    the order of the query applied to its rows, see {@link #comparator(Sort, BiFunction)}
+     * @return {@link Page}
+     */
+    public <T> Page<T> gatherPage(Pageable pageable, Function<Pageable, Page<T>> query, Comparator<T> order) {
+        if (count() == 1) {
+            return query.apply(pageable);
+        }
+
+        long end = pageable.getOffset() + pageable.getPageSize();
+        Pageable head = PageRequest.of(0, (int) Math.min(end, Integer.MAX_VALUE), pageable.getSort());
+        List<Page<T>> pages = gather(() -> query.apply(head));
+        List<T> content = pages.stream()
+                .flatMap(page -> page.getContent().stream())
+                .sorted(order)
+                .skip(pageable.getOffset())
+                .limit(pageable.getPageSize())
+                .collect(Collectors.toList());
+        return new PageImpl<>(content, pageable, pages.stream().mapToLong(Page::getTotalElements).sum());
+    }
+
+    /**
+     * This method runs the creation of a user in the shard of its id. The id is taken from the sequence of the
+     * primary shard, so it is unique in every shard; with a single shard it is left to the database and is null.
+     *
+     * @param create: saves the user with the given id
+     * @return the result of the creation
+     */
+    public <T> T create(Function<Long, T> create) {
+        if (count() == 1) {
+            return create.apply(null);
+        }
+
+        Long userId = jdbcTemplate(ShardContext.PRIMARY).queryForObject(NEXT_ID, Long.class);
+        return on(userId, () -> create.apply(userId));
+    }
+
+    /**
+     * This method returns the order of a {@link Sort} applied in memory, with the nulls ordered as Postgres does:
+     * last when ascending and first when descending. Strings are compared by their characters, the order of a "C"
+     * collation, so the merged pages match the shards when their databases use it.
+     *
+     * @param sort:     order of the query
+     * @param property: returns the value of a property of a row
+     * @return {@link Comparator}
+     */
+    public static <T> Comparator<T> comparator(Sort sort, BiFunction<T, String, Object> property) {
+        Comparator<T> comparator = (first, second) -> 0;
+        for (Sort.Order order : sort) {
+            Comparator<Object> natural = order.isIgnoreCase() ? UserShards::compareIgnoringCase : UserShards::compare;
+            Comparator<Object> values = Comparator.nullsLast(natural);
+            Comparator<T> byProperty = Comparator.comparing(row -> property.apply(row, order.getProperty()), values);
+            comparator = comparator.thenComparing(order.isAscending() ? byProperty : byProperty.reversed());
+        }
+        return comparator;
+    }
+
+    private <T> List<T> inShards(Collection<Integer> shards, Function<Integer, T> action) {
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager.getObject());
+        readOnly.setReadOnly(true);
+        if (IN_SHARD.get()) {
+            readOnly.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+            return shards.stream()
+                    .map(shard -> ShardContext.callOn(shard, () -> readOnly.execute(status -> action.apply(shard))))
+                    .collect(Collectors.toList());
+        }
+
+        QueryDeadline deadline = QueryDeadline.current();
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        try {
+            for (Integer shard : shards) {
+                futures.add(executor.getObject().submit(() -> inShard(() -> QueryDeadline.callWith(deadline,
+                        () -> ShardContext.callOn(shard, () -> readOnly.execute(status -> action.apply(shard)))))));
+            }
+        } catch (TaskRejectedException e) {
+            futures.forEach(future -> future.cancel(true));
+            throw new DatabaseUnavailableException(e);
+        }
+
+        List<T> results = new ArrayList<>(shards.size());
+        for (Future<T> future : futures) {
+            results.add(await(future));
+        }
+        return results;
+    }
+
+    private static <T> T inShard(Supplier<T> work) {
+        IN_SHARD.set(true);
+        try {
+            return work.get();
+        } finally {
+            IN_SHARD.remove();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int compare(Object first, Object second) {
+        return ((Comparable<Object>) first).compareTo(second);
+    }
+
+    private static int compareIgnoringCase(Object first, Object second) {
+        if (first instanceof String && second instanceof String) {
+            return String.CASE_INSENSITIVE_ORDER.compare((String) first, (String) second);
+        }
+        return compare(first, second);
+    }
+
+    private static <T> T await(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while reading the shards", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Shard read failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package wolox.training.snapshot;
+
+import java.time.Instant;
+import java.util.List;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * Represents the cached books and users of a node at a point in time. Every change made after the watermark may be
+ * missing from the snapshot, the users carry their books.
+ */
+public class CatalogSnapshot {
+
+    private final Instant watermark;
+    private final List<Book> books;
+    private final List<User> users;
+
+    public CatalogSnapshot(Instant watermark, List<Book> books, List<User> users) {
+        this.watermark = watermark;
+        this.books = books;
+        this.users = users;
+    }
+
+    public Instant getWatermark() {
+        return watermark;
+    }
+
+    public List<Book> getBooks() {
+        return books;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+}
@@ -0,0 +1,208 @@
+package wolox.training.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * Binary format of the {@link CatalogSnapshot}. The books are stored once, the users reference theirs by id:
+ * <pre>
+ * header: int magic, int version, long watermark epoch second, int watermark nano
+ * books:  int count, then long id, 8 strings, int pages for each book
+ * users:  int count, then long id, 2 strings, long birth date epoch day, int book count, long book ids for each user
+ * footer: long crc32 of everything before it
+ * </pre>
+ * Strings are an int byte length, -1 when null, and the UTF-8 bytes. The file is written to a temporary file and
+ * moved over the previous snapshot, and read through a memory mapping after its checksum is verified.
+ */
+public final class CatalogSnapshotCodec {
+
+    static final int MAGIC = 0x43534e31;
+    static final int VERSION = 1;
+    private static final int NULL_LENGTH = -1;
+    private static final int NULL_INT = Integer.MIN_VALUE;
+    private static final long NULL_LONG = Long.MIN_VALUE;
+
+    private CatalogSnapshotCodec() {
+    }
+
+    /**
+     * This method writes the snapshot, replacing the previous one only once it is complete
+     *
+     * @param file:     path of the snapshot
+     * @param snapshot: books and users to write
+     */
+    public static void write(Path file, CatalogSnapshot snapshot) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16), crc))) {
+                writeContent(out, snapshot);
+                out.writeLong(crc.getValue());
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * This method reads a snapshot
+     *
+     * @param file: path of the snapshot
+     * @return {@link CatalogSnapshot}
+     * @throws IOException when the file is missing, truncated, corrupted or of another version
+     */
+    public static CatalogSnapshot read(Path file) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        int length = buffer.capacity() - Long.BYTES;
+        if (length < 2 * Integer.BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(Integer.BYTES) != VERSION) {
+            throw new IOException("Not a catalog snapshot of version " + VERSION + ": " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(length));
+        if (crc.getValue() != buffer.getLong(length)) {
+            throw new IOException("Corrupted catalog snapshot " + file);
+        }
+
+        try {
+            return readContent(buffer.position(2 * Integer.BYTES).limit(length));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid catalog snapshot " + file, e);
+        }
+    }
+
+    private static void writeContent(DataOutputStream out, CatalogSnapshot snapshot) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(snapshot.getWatermark().getEpochSecond());
+        out.writeInt(snapshot.getWatermark().getNano());
+
+        Map<Long, Book> books = new LinkedHashMap<>();
+        snapshot.getBooks().forEach(book -> books.put(book.getId(), book));
+        snapshot.getUsers().forEach(user -> user.getBooks().forEach(book -> books.putIfAbsent(book.getId(), book)));
+        out.writeInt(books.size());
+        for (Book book : books.values()) {
+            out.writeLong(book.getId());
+            writeString(out, book.getGenre());
+            writeString(out, book.getAuthor());
+            writeString(out, book.getImage());
+            writeString(out, book.getTitle());
+            writeString(out, book.getSubTitle());
+            writeString(out, book.getPublisher());
+            writeString(out, book.getYear());
+            writeString(out, book.getIsbn());
+            out.writeInt(Objects.isNull(book.getPages()) ? NULL_INT : book.getPages());
+        }
+
+        out.writeInt(snapshot.getUsers().size());
+        for (User user : snapshot.getUsers()) {
+            out.writeLong(user.getId());
+            writeString(out, user.getUsername());
+            writeString(out, user.getName());
+            out.writeLong(Objects.isNull(user.getBirthDate()) ? NULL_LONG : user.getBirthDate().toEpochDay());
+            Set<Book> userBooks = user.getBooks();
+            out.writeInt(userBooks.size());
+            for (Book book : userBooks) {
+                out.writeLong(book.getId());
+            }
+        }
+    }
+
+    private static CatalogSnapshot readContent(ByteBuffer buffer) {
+        Instant watermark = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+
+        int bookCount = buffer.getInt();
+        Map<Long, Book> books = new HashMap<>(bookCount * 2);
+        List<Book> bookList = new ArrayList<>(bookCount);
+        for (int i = 0; i < bookCount; i++) {
+            Book book = new Book(buffer.getLong());
+            set(readString(buffer), book::setGenre);
+            set(readString(buffer), book::setAuthor);
+            set(readString(buffer), book::setImage);
+            set(readString(buffer), book::setTitle);
+            set(readString(buffer), book::setSubTitle);
+            set(readString(buffer), book::setPublisher);
+            set(readString(buffer), book::setYear);
+            set(readString(buffer), book::setIsbn);
+            int pages = buffer.getInt();
+            set(pages == NULL_INT ? null : pages, book::setPages);
+            books.put(book.getId(), book);
+            bookList.add(book);
+        }
+
+        int userCount = buffer.getInt();
+        List<User> users = new ArrayList<>(userCount);
+        for (int i = 0; i < userCount; i++) {
+            User user = new User(buffer.getLong());
+            set(readString(buffer), user::setUsername);
+            set(readString(buffer), user::setName);
+            long birthDate = buffer.getLong();
+            set(birthDate == NULL_LONG ? null : LocalDate.ofEpochDay(birthDate), user::setBirthDate);
+            int userBookCount = buffer.getInt();
+            List<Book> userBooks = new ArrayList<>(userBookCount);
+            for (int j = 0; j < userBookCount; j++) {
+                userBooks.add(Objects.requireNonNull(books.get(buffer.getLong()), "book of a user"));
+            }
+            user.setBooks(userBooks);
+            users.add(user);
+        }
+        return new CatalogSnapshot(watermark, bookList, users);
+    }
+
+    private static <T> void set(T value, Consumer<T> setter) {
+        if (Objects.nonNull(value)) {
+            setter.accept(value);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (Objects.isNull(value)) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,259 @@
+package wolox.training.snapshot;
+
+import com.google.common.collect.Iterables;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.EntityCache;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Writes the cached books and users to a {@link CatalogSnapshot} periodically and when the node stops, and warms
+ * the caches from it when the node starts, before the web server accepts requests. The snapshot isn't trusted
+ * blindly: its entities are checked against the {@code last_modified} watermark of their rows, the ones changed or
+ * deleted since it was written are reloaded or left out, and so are the users that own a changed book. The books
+ * added to or removed from a user don't touch its row, they are found in the ownership history. The users are
+ * checked and reloaded in their shards through {@link UserShards}. Enabled with
+ * {@code training.snapshot.enabled=true}.
+ * <p>
+ * The watermark is the database time of the snapshot minus {@code training.snapshot.watermark-margin-ms}, so a
+ * change made by a transaction that started before the snapshot and committed after it is seen as newer as long as
+ * the transaction was shorter than the margin.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(name = "training.snapshot.enabled", havingValue = "true")
+public class CatalogSnapshotService implements SmartLifecycle {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CatalogSnapshotService.class);
+    private static final int PHASE = Integer.MAX_VALUE - 3;
+    private static final int IDS_PER_QUERY = 1000;
+    private static final Duration LISTENING_TIMEOUT = Duration.ofSeconds(5);
+    private static final String SELECT_BOOK_CHANGES =
+            "SELECT id, last_modified > ? AS changed FROM book WHERE id = ANY(?)";
+    private static final String SELECT_USER_CHANGES = "SELECT id, last_modified > watermark.at "
+            + "OR EXISTS (SELECT 1 FROM ownership_history "
+            + "WHERE user_id = users.id AND changed_at > watermark.at) AS changed "
+            + "FROM users, (SELECT ?::timestamptz AS at) watermark WHERE id = ANY(?)";
+
+    private final EntityCache<Book> bookCache;
+    private final EntityCache<User> userCache;
+    private final BookRepository bookRepository;
+    private final UserRepository userRepository;
+    private final UserShards userShards;
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final Path file;
+    private final long intervalMs;
+    private final Duration watermarkMargin;
+
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public CatalogSnapshotService(EntityCache<Book> bookCache, EntityCache<User> userCache,
+            BookRepository bookRepository, UserRepository userRepository, UserShards userShards,
+            JdbcTemplate jdbcTemplate, CacheInvalidationBus invalidationBus,
+            @Value("${training.snapshot.file:snapshot/catalog.snapshot}") String file,
+            @Value("${training.snapshot.interval-ms:300000}") long intervalMs,
+            @Value("${training.snapshot.watermark-margin-ms:60000}") long watermarkMarginMs) {
+        this.bookCache = bookCache;
+        this.userCache = userCache;
+        this.bookRepository = bookRepository;
+        this.userRepository = userRepository;
+        this.userShards = userShards;
+        this.jdbcTemplate = jdbcTemplate;
+        this.invalidationBus = invalidationBus;
+        this.file = Paths.get(file);
+        this.intervalMs = intervalMs;
+        this.watermarkMargin = Duration.ofMillis(watermarkMarginMs);
+    }
+
+    /**
+     * This method writes the cached books and users to the snapshot file
+     */
+    public synchronized void write() throws IOException {
+        long start = System.nanoTime();
+        Instant watermark = jdbcTemplate.queryForObject("SELECT now()", Timestamp.class).toInstant()
+                .minus(watermarkMargin);
+        CatalogSnapshot snapshot = new CatalogSnapshot(watermark,
+                new ArrayList<>(bookCache.getNativeCache().asMap().values()),
+                new ArrayList<>(userCache.getNativeCache().asMap().values()));
+        CatalogSnapshotCodec.write(file, snapshot);
+        LOGGER.info("Catalog snapshot of {} books and {} users written in {} ms", snapshot.getBooks().size(),
+                snapshot.getUsers().size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * This method warms the caches with the entities of the snapshot file that didn't change since it was written,
+     * the changed ones are read again
+     */
+    public synchronized void restore() {
+        if (!Files.exists(file)) {
+            LOGGER.info("No catalog snapshot in {}, the caches start cold", file.toAbsolutePath());
+            return;
+        }
+
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot;
+        try {
+            snapshot = CatalogSnapshotCodec.read(file);
+        } catch (IOException e) {
+            LOGGER.warn("Catalog snapshot discarded, the caches start cold", e);
+            return;
+        }
+
+        // Values read after these versions are discarded by the caches if an invalidation arrives meanwhile
+        long bookVersion = bookCache.version();
+        long userVersion = userCache.version();
+
+        Map<Long, Book> books = snapshot.getBooks().stream()
+                .collect(Collectors.toMap(Book::getId, Function.identity(), (first, second) -> first, HashMap::new));
+        Map<Long, Boolean> bookChanges = changes(SELECT_BOOK_CHANGES, snapshot.getWatermark(), books.keySet());
+        Set<Long> staleBooks = books.keySet().stream()
+                .filter(id -> !Boolean.FALSE.equals(bookChanges.get(id)))
+                .collect(Collectors.toSet());
+        staleBooks.forEach(books::remove);
+        inChunks(bookChanges.entrySet().stream().filter(Map.Entry::getValue).map(Map.Entry::getKey)
+                .collect(Collectors.toList()), bookRepository::findAllById)
+                .forEach(book -> books.put(book.getId(), book));
+
+        Map<Long, User> users = snapshot.getUsers().stream()
+                .collect(Collectors.toMap(User::getId, Function.identity(), (first, second) -> first, HashMap::new));
+        Map<Long, Boolean> userChanges = new HashMap<>();
+        userShards.onUsers(users.keySet(), ids -> changes(SELECT_USER_CHANGES, snapshot.getWatermark(), ids))
+                .forEach(userChanges::putAll);
+        Set<Long> staleUsers = new HashSet<>();
+        List<Long> reloadedUsers = new ArrayList<>();
+        users.values().forEach(user -> {
+            Boolean changed = userChanges.get(user.getId());
+            boolean ownsStaleBook = user.getBooks().stream().anyMatch(book -> staleBooks.contains(book.getId()));
+            if (changed == null || changed || ownsStaleBook) {
+                staleUsers.add(user.getId());
+                if (changed != null) {
+                    reloadedUsers.add(user.getId());
+                }
+            }
+        });
+        staleUsers.forEach(users::remove);
+        userShards.onUsers(reloadedUsers, ids -> inChunks(ids, userRepository::findAllWithBooksByIdIn)).stream()
+                .flatMap(List::stream)
+                .forEach(user -> users.put(user.getId(), user));
+
+        books.forEach((id, book) -> bookCache.putIfNotInvalidated(id, book, bookVersion));
+        users.forEach((id, user) -> userCache.putIfNotInvalidated(id, user, userVersion));
+        LOGGER.info("Caches warmed from the catalog snapshot of {} with {} books and {} users in {} ms, "
+                        + "{} books and {} users changed since then", snapshot.getWatermark(), books.size(),
+                users.size(), (System.nanoTime() - start) / 1_000_000, staleBooks.size(), staleUsers.size());
+    }
+
+    @Override
+    public void start() {
+        awaitInvalidationBus();
+        restore();
+        running = true;
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-snapshot-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::writeQuietly, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The caches are written once more, they are as warm as they get when the node stops
+     */
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+        writeQuietly();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started after the invalidation bus, so no change is missed while the caches are warmed, and before the web
+     * server
+     */
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void writeQuietly() {
+        try {
+            write();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Catalog snapshot couldn't be written to {}", file.toAbsolutePath(), e);
+        }
+    }
+
+    private void awaitInvalidationBus() {
+        long deadline = System.nanoTime() + LISTENING_TIMEOUT.toNanos();
+        while (!invalidationBus.isListening() && System.nanoTime() - deadline < 0) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * The rows of the ids that still exist, mapped to whether they changed after the watermark
+     */
+    private Map<Long, Boolean> changes(String sql, Instant watermark, Collection<Long> ids) {
+        Map<Long, Boolean> changes = new HashMap<>();
+        if (ids.isEmpty()) {
+            return changes;
+        }
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            statement.setTimestamp(1, Timestamp.from(watermark));
+            statement.setArray(2, connection.createArrayOf("bigint", ids.toArray()));
+            return statement;
+        }, (RowCallbackHandler) resultSet -> changes.put(resultSet.getLong("id"), resultSet.getBoolean("changed")));
+        return changes;
+    }
+
+    private <V> List<V> inChunks(List<Long> ids, Function<List<Long>, List<V>> loader) {
+        List<V> loaded = new ArrayList<>(ids.size());
+        Iterables.partition(ids, IDS_PER_QUERY).forEach(chunk -> loaded.addAll(loader.apply(chunk)));
+        return loaded;
+    }
+}
@@ -0,0 +1,358 @@
+package wolox.training.suggest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed trie of the terms of a set of values, every node keeps the ids of its top values by weight. The top of
+ * a node is the best of the tops of its children and of the values whose term ends in it, so a lookup walks the
+ * prefix and reads the top of its node, whatever the number of values under it. A change only merges again the
+ * nodes on the paths of the terms of the changed value.
+ *
+ * @param <T> the value returned by a lookup
+ */
+public class PrefixIndex<T> {
+
+    private static final long[] NO_IDS = new long[0];
+
+    private final int topSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Node root = new Node();
+    private final Map<Long, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * @param topSize: number of values kept per prefix, the maximum limit of a lookup
+     */
+    public PrefixIndex(int topSize) {
+        this.topSize = topSize;
+    }
+
+    /**
+     * This method adds or replaces a value
+     *
+     * @param id:     this is the unique identifier of the value
+     * @param value:  returned by the lookups of the terms
+     * @param weight: the values with the highest weight are returned first
+     * @param terms:  normalized terms of the value, see {@link SuggestTerms}
+     */
+    public void put(long id, T value, long weight, Collection<String> terms) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+            entries.put(id, new Entry<>(value, weight, new ArrayList<>(terms)));
+            terms.forEach(term -> addTerm(term, id, true));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method adds many values at once, the tops are merged once at the end
+     *
+     * @param values: the values by id
+     * @param weight: weight of each value by id
+     * @param terms:  terms of each value by id
+     */
+    public void putAll(Map<Long, T> values, Map<Long, Long> weight, Map<Long, List<String>> terms) {
+        lock.writeLock().lock();
+        try {
+            values.forEach((id, value) -> {
+                removeTerms(id);
+                List<String> valueTerms = terms.getOrDefault(id, Collections.emptyList());
+                entries.put(id, new Entry<>(value, weight.getOrDefault(id, 0L), valueTerms));
+                valueTerms.forEach(term -> addTerm(term, id, false));
+            });
+            mergeAll(root);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method removes a value
+     *
+     * @param id: this is the unique identifier of the value
+     */
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            removeTerms(id);
+            entries.remove(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This method returns the values with a term that starts with the prefix
+     *
+     * @param prefix: normalized prefix, see {@link SuggestTerms#prefix}
+     * @param limit:  maximum number of values, no more than the top size
+     * @return {@link List} ordered by weight, then by id
+     */
+    public List<T> top(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            Node node = root;
+            int position = 0;
+            while (Objects.nonNull(node) && position < prefix.length()) {
+                Node child = node.child(prefix.charAt(position));
+                if (Objects.isNull(child) || !child.matches(prefix, position)) {
+                    return Collections.emptyList();
+                }
+                position += child.label.length();
+                node = child;
+            }
+
+            int size = Math.min(limit, node.top.length);
+            List<T> values = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                values.add(entries.get(node.top[i]).value);
+            }
+            return values;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The entry is kept while its terms are removed, the tops merged in between may still hold its id
+     */
+    private void removeTerms(long id) {
+        Entry<T> previous = entries.get(id);
+        if (Objects.nonNull(previous)) {
+            previous.terms.forEach(term -> removeTerm(term, id));
+        }
+    }
+
+    private void addTerm(String term, long id, boolean merge) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < term.length()) {
+            Node child = node.child(term.charAt(position));
+            if (Objects.isNull(child)) {
+                child = node.addChild(new Node(term.substring(position)));
+            } else {
+                int common = child.commonLength(term, position);
+                if (common < child.label.length()) {
+                    child = node.split(child, common);
+                }
+            }
+            position += child.label.length();
+            node = child;
+            path.add(node);
+        }
+
+        if (!contains(node.ids, id)) {
+            node.ids = append(node.ids, id);
+        }
+        if (merge) {
+            for (int i = path.size() - 1; i >= 0; i--) {
+                merge(path.get(i));
+            }
+        }
+    }
+
+    private void removeTerm(String term, long id) {
+        List<Node> path = new ArrayList<>();
+        Node node = root;
+        path.add(node);
+        int position = 0;
+        while (position < term.length()) {
+            node = node.child(term.charAt(position));
+            if (Objects.isNull(node) || node.commonLength(term, position) < node.label.length()) {
+                return;
+            }
+            position += node.label.length();
+            path.add(node);
+        }
+
+        node.ids = Arrays.stream(node.ids).filter(other -> other != id).toArray();
+        for (int i = path.size() - 1; i >= 0; i--) {
+            Node current = path.get(i);
+            if (i > 0 && current.isEmpty()) {
+                path.get(i - 1).removeChild(current);
+            } else {
+                merge(current);
+            }
+        }
+    }
+
+    private void mergeAll(Node node) {
+        for (Node child : node.children) {
+            mergeAll(child);
+        }
+        merge(node);
+    }
+
+    /**
+     * The candidates are at most the top size per child plus the values that end in the node
+     */
+    private void merge(Node node) {
+        int candidates = node.ids.length;
+        for (Node child : node.children) {
+            candidates += child.top.length;
+        }
+        Long[] merged = new Long[candidates];
+        int size = 0;
+        for (long id : node.ids) {
+            merged[size++] = id;
+        }
+        for (Node child : node.children) {
+            for (long id : child.top) {
+                merged[size++] = id;
+            }
+        }
+
+        Arrays.sort(merged, (first, second) -> {
+            int byWeight = Long.compare(entries.get(second).weight, entries.get(first).weight);
+            return byWeight != 0 ? byWeight : Long.compare(first, second);
+        });
+        long[] top = new long[Math.min(topSize, candidates)];
+        int length = 0;
+        for (int i = 0; i < merged.length && length < top.length; i++) {
+            if (length == 0 || top[length - 1] != merged[i]) {
+                top[length++] = merged[i];
+            }
+        }
+        node.top = length == top.length ? top : Arrays.copyOf(top, length);
+    }
+
+    private static boolean contains(long[] ids, long id) {
+        for (long other : ids) {
+            if (other == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long[] append(long[] ids, long id) {
+        long[] appended = Arrays.copyOf(ids, ids.length + 1);
+        appended[ids.length] = id;
+        return appended;
+    }
+
+    /**
+     * A node of the trie, reached from its parent through a label of one or more characters. A node is only split
+     * when another term leaves its label, so the tail of a term shared by no other term is a single node. The
+     * children are kept in arrays sorted by the first character of their label.
+     */
+    private static class Node {
+
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private String label;
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private long[] ids = NO_IDS;
+        private long[] top = NO_IDS;
+
+        Node() {
+            this("");
+        }
+
+        Node(String label) {
+            this.label = label;
+        }
+
+        Node child(char key) {
+            int index = Arrays.binarySearch(keys, key);
+            return index < 0 ? null : children[index];
+        }
+
+        /**
+         * The rest of the prefix either goes through the label or ends inside it
+         */
+        boolean matches(String prefix, int position) {
+            int length = Math.min(label.length(), prefix.length() - position);
+            return label.regionMatches(0, prefix, position, length);
+        }
+
+        int commonLength(String term, int position) {
+            int length = Math.min(label.length(), term.length() - position);
+            int common = 0;
+            while (common < length && label.charAt(common) == term.charAt(position + common)) {
+                common++;
+            }
+            return common;
+        }
+
+        Node addChild(Node child) {
+            int insertion = -Arrays.binarySearch(keys, child.label.charAt(0)) - 1;
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insertion);
+            System.arraycopy(children, 0, newChildren, 0, insertion);
+            newKeys[insertion] = child.label.charAt(0);
+            newChildren[insertion] = child;
+            System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+            System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        /**
+         * Puts a node with the first characters of the label of the child between this node and the child
+         */
+        Node split(Node child, int length) {
+            Node middle = new Node(child.label.substring(0, length));
+            child.label = child.label.substring(length);
+            middle.keys = new char[]{child.label.charAt(0)};
+            middle.children = new Node[]{child};
+            middle.top = child.top;
+            children[Arrays.binarySearch(keys, middle.label.charAt(0))] = middle;
+            return middle;
+        }
+
+        void removeChild(Node child) {
+            int index = Arrays.binarySearch(keys, child.label.charAt(0));
+            char[] newKeys = new char[keys.length - 1];
+            Node[] newChildren = new Node[children.length - 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index + 1, newKeys, index, keys.length - index - 1);
+            System.arraycopy(children, index + 1, newChildren, index, children.length - index - 1);
+            keys = newKeys;
+            children = newChildren;
+        }
+
+        boolean isEmpty() {
+            return ids.length == 0 && children.length == 0;
+        }
+    }
+
+    private static class Entry<T> {
+
+        private final T value;
+        private final long weight;
+        private final List<String> terms;
+
+        Entry(T value, long weight, List<String> terms) {
+            this.value = value;
+            this.weight = weight;
+            this.terms = terms;
+        }
+    }
+}
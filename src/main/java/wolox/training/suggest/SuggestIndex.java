@@ -0,0 +1,177 @@
+package wolox.training.suggest;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.InvalidationListener;
+import wolox.training.models.dto.BookSuggestion;
+
+/**
+ * Keeps a {@link PrefixIndex} of the titles and authors of the books to answer {@code GET /api/books/suggest}
+ * without a query per keystroke. It is loaded at startup and follows the book invalidations of
+ * {@link CacheInvalidationBus}, a created, updated or deleted book is read again and replaced in the index. The
+ * books are weighted by their persisted owner count, which only moves the order of the suggestions, so the index is
+ * rebuilt aside every few minutes to pick up the new counts instead of following every ownership change. The builds
+ * and the changes of single books run on one thread, so the thread that delivers the invalidations never waits for a
+ * build and a change made while the table is read is applied to the new index.
+ */
+@Component
+@Lazy(false)
+public class SuggestIndex implements SmartLifecycle, InvalidationListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestIndex.class);
+    private static final String SELECT_BOOKS = "SELECT id, title, author, owner_count FROM book";
+    private static final String SELECT_BOOK = "SELECT id, title, author, owner_count FROM book WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final CacheInvalidationBus invalidationBus;
+    private final int maxLimit;
+    private final long rebuildIntervalMs;
+
+    private volatile PrefixIndex<BookSuggestion> index;
+    private volatile boolean running;
+    private ScheduledExecutorService scheduler;
+
+    public SuggestIndex(JdbcTemplate jdbcTemplate, CacheInvalidationBus invalidationBus, MeterRegistry meterRegistry,
+            @Value("${training.suggest.max-limit:10}") int maxLimit,
+            @Value("${training.suggest.rebuild-interval-ms:300000}") long rebuildIntervalMs) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.invalidationBus = invalidationBus;
+        this.maxLimit = maxLimit;
+        this.rebuildIntervalMs = rebuildIntervalMs;
+        this.index = new PrefixIndex<>(maxLimit);
+        Gauge.builder("suggest.books", this, suggestIndex -> suggestIndex.index.size())
+                .description("Books in the suggestion index")
+                .register(meterRegistry);
+    }
+
+    /**
+     * This method returns the most owned books with a word of the title or the author that starts with the text
+     *
+     * @param text:  the typed text
+     * @param limit: maximum number of books to return, no more than the configured maximum
+     * @return {@link List<BookSuggestion>} ordered by owners
+     */
+    public List<BookSuggestion> suggest(String text, int limit) {
+        return index.top(SuggestTerms.prefix(text), Math.min(limit, maxLimit));
+    }
+
+    /**
+     * Queued behind a running build, so a change made while the table was being read is applied after it
+     */
+    @Override
+    public void invalidated(Long bookId) {
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(() -> replaceQuietly(bookId));
+        }
+    }
+
+    @Override
+    public void invalidatedAll() {
+        if (!scheduler.isShutdown()) {
+            scheduler.execute(this::buildQuietly);
+        }
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "suggest-index-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        invalidationBus.subscribe(CacheNames.BOOKS, this);
+        try {
+            scheduler.submit(this::build).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Suggestion index build interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Suggestion index build failed", e.getCause());
+        }
+        running = true;
+        scheduler.scheduleWithFixedDelay(this::buildQuietly, rebuildIntervalMs, rebuildIntervalMs,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * The index is built aside, without a lock, and published with one swap
+     */
+    void build() {
+        long start = System.nanoTime();
+        Map<Long, BookSuggestion> books = new HashMap<>();
+        Map<Long, Long> owners = new HashMap<>();
+        Map<Long, List<String>> terms = new HashMap<>();
+        jdbcTemplate.query(SELECT_BOOKS, (RowCallbackHandler) resultSet -> {
+            long bookId = resultSet.getLong("id");
+            String title = resultSet.getString("title");
+            String author = resultSet.getString("author");
+            books.put(bookId, new BookSuggestion(bookId, title, author));
+            owners.put(bookId, resultSet.getLong("owner_count"));
+            terms.put(bookId, SuggestTerms.of(title, author));
+        });
+
+        PrefixIndex<BookSuggestion> built = new PrefixIndex<>(maxLimit);
+        built.putAll(books, owners, terms);
+        index = built;
+        LOGGER.info("Suggestion index built with {} books in {} ms", built.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    void replace(long bookId) {
+        List<Map<String, Object>> rows = jdbcTemplate.queryForList(SELECT_BOOK, bookId);
+        if (rows.isEmpty()) {
+            index.remove(bookId);
+            return;
+        }
+
+        Map<String, Object> row = rows.get(0);
+        String title = (String) row.get("title");
+        String author = (String) row.get("author");
+        index.put(bookId, new BookSuggestion(bookId, title, author), ((Number) row.get("owner_count")).longValue(),
+                SuggestTerms.of(title, author));
+    }
+
+    private void replaceQuietly(long bookId) {
+        try {
+            replace(bookId);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Book {} couldn't be replaced in the suggestion index", bookId, e);
+        }
+    }
+
+    private void buildQuietly() {
+        try {
+            build();
+        } catch (RuntimeException e) {
+            LOGGER.warn("Suggestion index build failed", e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package wolox.training.suggest;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Turns the searchable fields of a book into the terms of a {@link PrefixIndex}. The text is lower cased, the
+ * accents are dropped and everything but letters and digits separates words. Every word starts a term that runs to
+ * the end of the field, so a prefix matches the start of any word of the field and can go on with the next words.
+ */
+public final class SuggestTerms {
+
+    public static final int MAX_LENGTH = 32;
+
+    private static final Pattern ACCENTS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SuggestTerms() {
+        throw new IllegalStateException("Utility class");
+    }
+
+    /**
+     * This method returns the terms of the fields, without repetitions
+     *
+     * @param fields: searchable text, the null ones are skipped
+     * @return {@link List<String>} with the terms of every field
+     */
+    public static List<String> of(String... fields) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String field : fields) {
+            String text = normalize(field);
+            if (text.isEmpty()) {
+                continue;
+            }
+            for (int start = 0; start < text.length(); start = text.indexOf(' ', start) + 1) {
+                terms.add(truncate(text.substring(start)));
+                if (text.indexOf(' ', start) < 0) {
+                    break;
+                }
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    /**
+     * This method normalizes the text typed in the search box the way the terms are
+     *
+     * @param text: the typed prefix
+     * @return {@link String} the prefix to look up, empty when there is nothing to search
+     */
+    public static String prefix(String text) {
+        return truncate(normalize(text));
+    }
+
+    private static String normalize(String text) {
+        if (Objects.isNull(text)) {
+            return "";
+        }
+        String withoutAccents = ACCENTS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(withoutAccents.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    private static String truncate(String term) {
+        return term.length() <= MAX_LENGTH ? term : term.substring(0, MAX_LENGTH).trim();
+    }
+}
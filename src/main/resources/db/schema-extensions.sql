@@ -0,0 +1,84 @@
+-- Objects Hibernate can't declare from the entities, run after the schema is created or updated.
+-- Every statement must be idempotent because the script runs on each startup.
+
+-- Substring search over the user's name (UserSpecifications.search)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS users_name_trgm_idx ON users USING gin (lower(name) gin_trgm_ops);
+
+-- Conflict target of the ownership changes (OwnershipRepository). Hibernate only declares it under ddl-auto=update
+-- and skips it when the table already has duplicate edges, so the duplicates are removed before it is created here.
+DO 'BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_indexes WHERE tablename = ''users_books'' AND indexname = ''users_books_unique'') THEN
+        DELETE FROM users_books duplicate USING users_books kept
+            WHERE duplicate.users_id = kept.users_id AND duplicate.books_id = kept.books_id
+            AND duplicate.ctid > kept.ctid;
+        CREATE UNIQUE INDEX users_books_unique ON users_books (users_id, books_id);
+    END IF;
+END';
+
+-- Full-text search of the books (BookSearchRepository): the document is kept by Postgres on every write, the
+-- title and author weigh more than the subtitle, and these more than the publisher.
+ALTER TABLE book ADD COLUMN IF NOT EXISTS search_vector tsvector GENERATED ALWAYS AS (
+    setweight(to_tsvector('english', coalesce(title, '')), 'A') ||
+    setweight(to_tsvector('english', coalesce(author, '')), 'A') ||
+    setweight(to_tsvector('english', coalesce(sub_title, '')), 'B') ||
+    setweight(to_tsvector('english', coalesce(publisher, '')), 'C')) STORED;
+CREATE INDEX IF NOT EXISTS book_search_idx ON book USING gin (search_vector);
+
+-- Persisted owner count of the books (PopularityCounters), counted from the join table only when the column is
+-- created and then kept by the periodic flushes and reconciliations of the counters.
+DO 'BEGIN
+    IF NOT EXISTS (SELECT 1 FROM information_schema.columns WHERE table_name = ''book'' AND column_name = ''owner_count'') THEN
+        ALTER TABLE book ADD COLUMN owner_count bigint NOT NULL DEFAULT 0;
+        UPDATE book SET owner_count = owners.count
+            FROM (SELECT books_id, count(*) AS count FROM users_books GROUP BY books_id) owners
+            WHERE book.id = owners.books_id;
+    END IF;
+END';
+
+-- Change watermark of the catalog snapshot (CatalogSnapshotService): every write to a book or a user moves its
+-- last_modified. The flushes of the owner counts don't, they aren't cached. The ownership changes of a user are taken
+-- from ownership_history instead, updating the row of the user on every change would serialize the concurrent
+-- changes of the same user on its row lock.
+-- The function bodies are quoted with single quotes because the script is split on semicolons.
+ALTER TABLE book ADD COLUMN IF NOT EXISTS last_modified timestamptz NOT NULL DEFAULT now();
+ALTER TABLE users ADD COLUMN IF NOT EXISTS last_modified timestamptz NOT NULL DEFAULT now();
+
+CREATE OR REPLACE FUNCTION touch_last_modified() RETURNS trigger LANGUAGE plpgsql AS
+    'BEGIN NEW.last_modified := now(); RETURN NEW; END';
+
+DROP TRIGGER IF EXISTS book_last_modified ON book;
+CREATE TRIGGER book_last_modified BEFORE UPDATE OF genre, author, image, title, sub_title, publisher, year, pages, isbn
+    ON book FOR EACH ROW EXECUTE FUNCTION touch_last_modified();
+DROP TRIGGER IF EXISTS users_last_modified ON users;
+CREATE TRIGGER users_last_modified BEFORE UPDATE ON users FOR EACH ROW EXECUTE FUNCTION touch_last_modified();
+
+-- Ownership history (OwnershipHistoryRepository): every book added to or removed from a user, written by the
+-- statement triggers of users_books so every path that changes the table is recorded, the bulk statements as well as
+-- the collection updates of Hibernate. The changes of one transaction share changed_at, seq keeps their order. The
+-- table is partitioned by month, OwnershipHistoryPartitions creates the partitions ahead and drops the expired ones;
+-- the default partition keeps the changes of a month without one.
+CREATE TABLE IF NOT EXISTS ownership_history (
+    user_id int8 NOT NULL,
+    book_id int8 NOT NULL,
+    action varchar(8) NOT NULL,
+    changed_at timestamptz NOT NULL DEFAULT now(),
+    seq bigserial NOT NULL
+) PARTITION BY RANGE (changed_at);
+CREATE TABLE IF NOT EXISTS ownership_history_default PARTITION OF ownership_history DEFAULT;
+CREATE INDEX IF NOT EXISTS ownership_history_user_idx ON ownership_history (user_id, changed_at);
+CREATE INDEX IF NOT EXISTS ownership_history_book_idx ON ownership_history (book_id, changed_at);
+
+CREATE OR REPLACE FUNCTION record_ownership_change() RETURNS trigger LANGUAGE plpgsql AS
+    'BEGIN
+        INSERT INTO ownership_history (user_id, book_id, action)
+            SELECT users_id, books_id, TG_ARGV[0] FROM changed ORDER BY users_id, books_id;
+        RETURN NULL;
+    END';
+
+DROP TRIGGER IF EXISTS users_books_added_history ON users_books;
+CREATE TRIGGER users_books_added_history AFTER INSERT ON users_books REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION record_ownership_change('ADDED');
+DROP TRIGGER IF EXISTS users_books_removed_history ON users_books;
+CREATE TRIGGER users_books_removed_history AFTER DELETE ON users_books REFERENCING OLD TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION record_ownership_change('REMOVED');
@@ -0,0 +1,61 @@
+-- Schema of a user shard (ShardingConfig), the tables match the ones Hibernate creates in the primary database.
+-- The books are a copy kept by CatalogReplicator, so the join table has no foreign key to them.
+-- Every statement must be idempotent because the script runs on each startup.
+CREATE TABLE IF NOT EXISTS book (
+    id int8 NOT NULL PRIMARY KEY,
+    author varchar(255),
+    genre varchar(255),
+    image varchar(255),
+    isbn varchar(255),
+    pages int4,
+    publisher varchar(255),
+    sub_title varchar(255),
+    title varchar(255),
+    year varchar(255)
+);
+CREATE TABLE IF NOT EXISTS users (
+    id int8 NOT NULL PRIMARY KEY,
+    birth_date date,
+    name varchar(255),
+    username varchar(255)
+);
+CREATE TABLE IF NOT EXISTS users_books (
+    users_id int8 NOT NULL REFERENCES users (id),
+    books_id int8 NOT NULL,
+    CONSTRAINT users_books_unique UNIQUE (users_id, books_id)
+);
+
+-- History of the ownership changes of the users of the shard, partitioned and written by triggers of users_books
+-- like in the primary database
+CREATE TABLE IF NOT EXISTS ownership_history (
+    user_id int8 NOT NULL,
+    book_id int8 NOT NULL,
+    action varchar(8) NOT NULL,
+    changed_at timestamptz NOT NULL DEFAULT now(),
+    seq bigserial NOT NULL
+) PARTITION BY RANGE (changed_at);
+CREATE TABLE IF NOT EXISTS ownership_history_default PARTITION OF ownership_history DEFAULT;
+
+CREATE INDEX IF NOT EXISTS users_username_idx ON users (username);
+CREATE INDEX IF NOT EXISTS users_birth_date_idx ON users (birth_date);
+CREATE INDEX IF NOT EXISTS users_books_users_idx ON users_books (users_id);
+CREATE INDEX IF NOT EXISTS users_books_books_idx ON users_books (books_id);
+CREATE INDEX IF NOT EXISTS ownership_history_user_idx ON ownership_history (user_id, changed_at);
+CREATE INDEX IF NOT EXISTS ownership_history_book_idx ON ownership_history (book_id, changed_at);
+
+CREATE OR REPLACE FUNCTION record_ownership_change() RETURNS trigger LANGUAGE plpgsql AS
+    'BEGIN
+        INSERT INTO ownership_history (user_id, book_id, action)
+            SELECT users_id, books_id, TG_ARGV[0] FROM changed ORDER BY users_id, books_id;
+        RETURN NULL;
+    END';
+DROP TRIGGER IF EXISTS users_books_added_history ON users_books;
+CREATE TRIGGER users_books_added_history AFTER INSERT ON users_books REFERENCING NEW TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION record_ownership_change('ADDED');
+DROP TRIGGER IF EXISTS users_books_removed_history ON users_books;
+CREATE TRIGGER users_books_removed_history AFTER DELETE ON users_books REFERENCING OLD TABLE AS changed
+    FOR EACH STATEMENT EXECUTE FUNCTION record_ownership_change('REMOVED');
+
+-- Substring search over the user's name (UserSpecifications.search)
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS users_name_trgm_idx ON users USING gin (lower(name) gin_trgm_ops);
@@ -0,0 +1,64 @@
+package wolox.training;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * The prod profile expects the schema to exist, so the embedded database is prepared by a first start with the
+ * default profile, which creates it, and only the second start is measured. It is tagged startup, left out of the test
+ * task and run by {@code ./gradlew startupTest}.
+ */
+@Tag("startup")
+class StartupTimeTest {
+
+    private static final long STARTUP_BUDGET_MS = Long.getLong("training.startup.budget-ms", 15000L);
+    private static final String USER = "postgres";
+
+    private static EmbeddedPostgres postgres;
+
+    @BeforeAll
+    static void createSchema() throws IOException {
+        postgres = EmbeddedPostgres.start();
+        new SpringApplicationBuilder(DsJavaApplication.class).web(WebApplicationType.SERVLET)
+                .run(arguments("--server.port=0")).close();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws IOException {
+        postgres.close();
+    }
+
+    @Test
+    void whenStartWithProdProfile_thenContextIsRefreshedWithinBudget() {
+        long start = System.nanoTime();
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DsJavaApplication.class)
+                .profiles("prod")
+                .web(WebApplicationType.SERVLET)
+                .run(arguments("--server.port=0"))) {
+            Duration startup = Duration.ofNanos(System.nanoTime() - start);
+
+            assertThat(context.containsBean("api")).isFalse();
+            assertThat(startup).as("startup with the prod profile").isLessThan(Duration.ofMillis(STARTUP_BUDGET_MS));
+        }
+    }
+
+    /**
+     * Arguments, the default properties of the builder don't override the ones of application.properties
+     */
+    private static String[] arguments(String... others) {
+        return Stream.concat(Stream.of("--spring.datasource.url=" + postgres.getJdbcUrl(USER, USER),
+                "--spring.datasource.username=" + USER, "--spring.datasource.password="), Stream.of(others))
+                .toArray(String[]::new);
+    }
+}
@@ -0,0 +1,114 @@
+package wolox.training.audit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AuditLogTest {
+
+    private static final long SEGMENT_SIZE = AuditSegments.HEADER_SIZE + 10L * AuditSegments.RECORD_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenRecordsAreWritten_thenTheReaderReturnsThemInOrder() throws Exception {
+        AuditLog auditLog = auditLog(1024);
+        auditLog.start();
+        for (long id = 1; id <= 25; id++) {
+            auditLog.record(AuditAction.BOOK_ADDED_TO_USER, id, id * 10);
+        }
+        auditLog.record(AuditAction.USER_DELETED, 26L);
+        auditLog.stop();
+
+        List<AuditRecord> records = AuditLogReader.read(directory);
+        assertThat(records).extracting(AuditRecord::getSequence)
+                .containsExactlyElementsOf(LongStream.rangeClosed(1, 26).boxed().collect(Collectors.toList()));
+        assertThat(records.get(4).getAction()).isEqualTo(AuditAction.BOOK_ADDED_TO_USER);
+        assertThat(records.get(4).getEntityId()).isEqualTo(5L);
+        assertThat(records.get(4).getRelatedId()).isEqualTo(50L);
+        assertThat(records.get(25).getRelatedId()).isNull();
+        assertThat(AuditSegments.segments(directory)).hasSize(3);
+    }
+
+    @Test
+    void whenLogIsReopened_thenTheSequenceContinues() throws Exception {
+        try (AuditSegmentWriter writer = new AuditSegmentWriter(directory, SEGMENT_SIZE)) {
+            for (long id = 1; id <= 12; id++) {
+                writer.append(AuditRecord.of(AuditAction.BOOK_CREATED, id, null));
+            }
+        }
+
+        try (AuditSegmentWriter writer = new AuditSegmentWriter(directory, SEGMENT_SIZE)) {
+            assertThat(writer.getNextSequence()).isEqualTo(13);
+            assertThat(writer.append(AuditRecord.of(AuditAction.BOOK_UPDATED, 1L, null))).isEqualTo(13);
+        }
+        assertThat(AuditLogReader.read(directory)).hasSize(13);
+    }
+
+    @Test
+    void whenLastRecordIsTorn_thenItIsSkippedAndOverwritten() throws Exception {
+        try (AuditSegmentWriter writer = new AuditSegmentWriter(directory, SEGMENT_SIZE)) {
+            for (long id = 1; id <= 3; id++) {
+                writer.append(AuditRecord.of(AuditAction.BOOK_CREATED, id, null));
+            }
+        }
+        tearRecord(AuditSegments.segments(directory).get(0), 2);
+
+        assertThat(AuditLogReader.read(directory)).extracting(AuditRecord::getEntityId).containsExactly(1L, 2L);
+        try (AuditSegmentWriter writer = new AuditSegmentWriter(directory, SEGMENT_SIZE)) {
+            assertThat(writer.append(AuditRecord.of(AuditAction.BOOK_DELETED, 9L, null))).isEqualTo(3);
+        }
+        assertThat(AuditLogReader.read(directory)).extracting(AuditRecord::getEntityId).containsExactly(1L, 2L, 9L);
+    }
+
+    @Test
+    void whenReadFromSequence_thenEarlierRecordsAreSkipped() throws Exception {
+        try (AuditSegmentWriter writer = new AuditSegmentWriter(directory, SEGMENT_SIZE)) {
+            for (long id = 1; id <= 25; id++) {
+                writer.append(AuditRecord.of(AuditAction.USER_UPDATED, id, null));
+            }
+        }
+
+        List<Long> sequences = new ArrayList<>();
+        AuditLogReader.forEach(directory, 18, record -> sequences.add(record.getSequence()));
+        assertThat(sequences).containsExactly(18L, 19L, 20L, 21L, 22L, 23L, 24L, 25L);
+    }
+
+    @Test
+    void whenQueueIsFull_thenRecordsAreDropped() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AuditLog auditLog = new AuditLog(meterRegistry, directory.toString(), SEGMENT_SIZE, 2, 16,
+                FsyncPolicy.NONE, 1000, 0);
+
+        for (long id = 1; id <= 5; id++) {
+            auditLog.record(AuditAction.BOOK_CREATED, id);
+        }
+
+        assertThat(meterRegistry.counter("audit.dropped").count()).isEqualTo(3);
+        assertThat(meterRegistry.get("audit.queue.size").gauge().value()).isEqualTo(2);
+    }
+
+    private AuditLog auditLog(int capacity) {
+        return new AuditLog(new SimpleMeterRegistry(), directory.toString(), SEGMENT_SIZE, capacity, 4,
+                FsyncPolicy.BATCH, 1000, 100);
+    }
+
+    private void tearRecord(Path segment, int slot) throws IOException {
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{1, 2, 3}),
+                    AuditSegments.HEADER_SIZE + (long) slot * AuditSegments.RECORD_SIZE + 10);
+        }
+    }
+}
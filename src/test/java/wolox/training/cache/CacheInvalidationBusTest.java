@@ -0,0 +1,157 @@
+package wolox.training.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Two buses over the same embedded Postgres stand in for two nodes of the service
+ */
+class CacheInvalidationBusTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private static EmbeddedPostgres postgres;
+
+    private EntityCache<String> cacheOfNodeA;
+    private EntityCache<String> cacheOfNodeB;
+    private CacheInvalidationBus nodeA;
+    private CacheInvalidationBus nodeB;
+    private SimpleMeterRegistry meterRegistryOfNodeB;
+
+    @BeforeAll
+    static void startDatabase() throws Exception {
+        postgres = EmbeddedPostgres.start();
+    }
+
+    @AfterAll
+    static void stopDatabase() throws Exception {
+        postgres.close();
+    }
+
+    @BeforeEach
+    void setUp() {
+        DataSource dataSource = postgres.getPostgresDatabase();
+        cacheOfNodeA = new EntityCache<>(CacheNames.BOOKS, "maximumSize=100");
+        cacheOfNodeB = new EntityCache<>(CacheNames.BOOKS, "maximumSize=100");
+        meterRegistryOfNodeB = new SimpleMeterRegistry();
+
+        nodeA = new CacheInvalidationBus(dataSource, new JdbcTemplate(dataSource),
+                Collections.singletonList(cacheOfNodeA), new SimpleMeterRegistry(), 100, 100);
+        nodeB = new CacheInvalidationBus(dataSource, new JdbcTemplate(dataSource),
+                Collections.singletonList(cacheOfNodeB), meterRegistryOfNodeB, 100, 100);
+        nodeA.start();
+        nodeB.start();
+        waitUntil(() -> nodeA.isListening() && nodeB.isListening());
+    }
+
+    @AfterEach
+    void tearDown() {
+        nodeA.stop();
+        nodeB.stop();
+    }
+
+    @Test
+    void whenPublishInOneNode_thenEntryIsInvalidatedInEveryNode() {
+        cacheOfNodeA.get(1L, () -> Optional.of("stale"));
+        cacheOfNodeB.get(1L, () -> Optional.of("stale"));
+        cacheOfNodeB.get(2L, () -> Optional.of("fresh"));
+
+        nodeA.publish(CacheNames.BOOKS, 1L);
+
+        assertThat(cacheOfNodeA.getIfPresent(1L)).isEmpty();
+        waitUntil(() -> !cacheOfNodeB.getIfPresent(1L).isPresent());
+        assertThat(cacheOfNodeB.getIfPresent(2L)).contains("fresh");
+    }
+
+    @Test
+    void whenPublishAll_thenCacheIsEmptiedInEveryNode() {
+        cacheOfNodeB.get(1L, () -> Optional.of("stale"));
+
+        nodeA.publishAll(CacheNames.BOOKS);
+
+        waitUntil(() -> cacheOfNodeB.size() == 0);
+    }
+
+    @Test
+    void whenManyIdsArePublished_thenTheyAreBatchedAndInvalidatedInEveryNode() {
+        List<Long> ids = LongStream.rangeClosed(1_000_000_000_000L, 1_000_000_002_000L).boxed()
+                .collect(Collectors.toList());
+        ids.subList(0, 50).forEach(id -> cacheOfNodeB.get(id, () -> Optional.of("stale")));
+        ids.subList(ids.size() - 50, ids.size()).forEach(id -> cacheOfNodeB.get(id, () -> Optional.of("stale")));
+        double received = meterRegistryOfNodeB.counter("cache.invalidation.received").count();
+
+        nodeA.publish(CacheNames.BOOKS, ids);
+
+        waitUntil(() -> cacheOfNodeB.size() == 0);
+        assertThat(meterRegistryOfNodeB.counter("cache.invalidation.received").count() - received)
+                .isGreaterThan(1).isLessThan(10);
+    }
+
+    @Test
+    void whenTheDataSourceIsAPool_thenTheListenerConnectionIsNotTakenFromIt() {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl(postgres.getJdbcUrl("postgres", "postgres"));
+        config.setMaximumPoolSize(1);
+        // built from a config the pool starts right away, so its bean can be asked before the first connection
+        try (HikariDataSource pool = new HikariDataSource(config)) {
+            CacheInvalidationBus pooledNode = new CacheInvalidationBus(pool, new JdbcTemplate(pool),
+                    Collections.singletonList(new EntityCache<String>(CacheNames.BOOKS, "maximumSize=100")),
+                    new SimpleMeterRegistry(), 100, 100);
+            pooledNode.start();
+            try {
+                waitUntil(pooledNode::isListening);
+                assertThat(pool.getHikariPoolMXBean().getActiveConnections()).isZero();
+                assertThat(new JdbcTemplate(pool).queryForObject("SELECT 1", Integer.class)).isEqualTo(1);
+            } finally {
+                pooledNode.stop();
+            }
+        }
+    }
+
+    @Test
+    void whenListenerConnectionIsLost_thenNodeReconnectsAndEmptiesItsCache() {
+        cacheOfNodeB.get(1L, () -> Optional.of("maybe stale"));
+
+        new JdbcTemplate(postgres.getPostgresDatabase()).queryForList(
+                "SELECT pg_terminate_backend(pid) FROM pg_stat_activity WHERE query LIKE 'LISTEN%'");
+
+        waitUntil(() -> meterRegistryOfNodeB.counter("cache.invalidation.resynchronizations").count() > 0);
+        assertThat(cacheOfNodeB.getIfPresent(1L)).isEmpty();
+
+        waitUntil(nodeB::isListening);
+        cacheOfNodeB.get(2L, () -> Optional.of("stale"));
+        nodeA.publish(CacheNames.BOOKS, 2L);
+        waitUntil(() -> !cacheOfNodeB.getIfPresent(2L).isPresent());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in %s", TIMEOUT).isLessThan(deadline);
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
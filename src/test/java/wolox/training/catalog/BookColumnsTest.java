@@ -0,0 +1,69 @@
+package wolox.training.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BookColumnsTest {
+
+    private BookColumns columns;
+
+    @BeforeEach
+    void setUp() {
+        columns = new BookColumns();
+        columns.upsert(1L, "Bloomsbury", "Fantasy", "1997", 223);
+        columns.upsert(2L, "Bloomsbury", "Fantasy", "1998", 251);
+        columns.upsert(3L, "George Allen & Unwin", "Fantasy", "1954", 352);
+        columns.upsert(4L, "Bloomsbury", "Drama", "1997", 120);
+    }
+
+    @Test
+    void whenFilterWithoutValues_thenEveryBookIsReturned() {
+        assertThat(columns.filter(null, null, null)).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void whenFilterWithSeveralValues_thenTheIntersectionIsReturned() {
+        assertThat(columns.filter("Bloomsbury", null, null)).containsExactly(1L, 2L, 4L);
+        assertThat(columns.filter("Bloomsbury", "Fantasy", null)).containsExactly(1L, 2L);
+        assertThat(columns.filter("Bloomsbury", "Fantasy", "1997")).containsExactly(1L);
+        assertThat(columns.filter(null, null, "1997")).containsExactly(1L, 4L);
+    }
+
+    @Test
+    void whenFilterWithUnknownValues_thenNothingIsReturned() {
+        assertThat(columns.filter("monkeys", null, null)).isEmpty();
+        assertThat(columns.filter(null, null, "monkeys")).isEmpty();
+    }
+
+    @Test
+    void whenBookIsUpdated_thenItMovesToItsNewValues() {
+        columns.upsert(1L, "Scholastic", "Fantasy", "1998", 309);
+
+        assertThat(columns.filter("Bloomsbury", null, null)).containsExactly(2L, 4L);
+        assertThat(columns.filter("Scholastic", null, "1998")).containsExactly(1L);
+        assertThat(columns.size()).isEqualTo(4);
+    }
+
+    @Test
+    void whenBookIsRemoved_thenItsRowIsReused() {
+        columns.remove(2L);
+        assertThat(columns.filter("Bloomsbury", "Fantasy", null)).containsExactly(1L);
+
+        columns.upsert(5L, "Bloomsbury", "Fantasy", "2000", 636);
+        assertThat(columns.filter("Bloomsbury", "Fantasy", null)).containsExactly(1L, 5L);
+        assertThat(columns.size()).isEqualTo(4);
+    }
+
+    @Test
+    void whenManyBooksAreAdded_thenColumnsGrow() {
+        for (long id = 10; id < 5000; id++) {
+            columns.upsert(id, "Publisher " + (id % 7), "Genre " + (id % 3), String.valueOf(1900 + id % 100), 100);
+        }
+
+        assertThat(columns.size()).isEqualTo(4994);
+        assertThat(LongStream.of(columns.filter("Publisher 0", "Genre 0", null)).boxed()).allMatch(id -> id % 21 == 0);
+    }
+}
@@ -0,0 +1,174 @@
+package wolox.training.concurrency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import wolox.training.deadline.QueryDeadline;
+import wolox.training.exceptions.QueryDeadlineExceededException;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SingleFlight<Long, String> singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight<>("test", meterRegistry);
+    }
+
+    @Test
+    void whenConcurrentReadsOfTheSameKey_thenLoaderRunsOnce() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute(1L, () -> {
+                    loads.incrementAndGet();
+                    await(release);
+                    return "book";
+                })));
+            }
+
+            while (meterRegistry.get("singleflight.coalesced").counter().count() < CALLERS - 1) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("book", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, loads.get());
+        assertEquals(CALLERS - 1, meterRegistry.get("singleflight.coalesced").counter().count());
+        assertThat(singleFlight.coalescingRatio()).isEqualTo((CALLERS - 1) / (double) CALLERS);
+    }
+
+    @Test
+    void whenFlightIsFinished_thenNextReadLoadsAgain() {
+        AtomicInteger loads = new AtomicInteger();
+
+        singleFlight.execute(1L, () -> "load-" + loads.incrementAndGet());
+        String second = singleFlight.execute(1L, () -> "load-" + loads.incrementAndGet());
+
+        assertEquals("load-2", second);
+        assertThat(singleFlight.coalescingRatio()).isZero();
+    }
+
+    @Test
+    void whenLoaderFails_thenExceptionIsThrownAndKeyIsReleased() {
+        assertThrows(IllegalStateException.class, () -> singleFlight.execute(1L, () -> {
+            throw new IllegalStateException("database down");
+        }));
+
+        assertEquals("book", singleFlight.execute(1L, () -> "book"));
+    }
+
+    @Test
+    void whenLoaderThrowsAnError_thenWaitersGetItToo() throws Exception {
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+                leading.countDown();
+                await(release);
+                throw new OutOfMemoryError("result too large");
+            }));
+            leading.await(5, TimeUnit.SECONDS);
+            Future<String> waiter = executor.submit(() -> singleFlight.execute(1L, () -> "not led"));
+            while (meterRegistry.get("singleflight.coalesced").counter().count() < 1) {
+                Thread.sleep(5);
+            }
+
+            release.countDown();
+
+            ExecutionException error = assertThrows(ExecutionException.class, () -> waiter.get(5, TimeUnit.SECONDS));
+            assertThat(error.getCause()).isInstanceOf(OutOfMemoryError.class);
+            assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("book", singleFlight.execute(1L, () -> "book"));
+    }
+
+    @Test
+    void whenTheLeaderGivesUpOnItsDeadline_thenAWaiterLeadsANewFlight() throws Exception {
+        QueryDeadline leaderDeadline = new QueryDeadline(60_000);
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> leaderDeadline.call(() -> singleFlight.execute(1L, () -> {
+                leading.countDown();
+                await(release);
+                throw new IllegalStateException("statement cancelled");
+            })));
+            leading.await(5, TimeUnit.SECONDS);
+            Future<String> waiter = executor.submit(() -> singleFlight.execute(1L, () -> "book"));
+            while (meterRegistry.get("singleflight.coalesced").counter().count() < 1) {
+                Thread.sleep(5);
+            }
+
+            leaderDeadline.cancel();
+            release.countDown();
+
+            assertEquals("book", waiter.get(5, TimeUnit.SECONDS));
+            ExecutionException error = assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+            assertThat(error.getCause()).isInstanceOf(IllegalStateException.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void whenTheDeadlineOfAWaiterIsOver_thenItStopsWaiting() throws Exception {
+        CountDownLatch leading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute(1L, () -> {
+                leading.countDown();
+                await(release);
+                return "book";
+            }));
+            leading.await(5, TimeUnit.SECONDS);
+
+            assertThrows(QueryDeadlineExceededException.class,
+                    () -> new QueryDeadline(50).call(() -> singleFlight.execute(1L, () -> "not led")));
+
+            release.countDown();
+            assertEquals("book", leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package wolox.training.configurations;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Set;
+import java.util.TreeSet;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.test.web.servlet.MockMvc;
+
+/**
+ * Keeps the pre-generated document served in the prod profile in line with the controllers. Run with
+ * -Dapi-docs.regenerate=true to rewrite src/main/resources/api-docs/swagger.json from the runtime scan.
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ApiDocsSnapshotTest {
+
+    private static final Path SOURCE_LOCATION = Paths.get("src/main/resources", StaticApiDocsController.API_DOCS_LOCATION);
+
+    @Autowired
+    private MockMvc mvc;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Test
+    void whenScanControllers_thenStaticDocumentHasTheSameOperations() throws Exception {
+        String scanned = mvc.perform(get("/v2/api-docs"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        JsonNode runtimeDocs = mapper.readTree(scanned);
+
+        if (Boolean.getBoolean("api-docs.regenerate")) {
+            Files.write(SOURCE_LOCATION, mapper.writeValueAsBytes(runtimeDocs));
+        }
+
+        try (InputStream staticDocs = new ClassPathResource(StaticApiDocsController.API_DOCS_LOCATION).getInputStream()) {
+            assertThat(operations(mapper.readTree(staticDocs))).isEqualTo(operations(runtimeDocs));
+        }
+    }
+
+    private Set<String> operations(JsonNode docs) {
+        Set<String> operations = new TreeSet<>();
+        docs.get("paths").fields().forEachRemaining(path ->
+                path.getValue().fieldNames().forEachRemaining(method -> operations.add(method + " " + path.getKey())));
+        return operations;
+    }
+
+}
@@ -1,15 +1,25 @@
 package wolox.training.controllers;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.YearMonth;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -19,14 +29,40 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import wolox.training.audit.AuditLog;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.EntityCache;
+import wolox.training.configurations.CacheConfig;
+import wolox.training.configurations.DeadlineConfig;
+import wolox.training.deadline.QueryDeadlines;
 import wolox.training.exceptions.BookNotFoundException;
+import wolox.training.exceptions.DatabaseUnavailableException;
 import wolox.training.models.Book;
+import wolox.training.models.dto.MonthlyCirculation;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.models.dto.PopularBook;
+import wolox.training.models.dto.RelatedBook;
+import wolox.training.popularity.BookRanking.Ranked;
+import wolox.training.popularity.PopularityCounters;
+import wolox.training.related.CoOccurrenceGraph.RelatedCount;
+import wolox.training.related.RelatedBooksIndex;
 import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.BookSearchRepository;
+import wolox.training.repositories.OwnershipHistoryRepository;
+import wolox.training.repositories.ProjectionRepository;
+import wolox.training.resilience.StaleResponseAdvice;
+import wolox.training.sharding.ShardRouter;
+import wolox.training.sharding.UserShards;
+import wolox.training.suggest.SuggestIndex;
 
 @RunWith(MockitoJUnitRunner.class)
 @WebMvcTest(BookController.class)
+@Import({SimpleMeterRegistry.class, CacheConfig.class, ShardRouter.class, UserShards.class, QueryDeadlines.class,
+        DeadlineConfig.class})
 class BookControllerTest {
 
     public static final String API_BOOKS = "/api/books/";
@@ -37,6 +73,33 @@ class BookControllerTest {
     @MockBean
     private BookRepository mockedBookRepository;
 
+    @MockBean
+    private ProjectionRepository mockedProjectionRepository;
+
+    @MockBean
+    private BookSearchRepository mockedBookSearchRepository;
+
+    @MockBean
+    private OwnershipHistoryRepository mockedOwnershipHistoryRepository;
+
+    @MockBean
+    private CacheInvalidationBus mockedInvalidationBus;
+
+    @MockBean
+    private AuditLog mockedAuditLog;
+
+    @MockBean
+    private RelatedBooksIndex mockedRelatedBooksIndex;
+
+    @MockBean
+    private PopularityCounters mockedPopularityCounters;
+
+    @MockBean
+    private SuggestIndex mockedSuggestIndex;
+
+    @Autowired
+    private EntityCache<Book> bookCache;
+
     private Book oneTestBook;
     private Book oneTestBookCreated;
     private final ObjectMapper mapper = new ObjectMapper();
@@ -72,8 +135,11 @@ class BookControllerTest {
         Mockito.when(mockedBookRepository.getAllBook(Mockito.any(), Mockito.any(), Mockito.any()))
                 .thenReturn(Collections.singletonList(oneTestBook));
 
-        mvc.perform(get(API_BOOKS)
+        MvcResult started = mvc.perform(get(API_BOOKS)
                 .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
                 .andDo(print())
                 .andExpect(status().isOk())
                 .andExpect(content().json(jsonBooks));
@@ -116,6 +182,36 @@ class BookControllerTest {
                 .andExpect(content().json(jsonBook));
     }
 
+    @Test
+    void whenFindOneWhileTheDatabaseIsUnavailable_thenTheLastKnownBookIsReturnedAsStale() throws Exception {
+        Book book = new Book(7L);
+        book.setTitle("The Silmarillion");
+        Mockito.when(mockedBookRepository.findById(7L)).thenReturn(Optional.of(book));
+        mvc.perform(get(API_BOOKS.concat("7")))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(StaleResponseAdvice.WARNING_HEADER));
+
+        bookCache.expireAll();
+        Mockito.when(mockedBookRepository.findById(7L)).thenThrow(new DatabaseUnavailableException());
+
+        mvc.perform(get(API_BOOKS.concat("7")))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title").value("The Silmarillion"))
+                .andExpect(header().string(StaleResponseAdvice.WARNING_HEADER, StaleResponseAdvice.STALE_WARNING))
+                .andExpect(header().exists(StaleResponseAdvice.AGE_HEADER));
+        assertThat(bookCache.drainServedStale()).containsExactly(7L);
+    }
+
+    @Test
+    void whenFindOneWhileTheDatabaseIsUnavailable_thenUnknownBookIsServiceUnavailable() throws Exception {
+        Mockito.when(mockedBookRepository.findById(8L)).thenThrow(new DatabaseUnavailableException());
+
+        mvc.perform(get(API_BOOKS.concat("8")))
+                .andDo(print())
+                .andExpect(status().isServiceUnavailable());
+    }
+
     @Test
     public void whenCreateBook_thenBookIsReturned() throws Exception {
         String jsonBook = mapper.writeValueAsString(oneTestBook);
@@ -156,4 +252,111 @@ class BookControllerTest {
                 .andExpect(content().json(jsonBookCreated));
     }
 
+    @Test
+    public void whenFindByIdsWithMissingIds_thenFoundBooksAndMissingIdsAreReturned() throws Exception {
+        Book otherBook = new Book(3L);
+        otherBook.setTitle("The Hobbit");
+        String jsonResponse = mapper.writeValueAsString(
+                MultiGetResponse.of(Arrays.asList(3L, 4L), Collections.singletonMap(3L, otherBook)));
+        Mockito.when(mockedBookRepository.findAllById(Mockito.any())).thenReturn(Collections.singletonList(otherBook));
+
+        mvc.perform(get(API_BOOKS).param("ids", "3", "4", "3")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(jsonResponse));
+    }
+
+    @Test
+    public void whenFindAllWithFields_thenOnlyTheFieldsAreReturned() throws Exception {
+        List<String> fields = Arrays.asList("id", "title");
+        List<Map<String, Object>> rows = Collections.singletonList(Map.of("id", 1L, "title", "The Lord of the Rings"));
+        Mockito.when(mockedProjectionRepository.selectableFields(Book.class, fields)).thenReturn(fields);
+        Mockito.when(mockedProjectionRepository.findAll(Mockito.eq(Book.class), Mockito.eq(fields), Mockito.any()))
+                .thenReturn(rows);
+
+        MvcResult started = mvc.perform(get(API_BOOKS).param("genre", "Fantasy").param("fields", "id,title")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(rows), true));
+    }
+
+    @Test
+    public void whenFindRelated_thenBooksAreReturnedInRankOrder() throws Exception {
+        Book book = new Book(7L);
+        Book first = new Book(8L);
+        first.setTitle("The Silmarillion");
+        Book second = new Book(9L);
+        second.setTitle("The Hobbit");
+        Mockito.when(mockedBookRepository.findById(7L)).thenReturn(Optional.of(book));
+        Mockito.when(mockedRelatedBooksIndex.isReady()).thenReturn(true);
+        Mockito.when(mockedRelatedBooksIndex.related(7L, 2))
+                .thenReturn(Arrays.asList(new RelatedCount(8L, 5), new RelatedCount(9L, 3)));
+        Mockito.when(mockedBookRepository.findAllById(Mockito.any())).thenReturn(Arrays.asList(second, first));
+
+        mvc.perform(get(API_BOOKS.concat("7/related")).param("limit", "2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(
+                        Arrays.asList(new RelatedBook(first, 5), new RelatedBook(second, 3))), true));
+    }
+
+    @Test
+    public void whenFindRelatedWhileTheIndexIsLoading_thenServiceUnavailableIsReturned() throws Exception {
+        Mockito.when(mockedRelatedBooksIndex.isReady()).thenReturn(false);
+
+        mvc.perform(get(API_BOOKS.concat("7/related"))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable());
+        Mockito.verify(mockedRelatedBooksIndex, Mockito.never()).related(Mockito.anyLong(), Mockito.anyInt());
+    }
+
+    @Test
+    void whenFindTopOfGenre_thenBooksAreReturnedInRankingOrder() throws Exception {
+        Book first = new Book(8L);
+        first.setTitle("Dune");
+        Book second = new Book(9L);
+        second.setTitle("Hyperion");
+        Mockito.when(mockedPopularityCounters.top("sci-fi", 2))
+                .thenReturn(Arrays.asList(new Ranked(8L, "sci-fi", 40), new Ranked(9L, "sci-fi", 12)));
+        Mockito.when(mockedBookRepository.findAllById(Mockito.any())).thenReturn(Arrays.asList(second, first));
+
+        mvc.perform(get(API_BOOKS.concat("top")).param("genre", "sci-fi").param("limit", "2")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(
+                        Arrays.asList(new PopularBook(first, 40), new PopularBook(second, 12))), true));
+    }
+
+    @Test
+    void whenFindCirculation_thenEveryMonthOfTheRangeIsReturned() throws Exception {
+        Mockito.when(mockedOwnershipHistoryRepository.countBookCirculation(7L, YearMonth.of(2020, 12),
+                YearMonth.of(2021, 2))).thenReturn(Collections.singletonList(
+                new MonthlyCirculation(YearMonth.of(2021, 1), 4, 1)));
+
+        mvc.perform(get(API_BOOKS.concat("7/circulation")).param("from", "2020-12").param("to", "2021-02")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json("[{\"month\":\"2020-12\",\"added\":0,\"removed\":0},"
+                        + "{\"month\":\"2021-01\",\"added\":4,\"removed\":1},"
+                        + "{\"month\":\"2021-02\",\"added\":0,\"removed\":0}]", true));
+    }
+
+    @Test
+    void whenFindCirculationOfAnInvalidRange_thenReturnBadRequest() throws Exception {
+        mvc.perform(get(API_BOOKS.concat("7/circulation")).param("from", "2021-02").param("to", "2020-12")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get(API_BOOKS.concat("7/circulation")).param("from", "2019-01").param("to", "2021-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
+
 }
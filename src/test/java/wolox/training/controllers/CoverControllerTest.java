@@ -0,0 +1,150 @@
+package wolox.training.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import wolox.training.cache.EntityCache;
+import wolox.training.configurations.CacheConfig;
+import wolox.training.covers.CoverCache;
+import wolox.training.covers.CoverOrigin;
+import wolox.training.covers.Thumbnails;
+import wolox.training.models.Book;
+import wolox.training.repositories.BookRepository;
+
+/**
+ * A temporary directory stands in for the image store, the images of the books are found there at the path of their
+ * url
+ */
+@WebMvcTest(CoverController.class)
+@Import({SimpleMeterRegistry.class, CacheConfig.class, CoverCache.class, CoverOrigin.class})
+class CoverControllerTest {
+
+    private static final String COVER_URL = "/api/books/{id}/cover";
+
+    @TempDir
+    static Path directory;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private EntityCache<Book> bookCache;
+
+    @MockBean
+    private BookRepository mockedBookRepository;
+
+    @DynamicPropertySource
+    static void directories(DynamicPropertyRegistry registry) {
+        registry.add("training.covers.origin-directory", () -> directory.resolve("origin").toString());
+        registry.add("training.covers.cache-directory", () -> directory.resolve("cache").toString());
+    }
+
+    @BeforeEach
+    void setUp() throws Exception {
+        bookCache.invalidateAll();
+        Path covers = Files.createDirectories(directory.resolve("origin/covers"));
+        BufferedImage cover = new BufferedImage(800, 1200, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = cover.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 800, 600);
+        graphics.dispose();
+        ImageIO.write(cover, "png", covers.resolve("fellowship.png").toFile());
+    }
+
+    @Test
+    void whenACoverIsAsked_thenItsThumbnailIsServedWithCacheHeaders() throws Exception {
+        Mockito.when(mockedBookRepository.findById(1L)).thenReturn(Optional.of(book(1L, "fellowship.png")));
+
+        MvcResult result = mvc.perform(get(COVER_URL, 1L).param("width", "192"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(Thumbnails.CONTENT_TYPE))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "max-age=86400, public"))
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn();
+
+        BufferedImage thumbnail = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+        assertThat(thumbnail.getWidth()).isEqualTo(192);
+        assertThat(thumbnail.getHeight()).isEqualTo(288);
+        assertThat(result.getResponse().getContentLengthLong()).isEqualTo(result.getResponse()
+                .getContentAsByteArray().length);
+    }
+
+    @Test
+    void whenACoverIsAskedAgain_thenTheCachedThumbnailIsServedWithoutTheOrigin() throws Exception {
+        Mockito.when(mockedBookRepository.findById(2L)).thenReturn(Optional.of(book(2L, "fellowship.png")));
+        byte[] first = mvc.perform(get(COVER_URL, 2L))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+
+        Files.delete(directory.resolve("origin/covers/fellowship.png"));
+
+        mvc.perform(get(COVER_URL, 2L))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(first));
+    }
+
+    @Test
+    void whenTheClientHasTheThumbnail_thenNotModifiedIsReturned() throws Exception {
+        Mockito.when(mockedBookRepository.findById(3L)).thenReturn(Optional.of(book(3L, "fellowship.png")));
+        String etag = mvc.perform(get(COVER_URL, 3L))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get(COVER_URL, 3L).header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+    }
+
+    @Test
+    void whenTheWidthIsNotOffered_thenReturnBadRequest() throws Exception {
+        mvc.perform(get(COVER_URL, 1L).param("width", "100"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void whenTheOriginHasNoImage_thenReturnBadGateway() throws Exception {
+        Mockito.when(mockedBookRepository.findById(4L)).thenReturn(Optional.of(book(4L, "missing.png")));
+
+        mvc.perform(get(COVER_URL, 4L))
+                .andExpect(status().isBadGateway());
+    }
+
+    private static Book book(Long id, String image) {
+        Book book = new Book(id);
+        book.setGenre("Fantasy");
+        book.setAuthor("John Ronald Reuel Tolkien");
+        book.setImage("https://images.example.com/covers/" + image);
+        book.setTitle("The Lord of the Rings");
+        book.setSubTitle("The Fellowship of the Ring");
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1954");
+        book.setPages(352);
+        book.setIsbn("PR6039.O32 L6 1954");
+        return book;
+    }
+}
@@ -0,0 +1,149 @@
+package wolox.training.controllers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.exceptions.BookAlreadyOwnedException;
+import wolox.training.popularity.PopularityCounters;
+
+/**
+ * Many threads change the books of one user at the same time over an embedded Postgres, every book must end up
+ * owned once and every change counted by exactly one of the requests
+ */
+@SpringBootTest
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@TestInstance(Lifecycle.PER_CLASS)
+class OwnershipContentionTest {
+
+    private static final long HOT_USER = 1;
+    private static final int THREADS = 16;
+    private static final int BOOKS = 40;
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @SpyBean
+    private PopularityCounters popularityCounters;
+
+    private ExecutorService executor;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'genre', 'author-' || g, 'https://covers/' || g || '.jpg', 'title-' || g, "
+                + "'subtitle-' || g, 'publisher', '1954', 100 + g, 'isbn-' || g "
+                + "FROM generate_series(1, ?) g", THREADS * BOOKS);
+        jdbcTemplate.update("INSERT INTO users (id, username, name, birth_date) "
+                + "VALUES (?, 'hot-user', 'hot user', DATE '1980-01-01')", HOT_USER);
+        executor = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @AfterAll
+    void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @BeforeEach
+    void clearBooks() {
+        jdbcTemplate.update("DELETE FROM users_books WHERE users_id = ?", HOT_USER);
+        Mockito.clearInvocations(popularityCounters);
+    }
+
+    @Test
+    void whenEveryThreadAddsTheSameBooks_thenEachBookIsAddedOnceAndTheOthersConflict() throws Exception {
+        List<Long> books = bookIds(1, BOOKS);
+        AtomicInteger added = new AtomicInteger();
+        AtomicInteger conflicts = new AtomicInteger();
+
+        concurrently(thread -> books, (userId, bookId) -> {
+            try {
+                userController.addBookToUser(userId, bookId);
+                added.incrementAndGet();
+            } catch (BookAlreadyOwnedException e) {
+                conflicts.incrementAndGet();
+            }
+        });
+
+        assertThat(added).hasValue(BOOKS);
+        assertThat(conflicts).hasValue((THREADS - 1) * BOOKS);
+        assertThat(ownedBooks()).containsExactlyElementsOf(books);
+        books.forEach(bookId -> Mockito.verify(popularityCounters).ownerAdded(bookId));
+    }
+
+    @Test
+    void whenEveryThreadAddsOtherBooks_thenNoBookIsLost() throws Exception {
+        concurrently(thread -> bookIds(thread * BOOKS + 1, BOOKS), userController::addBookToUser);
+
+        assertThat(ownedBooks()).containsExactlyElementsOf(bookIds(1, THREADS * BOOKS));
+    }
+
+    @Test
+    void whenEveryThreadRemovesTheSameBooks_thenEachRemovalIsCountedOnce() throws Exception {
+        List<Long> books = bookIds(1, BOOKS);
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) SELECT ?, g FROM generate_series(1, ?) g",
+                HOT_USER, BOOKS);
+
+        concurrently(thread -> books, userController::deleteBookToUser);
+
+        assertThat(ownedBooks()).isEmpty();
+        books.forEach(bookId -> Mockito.verify(popularityCounters).ownerRemoved(bookId));
+    }
+
+    /**
+     * Every thread changes its books in its own random order, all of them start together
+     */
+    private void concurrently(IntFunction<List<Long>> threadBooks, BiConsumer<Long, Long> change) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> threads = new ArrayList<>();
+        for (int thread = 0; thread < THREADS; thread++) {
+            List<Long> books = new ArrayList<>(threadBooks.apply(thread));
+            Collections.shuffle(books);
+            threads.add(executor.submit(() -> {
+                start.await();
+                books.forEach(bookId -> change.accept(HOT_USER, bookId));
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> thread : threads) {
+            thread.get(60, TimeUnit.SECONDS);
+        }
+    }
+
+    private List<Long> ownedBooks() {
+        return jdbcTemplate.queryForList("SELECT books_id FROM users_books WHERE users_id = ? ORDER BY books_id",
+                Long.class, HOT_USER);
+    }
+
+    private static List<Long> bookIds(long first, int count) {
+        return LongStream.range(first, first + count).boxed().collect(Collectors.toList());
+    }
+}
@@ -11,9 +11,14 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Optional;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -23,16 +28,36 @@ import org.mockito.junit.MockitoJUnitRunner;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import wolox.training.audit.AuditLog;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.configurations.CacheConfig;
+import wolox.training.configurations.DeadlineConfig;
+import wolox.training.deadline.QueryDeadlines;
+import wolox.training.demographics.BirthDateHistograms;
 import wolox.training.exceptions.UserNotFoundException;
 import wolox.training.models.Book;
 import wolox.training.models.User;
+import wolox.training.models.dto.MultiGetResponse;
+import wolox.training.models.dto.OwnershipChange;
+import wolox.training.models.dto.OwnershipChange.Outcome;
+import wolox.training.models.dto.OwnershipEvent;
+import wolox.training.models.dto.OwnershipEvent.Action;
+import wolox.training.popularity.PopularityCounters;
 import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.OwnershipHistoryRepository;
+import wolox.training.repositories.ProjectionRepository;
+import wolox.training.repositories.OwnershipRepository;
 import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.ShardRouter;
+import wolox.training.sharding.UserShards;
 
 @RunWith(MockitoJUnitRunner.class)
 @WebMvcTest(UserController.class)
+@Import({SimpleMeterRegistry.class, CacheConfig.class, ShardRouter.class, UserShards.class, QueryDeadlines.class,
+        DeadlineConfig.class})
 class UserControllerTest {
 
     public static final String API_USERS = "/api/users/";
@@ -46,6 +71,27 @@ class UserControllerTest {
     @MockBean
     private BookRepository mockedBookRepository;
 
+    @MockBean
+    private OwnershipRepository mockedOwnershipRepository;
+
+    @MockBean
+    private OwnershipHistoryRepository mockedOwnershipHistoryRepository;
+
+    @MockBean
+    private ProjectionRepository mockedProjectionRepository;
+
+    @MockBean
+    private CacheInvalidationBus mockedInvalidationBus;
+
+    @MockBean
+    private AuditLog mockedAuditLog;
+
+    @MockBean
+    private PopularityCounters mockedPopularityCounters;
+
+    @MockBean
+    private BirthDateHistograms mockedBirthDateHistograms;
+
 
     private User oneTestUser;
     private User oneTestUserCreated;
@@ -176,9 +222,10 @@ class UserControllerTest {
     public void whenAUserAddBook_thenUserIsReturned() throws Exception {
         String jsonUserCreated = mapper.writeValueAsString(oneTestUserCreated);
 
-        Mockito.when(mockedBookRepository.findById(Mockito.any())).thenReturn(Optional.of(oneTestBookCreated));
-        Mockito.when(mockedUserRepository.findById(Mockito.any())).thenReturn(Optional.of(oneTestUser));
-        Mockito.when(mockedUserRepository.save(Mockito.any())).thenReturn(oneTestUserCreated);
+        Mockito.when(mockedUserRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedBookRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedOwnershipRepository.addBooks(1L, List.of(1L))).thenReturn(List.of(1L));
+        Mockito.when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(oneTestUserCreated));
 
         String url = API_USERS.concat(String.valueOf(oneTestUserCreated.getId())).concat("/books/")
                 .concat(String.valueOf(oneTestBookCreated.getId()));
@@ -193,9 +240,10 @@ class UserControllerTest {
     public void whenAUserDeleteBook_thenUserIsReturned() throws Exception {
         String jsonUserCreated = mapper.writeValueAsString(oneTestUser);
 
-        Mockito.when(mockedBookRepository.findById(Mockito.any())).thenReturn(Optional.of(oneTestBookCreated));
-        Mockito.when(mockedUserRepository.findById(Mockito.any())).thenReturn(Optional.of(oneTestUserCreated));
-        Mockito.when(mockedUserRepository.save(Mockito.any())).thenReturn(oneTestUser);
+        Mockito.when(mockedUserRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedBookRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedOwnershipRepository.removeBooks(1L, List.of(1L))).thenReturn(List.of(1L));
+        Mockito.when(mockedUserRepository.findById(1L)).thenReturn(Optional.of(oneTestUser));
 
         String url = API_USERS.concat(String.valueOf(oneTestUserCreated.getId())).concat("/books/")
                 .concat(String.valueOf(oneTestBookCreated.getId()));
@@ -205,4 +253,109 @@ class UserControllerTest {
                 .andExpect(status().isOk())
                 .andExpect(content().json(jsonUserCreated));
     }
+
+    @Test
+    public void whenAUserAddBookAlreadyOwned_thenReturnConflict() throws Exception {
+        Mockito.when(mockedUserRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedBookRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedOwnershipRepository.addBooks(1L, List.of(1L))).thenReturn(Collections.emptyList());
+
+        mvc.perform(post(API_USERS.concat("1/books/1"))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isConflict());
+        Mockito.verifyNoInteractions(mockedInvalidationBus, mockedPopularityCounters);
+    }
+
+    @Test
+    public void whenFindByIdsWithMissingIds_thenFoundUsersAndMissingIdsAreReturned() throws Exception {
+        User otherUser = new User(5L);
+        otherUser.setUsername("samuskitchen");
+        String jsonResponse = mapper.writeValueAsString(
+                MultiGetResponse.of(Arrays.asList(6L, 5L), Collections.singletonMap(5L, otherUser)));
+        Mockito.when(mockedUserRepository.findAllWithBooksByIdIn(Mockito.any()))
+                .thenReturn(Collections.singletonList(otherUser));
+
+        mvc.perform(get(API_USERS).param("ids", "6", "5")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(jsonResponse));
+    }
+
+    @Test
+    public void whenAUserAddBooks_thenOutcomeOfEachBookIsReturned() throws Exception {
+        String jsonOutcomes = mapper.writeValueAsString(Arrays.asList(
+                new OwnershipChange(1L, Outcome.ADDED),
+                new OwnershipChange(2L, Outcome.ALREADY_OWNED),
+                new OwnershipChange(3L, Outcome.BOOK_NOT_FOUND)));
+        Mockito.when(mockedUserRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedBookRepository.findExistingIds(Mockito.any())).thenReturn(Arrays.asList(1L, 2L));
+        Mockito.when(mockedOwnershipRepository.addBooks(Mockito.eq(1L), Mockito.any()))
+                .thenReturn(Collections.singletonList(1L));
+
+        mvc.perform(post(API_USERS.concat("1/books"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1, 2, 3]"))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(jsonOutcomes));
+        Mockito.verify(mockedInvalidationBus).publish("users", 1L);
+    }
+
+    @Test
+    public void whenAUserDeleteBooks_thenOutcomeOfEachBookIsReturned() throws Exception {
+        String jsonOutcomes = mapper.writeValueAsString(Arrays.asList(
+                new OwnershipChange(2L, Outcome.NOT_OWNED),
+                new OwnershipChange(1L, Outcome.REMOVED)));
+        Mockito.when(mockedUserRepository.existsById(1L)).thenReturn(true);
+        Mockito.when(mockedBookRepository.findExistingIds(Mockito.any())).thenReturn(Arrays.asList(1L, 2L));
+        Mockito.when(mockedOwnershipRepository.removeBooks(Mockito.eq(1L), Mockito.any()))
+                .thenReturn(Collections.singletonList(1L));
+
+        mvc.perform(delete(API_USERS.concat("1/books")).param("ids", "2", "1")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(jsonOutcomes));
+    }
+
+    @Test
+    public void whenAUserThatNotExistAddBooks_thenReturnNotFound() throws Exception {
+        Mockito.when(mockedUserRepository.existsById(Mockito.any())).thenReturn(false);
+
+        mvc.perform(post(API_USERS.concat("1/books"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[1]"))
+                .andDo(print())
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void whenFindHistoryOfADayRange_thenTheChangesAreReturned() throws Exception {
+        List<OwnershipEvent> events = Arrays.asList(
+                new OwnershipEvent(1L, Action.ADDED, OffsetDateTime.of(2021, 3, 2, 10, 0, 0, 0, ZoneOffset.UTC)),
+                new OwnershipEvent(1L, Action.REMOVED, OffsetDateTime.of(2021, 4, 5, 18, 30, 0, 0, ZoneOffset.UTC)));
+        Mockito.when(mockedOwnershipHistoryRepository.findUserEvents(1L, LocalDate.of(2021, 3, 1),
+                LocalDate.of(2021, 5, 1), 1000)).thenReturn(events);
+
+        mvc.perform(get(API_USERS.concat("1/history")).param("from", "2021-03-01").param("to", "2021-05-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andDo(print())
+                .andExpect(status().isOk())
+                .andExpect(content().json(mapper.writeValueAsString(events), true));
+    }
+
+    @Test
+    public void whenFindHistoryOfAnInvalidRange_thenReturnBadRequest() throws Exception {
+        mvc.perform(get(API_USERS.concat("1/history")).param("from", "2021-05-01").param("to", "2021-03-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get(API_USERS.concat("1/history")).param("from", "2019-01-01").param("to", "2021-01-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+        mvc.perform(get(API_USERS.concat("1/history")).param("from", "March").param("to", "2021-05-01")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest());
+    }
 }
@@ -0,0 +1,121 @@
+package wolox.training.covers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CoverCacheTest {
+
+    private static final int FILE_SIZE = 100;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenManyRequestsMissTheSameFile_thenItIsWrittenOnce() throws Exception {
+        CoverCache cache = cache(10 * FILE_SIZE);
+        AtomicInteger writes = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Path>> requests = new ArrayList<>();
+            for (int request = 0; request < 8; request++) {
+                requests.add(executor.submit(() -> {
+                    start.await();
+                    return cache.get("1-96-cover.jpg", target -> {
+                        writes.incrementAndGet();
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                        Files.write(target, new byte[FILE_SIZE]);
+                    });
+                }));
+            }
+            start.countDown();
+            for (Future<Path> request : requests) {
+                assertThat(Files.size(request.get(5, TimeUnit.SECONDS))).isEqualTo(FILE_SIZE);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(writes).hasValue(1);
+        assertThat(directory).isDirectoryContaining("glob:**/1-96-cover.jpg")
+                .isDirectoryNotContaining("glob:**/*.tmp");
+    }
+
+    @Test
+    void whenTheCacheIsFull_thenTheLeastRecentlyServedFileIsEvicted() {
+        CoverCache cache = cache(2 * FILE_SIZE);
+        Path first = cache.get("first.jpg", CoverCacheTest::writeFile);
+        Path second = cache.get("second.jpg", CoverCacheTest::writeFile);
+        cache.get("first.jpg", CoverCacheTest::writeFile);
+
+        Path third = cache.get("third.jpg", CoverCacheTest::writeFile);
+
+        assertThat(first).exists();
+        assertThat(second).doesNotExist();
+        assertThat(third).exists();
+        assertThat(cache.getBytes()).isEqualTo(2 * FILE_SIZE);
+    }
+
+    @Test
+    void whenTheCacheIsReopened_thenTheWrittenFilesAreServed() throws Exception {
+        cache(10 * FILE_SIZE).get("kept.jpg", CoverCacheTest::writeFile);
+        Files.write(directory.resolve("interrupted.jpg.tmp"), new byte[FILE_SIZE]);
+
+        CoverCache reopened = cache(10 * FILE_SIZE);
+        reopened.get("kept.jpg", target -> {
+            throw new AssertionError("The cached file was written again");
+        });
+
+        assertThat(reopened.getBytes()).isEqualTo(FILE_SIZE);
+        assertThat(directory.resolve("interrupted.jpg.tmp")).doesNotExist();
+    }
+
+    @Test
+    void whenALinkedFileIsEvicted_thenTheLinkKeepsItsContent() throws Exception {
+        CoverCache cache = cache(FILE_SIZE);
+        Path first = cache.get("first.jpg", CoverCacheTest::writeFile);
+        Path link = cache.link(first);
+
+        cache.get("second.jpg", CoverCacheTest::writeFile);
+
+        assertThat(first).doesNotExist();
+        assertThat(Files.size(link)).isEqualTo(FILE_SIZE);
+    }
+
+    @Test
+    void whenTheLinksAreOlderThanTheirTimeToLive_thenTheyAreDeleted() throws Exception {
+        CoverCache cache = new CoverCache(new SimpleMeterRegistry(), directory.toString(), 10 * FILE_SIZE, 10);
+        Path file = cache.get("first.jpg", CoverCacheTest::writeFile);
+        Path expired = cache.link(file);
+
+        TimeUnit.MILLISECONDS.sleep(50);
+        Path fresh = cache.link(file);
+
+        assertThat(expired).doesNotExist();
+        assertThat(fresh).exists();
+        assertThat(file).exists();
+    }
+
+    private CoverCache cache(long maxBytes) {
+        return new CoverCache(new SimpleMeterRegistry(), directory.toString(), maxBytes, 60000);
+    }
+
+    private static void writeFile(Path target) throws IOException {
+        Files.write(target, new byte[FILE_SIZE]);
+    }
+}
@@ -0,0 +1,70 @@
+package wolox.training.covers;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CoverOriginTest {
+
+    private static final String[] ALLOWED_ORIGINS = {"https://images.example.com"};
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenTheImageIsOutsideTheAllowedOrigins_thenItIsNotFetched() {
+        CoverOrigin origin = new CoverOrigin("", 1000, ALLOWED_ORIGINS, 1024 * 1024, 1000 * 1000);
+
+        assertThatThrownBy(() -> origin.read("http://169.254.169.254/latest/meta-data/cover.png"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("not allowed");
+        assertThatThrownBy(() -> origin.read("https://images.example.com:8443/cover.png"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("not allowed");
+    }
+
+    @Test
+    void whenTheImageIsWithinTheLimits_thenItIsDecoded() throws Exception {
+        write("covers/small.png", 80, 120);
+        CoverOrigin origin = new CoverOrigin(directory.toString(), 1000, ALLOWED_ORIGINS, 1024 * 1024, 80 * 120);
+
+        BufferedImage image = origin.read("https://images.example.com/covers/small.png");
+
+        assertThat(image.getWidth()).isEqualTo(80);
+        assertThat(image.getHeight()).isEqualTo(120);
+    }
+
+    @Test
+    void whenTheImageHasTooManyPixels_thenItIsNotDecoded() throws Exception {
+        write("covers/large.png", 2000, 2000);
+        CoverOrigin origin = new CoverOrigin(directory.toString(), 1000, ALLOWED_ORIGINS, 1024 * 1024, 1000 * 1000);
+
+        assertThatThrownBy(() -> origin.read("https://images.example.com/covers/large.png"))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("pixels");
+    }
+
+    @Test
+    void whenTheImageHasTooManyBytes_thenItsReadIsStopped() throws Exception {
+        Path file = write("covers/heavy.png", 80, 120);
+        CoverOrigin origin = new CoverOrigin(directory.toString(), 1000, ALLOWED_ORIGINS, Files.size(file) / 2,
+                1000 * 1000);
+
+        assertThatThrownBy(() -> origin.read("https://images.example.com/covers/heavy.png"))
+                .isInstanceOf(IOException.class);
+    }
+
+    private Path write(String path, int width, int height) throws IOException {
+        Path file = directory.resolve(path);
+        Files.createDirectories(file.getParent());
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return file;
+    }
+}
@@ -0,0 +1,70 @@
+package wolox.training.deadline;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+@TestInstance(Lifecycle.PER_CLASS)
+class DeadlineDataSourceTest {
+
+    private EmbeddedPostgres database;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void startDatabase() throws IOException {
+        database = EmbeddedPostgres.start();
+        jdbcTemplate = new JdbcTemplate(new DeadlineDataSource(database.getPostgresDatabase()));
+    }
+
+    @AfterAll
+    void stopDatabase() throws IOException {
+        database.close();
+    }
+
+    @Test
+    void whenThreadHasNoDeadline_thenStatementsRunWithoutTimeout() {
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT 1", Integer.class));
+    }
+
+    @Test
+    void whenStatementOutlivesTheDeadline_thenItIsStoppedByTheDatabase() {
+        QueryDeadline deadline = new QueryDeadline(300);
+        long started = System.nanoTime();
+
+        assertThrows(DataAccessException.class, () -> QueryDeadline.callWith(deadline,
+                () -> jdbcTemplate.queryForObject("SELECT 1 FROM pg_sleep(30)", Integer.class)));
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 5);
+    }
+
+    @Test
+    void whenDeadlineIsCancelled_thenTheRunningStatementIsStopped() throws Exception {
+        QueryDeadline deadline = new QueryDeadline(30000);
+        CompletableFuture<Integer> running = CompletableFuture.supplyAsync(() -> QueryDeadline.callWith(deadline,
+                () -> jdbcTemplate.queryForObject("SELECT 1 FROM pg_sleep(30)", Integer.class)));
+
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (deadline.runningStatements() == 0 && System.nanoTime() < waitUntil) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(1, deadline.cancel());
+        assertEquals(-1, deadline.cancel());
+
+        CompletableFuture<Integer> stopped = running.exceptionally(error -> -1);
+        assertEquals(-1, stopped.get(5, TimeUnit.SECONDS));
+        assertThrows(QueryTimeoutException.class, () -> QueryDeadline.callWith(deadline,
+                () -> jdbcTemplate.queryForObject("SELECT 1", Integer.class)));
+    }
+}
@@ -0,0 +1,150 @@
+package wolox.training.deadline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+/**
+ * Runs a statement that sleeps in an embedded Postgres behind an endpoint with a deadline, the container timeout
+ * and the client going away are played by the listeners of the async context
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+class QueryDeadlinesTest {
+
+    private static final String SLEEP_URL = "/test/deadlines/{endpoint}";
+    private static final String COUNT_SLEEPING = "SELECT count(*) FROM pg_stat_activity "
+            + "WHERE state = 'active' AND query LIKE 'SELECT 1 FROM pg_sleep%'";
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void whenTheDeadlineIsOver_thenTheStatementIsCancelledAndServiceUnavailableIsReturned() throws Exception {
+        MvcResult started = startSleeping("timeout");
+
+        for (AsyncListener listener : asyncContext(started).getListeners()) {
+            listener.onTimeout(new AsyncEvent(asyncContext(started)));
+        }
+
+        started.getAsyncResult(TimeUnit.SECONDS.toMillis(5));
+        mvc.perform(asyncDispatch(started)).andExpect(status().isServiceUnavailable());
+        awaitSleeping(0);
+        assertThat(cancelled("timeout", QueryDeadlines.DEADLINE)).isEqualTo(1);
+        assertThat(cancelledStatements("timeout", QueryDeadlines.DEADLINE)).isEqualTo(1);
+    }
+
+    @Test
+    void whenTheClientGoesAway_thenTheRunningStatementIsCancelled() throws Exception {
+        MvcResult started = startSleeping("disconnect");
+
+        for (AsyncListener listener : asyncContext(started).getListeners()) {
+            listener.onError(new AsyncEvent(asyncContext(started), new IOException("Connection reset by peer")));
+        }
+
+        awaitSleeping(0);
+        assertThat(cancelled("disconnect", QueryDeadlines.DISCONNECT)).isEqualTo(1);
+        assertThat(cancelledStatements("disconnect", QueryDeadlines.DISCONNECT)).isEqualTo(1);
+        assertThat(cancelled("disconnect", QueryDeadlines.DEADLINE)).isZero();
+    }
+
+    private MvcResult startSleeping(String endpoint) throws Exception {
+        MvcResult started = mvc.perform(get(SLEEP_URL, endpoint))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        awaitSleeping(1);
+        return started;
+    }
+
+    private MockAsyncContext asyncContext(MvcResult result) {
+        return (MockAsyncContext) result.getRequest().getAsyncContext();
+    }
+
+    private void awaitSleeping(long statements) throws InterruptedException {
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jdbcTemplate.queryForObject(COUNT_SLEEPING, Long.class) != statements
+                && System.nanoTime() < waitUntil) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertThat(jdbcTemplate.queryForObject(COUNT_SLEEPING, Long.class)).isEqualTo(statements);
+    }
+
+    private double cancelled(String endpoint, String reason) {
+        return count("deadlines.cancelled", endpoint, reason);
+    }
+
+    private double cancelledStatements(String endpoint, String reason) {
+        return count("deadlines.cancelled.statements", endpoint, reason);
+    }
+
+    private double count(String name, String endpoint, String reason) {
+        Counter counter = meterRegistry.find(name)
+                .tags("endpoint", endpoint, "reason", reason)
+                .counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    @TestConfiguration
+    static class SleepingEndpoint {
+
+        @Bean
+        SleepController sleepController(QueryDeadlines queryDeadlines, JdbcTemplate jdbcTemplate) {
+            return new SleepController(queryDeadlines, jdbcTemplate);
+        }
+    }
+
+    /**
+     * Not a component, so the contexts of the other tests don't scan it
+     */
+    @RequestMapping
+    static class SleepController {
+
+        private final QueryDeadlines queryDeadlines;
+        private final JdbcTemplate jdbcTemplate;
+
+        SleepController(QueryDeadlines queryDeadlines, JdbcTemplate jdbcTemplate) {
+            this.queryDeadlines = queryDeadlines;
+            this.jdbcTemplate = jdbcTemplate;
+        }
+
+        @GetMapping(SLEEP_URL)
+        @ResponseBody
+        WebAsyncTask<Integer> sleep(@PathVariable String endpoint) {
+            return queryDeadlines.run(endpoint,
+                    () -> jdbcTemplate.queryForObject("SELECT 1 FROM pg_sleep(30)", Integer.class));
+        }
+    }
+}
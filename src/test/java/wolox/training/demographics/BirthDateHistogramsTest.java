@@ -0,0 +1,75 @@
+package wolox.training.demographics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.models.dto.BirthDateHistogram;
+import wolox.training.models.dto.BirthDateHistogram.AgeCount;
+import wolox.training.models.dto.BirthDateHistogram.YearCount;
+import wolox.training.repositories.DemographicsRepository;
+import wolox.training.sharding.ShardRouter;
+import wolox.training.sharding.UserShards;
+
+class BirthDateHistogramsTest {
+
+    private static final LocalDate TODAY = LocalDate.of(2021, 6, 15);
+
+    private DemographicsRepository demographicsRepository;
+    private BirthDateHistograms histograms;
+
+    @BeforeEach
+    void setUp() {
+        demographicsRepository = Mockito.mock(DemographicsRepository.class);
+        SortedMap<LocalDate, Long> counts = new TreeMap<>();
+        counts.put(LocalDate.of(1990, 1, 10), 3L);
+        counts.put(LocalDate.of(1990, 12, 31), 2L);
+        counts.put(LocalDate.of(2001, 6, 15), 4L);
+        counts.put(LocalDate.of(2001, 6, 16), 1L);
+        Mockito.when(demographicsRepository.countByBirthDate(Mockito.any(), Mockito.any(), Mockito.any()))
+                .thenReturn(counts);
+        UserShards userShards = new UserShards(new ShardRouter(false, new String[0]), null, null, null, null);
+        histograms = new BirthDateHistograms(demographicsRepository, userShards,
+                Mockito.mock(CacheInvalidationBus.class), 10,
+                Clock.fixed(TODAY.atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    @Test
+    void whenHistogram_thenUsersAreCountedPerYearAndAgeRange() {
+        BirthDateHistogram histogram = histograms.histogram(null, null, "");
+
+        assertThat(histogram.getUsers()).isEqualTo(10);
+        assertThat(histogram.getBirthYears()).extracting(YearCount::getYear).containsExactly(1990, 2001);
+        assertThat(histogram.getBirthYears()).extracting(YearCount::getUsers).containsExactly(5L, 5L);
+        assertThat(histogram.getAges()).extracting(AgeCount::getFromAge).containsExactly(10, 20, 30);
+        assertThat(histogram.getAges()).extracting(AgeCount::getToAge).containsExactly(19, 29, 39);
+        assertThat(histogram.getAges()).extracting(AgeCount::getUsers).containsExactly(1L, 4L, 5L);
+    }
+
+    @Test
+    void whenUnfilteredHistogramIsAskedAgain_thenItIsCachedUntilAUserChanges() {
+        histograms.histogram(null, null, "");
+        histograms.histogram(null, null, null);
+        Mockito.verify(demographicsRepository, Mockito.times(1)).countByBirthDate(null, null, null);
+
+        histograms.invalidated(7L);
+        histograms.histogram(null, null, "");
+        Mockito.verify(demographicsRepository, Mockito.times(2)).countByBirthDate(null, null, null);
+    }
+
+    @Test
+    void whenHistogramIsFiltered_thenItIsNotCached() {
+        LocalDate start = LocalDate.of(1990, 1, 1);
+        histograms.histogram(start, null, "");
+        histograms.histogram(start, null, "");
+
+        Mockito.verify(demographicsRepository, Mockito.times(2)).countByBirthDate(start, null, "");
+    }
+}
@@ -0,0 +1,105 @@
+package wolox.training.graphql;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static wolox.training.monitoring.QueryCountMatchers.queryCount;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+/**
+ * Pins the statements run by GraphQL queries over an embedded Postgres, the users and their books are read in one
+ * statement whatever the number of users asked
+ */
+@SpringBootTest(properties = "training.graphql.max-complexity=500")
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@TestInstance(Lifecycle.PER_CLASS)
+class GraphQLQueriesTest {
+
+    private static final int USERS = 220;
+    private static final int BOOKS_PER_USER = 3;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'genre-' || (g % 3), 'author-' || g, 'https://covers/' || g || '.jpg', 'title-' || g, "
+                + "'subtitle-' || g, 'publisher-' || (g % 5), (1900 + g)::text, 100 + g, 'isbn-' || g "
+                + "FROM generate_series(1, ?) g", USERS * BOOKS_PER_USER);
+        jdbcTemplate.update("INSERT INTO users (id, username, name, birth_date) "
+                + "SELECT g, 'user-' || g, CASE WHEN g > 110 THEN 'search ' ELSE 'name ' END || g, "
+                + "DATE '1980-01-01' + g FROM generate_series(1, ?) g", USERS);
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) "
+                + "SELECT u, (u - 1) * ? + k FROM generate_series(1, ?) u, generate_series(1, ?) k",
+                BOOKS_PER_USER, USERS, BOOKS_PER_USER);
+    }
+
+    @Test
+    void whenUsersAreAskedById_thenTenOrAHundredWithTheirBooksAreReadInOneStatement() throws Exception {
+        graphQL("{ users(ids: [" + ids(1, 10) + "]) { id books { title } } }")
+                .andExpect(jsonPath("$.errors").doesNotExist())
+                .andExpect(jsonPath("$.data.users.length()").value(10))
+                .andExpect(jsonPath("$.data.users[9].books.length()").value(BOOKS_PER_USER))
+                .andExpect(queryCount(1));
+
+        graphQL("{ users(ids: [" + ids(11, 110) + "]) { id books { title } } }")
+                .andExpect(jsonPath("$.errors").doesNotExist())
+                .andExpect(jsonPath("$.data.users.length()").value(100))
+                .andExpect(jsonPath("$.data.users[*].books.length()")
+                        .value(Matchers.everyItem(Matchers.is(BOOKS_PER_USER))))
+                .andExpect(queryCount(1));
+    }
+
+    @Test
+    void whenUsersAreSearched_thenThePageIsReadWithTheirBooksInOneStatement() throws Exception {
+        graphQL("{ searchUsers(sequence: \"search\", size: 100) { name books { title } } }")
+                .andExpect(jsonPath("$.errors").doesNotExist())
+                .andExpect(jsonPath("$.data.searchUsers.length()").value(100))
+                .andExpect(jsonPath("$.data.searchUsers[0].name").value("search 111"))
+                .andExpect(jsonPath("$.data.searchUsers[99].books.length()").value(BOOKS_PER_USER))
+                .andExpect(queryCount(3));
+    }
+
+    @Test
+    void whenQueryIsTooComplex_thenItIsRejectedWithoutStatements() throws Exception {
+        graphQL("{ searchUsers(size: 200) { id name books { title } } }")
+                .andExpect(jsonPath("$.errors[0].message").value(Matchers.containsString("complexity")))
+                .andExpect(queryCount(0));
+    }
+
+    private ResultActions graphQL(String query) throws Exception {
+        return mvc.perform(post("/api/graphql").contentType(MediaType.APPLICATION_JSON)
+                .content(mapper.writeValueAsString(Map.of("query", query))))
+                .andExpect(status().isOk());
+    }
+
+    private static String ids(long first, long last) {
+        return LongStream.rangeClosed(first, last).mapToObj(String::valueOf).collect(Collectors.joining(", "));
+    }
+}
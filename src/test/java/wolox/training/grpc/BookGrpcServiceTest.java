@@ -0,0 +1,212 @@
+package wolox.training.grpc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
+import io.grpc.stub.StreamObserver;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.grpc.proto.BookId;
+import wolox.training.grpc.proto.BookIds;
+import wolox.training.grpc.proto.BookMessage;
+import wolox.training.grpc.proto.BooksGrpc;
+import wolox.training.grpc.proto.ListBooksRequest;
+
+/**
+ * Calls the book service through a channel to the gRPC server of the context, the listing reads chunks of three
+ * books so a stream spans several chunks
+ */
+@SpringBootTest(properties = "training.grpc.list-chunk-size=3")
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@TestInstance(Lifecycle.PER_CLASS)
+class BookGrpcServiceTest {
+
+    private static final long FIRST_ID = 1001;
+    private static final int BOOKS = 20;
+    private static final String COUNT_BLOCKED_READS = "SELECT count(*) FROM pg_stat_activity "
+            + "WHERE wait_event_type = 'Lock' AND query LIKE 'select%from book book%' AND pid <> pg_backend_pid()";
+
+    @Autowired
+    private GrpcServer server;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DataSource dataSource;
+
+    private ManagedChannel channel;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'genre-' || (g % 2), 'author-' || g, 'https://covers/' || g || '.jpg', 'title-' || g, "
+                + "'subtitle-' || g, 'publisher', '1954', 100 + g, 'isbn-' || g "
+                + "FROM generate_series(?, ?) g", FIRST_ID, FIRST_ID + BOOKS - 1);
+        channel = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+    }
+
+    @AfterAll
+    void closeChannel() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void whenBooksAreListed_thenTheFilteredBooksAreStreamedInIdOrder() {
+        List<Long> ids = new ArrayList<>();
+        BooksGrpc.newBlockingStub(channel)
+                .listBooks(ListBooksRequest.newBuilder().setGenre("genre-1").setPublisher("publisher").build())
+                .forEachRemaining(book -> ids.add(book.getId()));
+
+        assertEquals(LongStream.range(FIRST_ID, FIRST_ID + BOOKS).filter(id -> id % 2 == 1).boxed()
+                .collect(Collectors.toList()), ids);
+    }
+
+    /**
+     * The table is locked by another transaction, so the read of the first chunk waits until it is cancelled
+     */
+    @Test
+    void whenTheClientCancelsTheListing_thenTheRunningReadIsCancelled() throws Exception {
+        try (Connection locker = dataSource.getConnection(); Statement lock = locker.createStatement()) {
+            locker.setAutoCommit(false);
+            lock.execute("LOCK TABLE book IN ACCESS EXCLUSIVE MODE");
+            try {
+                CompletableFuture<ClientCallStreamObserver<ListBooksRequest>> listing = new CompletableFuture<>();
+                BooksGrpc.newStub(channel).listBooks(ListBooksRequest.getDefaultInstance(), cancellable(listing));
+                awaitBlockedReads(1);
+
+                listing.get(5, TimeUnit.SECONDS).cancel("The client went away", null);
+
+                awaitBlockedReads(0);
+            } finally {
+                locker.rollback();
+            }
+        }
+    }
+
+    @Test
+    void whenANullPointerEscapesTheWork_thenTheCallFailsWithInternal() {
+        assertEquals(Status.Code.INTERNAL, GrpcCalls.status(new NullPointerException()).getStatus().getCode());
+        assertEquals(Status.Code.INVALID_ARGUMENT,
+                GrpcCalls.status(new IllegalArgumentException()).getStatus().getCode());
+    }
+
+    @Test
+    void whenBooksAreStreamedToCreate_thenEveryBookIsCreated() throws Exception {
+        CompletableFuture<BookIds> created = new CompletableFuture<>();
+        StreamObserver<BookMessage> books = BooksGrpc.newStub(channel).createBooks(observer(created));
+        for (int book = 0; book < 3; book++) {
+            books.onNext(book("Streamed title " + book));
+        }
+        books.onCompleted();
+
+        List<Long> ids = created.get(5, TimeUnit.SECONDS).getIdsList();
+        assertThat(ids).hasSize(3).doesNotHaveDuplicates();
+        assertEquals("Streamed title 2", BooksGrpc.newBlockingStub(channel)
+                .getBook(BookId.newBuilder().setId(ids.get(2)).build()).getTitle());
+    }
+
+    @Test
+    void whenStreamedBookIsInvalid_thenTheCallFailsWithInvalidArgument() {
+        CompletableFuture<BookIds> created = new CompletableFuture<>();
+        StreamObserver<BookMessage> books = BooksGrpc.newStub(channel).createBooks(observer(created));
+        books.onNext(book("Valid title"));
+        books.onNext(book("Invalid pages").toBuilder().setPages(0).build());
+        books.onCompleted();
+
+        StatusRuntimeException error = (StatusRuntimeException) assertThrows(ExecutionException.class,
+                () -> created.get(5, TimeUnit.SECONDS)).getCause();
+        assertEquals(Status.Code.INVALID_ARGUMENT, error.getStatus().getCode());
+    }
+
+    @Test
+    void whenBookDoesNotExist_thenTheCallFailsWithNotFound() {
+        StatusRuntimeException error = assertThrows(StatusRuntimeException.class,
+                () -> BooksGrpc.newBlockingStub(channel).getBook(BookId.newBuilder().setId(999_999).build()));
+        assertEquals(Status.Code.NOT_FOUND, error.getStatus().getCode());
+    }
+
+    private static BookMessage book(String title) {
+        return BookMessage.newBuilder().setGenre("Fantasy").setAuthor("Streamed author")
+                .setImage("https://covers/streamed.jpg").setTitle(title).setSubTitle("Streamed subtitle")
+                .setPublisher("Streamed publisher").setYear("1954").setPages(352).setIsbn("isbn-streamed").build();
+    }
+
+    private void awaitBlockedReads(long reads) throws InterruptedException {
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jdbcTemplate.queryForObject(COUNT_BLOCKED_READS, Long.class) != reads
+                && System.nanoTime() < waitUntil) {
+            TimeUnit.MILLISECONDS.sleep(20);
+        }
+        assertEquals(reads, jdbcTemplate.queryForObject(COUNT_BLOCKED_READS, Long.class));
+    }
+
+    private static ClientResponseObserver<ListBooksRequest, BookMessage> cancellable(
+            CompletableFuture<ClientCallStreamObserver<ListBooksRequest>> listing) {
+        return new ClientResponseObserver<>() {
+            @Override
+            public void beforeStart(ClientCallStreamObserver<ListBooksRequest> requestStream) {
+                listing.complete(requestStream);
+            }
+
+            @Override
+            public void onNext(BookMessage book) {
+                // no book is read while the table is locked
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                // the call ends cancelled
+            }
+
+            @Override
+            public void onCompleted() {
+                // the call ends cancelled
+            }
+        };
+    }
+
+    private static StreamObserver<BookIds> observer(CompletableFuture<BookIds> result) {
+        return new StreamObserver<>() {
+            @Override
+            public void onNext(BookIds ids) {
+                result.complete(ids);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                result.completeExceptionally(error);
+            }
+
+            @Override
+            public void onCompleted() {
+                // the ids arrive in the only message
+            }
+        };
+    }
+}
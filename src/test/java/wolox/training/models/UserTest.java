@@ -89,7 +89,7 @@ class UserTest {
         Optional<User> userFound = userRepository.findByUsername("SamusKitchen");
         assertThat(oneTestUser.equals(userFound.get())).isTrue();
         assertThat(oneTestUser.getBooks().size() == userFound.get().getBooks().size()).isTrue();
-        assertThat(oneTestBook.getAuthor().equals(userFound.get().getBooks().get(0).getAuthor())).isTrue();
+        assertThat(oneTestBook.getAuthor().equals(userFound.get().getBooks().iterator().next().getAuthor())).isTrue();
     }
 
     @Test
@@ -0,0 +1,64 @@
+package wolox.training.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+/**
+ * The statements are recorded in the stats of the thread as {@link QueryCountingDataSource} would
+ */
+class QueryCountFilterTest {
+
+    private QueryCountFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        filter = new QueryCountFilter(20, 250);
+        request = new MockHttpServletRequest("GET", "/api/books");
+        response = new MockHttpServletResponse();
+        response.setBufferSize(16);
+    }
+
+    @Test
+    void whenTheBodyIsWritten_thenTheHeadersAreSetBeforeTheResponseIsCommitted() throws Exception {
+        filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+            QueryStats.current().recordStatement("SELECT 1", 1_000);
+            assertThat(response.getHeader(QueryCountFilter.QUERY_COUNT_HEADER)).isNull();
+
+            servletResponse.getOutputStream().write(new byte[64]);
+
+            assertThat(response.isCommitted()).isTrue();
+            assertThat(response.getContentAsByteArray()).hasSize(64);
+            assertThat(response.getHeader(QueryCountFilter.QUERY_COUNT_HEADER)).isEqualTo("1");
+            QueryStats.current().recordStatement("SELECT 2", 1_000);
+        });
+
+        assertThat(response.getHeader(QueryCountFilter.QUERY_COUNT_HEADER)).isEqualTo("1");
+    }
+
+    @Test
+    void whenThereIsNoBody_thenTheHeadersAreSetAtTheEnd() throws Exception {
+        filter.doFilter(request, response, (servletRequest, servletResponse) -> {
+            QueryStats.current().recordStatement("DELETE FROM book WHERE id = ?", 1_000);
+            QueryStats.current().recordStatement("DELETE FROM users_books WHERE books_id = ?", 1_000);
+        });
+
+        assertThat(response.getHeader(QueryCountFilter.QUERY_COUNT_HEADER)).isEqualTo("2");
+        assertThat(response.getHeader(QueryCountFilter.SERVER_TIMING_HEADER)).contains("2 queries, 0 rows");
+    }
+
+    @Test
+    void whenTheRequestIsNotToTheApi_thenTheHeadersAreNotSet() throws Exception {
+        request.setRequestURI("/swagger-ui.html");
+
+        filter.doFilter(request, response, (servletRequest, servletResponse) -> servletResponse.getWriter().write("ok"));
+
+        assertThat(response.getHeader(QueryCountFilter.QUERY_COUNT_HEADER)).isNull();
+        assertThat(response.getContentAsString()).isEqualTo("ok");
+    }
+}
@@ -0,0 +1,44 @@
+package wolox.training.monitoring;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.springframework.test.web.servlet.ResultMatcher;
+
+/**
+ * Pins the statements run by a request, read from the header set by {@link QueryCountFilter}. A change that makes
+ * an endpoint load an association once per row, like the books of each user, fails the pinned count.
+ */
+public final class QueryCountMatchers {
+
+    private QueryCountMatchers() {
+    }
+
+    /**
+     * This method checks that the request ran exactly the expected statements
+     *
+     * @param expected: statements the endpoint is allowed to run
+     * @return {@link ResultMatcher}
+     */
+    public static ResultMatcher queryCount(int expected) {
+        return result -> assertThat(count(result.getResponse().getHeader(QueryCountFilter.QUERY_COUNT_HEADER)))
+                .as("statements run by %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isEqualTo(expected);
+    }
+
+    /**
+     * This method checks that the request didn't run more than the expected statements
+     *
+     * @param max: statements the endpoint is allowed to run at most
+     * @return {@link ResultMatcher}
+     */
+    public static ResultMatcher maxQueryCount(int max) {
+        return result -> assertThat(count(result.getResponse().getHeader(QueryCountFilter.QUERY_COUNT_HEADER)))
+                .as("statements run by %s %s", result.getRequest().getMethod(), result.getRequest().getRequestURI())
+                .isLessThanOrEqualTo(max);
+    }
+
+    private static int count(String header) {
+        assertThat(header).as("header %s", QueryCountFilter.QUERY_COUNT_HEADER).isNotNull();
+        return Integer.parseInt(header);
+    }
+}
@@ -0,0 +1,107 @@
+package wolox.training.monitoring;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static wolox.training.monitoring.QueryCountMatchers.queryCount;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Pins the statements run by the read endpoints over an embedded Postgres, every user owns several books so an
+ * endpoint that loads them user by user runs more statements than pinned
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@TestInstance(Lifecycle.PER_CLASS)
+class QueryCountRegressionTest {
+
+    private static final int USERS = 10;
+    private static final int BOOKS_PER_USER = 3;
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'genre-' || (g % 3), 'author-' || g, 'https://covers/' || g || '.jpg', 'title-' || g, "
+                + "'subtitle-' || g, 'publisher-' || (g % 5), (1900 + g)::text, 100 + g, 'isbn-' || g "
+                + "FROM generate_series(1, ?) g", USERS * BOOKS_PER_USER);
+        jdbcTemplate.update("INSERT INTO users (id, username, name, birth_date) "
+                + "SELECT g, 'user-' || g, 'name ' || g, DATE '1980-01-01' + g FROM generate_series(1, ?) g", USERS);
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) "
+                + "SELECT u, (u - 1) * ? + k FROM generate_series(1, ?) u, generate_series(1, ?) k",
+                BOOKS_PER_USER, USERS, BOOKS_PER_USER);
+    }
+
+    @Test
+    void whenFindAllUsers_thenBooksAreLoadedInOneBatch() throws Exception {
+        mvc.perform(get("/api/users"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(USERS))
+                .andExpect(jsonPath("$[*].books.length()").value(Matchers.everyItem(Matchers.is(BOOKS_PER_USER))))
+                .andExpect(queryCount(2))
+                .andExpect(header().string(QueryCountFilter.SERVER_TIMING_HEADER,
+                        Matchers.containsString("2 queries, " + (USERS + USERS * BOOKS_PER_USER) + " rows")));
+    }
+
+    @Test
+    void whenSearchUsers_thenBooksOfThePageAreLoadedInOneBatch() throws Exception {
+        MvcResult started = mvc.perform(get("/api/users/search").param("sequence", "name").param("size", "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[4].books.length()").value(BOOKS_PER_USER))
+                .andExpect(queryCount(3));
+    }
+
+    @Test
+    void whenFindOneUser_thenTheUserAndItsBooksAreReadOnce() throws Exception {
+        mvc.perform(get("/api/users/1")).andExpect(status().isOk()).andExpect(queryCount(2));
+        mvc.perform(get("/api/users/1")).andExpect(status().isOk()).andExpect(queryCount(0));
+    }
+
+    @Test
+    void whenFindUsersById_thenBooksAreFetchedWithTheUsers() throws Exception {
+        mvc.perform(get("/api/users").param("ids", "2,3,4"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(3))
+                .andExpect(queryCount(1));
+    }
+
+    @Test
+    void whenFindBooksWithFilter_thenOneQueryIsRun() throws Exception {
+        MvcResult started = mvc.perform(get("/api/books").param("genre", "genre-1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(queryCount(1));
+    }
+
+    @Test
+    void whenFindOneBook_thenOneQueryIsRun() throws Exception {
+        mvc.perform(get("/api/books/7")).andExpect(status().isOk()).andExpect(queryCount(1));
+    }
+}
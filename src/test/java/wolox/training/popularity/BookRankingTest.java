@@ -0,0 +1,56 @@
+package wolox.training.popularity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import wolox.training.popularity.BookRanking.Ranked;
+
+class BookRankingTest {
+
+    private BookRanking ranking;
+
+    @BeforeEach
+    void setUp() {
+        ranking = new BookRanking();
+        ranking.set(1L, "fantasy", 10);
+        ranking.set(2L, "fantasy", 30);
+        ranking.set(3L, "sci-fi", 20);
+        ranking.set(4L, "fantasy", 10);
+    }
+
+    @Test
+    void whenTop_thenBooksAreRankedByOwnersThenById() {
+        assertThat(ranking.top(null, 10)).extracting(Ranked::getBookId).containsExactly(2L, 3L, 1L, 4L);
+        assertThat(ranking.top("fantasy", 2)).extracting(Ranked::getBookId).containsExactly(2L, 1L);
+        assertThat(ranking.top("sci-fi", 10)).extracting(Ranked::getOwners).containsExactly(20L);
+        assertThat(ranking.top("horror", 10)).isEmpty();
+    }
+
+    @Test
+    void whenOwnersChange_thenBooksMoveBothWays() {
+        assertThat(ranking.add(4L, 25)).isTrue();
+        assertThat(ranking.add(2L, -25)).isTrue();
+
+        assertThat(ranking.top("fantasy", 10)).extracting(Ranked::getBookId).containsExactly(4L, 1L, 2L);
+        assertThat(ranking.top(null, 2)).extracting(Ranked::getBookId).containsExactly(4L, 3L);
+        assertThat(ranking.owners(2L)).isEqualTo(5L);
+    }
+
+    @Test
+    void whenUnknownBookChanges_thenItIsNotRanked() {
+        assertThat(ranking.add(5L, 1)).isFalse();
+
+        assertThat(ranking.size()).isEqualTo(4);
+    }
+
+    @Test
+    void whenBookChangesGenreOrIsRemoved_thenItLeavesTheGenre() {
+        ranking.set(3L, "fantasy", 20);
+        ranking.remove(2L);
+
+        assertThat(ranking.top("fantasy", 10)).extracting(Ranked::getBookId).containsExactly(3L, 1L, 4L);
+        assertThat(ranking.top("sci-fi", 10)).isEmpty();
+        assertThat(ranking.size()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,158 @@
+package wolox.training.popularity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.popularity.BookRanking.Ranked;
+
+/**
+ * The counters are started with intervals longer than the tests, the ranking, flushes, refreshes and reconciliations
+ * are run by the tests themselves
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+class PopularityCountersTest {
+
+    private static final long NEVER_MS = 3_600_000;
+    private static final String SELECT_OWNER_COUNT = "SELECT owner_count FROM book WHERE id = ?";
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private PopularityCounters counters;
+    private Book ownedBook;
+    private Book otherBook;
+
+    @BeforeEach
+    void setUp() {
+        ownedBook = newBook("The Fellowship of the Ring");
+        otherBook = newBook("The Two Towers");
+        entityManager.persist(ownedBook);
+        entityManager.persist(otherBook);
+
+        User oneTestUser = new User();
+        oneTestUser.setUsername("SamusKitchen");
+        oneTestUser.setName("Samurai Kitchen");
+        oneTestUser.setBirthDate(LocalDate.of(1989, 10, 16));
+        oneTestUser.setBooks(new LinkedList<>(Collections.singletonList(ownedBook)));
+        entityManager.persist(oneTestUser);
+        entityManager.flush();
+
+        counters = new PopularityCounters(jdbcTemplate, Mockito.mock(CacheInvalidationBus.class),
+                new SimpleMeterRegistry(), NEVER_MS, NEVER_MS, NEVER_MS, NEVER_MS);
+        counters.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (counters.isRunning()) {
+            counters.stop();
+        }
+    }
+
+    @Test
+    void whenOwnersAreCounted_thenTheyAreRankedOnTheNextRank() {
+        counters.count(otherBook.getId(), 2);
+        counters.count(otherBook.getId(), -1);
+
+        assertThat(owners(otherBook)).isZero();
+        counters.rank();
+        assertThat(owners(otherBook)).isEqualTo(1L);
+        assertThat(counters.top(null, 1)).extracting(Ranked::getBookId).containsExactly(otherBook.getId());
+    }
+
+    @Test
+    void whenCountsAreFlushed_thenTheyAreAddedToTheColumnOnce() {
+        counters.count(otherBook.getId(), 3);
+
+        counters.flush();
+        counters.flush();
+
+        assertThat(ownerCount(otherBook)).isEqualTo(3L);
+    }
+
+    @Test
+    void whenTheRankingIsRefreshed_thenTheUnflushedCountsAreRankedOnce() {
+        counters.count(otherBook.getId(), 2);
+
+        counters.refresh();
+        counters.rank();
+        assertThat(owners(otherBook)).isEqualTo(2L);
+
+        counters.flush();
+        counters.refresh();
+        counters.rank();
+        assertThat(owners(otherBook)).isEqualTo(2L);
+    }
+
+    @Test
+    void whenCountsAreReconciled_thenTheColumnFollowsTheOwnersAndTheCountedChangesAreDropped() {
+        jdbcTemplate.update("UPDATE book SET owner_count = 5 WHERE id = ?", otherBook.getId());
+        counters.count(ownedBook.getId(), 1);
+
+        counters.reconcile();
+        counters.flush();
+
+        assertThat(ownerCount(ownedBook)).isEqualTo(1L);
+        assertThat(ownerCount(otherBook)).isZero();
+        assertThat(owners(ownedBook)).isEqualTo(1L);
+        assertThat(owners(otherBook)).isZero();
+    }
+
+    @Test
+    void whenOwnersAreCountedAfterTheStop_thenTheyAreFlushedRightAway() {
+        counters.stop();
+
+        counters.count(otherBook.getId(), 1);
+
+        assertThat(ownerCount(otherBook)).isEqualTo(1L);
+    }
+
+    private long owners(Book book) {
+        return counters.top(null, 10).stream()
+                .filter(ranked -> ranked.getBookId() == book.getId())
+                .mapToLong(Ranked::getOwners)
+                .findFirst()
+                .orElse(-1);
+    }
+
+    private Long ownerCount(Book book) {
+        return jdbcTemplate.queryForObject(SELECT_OWNER_COUNT, Long.class, book.getId());
+    }
+
+    private Book newBook(String subTitle) {
+        Book book = new Book();
+        book.setGenre("Fantasy");
+        book.setAuthor("John Ronald Reuel Tolkien");
+        book.setImage("https://images-na.ssl-images-amazon.com/images/I/81U5RVCuTHL.jpg");
+        book.setTitle("The Lord of the Rings");
+        book.setSubTitle(subTitle);
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1954");
+        book.setPages(352);
+        book.setIsbn("PR6039.O32 L6 1954");
+        return book;
+    }
+}
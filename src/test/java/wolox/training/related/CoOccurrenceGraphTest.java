@@ -0,0 +1,72 @@
+package wolox.training.related;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import wolox.training.related.CoOccurrenceGraph.RelatedCount;
+
+class CoOccurrenceGraphTest {
+
+    private CoOccurrenceGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        graph = new CoOccurrenceGraph(3);
+        graph.setBooks(1L, new long[]{1, 2, 3});
+        graph.setBooks(2L, new long[]{1, 2});
+        graph.setBooks(3L, new long[]{1, 4});
+    }
+
+    @Test
+    void whenRelated_thenBooksAreRankedByCommonOwners() {
+        assertThat(graph.related(1L, 10)).extracting(RelatedCount::getBookId).containsExactly(2L, 3L, 4L);
+        assertThat(graph.related(1L, 10)).extracting(RelatedCount::getOwners).containsExactly(2, 1, 1);
+        assertThat(graph.related(1L, 1)).extracting(RelatedCount::getBookId).containsExactly(2L);
+        assertThat(graph.related(4L, 10)).extracting(RelatedCount::getBookId).containsExactly(1L);
+        assertThat(graph.related(5L, 10)).isEmpty();
+    }
+
+    @Test
+    void whenUserChangesBooks_thenOnlyTheDifferenceIsApplied() {
+        graph.setBooks(1L, new long[]{1, 4, 5});
+
+        assertThat(graph.related(1L, 10)).extracting(RelatedCount::getBookId).containsExactly(4L, 2L, 5L);
+        assertThat(graph.related(4L, 10)).extracting(RelatedCount::getOwners).containsExactly(2, 1);
+        assertThat(graph.related(3L, 10)).isEmpty();
+        assertThat(graph.related(2L, 10)).extracting(RelatedCount::getBookId).containsExactly(1L);
+    }
+
+    @Test
+    void whenUsersLoseTheirBooks_thenTheCountsAreRemoved() {
+        graph.setBooks(1L, new long[0]);
+        graph.setBooks(2L, new long[0]);
+        graph.setBooks(3L, new long[]{4});
+
+        assertThat(graph.related(1L, 10)).isEmpty();
+        assertThat(graph.related(4L, 10)).isEmpty();
+        assertThat(graph.users()).isEqualTo(1);
+    }
+
+    @Test
+    void whenUserOwnsTooManyBooks_thenASampleThatKeepsItsBooksIsCounted() {
+        graph.setBooks(4L, new long[]{10, 11, 12, 13, 14, 15});
+        long sampled = graph.related(10L, 10).size() + graph.related(11L, 10).size() + graph.related(12L, 10).size()
+                + graph.related(13L, 10).size() + graph.related(14L, 10).size() + graph.related(15L, 10).size();
+        assertThat(sampled).isEqualTo(3 * 2);
+
+        graph.setBooks(4L, new long[]{15, 14, 13, 12, 11, 10});
+        graph.setBooks(4L, new long[0]);
+
+        for (long book = 10; book <= 15; book++) {
+            assertThat(graph.related(book, 10)).isEmpty();
+        }
+    }
+
+    @Test
+    void whenSameBooksAreSetAgain_thenCountsDontChange() {
+        graph.setBooks(2L, new long[]{2, 1, 2});
+
+        assertThat(graph.related(1L, 10)).extracting(RelatedCount::getOwners).containsExactly(2, 1, 1);
+    }
+}
@@ -0,0 +1,93 @@
+package wolox.training.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.exceptions.InvalidCursorException;
+import wolox.training.repositories.BookSearchRepository.Cursor;
+import wolox.training.repositories.BookSearchRepository.Hit;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import(BookSearchRepository.class)
+class BookSearchRepositoryTest {
+
+    @Autowired
+    private BookSearchRepository bookSearchRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        insert(1, "The Fellowship of the Ring", "Being the first part of The Lord of the Rings", "J. R. R. Tolkien",
+                "Allen & Unwin", "Fantasy", "1954");
+        insert(2, "The Two Towers", "Being the second part of The Lord of the Rings", "J. R. R. Tolkien",
+                "Allen & Unwin", "Fantasy", "1954");
+        insert(3, "Ringworld", "A novel", "Larry Niven", "Ballantine Books", "Science fiction", "1970");
+        insert(4, "Tolkien: A Biography", "The life of the author of the rings", "Humphrey Carpenter",
+                "Allen & Unwin", "Biography", "1977");
+    }
+
+    @Test
+    public void whenSearch_thenWordsAreStemmedAndMatchesRanked() {
+        List<Hit> hits = bookSearchRepository.search("rings", null, null, null, null, 10);
+
+        assertThat(hits).extracting(Hit::getId).containsExactly(1L, 2L, 4L);
+        assertThat(hits.get(0).getRank()).isGreaterThan(hits.get(2).getRank());
+        assertThat(bookSearchRepository.search("tolkien -biography", null, null, null, null, 10))
+                .extracting(Hit::getId).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void whenSearchWithFilters_thenTheyAreAddedToTheMatch() {
+        assertThat(bookSearchRepository.search("tolkien", "Allen & Unwin", "Biography", null, null, 10))
+                .extracting(Hit::getId).containsExactly(4L);
+        assertThat(bookSearchRepository.search("ring", null, null, "1970", null, 10))
+                .isEmpty();
+    }
+
+    @Test
+    public void whenPagesFollowTheCursor_thenEveryMatchIsReturnedOnce() {
+        for (int id = 10; id < 35; id++) {
+            insert(id, "Dragon book " + id, "Dragons", "Author " + id, "Dragon Press", "Fantasy", "2000");
+        }
+
+        List<Long> seen = new ArrayList<>();
+        Cursor after = null;
+        List<Hit> page;
+        do {
+            page = bookSearchRepository.search("dragon", null, null, null, after, 7);
+            page.forEach(hit -> seen.add(hit.getId()));
+            after = page.isEmpty() ? null : Cursor.decode(page.get(page.size() - 1).cursor().encode());
+        } while (page.size() == 7);
+
+        assertThat(seen).hasSize(25).doesNotHaveDuplicates();
+    }
+
+    @Test
+    public void whenCursorIsMalformed_thenThrowException() {
+        assertThrows(InvalidCursorException.class, () -> Cursor.decode("not a cursor"));
+        assertThrows(InvalidCursorException.class, () -> Cursor.decode("MQ"));
+    }
+
+    private void insert(long id, String title, String subTitle, String author, String publisher, String genre,
+            String year) {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "VALUES (?, ?, ?, 'https://covers/' || ?, ?, ?, ?, ?, 300, 'isbn-' || ?)",
+                id, genre, author, id, title, subTitle, publisher, year, id);
+    }
+}
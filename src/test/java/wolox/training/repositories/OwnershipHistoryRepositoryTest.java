@@ -0,0 +1,236 @@
+package wolox.training.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.history.MonthlyPartitions;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.models.dto.MonthlyCirculation;
+import wolox.training.models.dto.OwnershipEvent;
+import wolox.training.models.dto.OwnershipEvent.Action;
+
+/**
+ * The partitions are created in the months of 2021, far from the current month whose changes the default
+ * partition keeps during the tests. The book the user is persisted with is recorded as its first change.
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import({OwnershipRepository.class, OwnershipHistoryRepository.class})
+class OwnershipHistoryRepositoryTest {
+
+    private static final String INSERT_EVENT = "INSERT INTO ownership_history (user_id, book_id, action, changed_at) "
+            + "VALUES (?, ?, ?, ?::timestamptz)";
+    private static final String COUNT_ROWS = "SELECT count(*) FROM %s";
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private OwnershipRepository ownershipRepository;
+
+    @Autowired
+    private OwnershipHistoryRepository ownershipHistoryRepository;
+
+    private User oneTestUser;
+    private Book ownedBook;
+    private Book otherBook;
+
+    @BeforeEach
+    void setUp() {
+        ownedBook = newBook("The Fellowship of the Ring");
+        otherBook = newBook("The Two Towers");
+        entityManager.persist(ownedBook);
+        entityManager.persist(otherBook);
+
+        oneTestUser = new User();
+        oneTestUser.setUsername("SamusKitchen");
+        oneTestUser.setName("Samurai Kitchen");
+        oneTestUser.setBirthDate(LocalDate.of(1989, 10, 16));
+        oneTestUser.setBooks(new LinkedList<>(Collections.singletonList(ownedBook)));
+        entityManager.persist(oneTestUser);
+        entityManager.flush();
+    }
+
+    @Test
+    void whenBooksAreAddedAndRemoved_thenTheChangesAreRecorded() {
+        ownershipRepository.addBooks(oneTestUser.getId(), Arrays.asList(ownedBook.getId(), otherBook.getId()));
+        ownershipRepository.removeBooks(oneTestUser.getId(), Collections.singletonList(ownedBook.getId()));
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        assertThat(ownershipHistoryRepository.findUserEvents(oneTestUser.getId(), today, today.plusDays(1), 10))
+                .extracting(OwnershipEvent::getBookId, OwnershipEvent::getAction)
+                .containsExactly(
+                        tuple(ownedBook.getId(), Action.ADDED),
+                        tuple(otherBook.getId(), Action.ADDED),
+                        tuple(ownedBook.getId(), Action.REMOVED));
+    }
+
+    @Test
+    void whenTheBooksOfAUserAreReplaced_thenOnlyTheBooksThatChangedAreRecorded() {
+        entityManager.clear();
+        User replacement = new User(oneTestUser.getId());
+        replacement.setUsername(oneTestUser.getUsername());
+        replacement.setName(oneTestUser.getName());
+        replacement.setBirthDate(oneTestUser.getBirthDate());
+        replacement.setBooks(Collections.singletonList(otherBook));
+        entityManager.getEntityManager().merge(replacement);
+        entityManager.flush();
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        assertThat(ownershipHistoryRepository.findUserEvents(oneTestUser.getId(), today, today.plusDays(1), 10))
+                .extracting(OwnershipEvent::getBookId, OwnershipEvent::getAction)
+                .containsExactly(
+                        tuple(ownedBook.getId(), Action.ADDED),
+                        tuple(ownedBook.getId(), Action.REMOVED),
+                        tuple(otherBook.getId(), Action.ADDED));
+    }
+
+    @Test
+    void whenAUserIsDeleted_thenTheRemovalOfItsBooksIsRecorded() {
+        assertThat(ownershipRepository.removeAllBooks(oneTestUser.getId())).containsExactly(ownedBook.getId());
+
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        assertThat(ownershipHistoryRepository.findUserEvents(oneTestUser.getId(), today, today.plusDays(1), 10))
+                .extracting(OwnershipEvent::getAction)
+                .containsExactly(Action.ADDED, Action.REMOVED);
+    }
+
+    @Test
+    void whenTheHistoryOfARangeIsRead_thenOnlyTheChangesOfTheRangeAreReturned() {
+        createPartitions(YearMonth.of(2021, 1), YearMonth.of(2021, 3));
+        insertEvent(1L, 10L, Action.ADDED, "2021-01-31 23:59:59+00");
+        insertEvent(1L, 10L, Action.REMOVED, "2021-02-01 00:00:00+00");
+        insertEvent(1L, 11L, Action.ADDED, "2021-02-14 12:00:00+00");
+        insertEvent(2L, 10L, Action.ADDED, "2021-02-15 12:00:00+00");
+        insertEvent(1L, 11L, Action.REMOVED, "2021-03-01 00:00:00+00");
+
+        assertThat(ownershipHistoryRepository.findUserEvents(1L, LocalDate.of(2021, 2, 1),
+                LocalDate.of(2021, 3, 1), 10))
+                .extracting(OwnershipEvent::getBookId, OwnershipEvent::getAction)
+                .containsExactly(
+                        tuple(10L, Action.REMOVED),
+                        tuple(11L, Action.ADDED));
+        assertThat(ownershipHistoryRepository.findUserEvents(1L, LocalDate.of(2021, 1, 1),
+                LocalDate.of(2021, 4, 1), 2))
+                .hasSize(2);
+    }
+
+    @Test
+    void whenTheCirculationOfABookIsCounted_thenTheChangesAreCountedPerMonth() {
+        createPartitions(YearMonth.of(2021, 1), YearMonth.of(2021, 3));
+        insertEvent(1L, 10L, Action.ADDED, "2021-01-10 10:00:00+00");
+        insertEvent(2L, 10L, Action.ADDED, "2021-01-20 10:00:00+00");
+        insertEvent(1L, 10L, Action.REMOVED, "2021-03-05 10:00:00+00");
+        insertEvent(1L, 11L, Action.ADDED, "2021-03-06 10:00:00+00");
+
+        List<MonthlyCirculation> circulation = ownershipHistoryRepository.countBookCirculation(10L,
+                YearMonth.of(2021, 1), YearMonth.of(2021, 3));
+
+        assertThat(circulation).extracting(MonthlyCirculation::getMonth)
+                .containsExactly(YearMonth.of(2021, 1), YearMonth.of(2021, 3));
+        assertThat(circulation).extracting(MonthlyCirculation::getAdded).containsExactly(2L, 0L);
+        assertThat(circulation).extracting(MonthlyCirculation::getRemoved).containsExactly(0L, 1L);
+    }
+
+    @Test
+    void whenTheRangeIsBounded_thenOnlyItsPartitionsAreScanned() {
+        createPartitions(YearMonth.of(2021, 1), YearMonth.of(2021, 3));
+
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN SELECT book_id, action, changed_at "
+                + "FROM ownership_history WHERE user_id = 1 "
+                + "AND changed_at >= '2021-02-01 00:00:00+00' AND changed_at < '2021-03-01 00:00:00+00'",
+                String.class));
+
+        assertThat(plan).contains(MonthlyPartitions.name(YearMonth.of(2021, 2)))
+                .doesNotContain(MonthlyPartitions.name(YearMonth.of(2021, 1)))
+                .doesNotContain(MonthlyPartitions.name(YearMonth.of(2021, 3)))
+                .doesNotContain(MonthlyPartitions.DEFAULT_PARTITION);
+    }
+
+    @Test
+    void whenAPartitionIsCreated_thenTheChangesOfItsMonthAreMovedOutOfTheDefaultPartition() {
+        insertEvent(1L, 10L, Action.ADDED, "2021-05-10 10:00:00+00");
+        insertEvent(1L, 10L, Action.REMOVED, "2021-06-10 10:00:00+00");
+
+        MonthlyPartitions.create(jdbcTemplate, YearMonth.of(2021, 5));
+        MonthlyPartitions.create(jdbcTemplate, YearMonth.of(2021, 5));
+
+        assertThat(MonthlyPartitions.existing(jdbcTemplate)).contains(YearMonth.of(2021, 5));
+        assertThat(countRows(MonthlyPartitions.name(YearMonth.of(2021, 5)))).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM " + MonthlyPartitions.DEFAULT_PARTITION
+                + " WHERE changed_at < '2021-07-01 00:00:00+00'", Long.class)).isEqualTo(1);
+        assertThat(ownershipHistoryRepository.findUserEvents(1L, LocalDate.of(2021, 5, 1),
+                LocalDate.of(2021, 7, 1), 10))
+                .extracting(OwnershipEvent::getAction)
+                .containsExactly(Action.ADDED, Action.REMOVED);
+    }
+
+    @Test
+    void whenThePartitionsExpire_thenTheyAreDroppedWithTheirChanges() {
+        createPartitions(YearMonth.of(2021, 1), YearMonth.of(2021, 2));
+        insertEvent(1L, 10L, Action.ADDED, "2021-01-10 10:00:00+00");
+        insertEvent(1L, 10L, Action.REMOVED, "2021-02-10 10:00:00+00");
+        insertEvent(1L, 11L, Action.ADDED, "2020-12-10 10:00:00+00");
+
+        assertThat(MonthlyPartitions.dropBefore(jdbcTemplate, YearMonth.of(2021, 2)))
+                .containsExactly(YearMonth.of(2021, 1));
+
+        assertThat(MonthlyPartitions.existing(jdbcTemplate)).doesNotContain(YearMonth.of(2021, 1))
+                .contains(YearMonth.of(2021, 2));
+        assertThat(ownershipHistoryRepository.findUserEvents(1L, LocalDate.of(2020, 12, 1),
+                LocalDate.of(2021, 3, 1), 10))
+                .extracting(OwnershipEvent::getAction)
+                .containsExactly(Action.REMOVED);
+    }
+
+    private void createPartitions(YearMonth from, YearMonth to) {
+        for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+            MonthlyPartitions.create(jdbcTemplate, month);
+        }
+    }
+
+    private void insertEvent(Long userId, Long bookId, Action action, String changedAt) {
+        jdbcTemplate.update(INSERT_EVENT, userId, bookId, action.name(), changedAt);
+    }
+
+    private long countRows(String table) {
+        return jdbcTemplate.queryForObject(String.format(COUNT_ROWS, table), Long.class);
+    }
+
+    private Book newBook(String subTitle) {
+        Book book = new Book();
+        book.setGenre("Fantasy");
+        book.setAuthor("John Ronald Reuel Tolkien");
+        book.setImage("https://images-na.ssl-images-amazon.com/images/I/81U5RVCuTHL.jpg");
+        book.setTitle("The Lord of the Rings");
+        book.setSubTitle(subTitle);
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1954");
+        book.setPages(352);
+        book.setIsbn("PR6039.O32 L6 1954");
+        return book;
+    }
+}
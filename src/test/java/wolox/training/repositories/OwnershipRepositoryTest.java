@@ -0,0 +1,112 @@
+package wolox.training.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import(OwnershipRepository.class)
+class OwnershipRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private OwnershipRepository ownershipRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User oneTestUser;
+    private Book ownedBook;
+    private Book otherBook;
+
+    @BeforeEach
+    void setUp() {
+        ownedBook = newBook("The Fellowship of the Ring");
+        otherBook = newBook("The Two Towers");
+        entityManager.persist(ownedBook);
+        entityManager.persist(otherBook);
+
+        oneTestUser = new User();
+        oneTestUser.setUsername("SamusKitchen");
+        oneTestUser.setName("Samurai Kitchen");
+        oneTestUser.setBirthDate(LocalDate.of(1989, 10, 16));
+        oneTestUser.setBooks(new LinkedList<>(Collections.singletonList(ownedBook)));
+        entityManager.persist(oneTestUser);
+        entityManager.flush();
+    }
+
+    @Test
+    public void whenAddBooks_thenOnlyTheBooksNotOwnedAreAdded() {
+        assertThat(ownershipRepository.addBooks(oneTestUser.getId(), Arrays.asList(ownedBook.getId(), otherBook.getId())))
+                .containsExactly(otherBook.getId());
+
+        entityManager.clear();
+        assertThat(entityManager.find(User.class, oneTestUser.getId()).getBooks()).hasSize(2);
+    }
+
+    @Test
+    public void whenRemoveBooks_thenOnlyTheBooksOwnedAreReturned() {
+        assertThat(ownershipRepository.removeBooks(oneTestUser.getId(), Arrays.asList(ownedBook.getId(), otherBook.getId())))
+                .containsExactly(ownedBook.getId());
+
+        entityManager.clear();
+        assertThat(entityManager.find(User.class, oneTestUser.getId()).getBooks()).isEmpty();
+    }
+
+    @Test
+    public void whenTheUniqueConstraintIsMissing_thenTheSchemaScriptRemovesDuplicatesAndCreatesIt() {
+        // the join table of a database created before the books were mapped as a set has neither key
+        jdbcTemplate.execute("ALTER TABLE users_books DROP CONSTRAINT IF EXISTS users_books_pkey");
+        jdbcTemplate.execute("ALTER TABLE users_books DROP CONSTRAINT IF EXISTS users_books_unique");
+        jdbcTemplate.execute("DROP INDEX IF EXISTS users_books_unique");
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) VALUES (?, ?)",
+                oneTestUser.getId(), ownedBook.getId());
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/schema-extensions.sql"));
+            return null;
+        });
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM users_books WHERE users_id = ?", Long.class,
+                oneTestUser.getId())).isEqualTo(1L);
+        assertThat(ownershipRepository.addBooks(oneTestUser.getId(), Arrays.asList(ownedBook.getId(), otherBook.getId())))
+                .containsExactly(otherBook.getId());
+    }
+
+    private Book newBook(String subTitle) {
+        Book book = new Book();
+        book.setGenre("Fantasy");
+        book.setAuthor("John Ronald Reuel Tolkien");
+        book.setImage("https://images-na.ssl-images-amazon.com/images/I/81U5RVCuTHL.jpg");
+        book.setTitle("The Lord of the Rings");
+        book.setSubTitle(subTitle);
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1954");
+        book.setPages(352);
+        book.setIsbn("PR6039.O32 L6 1954");
+        return book;
+    }
+}
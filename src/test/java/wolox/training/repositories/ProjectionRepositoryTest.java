@@ -0,0 +1,89 @@
+package wolox.training.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.exceptions.InvalidFieldsException;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+/**
+ * Checks the projections and compares the payload of a list view with and without sparse fields
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import(ProjectionRepository.class)
+class ProjectionRepositoryTest {
+
+    private static final int ROWS = 20_000;
+    private static final List<String> LIST_VIEW_FIELDS = Arrays.asList("id", "title", "author");
+
+    @Autowired
+    private ProjectionRepository projectionRepository;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'Fantasy', 'author-' || g, 'https://images-na.ssl-images-amazon.com/images/I/' || md5(g::text) "
+                + "|| '.jpg', 'title-' || g, 'A rather long subtitle of the book number ' || g, 'publisher-' || (g % 10), "
+                + "'1954', 352, 'PR6039.O32 L6 ' || g FROM generate_series(1, ?) g", ROWS);
+    }
+
+    @Test
+    public void whenFindAllWithFields_thenOnlyTheFieldsAreReturned() {
+        List<Map<String, Object>> rows = projectionRepository.findAll(Book.class, LIST_VIEW_FIELDS,
+                BookSpecifications.withFilters("publisher-3", null, null));
+
+        assertThat(rows).hasSize(ROWS / 10);
+        assertThat(rows.get(0).keySet()).containsExactlyElementsOf(LIST_VIEW_FIELDS);
+    }
+
+    @Test
+    public void whenFieldsAreUnknownOrCollections_thenThrowException() {
+        assertThrows(InvalidFieldsException.class,
+                () -> projectionRepository.selectableFields(Book.class, Arrays.asList("title", "monkeys")));
+        assertThrows(InvalidFieldsException.class,
+                () -> projectionRepository.selectableFields(User.class, Arrays.asList("name", "books")));
+        assertThat(projectionRepository.selectableFields(User.class, Arrays.asList("name", "id", "name")))
+                .containsExactly("name", "id");
+    }
+
+    /**
+     * The latency of both reads is compared by ProjectionBenchmark, a wall-clock comparison here would depend on the
+     * machine running the build
+     */
+    @Test
+    public void whenListViewUsesSparseFields_thenPayloadIsSmaller() throws Exception {
+        List<Book> entities = bookRepository.getAllBook(null, "Fantasy", null);
+        List<Map<String, Object>> projection = projectionRepository.findAll(Book.class, LIST_VIEW_FIELDS,
+                BookSpecifications.withFilters(null, "Fantasy", null));
+
+        assertThat(entities).hasSize(ROWS);
+        assertThat(projection).hasSize(ROWS);
+        assertThat(mapper.writeValueAsBytes(projection).length)
+                .isLessThan(mapper.writeValueAsBytes(entities).length / 2);
+    }
+}
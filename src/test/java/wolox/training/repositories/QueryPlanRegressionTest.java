@@ -0,0 +1,247 @@
+package wolox.training.repositories;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Explains the generic plan of every repository query over a seeded embedded Postgres and fails on sequential
+ * scans or row estimates above the threshold. The generic plan is the one a pooled prepared statement ends up
+ * using, so it shows the indexes a query can really use whatever the bound values are.
+ */
+@DataJpaTest(properties =
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=wolox.training.repositories.SqlCapture")
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+@Import(DemographicsRepository.class)
+@TestInstance(Lifecycle.PER_CLASS)
+class QueryPlanRegressionTest {
+
+    private static final int ROWS = Integer.getInteger("query-plans.rows", 200_000);
+    private static final double MAX_ESTIMATED_ROWS = Double.parseDouble(
+            System.getProperty("query-plans.max-estimated-rows", "5000"));
+    private static final List<String> CHECKED_RELATIONS = Arrays.asList("book", "users", "users_books");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DemographicsRepository demographicsRepository;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @BeforeAll
+    void seed() {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, isbn) "
+                + "SELECT g, 'genre-' || (g % 50), 'author-' || g, 'https://covers/' || g || '.jpg', "
+                + "'title-' || g, 'subtitle-' || g, 'publisher-' || (g % 500), (1900 + g % 121)::text, "
+                + "100 + g % 900, 'isbn-' || g FROM generate_series(1, ?) g", ROWS);
+        jdbcTemplate.update("INSERT INTO users (id, username, name, birth_date) "
+                + "SELECT g, 'user-' || g, 'name ' || md5(g::text), DATE '1940-01-01' + (g % 25000) "
+                + "FROM generate_series(1, ?) g", ROWS);
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) "
+                + "SELECT u, ((u * 7 + k * 104729) % ?) + 1 FROM generate_series(1, ?) u, generate_series(1, 3) k",
+                ROWS, ROWS);
+        jdbcTemplate.execute("ANALYZE");
+    }
+
+    @BeforeEach
+    void setUp() {
+        SqlCapture.clear();
+    }
+
+    @ParameterizedTest(name = "publisher={0}, genre={1}, year={2}")
+    @CsvSource({
+            "publisher-7, genre-7, 1907",
+            "publisher-7, genre-7, ",
+            "publisher-7, , 1907",
+            "publisher-7, , ",
+            ", genre-7, 1907",
+            ", genre-7, ",
+            ", , 1907"
+    })
+    void whenGetAllBookWithFilters_thenIndexesAreUsed(String publisher, String genre, String year) {
+        bookRepository.getAllBook(publisher, genre, year);
+
+        assertCapturedPlans(false);
+    }
+
+    @Test
+    void whenGetAllBookWithoutFilters_thenOnlyTheFullScanIsExpected() {
+        bookRepository.getAllBook(null, null, null);
+
+        assertCapturedPlans(true);
+    }
+
+    @Test
+    void whenFindBookByAuthor_thenIndexIsUsed() {
+        bookRepository.findByAuthor("author-7");
+
+        assertCapturedPlans(false);
+    }
+
+    @Test
+    void whenFindBookById_thenPrimaryKeyIsUsed() {
+        bookRepository.findById(7L);
+
+        assertCapturedPlans(false);
+    }
+
+    @Test
+    void whenFindUserByUsername_thenIndexIsUsed() {
+        userRepository.findByUsername("user-7");
+
+        assertCapturedPlans(false);
+    }
+
+    @Test
+    void whenFindUserByIdWithBooks_thenJoinTableIndexIsUsed() {
+        userRepository.findById(7L).ifPresent(user -> user.getBooks().size());
+
+        assertCapturedPlans(false);
+    }
+
+    @ParameterizedTest(name = "startDate={0}, endDate={1}, sequence={2}")
+    @CsvSource({
+            "1980-01-01, 1980-03-01, ab1",
+            "1980-01-01, 1980-03-01, ",
+            ", , ab1",
+            "1980-01-01, , ab1",
+            ", 1940-03-01, "
+    })
+    void whenSearchUsers_thenIndexesAreUsed(String startDate, String endDate, String sequence) {
+        LocalDate start = Objects.isNull(startDate) ? null : LocalDate.parse(startDate);
+        LocalDate end = Objects.isNull(endDate) ? null : LocalDate.parse(endDate);
+        userRepository.findAllByNameIgnoreCaseContainingAndBirthdateBetween(start, end,
+                Objects.isNull(sequence) ? "" : sequence, PageRequest.of(0, 5, Sort.by("id")));
+
+        assertCapturedPlans(false, maxEstimatedRows(start, end, sequence));
+    }
+
+    @ParameterizedTest(name = "startDate={0}, endDate={1}, sequence={2}")
+    @CsvSource({
+            "1980-01-01, 1980-03-01, ",
+            "1980-01-01, 1980-03-01, ab1",
+            ", 1940-03-01, "
+    })
+    void whenCountUsersByBirthDate_thenIndexesAreUsed(String startDate, String endDate, String sequence) {
+        LocalDate start = Objects.isNull(startDate) ? null : LocalDate.parse(startDate);
+        LocalDate end = Objects.isNull(endDate) ? null : LocalDate.parse(endDate);
+        demographicsRepository.countByBirthDate(start, end, sequence);
+
+        assertCapturedPlans(false, maxEstimatedRows(start, end, sequence));
+    }
+
+    /**
+     * The generic plan estimates a birth date range open on one side at a third of the users whatever the seeded
+     * dates are, only a name filter narrows it under the threshold
+     */
+    private double maxEstimatedRows(LocalDate start, LocalDate end, String sequence) {
+        boolean openRange = Objects.isNull(start) != Objects.isNull(end);
+        boolean named = Objects.nonNull(sequence) && !sequence.isEmpty();
+        return openRange && !named ? Math.max(MAX_ESTIMATED_ROWS, ROWS / 3.0) : MAX_ESTIMATED_ROWS;
+    }
+
+    private void assertCapturedPlans(boolean fullScanExpected) {
+        assertCapturedPlans(fullScanExpected, MAX_ESTIMATED_ROWS);
+    }
+
+    private void assertCapturedPlans(boolean fullScanExpected, double maxEstimatedRows) {
+        List<String> statements = SqlCapture.statements();
+        assertThat(statements).isNotEmpty();
+
+        for (String sql : statements) {
+            JsonNode plan = explainGenericPlan(sql).get(0).get("Plan");
+            if (fullScanExpected) {
+                continue;
+            }
+
+            List<String> sequentialScans = new ArrayList<>();
+            collectSequentialScans(plan, sequentialScans);
+            assertThat(sequentialScans).as("sequential scans in the plan of %s%n%s", sql, plan).isEmpty();
+            assertThat(plan.get("Plan Rows").asDouble()).as("estimated rows of %s%n%s", sql, plan)
+                    .isLessThanOrEqualTo(maxEstimatedRows);
+        }
+    }
+
+    private void collectSequentialScans(JsonNode node, List<String> sequentialScans) {
+        if ("Seq Scan".equals(node.path("Node Type").asText())
+                && CHECKED_RELATIONS.contains(node.path("Relation Name").asText())) {
+            sequentialScans.add(node.path("Relation Name").asText());
+        }
+        node.path("Plans").forEach(child -> collectSequentialScans(child, sequentialScans));
+    }
+
+    /**
+     * Prepares the statement with the parameter types Postgres infers from it and explains it with the planner
+     * forced to the generic plan. The generic plan doesn't depend on the bound values, so every parameter is
+     * explained as null and the types can't disagree with the ones the query binds.
+     */
+    private JsonNode explainGenericPlan(String sql) {
+        StringBuilder numbered = new StringBuilder();
+        int placeholders = 0;
+        for (char character : sql.toCharArray()) {
+            if (character == '?') {
+                numbered.append('$').append(++placeholders);
+            } else {
+                numbered.append(character);
+            }
+        }
+        String values = String.join(", ", Collections.nCopies(placeholders, "NULL"));
+        boolean parameterized = placeholders > 0;
+
+        String json = jdbcTemplate.execute((ConnectionCallback<String>) connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET plan_cache_mode = force_generic_plan");
+                statement.execute("PREPARE plan_check AS " + numbered);
+                try (ResultSet result = statement.executeQuery("EXPLAIN (FORMAT JSON) EXECUTE plan_check"
+                        + (parameterized ? "(" + values + ")" : ""))) {
+                    result.next();
+                    return result.getString(1);
+                } finally {
+                    statement.execute("DEALLOCATE plan_check");
+                    statement.execute("RESET plan_cache_mode");
+                }
+            }
+        });
+
+        try {
+            return mapper.readTree(json);
+        } catch (Exception e) {
+            throw new IllegalStateException("Invalid plan for " + sql, e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package wolox.training.resilience;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import wolox.training.exceptions.DatabaseUnavailableException;
+import wolox.training.resilience.DatabaseCircuitBreaker.State;
+
+class DatabaseCircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    private SimpleMeterRegistry meterRegistry;
+    private DatabaseCircuitBreaker breaker;
+    private CountDownLatch halfOpened;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        breaker = new DatabaseCircuitBreaker(meterRegistry, 4, 4, 50, 1000, 100, 50, 2);
+        halfOpened = new CountDownLatch(1);
+        breaker.onHalfOpen(halfOpened::countDown);
+    }
+
+    @Test
+    void whenFailureRateReachesTheThreshold_thenCallsAreRejected() {
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST, new DataAccessResourceFailureException("connection refused"));
+        assertEquals(State.CLOSED, breaker.getState());
+
+        breaker.onError(FAST, new DataAccessResourceFailureException("connection refused"));
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertThrows(DatabaseUnavailableException.class, breaker::acquirePermission);
+        assertEquals(1, meterRegistry.get("database.circuit.rejected").counter().count());
+    }
+
+    @Test
+    void whenQueriesFailWithoutADatabaseFailure_thenTheBreakerStaysClosed() {
+        for (int call = 0; call < 8; call++) {
+            breaker.onError(FAST, call % 2 == 0 ? new DataIntegrityViolationException("duplicated isbn")
+                    : new CannotAcquireLockException("deadlock"));
+        }
+
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.acquirePermission();
+    }
+
+    @Test
+    void whenEveryCallOfTheWindowIsSlow_thenTheBreakerOpens() {
+        breaker.onSuccess(FAST);
+        for (int call = 0; call < 3; call++) {
+            breaker.onSuccess(SLOW);
+        }
+        assertEquals(State.CLOSED, breaker.getState());
+
+        breaker.onSuccess(SLOW);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void whenTheTrialCallsSucceed_thenTheBreakerCloses() throws Exception {
+        open();
+
+        assertTrue(halfOpened.await(5, TimeUnit.SECONDS));
+        assertEquals(State.HALF_OPEN, breaker.getState());
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        assertThrows(DatabaseUnavailableException.class, breaker::acquirePermission);
+
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        breaker.acquirePermission();
+    }
+
+    @Test
+    void whenTheTrialCallsFail_thenTheBreakerOpensAgain() throws Exception {
+        open();
+
+        assertTrue(halfOpened.await(5, TimeUnit.SECONDS));
+        breaker.acquirePermission();
+        breaker.acquirePermission();
+        breaker.onSuccess(FAST);
+        breaker.onError(FAST, new DataAccessResourceFailureException("connection refused"));
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertThrows(DatabaseUnavailableException.class, breaker::acquirePermission);
+    }
+
+    private void open() {
+        for (int call = 0; call < 4; call++) {
+            breaker.onError(FAST, new DataAccessResourceFailureException("connection refused"));
+        }
+        assertEquals(State.OPEN, breaker.getState());
+    }
+}
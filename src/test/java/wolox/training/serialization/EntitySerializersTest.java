@@ -0,0 +1,76 @@
+package wolox.training.serialization;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+class EntitySerializersTest {
+
+    private final ObjectMapper reflection = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final ObjectMapper serializers = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .registerModule(EntitySerializers.module())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    @Test
+    void whenSerializeBook_thenTheDocumentIsTheSameAsWithReflection() throws Exception {
+        Book book = book(1L);
+
+        assertThat(serializers.writeValueAsString(book)).isEqualTo(reflection.writeValueAsString(book));
+    }
+
+    @Test
+    void whenSerializeEmptyBook_thenNullsAreWritten() throws Exception {
+        Book book = new Book();
+
+        assertThat(serializers.writeValueAsString(book)).isEqualTo(reflection.writeValueAsString(book));
+    }
+
+    @Test
+    void whenSerializeUserWithBooks_thenTheDocumentIsTheSameAsWithReflection() throws Exception {
+        User user = new User(7L);
+        user.setUsername("dadela");
+        user.setName("Daniel");
+        user.setBirthDate(LocalDate.of(1990, 2, 15));
+        user.setBooks(Arrays.asList(book(1L), book(2L)));
+
+        assertThat(serializers.writeValueAsString(user)).isEqualTo(reflection.writeValueAsString(user));
+        assertThat(serializers.writeValueAsString(Collections.singletonList(user)))
+                .isEqualTo(reflection.writeValueAsString(Collections.singletonList(user)));
+    }
+
+    @Test
+    void whenDatesAreTimestamps_thenTheMapperFormatIsKept() throws Exception {
+        User user = new User(7L);
+        user.setBirthDate(LocalDate.of(1990, 2, 15));
+
+        assertThat(serializers.copy().enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS).writeValueAsString(user))
+                .isEqualTo(reflection.copy().enable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+                        .writeValueAsString(user));
+    }
+
+    private Book book(Long id) {
+        Book book = new Book(id);
+        book.setGenre("Fantasy");
+        book.setAuthor("J. R. R. Tolkien");
+        book.setImage("https://images-na.ssl-images-amazon.com/images/I/51kfFS5-fnL.jpg");
+        book.setTitle("The Lord of the Rings \"The Fellowship of the Ring\"");
+        book.setSubTitle("");
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1954");
+        book.setPages(423);
+        book.setIsbn("PR6039.O32 L6 1954");
+        return book;
+    }
+}
@@ -0,0 +1,48 @@
+package wolox.training.sharding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ShardRouterTest {
+
+    private static final int USERS = 100_000;
+
+    @Test
+    void whenSingleShard_thenEveryUserIsInThePrimaryShard() {
+        ShardRouter router = new ShardRouter(false, new String[]{"jdbc:postgresql://localhost:5433/postgres"});
+
+        assertThat(router.shards()).isEqualTo(1);
+        assertThat(router.shardOf(1L)).isEqualTo(ShardContext.PRIMARY);
+        assertThat(router.shardOf(Long.MAX_VALUE)).isEqualTo(ShardContext.PRIMARY);
+    }
+
+    @Test
+    void whenUsersAreRouted_thenTheShardsGetSimilarShares() {
+        ShardRouter router = new ShardRouter(4);
+        int[] users = new int[4];
+        for (long userId = 1; userId <= USERS; userId++) {
+            users[router.shardOf(userId)]++;
+        }
+
+        for (int shardUsers : users) {
+            assertThat(shardUsers).isBetween(USERS / 4 * 9 / 10, USERS / 4 * 11 / 10);
+        }
+    }
+
+    @Test
+    void whenShardIsAdded_thenOnlyTheUsersOfTheNewShardMove() {
+        ShardRouter before = new ShardRouter(3);
+        ShardRouter after = new ShardRouter(4);
+        int moved = 0;
+        for (long userId = 1; userId <= USERS; userId++) {
+            int shard = after.shardOf(userId);
+            if (shard != before.shardOf(userId)) {
+                assertThat(shard).isEqualTo(3);
+                moved++;
+            }
+        }
+
+        assertThat(moved).isBetween(USERS / 4 * 9 / 10, USERS / 4 * 11 / 10);
+    }
+}
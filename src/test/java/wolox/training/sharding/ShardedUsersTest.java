@@ -0,0 +1,191 @@
+package wolox.training.sharding;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.junit.jupiter.api.TestInstance.Lifecycle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+/**
+ * Three embedded Postgres stand in for the primary database and two user shards
+ */
+@SpringBootTest(properties = "training.sharding.enabled=true")
+@AutoConfigureMockMvc
+@TestInstance(Lifecycle.PER_CLASS)
+class ShardedUsersTest {
+
+    private static final String USER = "postgres";
+    private static final List<EmbeddedPostgres> DATABASES = start(3);
+
+    @Autowired
+    private MockMvc mvc;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private ShardRouter router;
+
+    @Autowired
+    private UserShards userShards;
+
+    @DynamicPropertySource
+    static void databases(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", () -> DATABASES.get(0).getJdbcUrl(USER, USER));
+        registry.add("spring.datasource.username", () -> USER);
+        registry.add("spring.datasource.password", () -> "");
+        registry.add("training.sharding.urls", () -> DATABASES.stream().skip(1)
+                .map(database -> database.getJdbcUrl(USER, USER))
+                .collect(Collectors.joining(",")));
+    }
+
+    @AfterAll
+    void stopDatabases() throws IOException {
+        for (EmbeddedPostgres database : DATABASES) {
+            database.close();
+        }
+    }
+
+    @Test
+    void whenUsersAreCreated_thenEachOneIsStoredInTheShardOfItsId() throws Exception {
+        Set<Integer> usedShards = new HashSet<>();
+        for (int user = 0; user < 30; user++) {
+            long userId = createUser("placement-" + user, "placement " + user);
+            int shard = router.shardOf(userId);
+            usedShards.add(shard);
+
+            for (int database = 0; database < DATABASES.size(); database++) {
+                assertThat(shard(database).queryForObject("SELECT count(*) FROM users WHERE id = ?", Integer.class,
+                        userId)).as("user %d in shard %d", userId, database).isEqualTo(database == shard ? 1 : 0);
+            }
+            mvc.perform(get("/api/users/{id}", userId))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.username").value("placement-" + user));
+        }
+
+        assertThat(usedShards).hasSize(DATABASES.size());
+    }
+
+    @Test
+    void whenBookIsAddedToUser_thenTheOwnershipIsStoredWithTheUser() throws Exception {
+        long bookId = createBook();
+        for (int database = 0; database < DATABASES.size(); database++) {
+            assertThat(shard(database).queryForObject("SELECT title FROM book WHERE id = ?", String.class, bookId))
+                    .isEqualTo("Sharded title");
+        }
+
+        long userId = createUser("owner", "owner");
+        mvc.perform(post("/api/users/{userId}/books/{bookId}", userId, bookId))
+                .andExpect(status().isCreated())
+                .andExpect(jsonPath("$.books[0].id").value(bookId));
+
+        for (int database = 0; database < DATABASES.size(); database++) {
+            assertThat(shard(database).queryForObject("SELECT count(*) FROM users_books WHERE users_id = ?",
+                    Integer.class, userId)).isEqualTo(database == router.shardOf(userId) ? 1 : 0);
+        }
+        mvc.perform(get("/api/users/{id}", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.books[0].title").value("Sharded title"));
+    }
+
+    @Test
+    void whenSearchUsers_thenThePagesOfTheShardsAreMergedInOrder() throws Exception {
+        List<String> names = new ArrayList<>(Arrays.asList("merge k", "merge c", "merge h", "merge a", "merge l",
+                "merge e", "merge b", "merge j", "merge f", "merge d", "merge i", "merge g"));
+        for (String name : names) {
+            createUser(name.replace(' ', '-'), name);
+        }
+        List<String> sorted = names.stream().sorted().collect(Collectors.toList());
+
+        MvcResult started = mvc.perform(get("/api/users/search").param("sequence", "merge").param("sort", "name")
+                        .param("from", "1").param("size", "5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements").value(names.size()))
+                .andExpect(jsonPath("$.content[*].name").value(Matchers.contains(sorted.subList(5, 10).toArray())));
+
+        started = mvc.perform(get("/api/users/search").param("sequence", "merge").param("sort", "name")
+                        .param("from", "2").param("size", "5").param("fields", "username"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[*].username").value(Matchers.contains("merge-k", "merge-l")))
+                .andExpect(jsonPath("$.content[0].name").doesNotExist());
+    }
+
+    @Test
+    void whenAShardReadGathersTheShardsAgain_thenItReadsThemInItsOwnThread() {
+        List<List<Integer>> shards = userShards.gather(() -> userShards.gather(ShardContext::current));
+
+        assertThat(shards).hasSize(DATABASES.size())
+                .allSatisfy(nested -> assertThat(nested).containsExactly(0, 1, 2));
+    }
+
+    private long createUser(String username, String name) throws Exception {
+        String body = "{\"username\": \"" + username + "\", \"name\": \"" + name + "\", \"birthDate\": \"1990-01-01\"}";
+        return id(mvc.perform(post("/api/users").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    private long createBook() throws Exception {
+        String body = "{\"genre\": \"Fantasy\", \"author\": \"Sharded author\", \"image\": \"https://covers/1.jpg\", "
+                + "\"title\": \"Sharded title\", \"subTitle\": \"Sharded subtitle\", \"publisher\": \"Publisher\", "
+                + "\"year\": \"1954\", \"pages\": 352, \"isbn\": \"isbn-sharded\"}";
+        return id(mvc.perform(post("/api/books").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString());
+    }
+
+    private long id(String json) throws IOException {
+        JsonNode node = mapper.readTree(json);
+        return node.get("id").asLong();
+    }
+
+    private JdbcTemplate shard(int database) {
+        return new JdbcTemplate(DATABASES.get(database).getPostgresDatabase());
+    }
+
+    private static List<EmbeddedPostgres> start(int databases) {
+        List<EmbeddedPostgres> started = new ArrayList<>(databases);
+        try {
+            for (int database = 0; database < databases; database++) {
+                started.add(EmbeddedPostgres.start());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return started;
+    }
+}
@@ -0,0 +1,76 @@
+package wolox.training.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+
+class CatalogSnapshotCodecTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void whenSnapshotIsWritten_thenItIsReadBack() throws Exception {
+        Book owned = book(1L, "The Hobbit");
+        Book cached = book(2L, "Ñandú, ½ \"quoted\"");
+        User user = new User(7L);
+        user.setUsername("dadela");
+        user.setName("Daniel");
+        user.setBirthDate(LocalDate.of(1990, 2, 15));
+        user.setBooks(Collections.singletonList(owned));
+        Instant watermark = Instant.parse("2021-02-03T04:05:06.123456Z");
+        Path file = directory.resolve("catalog.snapshot");
+
+        CatalogSnapshotCodec.write(file, new CatalogSnapshot(watermark, Collections.singletonList(cached),
+                Arrays.asList(user, new User(8L))));
+        CatalogSnapshot snapshot = CatalogSnapshotCodec.read(file);
+
+        assertThat(snapshot.getWatermark()).isEqualTo(watermark);
+        assertThat(snapshot.getBooks()).usingRecursiveFieldByFieldElementComparator()
+                .containsExactly(cached, owned);
+        assertThat(snapshot.getUsers()).hasSize(2);
+        assertThat(snapshot.getUsers().get(0)).usingRecursiveComparison().isEqualTo(user);
+        assertThat(snapshot.getUsers().get(0).getBooks().iterator().next()).isSameAs(snapshot.getBooks().get(1));
+        assertThat(snapshot.getUsers().get(1).getName()).isNull();
+    }
+
+    @Test
+    void whenSnapshotIsCorrupted_thenItIsRejected() throws Exception {
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotCodec.write(file, new CatalogSnapshot(Instant.now(),
+                Collections.singletonList(book(1L, "The Hobbit")), Collections.emptyList()));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 40);
+        }
+
+        assertThrows(IOException.class, () -> CatalogSnapshotCodec.read(file));
+        assertThrows(IOException.class, () -> CatalogSnapshotCodec.read(directory.resolve("missing")));
+    }
+
+    private Book book(Long id, String title) {
+        Book book = new Book(id);
+        book.setGenre("Fantasy");
+        book.setAuthor("J. R. R. Tolkien");
+        book.setImage("https://covers/" + id + ".jpg");
+        book.setTitle(title);
+        book.setSubTitle("");
+        book.setPublisher("George Allen & Unwin");
+        book.setYear("1937");
+        book.setPages(310);
+        book.setIsbn("isbn-" + id);
+        return book;
+    }
+}
@@ -0,0 +1,164 @@
+package wolox.training.snapshot;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase;
+import io.zonky.test.db.AutoConfigureEmbeddedDatabase.DatabaseProvider;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase.Replace;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import wolox.training.cache.CacheInvalidationBus;
+import wolox.training.cache.CacheNames;
+import wolox.training.cache.EntityCache;
+import wolox.training.models.Book;
+import wolox.training.models.User;
+import wolox.training.repositories.BookRepository;
+import wolox.training.repositories.UserRepository;
+import wolox.training.sharding.ShardRouter;
+import wolox.training.sharding.UserShards;
+
+/**
+ * Restores a snapshot over an embedded Postgres whose rows carry explicit change timestamps around the watermark
+ */
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = Replace.NONE)
+@AutoConfigureEmbeddedDatabase(provider = DatabaseProvider.ZONKY)
+class CatalogSnapshotServiceTest {
+
+    private static final Instant WATERMARK = Instant.parse("2025-01-01T00:00:00Z");
+
+    @Autowired
+    private BookRepository bookRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @TempDir
+    Path directory;
+
+    private final EntityCache<Book> bookCache = new EntityCache<>(CacheNames.BOOKS, "maximumSize=100");
+    private final EntityCache<User> userCache = new EntityCache<>(CacheNames.USERS, "maximumSize=100");
+    private final UserShards userShards = new UserShards(new ShardRouter(false, new String[0]), null, null, null, null);
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.execute("ALTER TABLE users DISABLE TRIGGER USER");
+        jdbcTemplate.execute("ALTER TABLE users_books DISABLE TRIGGER USER");
+        insertBook(1, "unchanged", "2020-01-01");
+        insertBook(2, "changed in the database", "2030-01-01");
+        insertBook(3, "unchanged", "2020-01-01");
+        insertUser(1, "2020-01-01");
+        insertUser(2, "2020-01-01");
+        insertUser(3, "2030-01-01");
+        jdbcTemplate.update("INSERT INTO users_books (users_id, books_id) VALUES (1, 1), (2, 2), (3, 3)");
+    }
+
+    @Test
+    void whenSnapshotIsRestored_thenOnlyUnchangedEntitiesAreTrusted() throws Exception {
+        Book book1 = book(1L, "unchanged");
+        Book book2 = book(2L, "stale");
+        Book book3 = book(3L, "unchanged");
+        Book deleted = book(4L, "deleted");
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotCodec.write(file, new CatalogSnapshot(WATERMARK, Arrays.asList(book1, book3, deleted),
+                Arrays.asList(user(1L, "snapshot", book1), user(2L, "snapshot", book2),
+                        user(3L, "snapshot", book3), user(9L, "deleted", book1))));
+
+        service(file).restore();
+
+        assertThat(bookCache.getIfPresent(1L)).get().extracting(Book::getTitle).isEqualTo("unchanged");
+        assertThat(bookCache.getIfPresent(2L)).get().extracting(Book::getTitle).isEqualTo("changed in the database");
+        assertThat(bookCache.getIfPresent(3L)).isPresent();
+        assertThat(bookCache.getIfPresent(4L)).isEmpty();
+        assertThat(userCache.getIfPresent(1L)).get().extracting(User::getName).isEqualTo("snapshot");
+        assertThat(userCache.getIfPresent(2L)).get().extracting(User::getName).isEqualTo("database");
+        assertThat(userCache.getIfPresent(2L).get().getBooks()).extracting(Book::getTitle)
+                .containsExactly("changed in the database");
+        assertThat(userCache.getIfPresent(3L)).get().extracting(User::getName).isEqualTo("database");
+        assertThat(userCache.getIfPresent(9L)).isEmpty();
+    }
+
+    @Test
+    void whenTheBooksOfAUserChangedAfterTheSnapshot_thenTheUserIsReloaded() throws Exception {
+        Book book1 = book(1L, "unchanged");
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotCodec.write(file, new CatalogSnapshot(WATERMARK, Collections.singletonList(book1),
+                Collections.singletonList(user(1L, "snapshot", book1))));
+        jdbcTemplate.update("INSERT INTO ownership_history (user_id, book_id, action, changed_at) "
+                + "VALUES (1, 3, 'ADDED', '2030-01-01'::timestamptz)");
+
+        service(file).restore();
+
+        assertThat(userCache.getIfPresent(1L)).get().extracting(User::getName).isEqualTo("database");
+    }
+
+    @Test
+    void whenCacheIsInvalidatedDuringRestore_thenSnapshotValuesAreDiscarded() throws Exception {
+        Path file = directory.resolve("catalog.snapshot");
+        CatalogSnapshotCodec.write(file, new CatalogSnapshot(WATERMARK,
+                Arrays.asList(book(1L, "unchanged"), book(2L, "stale")), Collections.emptyList()));
+        BookRepository invalidatingRepository = Mockito.mock(BookRepository.class, invocation -> {
+            bookCache.invalidate(1L);
+            return List.of();
+        });
+
+        new CatalogSnapshotService(bookCache, userCache, invalidatingRepository, userRepository, userShards,
+                jdbcTemplate, Mockito.mock(CacheInvalidationBus.class), file.toString(), 1000, 0).restore();
+
+        assertThat(bookCache.size()).isZero();
+    }
+
+    private CatalogSnapshotService service(Path file) {
+        return new CatalogSnapshotService(bookCache, userCache, bookRepository, userRepository, userShards,
+                jdbcTemplate, Mockito.mock(CacheInvalidationBus.class), file.toString(), 1000, 0);
+    }
+
+    private void insertBook(long id, String title, String lastModified) {
+        jdbcTemplate.update("INSERT INTO book (id, genre, author, image, title, sub_title, publisher, year, pages, "
+                + "isbn, last_modified) VALUES (?, 'Fantasy', 'author', 'image', ?, '', 'publisher', '1937', 310, "
+                + "'isbn', ?::timestamptz)", id, title, lastModified);
+    }
+
+    private void insertUser(long id, String lastModified) {
+        jdbcTemplate.update("INSERT INTO users (id, username, name, birth_date, last_modified) "
+                + "VALUES (?, 'user-' || ?, 'database', DATE '1990-01-01', ?::timestamptz)", id, id, lastModified);
+    }
+
+    private Book book(Long id, String title) {
+        Book book = new Book(id);
+        book.setGenre("Fantasy");
+        book.setAuthor("author");
+        book.setImage("image");
+        book.setTitle(title);
+        book.setSubTitle("");
+        book.setPublisher("publisher");
+        book.setYear("1937");
+        book.setPages(310);
+        book.setIsbn("isbn");
+        return book;
+    }
+
+    private User user(Long id, String name, Book book) {
+        User user = new User(id);
+        user.setUsername("user-" + id);
+        user.setName(name);
+        user.setBirthDate(LocalDate.of(1990, 1, 1));
+        user.setBooks(Collections.singletonList(book));
+        return user;
+    }
+}
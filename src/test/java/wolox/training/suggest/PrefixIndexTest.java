@@ -0,0 +1,101 @@
+package wolox.training.suggest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PrefixIndexTest {
+
+    private PrefixIndex<String> index;
+
+    @BeforeEach
+    void setUp() {
+        index = new PrefixIndex<>(3);
+        index.put(1L, "The Hobbit", 10, SuggestTerms.of("The Hobbit", "J. R. R. Tolkien"));
+        index.put(2L, "The Lord of the Rings", 30, SuggestTerms.of("The Lord of the Rings", "J. R. R. Tolkien"));
+        index.put(3L, "Hyperion", 20, SuggestTerms.of("Hyperion", "Dan Simmons"));
+        index.put(4L, "Harry Potter", 5, SuggestTerms.of("Harry Potter", "J. K. Rowling"));
+    }
+
+    @Test
+    void whenPrefixMatchesAnyWord_thenValuesAreRankedByWeight() {
+        assertThat(index.top(SuggestTerms.prefix("h"), 10)).containsExactly("Hyperion", "The Hobbit", "Harry Potter");
+        assertThat(index.top(SuggestTerms.prefix("tolk"), 10)).containsExactly("The Lord of the Rings", "The Hobbit");
+        assertThat(index.top(SuggestTerms.prefix("Lord of"), 10)).containsExactly("The Lord of the Rings");
+        assertThat(index.top(SuggestTerms.prefix("the"), 1)).containsExactly("The Lord of the Rings");
+        assertThat(index.top(SuggestTerms.prefix("dune"), 10)).isEmpty();
+    }
+
+    @Test
+    void whenTopIsFull_thenOnlyTheTopSizeIsKept() {
+        index.put(5L, "Hamlet", 50, SuggestTerms.of("Hamlet", "William Shakespeare"));
+
+        assertThat(index.top(SuggestTerms.prefix("h"), 10)).containsExactly("Hamlet", "Hyperion", "The Hobbit");
+    }
+
+    @Test
+    void whenValueIsReplacedOrRemoved_thenItsOldTermsAreDropped() {
+        index.put(3L, "Dune", 20, SuggestTerms.of("Dune", "Frank Herbert"));
+        index.remove(1L);
+
+        assertThat(index.top(SuggestTerms.prefix("h"), 10)).containsExactly("Dune", "Harry Potter");
+        assertThat(index.top(SuggestTerms.prefix("hyp"), 10)).isEmpty();
+        assertThat(index.top(SuggestTerms.prefix("tolkien"), 10)).containsExactly("The Lord of the Rings");
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    void whenTermsHaveAccentsOrPunctuation_thenTheyAreNormalized() {
+        String title = "Cien a\u00f1os de soledad";
+        index.put(6L, title, 1, SuggestTerms.of(title, "Gabriel Garc\u00eda M\u00e1rquez"));
+
+        assertThat(index.top(SuggestTerms.prefix("GARCIA m"), 10)).containsExactly(title);
+        assertThat(index.top(SuggestTerms.prefix("anos"), 10)).containsExactly(title);
+    }
+
+    /**
+     * The latency of the lookups is measured by PrefixIndexBenchmark, this checks the merged tops of a large index
+     * against a scan of every value
+     */
+    @Test
+    void whenIndexIsLarge_thenLookupsReturnTheTopOfEveryValueWithThePrefix() {
+        Random random = new Random(7);
+        Map<Long, String> values = new HashMap<>();
+        Map<Long, Long> weights = new HashMap<>();
+        Map<Long, List<String>> terms = new HashMap<>();
+        for (long id = 0; id < 5_000; id++) {
+            String title = word(random) + " " + word(random);
+            values.put(id, title);
+            weights.put(id, (long) random.nextInt(1000));
+            terms.put(id, SuggestTerms.of(title, word(random)));
+        }
+        PrefixIndex<String> large = new PrefixIndex<>(10);
+        large.putAll(values, weights, terms);
+
+        for (int i = 0; i < 200; i++) {
+            String prefix = word(random).substring(0, 1 + random.nextInt(3));
+            List<String> expected = terms.keySet().stream()
+                    .filter(id -> terms.get(id).stream().anyMatch(term -> term.startsWith(prefix)))
+                    .sorted(Comparator.<Long>comparingLong(weights::get).reversed().thenComparing(id -> id))
+                    .limit(10)
+                    .map(values::get)
+                    .collect(Collectors.toList());
+            assertThat(large.top(prefix, 10)).as(prefix).isEqualTo(expected);
+        }
+    }
+
+    private static String word(Random random) {
+        char[] letters = new char[5 + random.nextInt(6)];
+        for (int i = 0; i < letters.length; i++) {
+            letters[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(letters);
+    }
+}